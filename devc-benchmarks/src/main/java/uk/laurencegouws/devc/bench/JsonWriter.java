@@ -0,0 +1,95 @@
+package uk.laurencegouws.devc.bench;
+
+import java.util.Map;
+
+/**
+ * Writes the maps, lists, strings and numbers benchmark reports are made of as indented JSON,
+ * so reports checked into the repository diff line by line.
+ */
+public final class JsonWriter {
+
+    private JsonWriter() {
+    }
+
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(value, out, "");
+        return out.toString();
+    }
+
+    private static void write(Object value, StringBuilder out, String indent) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String s) {
+            quote(s, out);
+        } else if (value instanceof Double d && (d.isNaN() || d.isInfinite())) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            if (map.isEmpty()) {
+                out.append("{}");
+                return;
+            }
+            String inner = indent + "  ";
+            out.append("{\n");
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.append(first ? "" : ",\n").append(inner);
+                first = false;
+                quote(String.valueOf(entry.getKey()), out);
+                out.append(": ");
+                write(entry.getValue(), out, inner);
+            }
+            out.append('\n').append(indent).append('}');
+        } else if (value instanceof Iterable<?> items) {
+            // Lists of plain values stay on one line; lists of objects get one per line
+            StringBuilder flat = new StringBuilder("[");
+            boolean nested = false;
+            boolean first = true;
+            for (Object item : items) {
+                nested |= item instanceof Map || item instanceof Iterable;
+                flat.append(first ? "" : ", ");
+                first = false;
+                write(item, flat, indent);
+            }
+            if (!nested) {
+                out.append(flat).append(']');
+                return;
+            }
+            String inner = indent + "  ";
+            out.append("[\n");
+            first = true;
+            for (Object item : items) {
+                out.append(first ? "" : ",\n").append(inner);
+                first = false;
+                write(item, out, inner);
+            }
+            out.append('\n').append(indent).append(']');
+        } else {
+            quote(value.toString(), out);
+        }
+    }
+
+    private static void quote(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,286 @@
+package uk.laurencegouws.devc.bench.startup;
+
+import uk.laurencegouws.devc.bench.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how quickly each devc subcommand starts: the time to its first byte of output
+ * (stdout or stderr), the time to exit, and the peak resident set size, in three modes:
+ * <ul>
+ *   <li>{@code jvm}: {@code java -jar target/quarkus-app/quarkus-run.jar}</li>
+ *   <li>{@code appcds}: the same with an application class-data archive, created by the first
+ *       warm-up run</li>
+ *   <li>{@code native}: {@code target/devc-runner}, skipped when it hasn't been built</li>
+ * </ul>
+ * devc runs in a scratch project directory and talks to a {@link StubEngine} instead of Docker,
+ * with the daemon disabled and its caches in the scratch directory, so the numbers are devc's
+ * own. The results go to a JSON report.
+ * <p>
+ * Options: {@code --devc <project dir>} (default {@code ..}), {@code --modes jvm,appcds,native},
+ * {@code --runs <n>} (default 10), {@code --warmup <n>} (default 2),
+ * {@code --command "<args>"} (repeatable; replaces the default set) and
+ * {@code --output <file>} (default {@code target/startup-report.json}).
+ */
+public final class StartupBenchmark {
+
+    private static final List<String> DEFAULT_COMMANDS = List.of(
+        "--version",
+        "--help",
+        "status",
+        "status --json",
+        "start",
+        "exec -T true",
+        "cd /tmp",
+        "snapshot list",
+        "completion bash");
+
+    private static final int FORMAT_VERSION = 1;
+
+    private record Run(long firstOutputNanos, long exitNanos, long peakRssKb, int exitCode) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path devc = Path.of("..");
+        List<String> modes = List.of("jvm", "appcds", "native");
+        List<String> commands = new ArrayList<>();
+        int runs = 10;
+        int warmup = 2;
+        Path output = Path.of("target", "startup-report.json");
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--devc" -> devc = Path.of(require(args[i], value));
+                case "--modes" -> modes = List.of(require(args[i], value).split(","));
+                case "--runs" -> runs = Integer.parseInt(require(args[i], value));
+                case "--warmup" -> warmup = Integer.parseInt(require(args[i], value));
+                case "--command" -> commands.add(require(args[i], value));
+                case "--output" -> output = Path.of(require(args[i], value));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (commands.isEmpty()) {
+            commands.addAll(DEFAULT_COMMANDS);
+        }
+        devc = devc.toAbsolutePath().normalize();
+
+        Path scratch = Files.createTempDirectory("devc-startup-");
+        // Commands such as start expect to run from a devc project
+        Path project = Files.createDirectories(scratch.resolve("project").resolve("volumes").resolve("workspace"))
+            .getParent().getParent();
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<Map<String, Object>> skipped = new ArrayList<>();
+        try (StubEngine engine = new StubEngine(scratch.resolve("docker.sock"))) {
+            for (String mode : modes) {
+                List<String> launcher = launcher(mode, devc, scratch);
+                if (launcher == null) {
+                    skipped.add(Map.of("mode", mode, "reason", "not built (expected " + binary(mode, devc) + ")"));
+                    System.out.printf("%-7s skipped: %s not found%n", mode, binary(mode, devc));
+                    continue;
+                }
+                // AppCDS needs one run to write its archive before anything is measured
+                int modeWarmup = mode.equals("appcds") ? Math.max(1, warmup) : warmup;
+                for (String command : commands) {
+                    List<String> argv = new ArrayList<>(launcher);
+                    argv.addAll(Arrays.asList(command.split(" ")));
+                    List<Run> measured = new ArrayList<>();
+                    for (int i = 0; i < modeWarmup + runs; i++) {
+                        Run run = run(argv, project, environment(engine, scratch));
+                        if (i >= modeWarmup) {
+                            measured.add(run);
+                        }
+                    }
+                    Map<String, Object> result = summarize(mode, command, measured);
+                    results.add(result);
+                    print(result);
+                }
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("version", FORMAT_VERSION);
+        report.put("createdAt", Instant.now().toString());
+        report.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        report.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        report.put("runs", runs);
+        report.put("warmup", warmup);
+        report.put("results", results);
+        report.put("skipped", skipped);
+        Path absolute = output.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Files.writeString(absolute, JsonWriter.write(report) + "\n");
+        System.out.println("Report written to " + absolute);
+    }
+
+    private static String require(String option, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return value;
+    }
+
+    private static Path binary(String mode, Path devc) {
+        return mode.equals("native")
+            ? devc.resolve("target").resolve("devc-runner")
+            : devc.resolve("target").resolve("quarkus-app").resolve("quarkus-run.jar");
+    }
+
+    /**
+     * The command line that starts devc in {@code mode}, or null when that build is missing.
+     */
+    private static List<String> launcher(String mode, Path devc, Path scratch) throws IOException {
+        Path binary = binary(mode, devc);
+        if (!Files.exists(binary)) {
+            return null;
+        }
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return switch (mode) {
+            case "jvm" -> List.of(java, "-jar", binary.toString());
+            case "appcds" -> {
+                Path archive = scratch.resolve("devc.jsa");
+                Files.deleteIfExists(archive);
+                yield List.of(java, "-XX:SharedArchiveFile=" + archive, "-XX:+AutoCreateSharedArchive",
+                    "-jar", binary.toString());
+            }
+            case "native" -> List.of(binary.toString());
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        };
+    }
+
+    private static Map<String, String> environment(StubEngine engine, Path scratch) {
+        Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("DOCKER_HOST", engine.dockerHost());
+        environment.put("DEVC_DOCKER_CLIENT", "engine");
+        environment.put("DEVC_DAEMON", "false");
+        environment.put("XDG_CACHE_HOME", scratch.resolve("cache").toString());
+        environment.put("XDG_DATA_HOME", scratch.resolve("data").toString());
+        environment.put("XDG_RUNTIME_DIR", scratch.resolve("run").toString());
+        return environment;
+    }
+
+    private static Run run(List<String> argv, Path directory, Map<String, String> environment)
+            throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(argv).directory(directory.toFile());
+        builder.environment().putAll(environment);
+        builder.redirectInput(ProcessBuilder.Redirect.from(Path.of("/dev/null").toFile()));
+        long start = System.nanoTime();
+        Process process = builder.start();
+        AtomicLong firstOutput = new AtomicLong(-1);
+        Thread stdout = Thread.ofVirtual().start(() -> drain(process.getInputStream(), firstOutput, start));
+        Thread stderr = Thread.ofVirtual().start(() -> drain(process.getErrorStream(), firstOutput, start));
+        long peakRssKb = -1;
+        Path status = Path.of("/proc", Long.toString(process.pid()), "status");
+        while (process.isAlive()) {
+            peakRssKb = Math.max(peakRssKb, highWaterMarkKb(status));
+            Thread.sleep(1);
+        }
+        int exitCode = process.waitFor();
+        long exit = System.nanoTime() - start;
+        stdout.join();
+        stderr.join();
+        long first = firstOutput.get();
+        return new Run(first < 0 ? exit : first, exit, peakRssKb, exitCode);
+    }
+
+    private static void drain(InputStream in, AtomicLong firstOutput, long start) {
+        byte[] buffer = new byte[8192];
+        try (in) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (n > 0) {
+                    firstOutput.compareAndSet(-1, System.nanoTime() - start);
+                }
+            }
+        } catch (IOException ignored) {
+            // Process gone
+        }
+    }
+
+    /**
+     * {@code VmHWM}, the peak RSS so far, or -1 where /proc isn't available or the process
+     * has already exited.
+     */
+    private static long highWaterMarkKb(Path status) {
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).strip().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // Not Linux, or the process just exited
+        }
+        return -1;
+    }
+
+    private static Map<String, Object> summarize(String mode, String command, List<Run> runs) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", mode);
+        result.put("command", command);
+        result.put("exitCodes", runs.stream().map(Run::exitCode).distinct().sorted().toList());
+        result.put("firstOutputMs", stats(runs.stream().mapToLong(Run::firstOutputNanos).toArray(), 1e6));
+        result.put("exitMs", stats(runs.stream().mapToLong(Run::exitNanos).toArray(), 1e6));
+        result.put("peakRssMb", stats(runs.stream().mapToLong(Run::peakRssKb).filter(kb -> kb >= 0).toArray(), 1024));
+        return result;
+    }
+
+    private static Map<String, Object> stats(long[] values, double divisor) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (values.length == 0) {
+            return stats;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        stats.put("min", round(sorted[0] / divisor));
+        stats.put("p50", round(percentile(sorted, 50) / divisor));
+        stats.put("p90", round(percentile(sorted, 90) / divisor));
+        stats.put("max", round(sorted[sorted.length - 1] / divisor));
+        stats.put("mean", round(Arrays.stream(sorted).average().orElse(0) / divisor));
+        return stats;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> result) {
+        Map<String, Object> first = (Map<String, Object>) result.get("firstOutputMs");
+        Map<String, Object> exit = (Map<String, Object>) result.get("exitMs");
+        Map<String, Object> rss = (Map<String, Object>) result.get("peakRssMb");
+        System.out.printf(Locale.ROOT, "%-7s %-18s first output p50 %8s ms   exit p50 %8s ms   peak RSS p50 %7s MB   exit %s%n",
+            result.get("mode"), result.get("command"), first.get("p50"), exit.get("p50"),
+            rss.getOrDefault("p50", "n/a"), result.get("exitCodes"));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
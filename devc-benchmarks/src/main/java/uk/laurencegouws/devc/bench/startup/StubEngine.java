@@ -0,0 +1,178 @@
+package uk.laurencegouws.devc.bench.startup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Just enough of the Docker Engine API, on a Unix socket, for devc's everyday commands to run
+ * without a Docker daemon: one running {@code devc-container}, lifecycle calls (create and
+ * remove included) that succeed without doing anything, and execs that exit 0 without output.
+ * Answers are immediate, so a benchmark measures devc rather than Docker.
+ */
+final class StubEngine implements Closeable {
+
+    static final String CONTAINER = "devc-container";
+    static final String CONTAINER_ID = "0123456789abcdef0123";
+
+    private static final Pattern VERSIONED = Pattern.compile("^/v\\d+\\.\\d+(/.*)$");
+    private static final Pattern CONTAINER_PATH = Pattern.compile("^/containers/([^/]+)/(json|start|stop|restart|exec)$");
+    private static final Pattern EXEC_PATH = Pattern.compile("^/exec/([^/]+)/(start|json)$");
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final String containerJson;
+
+    StubEngine(Path socket) throws IOException {
+        this.socket = socket;
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        long created = System.currentTimeMillis() / 1000 - 3600;
+        containerJson = "{\"Id\":\"" + CONTAINER_ID + "\",\"Names\":[\"/" + CONTAINER + "\"],"
+            + "\"Image\":\"" + CONTAINER + "\",\"Command\":\"tail -f /dev/null\",\"Created\":" + created + ","
+            + "\"State\":\"running\",\"Status\":\"Up About an hour\",\"Labels\":{\"devc.managed\":\"true\"}}";
+        Thread.ofVirtual().name("stub-engine").start(this::acceptLoop);
+    }
+
+    String dockerHost() {
+        return "unix://" + socket;
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel connection = server.accept();
+                Thread.ofVirtual().start(() -> serve(connection));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    /**
+     * Serves keep-alive requests until the client closes the connection or an exec hijacks it.
+     */
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(connection));
+            OutputStream out = Channels.newOutputStream(connection);
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) {
+                    return;
+                }
+                long length = 0;
+                for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+                    if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                        length = Long.parseLong(header.substring(header.indexOf(':') + 1).strip());
+                    }
+                }
+                in.skipNBytes(length);
+                String[] parts = requestLine.split(" ");
+                if (!respond(parts[0], parts.length > 1 ? parts[1] : "/", out)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    /**
+     * Writes the answer; returns false once the connection has been handed over to an exec.
+     */
+    private boolean respond(String method, String target, OutputStream out) throws IOException {
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        Matcher versioned = VERSIONED.matcher(path);
+        if (versioned.matches()) {
+            path = versioned.group(1);
+        }
+
+        if (path.equals("/_ping")) {
+            write(out, 200, "text/plain", "OK");
+        } else if (path.equals("/version")) {
+            write(out, 200, "application/json", "{\"Version\":\"stub\",\"ApiVersion\":\"1.41\"}");
+        } else if (method.equals("POST") && path.equals("/containers/create")) {
+            write(out, 201, "application/json", "{\"Id\":\"" + CONTAINER_ID + "\",\"Warnings\":[]}");
+        } else if (method.equals("DELETE") && path.startsWith("/containers/")) {
+            write(out, 204, null, "");
+        } else if (method.equals("GET") && path.equals("/containers/json")) {
+            write(out, 200, "application/json", "[" + containerJson + "]");
+        } else if (path.startsWith("/images/") && path.endsWith("/json")) {
+            write(out, 200, "application/json", "{\"Id\":\"sha256:0123456789ab\",\"RepoDigests\":[],\"Config\":{\"Labels\":{}}}");
+        } else if (CONTAINER_PATH.matcher(path).matches()) {
+            Matcher matcher = CONTAINER_PATH.matcher(path);
+            matcher.matches();
+            if (!matcher.group(1).equals(CONTAINER) && !matcher.group(1).equals(CONTAINER_ID)) {
+                write(out, 404, "application/json", "{\"message\":\"No such container: " + matcher.group(1) + "\"}");
+                return true;
+            }
+            switch (matcher.group(2)) {
+                case "json" -> write(out, 200, "application/json", "{\"Id\":\"" + CONTAINER_ID + "\",\"Name\":\"/"
+                    + CONTAINER + "\",\"Config\":{\"Image\":\"" + CONTAINER + "\",\"Labels\":{\"devc.managed\":\"true\"}},"
+                    + "\"State\":{\"Status\":\"running\",\"Running\":true},\"HostConfig\":{\"Binds\":[]}}");
+                case "start" -> write(out, 304, null, "");
+                case "exec" -> write(out, 201, "application/json", "{\"Id\":\"stub-exec\"}");
+                default -> write(out, 204, null, "");
+            }
+        } else if (EXEC_PATH.matcher(path).matches()) {
+            if (path.endsWith("/json")) {
+                write(out, 200, "application/json", "{\"Running\":false,\"ExitCode\":0}");
+                return true;
+            }
+            // Hijack, then end the stream at once: an exec that printed nothing and exited
+            out.write(("HTTP/1.1 101 UPGRADED\r\nContent-Type: application/vnd.docker.multiplexed-stream\r\n"
+                + "Connection: Upgrade\r\nUpgrade: tcp\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return false;
+        } else {
+            write(out, 404, "application/json", "{\"message\":\"Not implemented by the stub engine: " + path + "\"}");
+        }
+        return true;
+    }
+
+    private static void write(OutputStream out, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(" Stub\r\n");
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("Content-Length: ").append(bytes.length).append("\r\n\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return line.toString(StandardCharsets.US_ASCII).stripTrailing();
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(socket);
+    }
+}
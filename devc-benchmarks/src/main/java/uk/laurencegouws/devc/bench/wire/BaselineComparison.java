@@ -0,0 +1,105 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result against the checked-in baseline, benchmark by benchmark: throughput
+ * and, when both were run with {@code -prof gc}, bytes allocated per operation. Allocation is
+ * the stable signal across machines; throughput only compares on like hardware.
+ * <p>
+ * Usage: {@code BaselineComparison [baseline] [result] [--max-regression <percent>]}, defaulting
+ * to {@code baselines/wire.json} and {@code target/jmh-result.json}. With
+ * {@code --max-regression} it exits 1 when any benchmark is that much slower or allocates that
+ * much more per operation (and more than a few bytes more).
+ */
+public final class BaselineComparison {
+
+    private static final double ALLOCATION_NOISE = 64;
+
+    private record Score(double opsPerSecond, double bytesPerOp) {
+    }
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path baseline = Path.of("baselines", "wire.json");
+        Path result = Path.of("target", "jmh-result.json");
+        double maxRegression = Double.NaN;
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--max-regression")) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("--max-regression needs a value");
+                }
+                maxRegression = Double.parseDouble(args[++i]);
+            } else if (positional++ == 0) {
+                baseline = Path.of(args[i]);
+            } else {
+                result = Path.of(args[i]);
+            }
+        }
+
+        Map<String, Score> before = read(baseline);
+        Map<String, Score> after = read(result);
+        boolean regressed = false;
+        System.out.printf(Locale.ROOT, "%-62s %14s %8s %12s %8s%n", "Benchmark", "ops/s", "change", "B/op", "change");
+        for (Map.Entry<String, Score> entry : after.entrySet()) {
+            Score now = entry.getValue();
+            Score then = before.get(entry.getKey());
+            double speed = then == null ? Double.NaN : percent(now.opsPerSecond(), then.opsPerSecond());
+            double allocation = then == null ? Double.NaN : percent(now.bytesPerOp(), then.bytesPerOp());
+            // A few bytes either way of an allocation-free path is noise, not a regression
+            boolean worse = !Double.isNaN(maxRegression) && (-speed > maxRegression
+                || allocation > maxRegression && now.bytesPerOp() - then.bytesPerOp() > ALLOCATION_NOISE);
+            regressed |= worse;
+            System.out.printf(Locale.ROOT, "%-62s %14.1f %8s %12.1f %8s%s%n", entry.getKey(), now.opsPerSecond(),
+                change(speed), now.bytesPerOp(), change(allocation), worse ? "  REGRESSION" : "");
+        }
+        for (String missing : before.keySet()) {
+            if (!after.containsKey(missing)) {
+                System.out.printf("%-62s not run%n", missing);
+            }
+        }
+        if (regressed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Scores by benchmark and parameters, e.g. {@code StreamDemuxBenchmark.socket frameSize=80}.
+     */
+    private static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object item : Json.array(Json.parse(Files.readString(file)))) {
+            Map<String, Object> run = Json.object(item);
+            String benchmark = Json.string(run.get("benchmark"));
+            String[] parts = benchmark.split("\\.");
+            StringBuilder name = new StringBuilder(parts[parts.length - 2]).append('.').append(parts[parts.length - 1]);
+            Json.object(run.get("params")).forEach((key, value) -> name.append(' ').append(key).append('=').append(value));
+            Map<String, Object> primary = Json.object(run.get("primaryMetric"));
+            Map<String, Object> allocation = Json.object(Json.object(run.get("secondaryMetrics")).get("gc.alloc.rate.norm"));
+            scores.put(name.toString(), new Score(decimal(primary.get("score")), decimal(allocation.get("score"))));
+        }
+        return scores;
+    }
+
+    private static double decimal(Object value) {
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    private static double percent(double now, double then) {
+        return then == 0 ? (now == 0 ? 0 : Double.POSITIVE_INFINITY) : (now - then) / then * 100;
+    }
+
+    private static String change(double percent) {
+        return Double.isNaN(percent) ? "n/a" : String.format(Locale.ROOT, "%+.1f%%", percent);
+    }
+}
@@ -0,0 +1,141 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local fake engine on a Unix socket that answers each path with prepared response bytes, so
+ * the socket benchmarks cover devc's real connection handling while the server side costs no
+ * more than a buffer write. Request bodies (a build context, say) are read and thrown away.
+ */
+public final class CannedEngine implements Closeable {
+
+    private record Answer(byte[] response, boolean close) {
+    }
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+
+    public CannedEngine(Path socket) throws IOException {
+        this.socket = socket;
+        Files.deleteIfExists(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        // Platform threads: the stream adapters below block while holding a monitor
+        Thread.ofPlatform().daemon().name("canned-engine").start(this::acceptLoop);
+    }
+
+    public Path socket() {
+        return socket;
+    }
+
+    /**
+     * Answers {@code path} (without the API version prefix or query) and keeps the connection.
+     */
+    public CannedEngine answer(String path, byte[] response) {
+        answers.put(path, new Answer(response, false));
+        return this;
+    }
+
+    /**
+     * Answers {@code path} and then closes the connection, as the engine does at the end of a
+     * hijacked exec stream.
+     */
+    public CannedEngine answerAndClose(String path, byte[] response) {
+        answers.put(path, new Answer(response, true));
+        return this;
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel connection = server.accept();
+                Thread.ofPlatform().daemon().start(() -> serve(connection));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(connection), 64 * 1024);
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) {
+                    return;
+                }
+                long length = 0;
+                for (String header = readLine(in); header != null && !header.isEmpty(); header = readLine(in)) {
+                    if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                        length = Long.parseLong(header.substring(header.indexOf(':') + 1).strip());
+                    }
+                }
+                in.skipNBytes(length);
+                String path = path(requestLine);
+                Answer answer = answers.get(path);
+                ByteBuffer response = ByteBuffer.wrap(answer != null ? answer.response() : notFound(path));
+                while (response.hasRemaining()) {
+                    connection.write(response);
+                }
+                if (answer == null || answer.close()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private static String path(String requestLine) {
+        String[] parts = requestLine.split(" ");
+        String target = parts.length > 1 ? parts[1] : "/";
+        int query = target.indexOf('?');
+        String path = query >= 0 ? target.substring(0, query) : target;
+        return path.matches("^/v\\d+\\.\\d+/.*") ? path.substring(path.indexOf('/', 1)) : path;
+    }
+
+    private static byte[] notFound(String path) {
+        byte[] body = ("{\"message\":\"Nothing canned for " + path + "\"}").getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("HTTP/1.1 404 Not Found\r\nContent-Type: application/json\r\nContent-Length: " + body.length
+            + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = Arrays.copyOf(head, head.length + body.length);
+        System.arraycopy(body, 0, response, head.length, body.length);
+        return response;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return line.toString(StandardCharsets.US_ASCII).stripTrailing();
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        Files.deleteIfExists(socket);
+    }
+}
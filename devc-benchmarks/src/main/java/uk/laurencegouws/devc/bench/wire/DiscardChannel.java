@@ -0,0 +1,35 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink standing in for the terminal or a file: it takes every byte at once and only counts
+ * them, so a benchmark writing to it measures devc's side of the copy.
+ */
+public final class DiscardChannel implements WritableByteChannel {
+
+    private long written;
+
+    public long written() {
+        return written;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        int count = source.remaining();
+        source.position(source.limit());
+        written += count;
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
@@ -0,0 +1,153 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Engine traffic shaped like the real thing, generated deterministically so every run (and the
+ * checked-in baselines) sees the same bytes.
+ */
+public final class Payloads {
+
+    private static final String ID = "3f4e5d6c7b8a99887766554433221100ffeeddccbbaa00112233445566778899";
+
+    private Payloads() {
+    }
+
+    /**
+     * A {@code GET /containers/json} body listing {@code count} containers.
+     */
+    public static byte[] containerList(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            String name = i == 0 ? "devc-container" : "devc-pool-" + i;
+            json.append(i == 0 ? "" : ",")
+                .append("{\"Id\":\"").append(ID, 0, 60).append(String.format("%04x", i)).append("\",")
+                .append("\"Names\":[\"/").append(name).append("\"],")
+                .append("\"Image\":\"devc-container\",\"ImageID\":\"sha256:").append(ID).append("\",")
+                .append("\"Command\":\"tail -f /dev/null\",\"Created\":").append(1_700_000_000L + i).append(',')
+                .append("\"Ports\":[],\"Labels\":{\"devc.managed\":\"true\",\"devc.pool\":\"").append(i > 0).append("\"},")
+                .append("\"State\":\"running\",\"Status\":\"Up 3 hours\",")
+                .append("\"HostConfig\":{\"NetworkMode\":\"bridge\"},")
+                .append("\"NetworkSettings\":{\"Networks\":{\"bridge\":{\"IPAddress\":\"172.17.0.").append(2 + i % 250)
+                .append("\",\"Gateway\":\"172.17.0.1\",\"MacAddress\":\"02:42:ac:11:00:02\"}}},")
+                .append("\"Mounts\":[{\"Type\":\"bind\",\"Source\":\"/home/dev/project/volumes/workspace\",")
+                .append("\"Destination\":\"/workspace\",\"Mode\":\"\",\"RW\":true,\"Propagation\":\"rprivate\"}]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One line of {@code GET /events}, as the engine sends it for a container lifecycle event.
+     */
+    public static String event(int sequence) {
+        String action = switch (sequence % 4) {
+            case 0 -> "create";
+            case 1 -> "start";
+            case 2 -> "die";
+            default -> "destroy";
+        };
+        long nanos = 1_700_000_000_000_000_000L + sequence * 1_000_003L;
+        return "{\"status\":\"" + action + "\",\"id\":\"" + ID + "\",\"from\":\"devc-container\","
+            + "\"Type\":\"container\",\"Action\":\"" + action + "\",\"Actor\":{\"ID\":\"" + ID + "\","
+            + "\"Attributes\":{\"devc.managed\":\"true\",\"image\":\"devc-container\",\"name\":\"devc-pool-"
+            + sequence % 8 + "\"" + (action.equals("die") ? ",\"exitCode\":\"0\"" : "") + "}},"
+            + "\"scope\":\"local\",\"time\":" + nanos / 1_000_000_000L + ",\"timeNano\":" + nanos + "}\n";
+    }
+
+    /**
+     * {@code count} events in one chunk each, which is how the engine flushes its event feed.
+     */
+    public static byte[] eventChunks(int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            byte[] line = event(i).getBytes(StandardCharsets.UTF_8);
+            out.writeBytes((Integer.toHexString(line.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes(line);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    /**
+     * {@code body} in {@code Transfer-Encoding: chunked} framing, {@code chunkSize} bytes a chunk.
+     */
+    public static byte[] chunked(byte[] body, int chunkSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + body.length / chunkSize * 12 + 16);
+        for (int offset = 0; offset < body.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, body.length - offset);
+            out.writeBytes((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body, offset, length);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        out.writeBytes("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    /**
+     * Printable log-like text, {@code size} bytes of it.
+     */
+    public static byte[] text(int size) {
+        Random random = new Random(size);
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; i++) {
+            text[i] = (byte) (i % 80 == 79 ? '\n' : ' ' + random.nextInt(95));
+        }
+        return text;
+    }
+
+    /**
+     * An exec attach stream carrying {@code size} payload bytes in frames of {@code frameSize},
+     * every eighth one on stderr.
+     */
+    public static byte[] multiplexed(int size, int frameSize) {
+        byte[] payload = text(size);
+        ByteBuffer out = ByteBuffer.allocate(size + (size / frameSize + 1) * 8);
+        int frame = 0;
+        for (int offset = 0; offset < size; offset += frameSize, frame++) {
+            int length = Math.min(frameSize, size - offset);
+            out.put((byte) (frame % 8 == 7 ? 2 : 1)).put((byte) 0).put((byte) 0).put((byte) 0).putInt(length);
+            out.put(payload, offset, length);
+        }
+        byte[] bytes = new byte[out.position()];
+        out.flip().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * A complete HTTP/1.1 response with the given, already framed, body.
+     */
+    public static byte[] response(String contentType, byte[] body, boolean chunked) {
+        String head = "HTTP/1.1 200 OK\r\n"
+            + "Api-Version: 1.41\r\n"
+            + "Content-Type: " + contentType + "\r\n"
+            + "Date: Tue, 14 Nov 2023 22:13:20 GMT\r\n"
+            + "Docker-Experimental: false\r\n"
+            + "Ostype: linux\r\n"
+            + "Server: Docker/24.0.7 (linux)\r\n"
+            + (chunked ? "Transfer-Encoding: chunked\r\n" : "Content-Length: " + body.length + "\r\n")
+            + "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+        byte[] response = new byte[headBytes.length + body.length];
+        System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+        System.arraycopy(body, 0, response, headBytes.length, body.length);
+        return response;
+    }
+
+    /**
+     * The engine's answer to an exec start that hijacks the connection; the stream follows it.
+     */
+    public static byte[] upgraded(byte[] stream) {
+        byte[] head = ("HTTP/1.1 101 UPGRADED\r\n"
+            + "Content-Type: application/vnd.docker.multiplexed-stream\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Upgrade: tcp\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = new byte[head.length + stream.length];
+        System.arraycopy(head, 0, response, 0, head.length);
+        System.arraycopy(stream, 0, response, head.length, stream.length);
+        return response;
+    }
+}
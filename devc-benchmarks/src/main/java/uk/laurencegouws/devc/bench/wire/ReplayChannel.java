@@ -0,0 +1,62 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+
+/**
+ * The in-memory stand-in for an engine connection: reads replay a fixed byte array, at most
+ * {@code segment} bytes at a time the way a socket hands over whatever has arrived, and writes
+ * are swallowed. {@link #rewind()} starts the replay again, so one instance serves a whole run.
+ */
+public final class ReplayChannel implements ByteChannel {
+
+    private final byte[] data;
+    private final int segment;
+    private int position;
+
+    public ReplayChannel(byte[] data) {
+        this(data, 64 * 1024);
+    }
+
+    public ReplayChannel(byte[] data, int segment) {
+        this.data = data;
+        this.segment = segment;
+    }
+
+    public ReplayChannel rewind() {
+        position = 0;
+        return this;
+    }
+
+    public int length() {
+        return data.length;
+    }
+
+    @Override
+    public int read(ByteBuffer target) {
+        if (position == data.length) {
+            return -1;
+        }
+        int count = Math.min(Math.min(segment, target.remaining()), data.length - position);
+        target.put(data, position, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer source) {
+        int count = source.remaining();
+        source.position(source.limit());
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Replayed again by the next invocation
+    }
+}
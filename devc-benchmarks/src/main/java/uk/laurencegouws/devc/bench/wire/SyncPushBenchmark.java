@@ -0,0 +1,160 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.archive.TarArchive;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+import uk.laurencegouws.devc.docker.DockerEngineClient;
+import uk.laurencegouws.devc.docker.EngineDockerClient;
+import uk.laurencegouws.devc.sync.WorkspaceSync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Pushing a workspace into a sync volume the way {@code devc start --sync} and {@code devc sync}
+ * do, against the fake engine. {@code sources} is 1,600 files of up to 16 KiB in 40 directories;
+ * {@code packages} is 8,000 files under 1 KiB in 400 directories, like a {@code node_modules}
+ * tree, where per-file costs dominate. Covers packing the tar on its own (as copies do), the
+ * first full push, and the manifest comparison with nothing or one file changed.
+ * <p>
+ * The sync manifest lives in devc's cache directory, under a container name unique to the run,
+ * and is removed afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncPushBenchmark {
+
+    @Param({"sources", "packages"})
+    public String layout;
+
+    private final DiscardChannel sink = new DiscardChannel();
+    private Path directory;
+    private Path root;
+    private Path touched;
+    private long touches;
+    private String container;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private DockerBackend docker;
+    private List<TarArchive.Entry> entries;
+    private WorkspaceSync synced;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("devc-jmh-");
+        root = Files.createDirectories(directory.resolve("workspace"));
+        Random random = new Random(42);
+        boolean sources = layout.equals("sources");
+        for (int d = 0; d < (sources ? 40 : 400); d++) {
+            Path module = Files.createDirectories(sources
+                ? root.resolve("src").resolve("module" + d)
+                : root.resolve("node_modules").resolve("package" + d).resolve("lib"));
+            for (int f = 0; f < (sources ? 40 : 20); f++) {
+                if (sources) {
+                    Files.write(module.resolve("Source" + f + ".java"), Payloads.text(256 + random.nextInt(16 * 1024)));
+                } else {
+                    Files.write(module.resolve("file" + f + ".js"), Payloads.text(64 + random.nextInt(960)));
+                }
+            }
+        }
+        touched = sources ? root.resolve("src/module7/Source3.java") : root.resolve("node_modules/package7/lib/file3.js");
+
+        container = "devc-jmh-sync-" + Long.toHexString(System.nanoTime());
+        engine = new CannedEngine(directory.resolve("docker.sock"))
+            .answer("/containers/" + container + "/archive", Payloads.response("application/json", new byte[0], false));
+        client = new DockerEngineClient(engine.socket());
+        DockerClient engineClient = new EngineDockerClient(client);
+        docker = new DockerBackend() {
+            @Override
+            public DockerClient client() {
+                return engineClient;
+            }
+        };
+        entries = walk();
+        synced = new WorkspaceSync(docker, container, root, "bench", List.of());
+        synced.push(List.of(""));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        WorkspaceSync.forget(container);
+        client.close();
+        engine.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * The tar alone, written to memory: headers, padding and file reads.
+     */
+    @Benchmark
+    public long pack() throws IOException {
+        new TarArchive(entries).writeTo(sink);
+        return sink.written();
+    }
+
+    /**
+     * A first sync: walk, tar and upload everything, then save the manifest.
+     */
+    @Benchmark
+    public WorkspaceSync.Push fullPush() throws IOException {
+        WorkspaceSync.forget(container);
+        return new WorkspaceSync(docker, container, root, "bench", List.of()).push(List.of(""));
+    }
+
+    /**
+     * A catch-up with nothing to send: the walk and the manifest comparison.
+     */
+    @Benchmark
+    public WorkspaceSync.Push unchanged() throws IOException {
+        return synced.push(List.of(""));
+    }
+
+    /**
+     * A catch-up after one file was saved: the comparison plus a one-file upload.
+     */
+    @Benchmark
+    public WorkspaceSync.Push oneChanged() throws IOException {
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(1_700_000_000_000L + ++touches * 1000));
+        return synced.push(List.of(""));
+    }
+
+    private List<TarArchive.Entry> walk() throws IOException {
+        List<TarArchive.Entry> found = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(path -> !path.equals(root)).toList()) {
+                found.add(TarArchive.entry(root.relativize(path).toString(), path,
+                    Files.readAttributes(path, BasicFileAttributes.class)));
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,120 @@
+package uk.laurencegouws.devc.bench.wire;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.docker.DockerEngineClient;
+import uk.laurencegouws.devc.docker.EngineResponse;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Packing a build context: scanning the tree, writing the tar to memory, and uploading it to the
+ * fake engine the way {@code devc build} does. {@code sources} is 1,600 small files in 40
+ * directories (headers and the staging buffer dominate); {@code assets} is eight 4 MiB files
+ * (sent with {@code transferTo}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TarPackBenchmark {
+
+    @Param({"sources", "assets"})
+    public String layout;
+
+    private final DiscardChannel sink = new DiscardChannel();
+    private Path directory;
+    private Path root;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private BuildContext context;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("devc-jmh-");
+        root = Files.createDirectories(directory.resolve("context"));
+        Random random = new Random(42);
+        if (layout.equals("sources")) {
+            for (int d = 0; d < 40; d++) {
+                Path module = Files.createDirectories(root.resolve("src").resolve("module" + d));
+                for (int f = 0; f < 40; f++) {
+                    Files.write(module.resolve("Source" + f + ".java"), Payloads.text(256 + random.nextInt(16 * 1024)));
+                }
+            }
+        } else {
+            Path assets = Files.createDirectories(root.resolve("assets"));
+            for (int f = 0; f < 8; f++) {
+                Files.write(assets.resolve("asset" + f + ".bin"), Payloads.text(4 * 1024 * 1024 + f));
+            }
+        }
+        Files.writeString(root.resolve("Dockerfile"), "FROM ubuntu:24.04\nCOPY . /workspace\n");
+
+        byte[] progress = "{\"stream\":\"Successfully built 0123456789ab\\n\"}\n".getBytes(StandardCharsets.UTF_8);
+        engine = new CannedEngine(directory.resolve("docker.sock"))
+            .answer("/build", Payloads.response("application/json", Payloads.chunked(progress, 64), true));
+        client = new DockerEngineClient(engine.socket());
+        context = scan();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public BuildContext scan() throws IOException {
+        return BuildContext.scan(root, root.resolve("Dockerfile"), List.of());
+    }
+
+    @Benchmark
+    public long inMemory() throws IOException {
+        context.writeTo(sink);
+        return sink.written();
+    }
+
+    @Benchmark
+    public byte[] socket() throws IOException {
+        DockerEngineClient.RequestBody tar = new DockerEngineClient.RequestBody() {
+            @Override
+            public long length() {
+                return context.size();
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel channel) throws IOException {
+                context.writeTo(channel);
+            }
+        };
+        try (EngineResponse response = client.execute("POST", "/build", "application/x-tar", tar)) {
+            return response.bodyAsBytes();
+        }
+    }
+}
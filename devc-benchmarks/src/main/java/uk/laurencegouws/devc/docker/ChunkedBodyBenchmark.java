@@ -0,0 +1,89 @@
+package uk.laurencegouws.devc.docker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.bench.wire.CannedEngine;
+import uk.laurencegouws.devc.bench.wire.Payloads;
+import uk.laurencegouws.devc.bench.wire.ReplayChannel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a 1 MiB {@code Transfer-Encoding: chunked} body, the framing of every streamed engine
+ * endpoint, in small chunks (a line-buffered log stream) or large ones (an archive download).
+ * The body is read into one reused buffer, as the streaming callers do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkedBodyBenchmark {
+
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    @Param({"256", "16384"})
+    public int chunkSize;
+
+    private final byte[] buffer = new byte[16 * 1024];
+    private Path directory;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private ReplayChannel replay;
+    private EngineConnection connection;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] response = Payloads.response("text/plain",
+            Payloads.chunked(Payloads.text(BODY_SIZE), chunkSize), true);
+        directory = Files.createTempDirectory("devc-jmh-");
+        engine = new CannedEngine(directory.resolve("docker.sock")).answer("/containers/devc-container/logs", response);
+        client = new DockerEngineClient(engine.socket());
+        replay = new ReplayChannel(response);
+        connection = new EngineConnection(replay);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long inMemory() throws IOException {
+        replay.rewind();
+        return drain(client.readResponse(connection, "GET").body());
+    }
+
+    @Benchmark
+    public long socket() throws IOException {
+        try (EngineResponse response = client.get("/containers/devc-container/logs")) {
+            return drain(response.body());
+        }
+    }
+
+    private long drain(InputStream body) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = body.read(buffer, 0, buffer.length)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+}
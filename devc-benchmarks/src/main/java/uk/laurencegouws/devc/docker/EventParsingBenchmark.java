@@ -0,0 +1,93 @@
+package uk.laurencegouws.devc.docker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.bench.wire.CannedEngine;
+import uk.laurencegouws.devc.bench.wire.Payloads;
+import uk.laurencegouws.devc.bench.wire.ReplayChannel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the {@code /events} feed the state cache and the warm pool follow: one event line
+ * through {@link Json}, and a burst of {@value #EVENTS} chunked events through the same
+ * {@link EventStream} the client hands out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventParsingBenchmark {
+
+    private static final int EVENTS = 256;
+
+    private final String line = Payloads.event(2).strip();
+    private Path directory;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private EngineDockerClient docker;
+    private ReplayChannel replay;
+    private EngineConnection connection;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] response = Payloads.response("application/json", Payloads.eventChunks(EVENTS), true);
+        directory = Files.createTempDirectory("devc-jmh-");
+        engine = new CannedEngine(directory.resolve("docker.sock")).answer("/events", response);
+        client = new DockerEngineClient(engine.socket());
+        docker = new EngineDockerClient(client);
+        replay = new ReplayChannel(response);
+        connection = new EngineConnection(replay);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Object parseLine() {
+        return Json.parse(line);
+    }
+
+    /**
+     * The stream is left open: closing it would park the replayed connection in the client's pool.
+     */
+    @Benchmark
+    public int inMemory() throws IOException {
+        replay.rewind();
+        return count(EngineDockerClient.eventStream(client.readResponse(connection, "GET")));
+    }
+
+    @Benchmark
+    public int socket() throws IOException {
+        try (EventStream events = docker.containerEvents(List.of("start", "die"), null)) {
+            return count(events);
+        }
+    }
+
+    private static int count(EventStream events) throws IOException {
+        int count = 0;
+        while (events.next() != null) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+package uk.laurencegouws.devc.docker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.bench.wire.CannedEngine;
+import uk.laurencegouws.devc.bench.wire.DiscardChannel;
+import uk.laurencegouws.devc.bench.wire.Payloads;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole non-TTY {@code devc exec -T} against the fake engine: creating the exec, starting it
+ * on a hijacked connection, relaying 4 MiB of output to stdout and stderr, and reading the exit
+ * code back. Stdin is empty, as with {@code < /dev/null}. Compared with
+ * {@link StreamDemuxBenchmark#socket} this adds the exec's own requests and threads, which is
+ * the cost a short command pays on top of its output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecRelayBenchmark {
+
+    private static final int STREAM_SIZE = 4 * 1024 * 1024;
+
+    @Param({"80", "32768"})
+    public int frameSize;
+
+    private final DiscardChannel out = new DiscardChannel();
+    private final DiscardChannel err = new DiscardChannel();
+    private Path directory;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] stream = Payloads.multiplexed(STREAM_SIZE, frameSize);
+        directory = Files.createTempDirectory("devc-jmh-");
+        engine = new CannedEngine(directory.resolve("docker.sock"))
+            .answer("/containers/bench/exec", json("{\"Id\":\"bench\"}"))
+            .answerAndClose("/exec/bench/start", Payloads.upgraded(stream))
+            .answer("/exec/bench/json", json("{\"ID\":\"bench\",\"Running\":false,\"ExitCode\":0}"));
+        client = new DockerEngineClient(engine.socket());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int relay() throws IOException {
+        try (EngineExec exec = EngineExec.start(client, "bench", List.of("cat", "build.log"))) {
+            return exec.relay(Channels.newChannel(InputStream.nullInputStream()), out, err);
+        }
+    }
+
+    private static byte[] json(String body) {
+        return Payloads.response("application/json", body.getBytes(StandardCharsets.UTF_8), false);
+    }
+}
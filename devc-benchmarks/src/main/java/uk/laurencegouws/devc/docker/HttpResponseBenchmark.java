@@ -0,0 +1,83 @@
+package uk.laurencegouws.devc.docker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.bench.wire.CannedEngine;
+import uk.laurencegouws.devc.bench.wire.Payloads;
+import uk.laurencegouws.devc.bench.wire.ReplayChannel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status line, header and {@code Content-Length} body parsing for a {@code GET /containers/json}
+ * answer listing one container (what {@code devc status} sees) or a full warm pool.
+ * <p>
+ * The wire benchmarks live in the client's package so they can drive its package-private
+ * connection and response classes directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpResponseBenchmark {
+
+    @Param({"1", "32"})
+    public int containers;
+
+    private Path directory;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private ReplayChannel replay;
+    private EngineConnection connection;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] response = Payloads.response("application/json", Payloads.containerList(containers), false);
+        directory = Files.createTempDirectory("devc-jmh-");
+        engine = new CannedEngine(directory.resolve("docker.sock")).answer("/containers/json", response);
+        client = new DockerEngineClient(engine.socket());
+        replay = new ReplayChannel(response);
+        connection = new EngineConnection(replay);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * The response parsed out of memory: no syscalls, only devc's own parsing.
+     */
+    @Benchmark
+    public byte[] inMemory() throws IOException {
+        replay.rewind();
+        return client.readResponse(connection, "GET").bodyAsBytes();
+    }
+
+    /**
+     * A full request over a pooled keep-alive connection to the fake engine.
+     */
+    @Benchmark
+    public byte[] socket() throws IOException {
+        try (EngineResponse response = client.get("/containers/json")) {
+            return response.bodyAsBytes();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package uk.laurencegouws.devc.docker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.laurencegouws.devc.bench.wire.CannedEngine;
+import uk.laurencegouws.devc.bench.wire.DiscardChannel;
+import uk.laurencegouws.devc.bench.wire.Payloads;
+import uk.laurencegouws.devc.bench.wire.ReplayChannel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting 4 MiB of exec output back into stdout and stderr, framed a line at a time (a
+ * process writing to a pipe) or in 32 KiB frames (bulk output such as {@code cat}). The socket
+ * variant goes through the same hijacked-connection path as {@code devc exec -T}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamDemuxBenchmark {
+
+    private static final int STREAM_SIZE = 4 * 1024 * 1024;
+
+    @Param({"80", "32768"})
+    public int frameSize;
+
+    private final StreamDemultiplexer demultiplexer = new StreamDemultiplexer();
+    private final DiscardChannel out = new DiscardChannel();
+    private final DiscardChannel err = new DiscardChannel();
+    private Path directory;
+    private CannedEngine engine;
+    private DockerEngineClient client;
+    private ReplayChannel replay;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] stream = Payloads.multiplexed(STREAM_SIZE, frameSize);
+        directory = Files.createTempDirectory("devc-jmh-");
+        engine = new CannedEngine(directory.resolve("docker.sock"))
+            .answerAndClose("/exec/bench/start", Payloads.upgraded(stream));
+        client = new DockerEngineClient(engine.socket());
+        replay = new ReplayChannel(stream);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        engine.close();
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long inMemory() throws IOException {
+        return demultiplexer.run(replay.rewind(), out, err);
+    }
+
+    @Benchmark
+    public long socket() throws IOException {
+        try (EngineConnection connection = client.upgrade("/exec/bench/start", Map.of("Detach", false, "Tty", false))) {
+            return demultiplexer.run(connection.rawInput(), out, err);
+        }
+    }
+}
@@ -1,3 +1,15 @@
 #!/bin/bash
 set -e
-apt-get update && apt-get install -y     sudo     curl     git     vim     tmux     build-essential     clang     libssl-dev     pkg-config     && apt-get clean
+# /var/cache/apt and /var/lib/apt are BuildKit cache mounts: no apt-get clean, so the next
+# build finds the packages it already downloaded
+apt-get update
+apt-get install -y \
+    sudo \
+    curl \
+    git \
+    vim \
+    tmux \
+    build-essential \
+    clang \
+    libssl-dev \
+    pkg-config
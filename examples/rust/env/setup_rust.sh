@@ -0,0 +1,7 @@
+#!/bin/bash
+set -e
+
+# Runs as the developer user. ~/.cargo/registry and ~/.cargo/git are BuildKit cache mounts
+curl --proto "=https" --tlsv1.2 -sSf https://sh.rustup.rs | sh -s -- -y
+
+echo "Rust installation complete for the developer user."
@@ -1,8 +1,10 @@
 #!/bin/bash
 set -e
 
-# Install basic tools and dependencies
-apt-get update && apt-get install -y --fix-missing \
+# Install basic tools and dependencies. /var/cache/apt and /var/lib/apt are BuildKit cache
+# mounts: no apt-get clean, so the next build finds the packages it already downloaded
+apt-get update
+apt-get install -y --fix-missing \
     sudo \
     curl \
     git \
@@ -11,14 +13,6 @@ apt-get update && apt-get install -y --fix-missing \
     build-essential \
     clang \
     libssl-dev \
-    pkg-config \
-    && apt-get clean
-
-# Switch to the developer user and install Rust
-sudo -u developer bash -c 'curl --proto "=https" --tlsv1.2 -sSf https://sh.rustup.rs | sh -s -- -y'
-
-# Add Rust to PATH for the developer user
-echo 'export PATH="/home/developer/.cargo/bin:$PATH"' >> /home/developer/.bashrc
-
-echo "Rust installation complete for the developer user."
+    pkg-config
 
+echo "System packages installed."
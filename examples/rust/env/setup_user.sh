@@ -9,7 +9,8 @@ if ! id "$USERNAME" &>/dev/null; then
     useradd -m -s /bin/bash "$USERNAME"
 fi
 
-mkdir -p /home/$USERNAME/workspace
+# ~/.cargo exists before the build mounts caches inside it, so it belongs to the user
+mkdir -p /home/$USERNAME/workspace /home/$USERNAME/.cargo
 chown -R "$USERNAME:$USERNAME" /home/$USERNAME
 
 echo "Service account setup complete: $USERNAME"
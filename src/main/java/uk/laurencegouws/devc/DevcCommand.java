@@ -3,17 +3,25 @@ package uk.laurencegouws.devc;
 import io.quarkus.picocli.runtime.annotations.TopCommand;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
-import picocli.CommandLine.ExecutionException;
 import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ScopeType;
 import uk.laurencegouws.devc.commands.CdCommand;
 import uk.laurencegouws.devc.commands.CleanupCommand;
+import uk.laurencegouws.devc.commands.DaemonCommand;
 import uk.laurencegouws.devc.commands.ExecCommand;
 import uk.laurencegouws.devc.commands.InitCommand;
+import uk.laurencegouws.devc.commands.LogsCommand;
+import uk.laurencegouws.devc.commands.PoolCommand;
 import uk.laurencegouws.devc.commands.RestartCommand;
+import uk.laurencegouws.devc.commands.SnapshotCommand;
 import uk.laurencegouws.devc.commands.StartCommand;
 import uk.laurencegouws.devc.commands.StatusCommand;
 import uk.laurencegouws.devc.commands.StopCommand;
+import uk.laurencegouws.devc.commands.SyncCommand;
 import uk.laurencegouws.devc.commands.CompletionCommand;
+import uk.laurencegouws.devc.commands.CpCommand;
+import uk.laurencegouws.devc.trace.Trace;
 
 @TopCommand
 @Command(
@@ -29,32 +37,65 @@ import uk.laurencegouws.devc.commands.CompletionCommand;
             RestartCommand.class,
             StatusCommand.class,
             ExecCommand.class,
+            LogsCommand.class,
+            CpCommand.class,
             CleanupCommand.class,
-            CdCommand.class
+            PoolCommand.class,
+            SyncCommand.class,
+            SnapshotCommand.class,
+            CdCommand.class,
+            DaemonCommand.class
         }
 )
 public class DevcCommand implements Runnable {
 
+    // Read from the raw arguments by Trace before parsing starts; declared so every
+    // subcommand accepts it and lists it in its help
+    @Option(
+        names = {Trace.OPTION},
+        scope = ScopeType.INHERIT,
+        description = "Write a Chrome trace-event file of this run to the working directory (or to $DEVC_TRACE)."
+    )
+    boolean trace;
+
     @Override
     public void run() {
         System.out.println("devc CLI. Use --help to view available commands.");
     }
 
     public static void main(String[] args) {
-        CommandLine commandLine = new CommandLine(new DevcCommand());
-        // Enable ANSI colors for help
-        commandLine.setColorScheme(CommandLine.Help.defaultColorScheme(Ansi.AUTO));
-        int exitCode;
+        DevcMain.main(args);
+    }
 
-        try {
-            exitCode = commandLine.execute(args);
-        } catch (ExecutionException ex) {
-            System.err.println(Ansi.AUTO.string("@|bold,red Error:|@ " + ex.getMessage()));
-            ex.printStackTrace();
-            exitCode = 1;
-        }
+    /**
+     * Builds the command line for one execution, with errors reported in the devc style.
+     */
+    public static CommandLine newCommandLine(CommandLine.IFactory factory, Ansi ansi) {
+        Trace trace = Trace.current();
+        Trace.Span setup = trace.span("picocli-setup", "startup");
+        CommandLine commandLine = new CommandLine(DevcCommand.class, factory);
+        // Enable ANSI colors for help
+        commandLine.setColorScheme(CommandLine.Help.defaultColorScheme(ansi));
+        commandLine.setExecutionExceptionHandler((ex, cmd, parseResult) -> {
+            cmd.getErr().println(ansi.string("@|bold,red Error:|@ " + ex.getMessage()));
+            ex.printStackTrace(cmd.getErr());
+            return 1;
+        });
+        setup.close();
 
-        System.exit(exitCode);
+        // Parsing happens inside execute(), which calls the strategy once it is done
+        Trace.Span parse = trace.span("parse", "startup");
+        commandLine.setExecutionStrategy(parseResult -> {
+            parse.close();
+            CommandLine.ParseResult leaf = parseResult;
+            while (leaf.subcommand() != null) {
+                leaf = leaf.subcommand();
+            }
+            trace.command(leaf.commandSpec().name());
+            try (Trace.Span command = trace.span(leaf.commandSpec().name(), "command")) {
+                return new CommandLine.RunLast().execute(parseResult);
+            }
+        });
+        return commandLine;
     }
 }
-
@@ -0,0 +1,49 @@
+package uk.laurencegouws.devc;
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.QuarkusApplication;
+import io.quarkus.runtime.annotations.QuarkusMain;
+import jakarta.inject.Inject;
+import picocli.CommandLine;
+import picocli.CommandLine.Help.Ansi;
+import uk.laurencegouws.devc.completion.Completer;
+import uk.laurencegouws.devc.daemon.DaemonClient;
+import uk.laurencegouws.devc.trace.Trace;
+
+import java.util.Map;
+
+@QuarkusMain
+public class DevcMain implements QuarkusApplication {
+
+    private static long bootStarted = System.nanoTime();
+
+    @Inject
+    CommandLine.IFactory factory;
+
+    public static void main(String... args) {
+        // Tab completion answers from local caches and must not wait for anything else
+        if (args.length > 0 && args[0].equals(Completer.ENTRY)) {
+            System.exit(Completer.run(args, System.out));
+        }
+        Trace trace = Trace.startProcess(args);
+        // Hand the command to a running daemon before paying for Quarkus startup
+        int exitCode;
+        try (Trace.Span forward = trace.span("daemon-forward", "startup")) {
+            exitCode = DaemonClient.forward(args);
+        }
+        if (exitCode != DaemonClient.NOT_FORWARDED) {
+            System.exit(exitCode);
+        }
+        bootStarted = System.nanoTime();
+        Quarkus.run(DevcMain.class, args);
+    }
+
+    @Override
+    public int run(String... args) {
+        Trace trace = Trace.current();
+        trace.complete("quarkus-boot", "startup", bootStarted, System.nanoTime(), Map.of());
+        int exitCode = DevcCommand.newCommandLine(factory, Ansi.AUTO).execute(args);
+        trace.finish();
+        return exitCode;
+    }
+}
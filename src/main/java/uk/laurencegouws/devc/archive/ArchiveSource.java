@@ -0,0 +1,17 @@
+package uk.laurencegouws.devc.archive;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A tar stream whose length is known up front, so it can be uploaded with a {@code Content-Length}.
+ */
+public interface ArchiveSource {
+
+    /**
+     * Exact number of bytes {@link #writeTo} produces.
+     */
+    long size();
+
+    void writeTo(WritableByteChannel target) throws IOException;
+}
@@ -0,0 +1,312 @@
+package uk.laurencegouws.devc.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+
+/**
+ * A tar archive of local files whose exact size is known before anything is written, so it can
+ * be sent with a {@code Content-Length}. {@link #writeTo} batches headers and small files through
+ * one direct buffer and moves larger files with {@link FileChannel#transferTo}.
+ */
+public final class TarArchive implements ArchiveSource {
+
+    private static final int BLOCK = 512;
+    /** Files below this size are copied through the staging buffer rather than transferred. */
+    private static final int SMALL_FILE = 32 * 1024;
+
+    /**
+     * One archive member: {@code type} is {@code '0'} (file), {@code '5'} (directory) or
+     * {@code '2'} (symlink), and {@code name} is its path inside the archive.
+     */
+    public record Entry(String name, Path path, byte type, long size, int mode, long modified, String linkTarget) {
+
+        public boolean isFile() {
+            return type == '0';
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long size;
+    private final long contentBytes;
+    private final int fileCount;
+
+    public TarArchive(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+        long total = 0;
+        long content = 0;
+        int files = 0;
+        for (Entry entry : this.entries) {
+            total += headerSize(entry) + padded(entry.size());
+            content += entry.size();
+            if (entry.isFile()) {
+                files++;
+            }
+        }
+        this.size = total + 2 * BLOCK;
+        this.contentBytes = content;
+        this.fileCount = files;
+    }
+
+    /**
+     * Describes {@code path} as a member called {@code name}; directories get a trailing slash.
+     */
+    public static Entry entry(String name, Path path, BasicFileAttributes attributes) throws IOException {
+        int mode = mode(path, attributes);
+        long modified = attributes.lastModifiedTime().toMillis() / 1000;
+        if (attributes.isSymbolicLink()) {
+            return new Entry(name, path, (byte) '2', 0, mode, modified, Files.readSymbolicLink(path).toString());
+        }
+        if (attributes.isDirectory()) {
+            return new Entry(name.endsWith("/") ? name : name + "/", path, (byte) '5', 0, mode, modified, "");
+        }
+        return new Entry(name, path, (byte) '0', attributes.size(), mode, modified, "");
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    public long contentBytes() {
+        return contentBytes;
+    }
+
+    public int fileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Streams the archive. Files that change size after they were described are truncated or
+     * zero-padded to the described size so the stream always matches {@link #size()}.
+     */
+    @Override
+    public void writeTo(WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(128 * 1024);
+        for (Entry entry : entries) {
+            ensureCapacity(buffer, target, headerSize(entry));
+            putHeader(buffer, entry);
+            if (!entry.isFile() || entry.size() == 0) {
+                continue;
+            }
+            try (FileChannel file = FileChannel.open(entry.path(), StandardOpenOption.READ)) {
+                long written;
+                if (entry.size() < SMALL_FILE) {
+                    ensureCapacity(buffer, target, (int) padded(entry.size()));
+                    written = readInto(buffer, file, entry.size());
+                } else {
+                    flush(buffer, target);
+                    written = transfer(file, target, entry.size());
+                    if (written < entry.size()) {
+                        written += copy(buffer, file, target, entry.size() - written);
+                    }
+                }
+                putZeros(buffer, target, entry.size() - written);
+            }
+            putZeros(buffer, target, padded(entry.size()) - entry.size());
+        }
+        putZeros(buffer, target, 2 * BLOCK);
+        flush(buffer, target);
+    }
+
+    private static long readInto(ByteBuffer buffer, FileChannel file, long size) throws IOException {
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + (int) size);
+        long read = 0;
+        int n;
+        while (buffer.hasRemaining() && (n = file.read(buffer)) > 0) {
+            read += n;
+        }
+        buffer.limit(limit);
+        return read;
+    }
+
+    private static long copy(ByteBuffer buffer, FileChannel file, WritableByteChannel target, long size) throws IOException {
+        long copied = 0;
+        while (copied < size) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, target);
+            }
+            int limit = buffer.limit();
+            buffer.limit((int) Math.min(limit, buffer.position() + (size - copied)));
+            int n = file.read(buffer);
+            buffer.limit(limit);
+            if (n <= 0) {
+                // File shrank since it was described
+                break;
+            }
+            copied += n;
+        }
+        return copied;
+    }
+
+    /**
+     * Sends as much as {@code transferTo} manages and leaves the file positioned after it. It
+     * returns 0 both at end of file and when the socket would block: a socket a virtual thread
+     * has used stays non-blocking underneath, even for platform threads. The caller copies
+     * whatever is left through the buffer, which waits for the socket properly.
+     */
+    private static long transfer(FileChannel file, WritableByteChannel target, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long n = file.transferTo(position, size - position, target);
+            if (n <= 0) {
+                break;
+            }
+            position += n;
+        }
+        file.position(position);
+        return position;
+    }
+
+    private static void putZeros(ByteBuffer buffer, WritableByteChannel target, long count) throws IOException {
+        while (count > 0) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, target);
+            }
+            int n = (int) Math.min(count, buffer.remaining());
+            for (int i = 0; i < n; i++) {
+                buffer.put((byte) 0);
+            }
+            count -= n;
+        }
+    }
+
+    private static void ensureCapacity(ByteBuffer buffer, WritableByteChannel target, int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            flush(buffer, target);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // --- tar format ---
+
+    private static int mode(Path path, BasicFileAttributes attributes) {
+        try {
+            int mode = 0;
+            for (PosixFilePermission permission : Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS)) {
+                mode |= 1 << (8 - permission.ordinal());
+            }
+            return mode;
+        } catch (UnsupportedOperationException | IOException e) {
+            return attributes.isDirectory() ? 0755 : 0644;
+        }
+    }
+
+    /**
+     * PAX extended header records for what ustar can't hold (long names, sizes beyond 8 GiB),
+     * empty when a plain header suffices.
+     */
+    private static byte[] paxRecords(Entry entry) {
+        StringBuilder records = new StringBuilder();
+        if (entry.name().getBytes(StandardCharsets.UTF_8).length > 100) {
+            records.append(paxRecord("path", entry.name()));
+        }
+        if (entry.linkTarget().getBytes(StandardCharsets.UTF_8).length > 100) {
+            records.append(paxRecord("linkpath", entry.linkTarget()));
+        }
+        if (entry.size() > 077777777777L) {
+            records.append(paxRecord("size", Long.toString(entry.size())));
+        }
+        return records.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String paxRecord(String key, String value) {
+        // "<length> <key>=<value>\n" where the length includes its own digits
+        int body = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int length = body + Integer.toString(body).length();
+        if (Integer.toString(length).length() != Integer.toString(body).length()) {
+            length++;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+
+    private static int headerSize(Entry entry) {
+        byte[] pax = paxRecords(entry);
+        return pax.length == 0 ? BLOCK : BLOCK + (int) padded(pax.length) + BLOCK;
+    }
+
+    private static void putHeader(ByteBuffer buffer, Entry entry) {
+        byte[] pax = paxRecords(entry);
+        if (pax.length > 0) {
+            putBlock(buffer, "PaxHeaders/" + truncate(entry.name(), 80), (byte) 'x', pax.length, 0644,
+                entry.modified(), "");
+            buffer.put(pax);
+            for (long i = pax.length; i < padded(pax.length); i++) {
+                buffer.put((byte) 0);
+            }
+        }
+        putBlock(buffer, truncate(entry.name(), 100), entry.type(), Math.min(entry.size(), 077777777777L),
+            entry.mode(), entry.modified(), truncate(entry.linkTarget(), 100));
+    }
+
+    private static void putBlock(ByteBuffer buffer, String name, byte type, long size, int mode, long modified,
+                                 String linkTarget) {
+        byte[] header = new byte[BLOCK];
+        putString(header, 0, 100, name);
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modified);
+        header[156] = type;
+        putString(header, 157, 100, linkTarget);
+        putString(header, 257, 6, "ustar");
+        header[263] = '0';
+        header[264] = '0';
+        // Checksum is computed with its own field set to spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        buffer.put(header);
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        String padded = "0".repeat(Math.max(0, length - 1 - octal.length())) + octal;
+        putString(header, offset, length - 1, padded);
+    }
+
+    private static String truncate(String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= maxBytes ? value : new String(bytes, 0, maxBytes, StandardCharsets.UTF_8);
+    }
+
+    static long padded(long size) {
+        return (size + BLOCK - 1) / BLOCK * BLOCK;
+    }
+}
@@ -0,0 +1,336 @@
+package uk.laurencegouws.devc.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts a tar stream, as returned by the engine's archive endpoint, below a local directory.
+ * Understands ustar, PAX extended headers and GNU long names, which covers what Go's
+ * {@code archive/tar} writes. Members that would land outside the target directory are rejected,
+ * whether by name or through a symlink below it, including one extracted from the same archive.
+ */
+public final class TarReader {
+
+    private static final int BLOCK = 512;
+
+    /**
+     * What an extraction wrote; {@code skipped} counts files left alone by {@link #skipUnchanged()}.
+     */
+    public record Stats(int files, long bytes, int skipped) {
+    }
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK];
+    private final byte[] buffer = new byte[256 * 1024];
+    private String renameFrom;
+    private String renameTo;
+    private boolean skipUnchanged;
+
+    public TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Writes the member {@code from}, and everything below it, under the name {@code to} instead.
+     */
+    public TarReader renaming(String from, String to) {
+        this.renameFrom = from;
+        this.renameTo = to;
+        return this;
+    }
+
+    /**
+     * Leaves regular files alone when the local copy already has the member's size and
+     * modification time, so an interrupted copy can be resumed without rewriting what arrived.
+     */
+    public TarReader skipUnchanged() {
+        this.skipUnchanged = true;
+        return this;
+    }
+
+    public Stats extractTo(Path target) throws IOException {
+        Path root = target.toAbsolutePath().normalize();
+        int files = 0;
+        long bytes = 0;
+        int skipped = 0;
+        String longName = null;
+        String longLink = null;
+        long paxSize = -1;
+        while (readBlock()) {
+            if (isZeroBlock()) {
+                break;
+            }
+            byte type = header[156];
+            long size = paxSize >= 0 ? paxSize : parseOctal(124, 12);
+            String name = longName != null ? longName : name();
+            String link = longLink != null ? longLink : string(157, 100);
+            switch (type) {
+                case 'x' -> {
+                    Pax pax = Pax.parse(readContent(size));
+                    longName = pax.path() != null ? pax.path() : longName;
+                    longLink = pax.linkPath() != null ? pax.linkPath() : longLink;
+                    paxSize = pax.size();
+                    continue;
+                }
+                case 'L' -> {
+                    longName = trimNul(new String(readContent(size), StandardCharsets.UTF_8));
+                    continue;
+                }
+                case 'K' -> {
+                    longLink = trimNul(new String(readContent(size), StandardCharsets.UTF_8));
+                    continue;
+                }
+                case 'g' -> {
+                    skip(TarArchive.padded(size));
+                    continue;
+                }
+                default -> {
+                    // A regular member; handled below
+                }
+            }
+            longName = null;
+            longLink = null;
+            paxSize = -1;
+
+            Path path = resolve(root, renamed(name));
+            int mode = (int) parseOctal(100, 8);
+            FileTime modified = FileTime.fromMillis(parseOctal(136, 12) * 1000);
+            switch (type) {
+                case '5' -> {
+                    if (Files.isSymbolicLink(path)) {
+                        Files.delete(path);
+                    }
+                    Files.createDirectories(path);
+                    // Keep directories writable so their members can still be extracted
+                    setMode(path, mode | 0200);
+                    skip(TarArchive.padded(size));
+                }
+                case '2' -> {
+                    Files.createDirectories(path.getParent());
+                    Files.deleteIfExists(path);
+                    Files.createSymbolicLink(path, Path.of(link));
+                    skip(TarArchive.padded(size));
+                }
+                case '1' -> {
+                    Files.createDirectories(path.getParent());
+                    Files.deleteIfExists(path);
+                    Files.createLink(path, resolve(root, link));
+                    skip(TarArchive.padded(size));
+                }
+                case '0', 0, '7' -> {
+                    if (skipUnchanged && isUnchanged(path, size, modified)) {
+                        skip(TarArchive.padded(size));
+                        skipped++;
+                        continue;
+                    }
+                    Files.createDirectories(path.getParent());
+                    if (Files.isSymbolicLink(path)) {
+                        Files.delete(path);
+                    }
+                    try (OutputStream out = Files.newOutputStream(path)) {
+                        copy(size, out);
+                    }
+                    skip(TarArchive.padded(size) - size);
+                    setMode(path, mode);
+                    Files.setLastModifiedTime(path, modified);
+                    files++;
+                    bytes += size;
+                }
+                default -> skip(TarArchive.padded(size));
+            }
+        }
+        return new Stats(files, bytes, skipped);
+    }
+
+    private String renamed(String name) {
+        if (renameFrom == null) {
+            return name;
+        }
+        String trimmed = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        if (trimmed.equals(renameFrom)) {
+            return renameTo;
+        }
+        return name.startsWith(renameFrom + "/") ? renameTo + name.substring(renameFrom.length()) : name;
+    }
+
+    private static boolean isUnchanged(Path path, long size, FileTime modified) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attributes.isRegularFile() && attributes.size() == size
+                && attributes.lastModifiedTime().to(TimeUnit.SECONDS) == modified.to(TimeUnit.SECONDS);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Where member {@code name} goes below {@code root}. Checking the name alone isn't enough: a
+     * symlink member {@code dir -> /elsewhere} followed by {@code dir/file} would write the file
+     * outside, so no directory between the root and the member may be a symlink.
+     */
+    private static Path resolve(Path root, String name) throws IOException {
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root)) {
+            throw new IOException("Archive member '" + name + "' points outside " + root);
+        }
+        Path parent = path.getParent();
+        if (parent != null && !parent.equals(root) && parent.startsWith(root)) {
+            Path current = root;
+            for (Path part : root.relativize(parent)) {
+                current = current.resolve(part);
+                if (Files.isSymbolicLink(current)) {
+                    throw new IOException("Archive member '" + name + "' points outside " + root
+                        + " through the symlink " + root.relativize(current));
+                }
+            }
+        }
+        return path;
+    }
+
+    private String name() {
+        String name = string(0, 100);
+        String prefix = string(345, 155);
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /**
+     * Overrides from a PAX extended header; null (or -1 for the size) where the header has none.
+     */
+    private record Pax(String path, String linkPath, long size) {
+
+        static Pax parse(byte[] records) {
+            String path = null;
+            String linkPath = null;
+            long size = -1;
+            int position = 0;
+            while (position < records.length) {
+                // Each record is "<length> <key>=<value>\n", the length counting the whole record in bytes
+                int space = position;
+                while (space < records.length && records[space] != ' ') {
+                    space++;
+                }
+                if (space == records.length) {
+                    break;
+                }
+                int length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+                String record = new String(records, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+                int equals = record.indexOf('=');
+                String key = record.substring(0, equals);
+                String value = record.substring(equals + 1);
+                switch (key) {
+                    case "path" -> path = value;
+                    case "linkpath" -> linkPath = value;
+                    case "size" -> size = Long.parseLong(value);
+                    default -> {
+                        // Times, owners and xattrs are not restored
+                    }
+                }
+                position += length;
+            }
+            return new Pax(path, linkPath, size);
+        }
+    }
+
+    private static void setMode(Path path, int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] all = PosixFilePermission.values();
+        for (int i = 0; i < all.length; i++) {
+            if ((mode & (1 << (8 - i))) != 0) {
+                permissions.add(all[i]);
+            }
+        }
+        PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view == null) {
+            return;
+        }
+        try {
+            view.setPermissions(permissions);
+        } catch (IOException ignored) {
+            // Not a POSIX file system; keep the default permissions
+        }
+    }
+
+    private boolean readBlock() throws IOException {
+        int read = in.readNBytes(header, 0, BLOCK);
+        if (read == 0) {
+            return false;
+        }
+        if (read < BLOCK) {
+            throw new EOFException("Truncated tar header");
+        }
+        return true;
+    }
+
+    private boolean isZeroBlock() {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readContent(long size) throws IOException {
+        byte[] content = in.readNBytes((int) size);
+        if (content.length < size) {
+            throw new EOFException("Truncated tar member");
+        }
+        skip(TarArchive.padded(size) - size);
+        return content;
+    }
+
+    private void copy(long size, OutputStream out) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Truncated tar member");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private void skip(long count) throws IOException {
+        in.skipNBytes(count);
+    }
+
+    private String string(int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private long parseOctal(int offset, int length) {
+        // Base-256 for values too large for octal
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        String text = string(offset, length).trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text, 8);
+    }
+
+    private static String trimNul(String value) {
+        int nul = value.indexOf('\0');
+        return nul >= 0 ? value.substring(0, nul) : value;
+    }
+}
@@ -0,0 +1,160 @@
+package uk.laurencegouws.devc.build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The external images a Dockerfile builds on: every {@code FROM} that isn't an earlier stage or
+ * {@code scratch}, plus images named by {@code COPY --from} and {@code RUN --mount=...,from=}.
+ * Global {@code ARG}s declared before the first {@code FROM} are substituted with their
+ * defaults, since devc passes no build arguments.
+ */
+public final class BaseImages {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\$(?:\\{([A-Za-z_][A-Za-z0-9_]*)(?::?-([^}]*))?}|([A-Za-z_][A-Za-z0-9_]*))");
+
+    /**
+     * One image reference, split for the pull API.
+     *
+     * @param repository e.g. {@code ubuntu} or {@code ghcr.io/acme/tools}
+     * @param reference  a tag, or a {@code sha256:} digest for pinned images
+     * @param platform   the stage's {@code --platform}, or null for the engine's default
+     * @param line       the Dockerfile line that first mentions it
+     */
+    public record Image(String repository, String reference, String platform, int line) {
+
+        public boolean isPinned() {
+            return reference.startsWith("sha256:");
+        }
+
+        @Override
+        public String toString() {
+            return repository + (isPinned() ? "@" : ":") + reference;
+        }
+    }
+
+    /**
+     * The images found, in order of first use, and any references left with unresolved variables.
+     */
+    public record Analysis(List<Image> images, List<String> unresolved) {
+    }
+
+    private BaseImages() {
+    }
+
+    public static Analysis of(Dockerfile dockerfile) {
+        Map<String, String> globalArgs = new HashMap<>();
+        List<String> stages = new ArrayList<>();
+        Map<String, Image> images = new LinkedHashMap<>();
+        List<String> unresolved = new ArrayList<>();
+        String platform = null;
+        boolean seenFrom = false;
+
+        for (Dockerfile.Instruction instruction : dockerfile.instructions()) {
+            if (instruction.is("ARG") && !seenFrom) {
+                for (String operand : instruction.operands()) {
+                    int equals = operand.indexOf('=');
+                    if (equals > 0) {
+                        globalArgs.put(operand.substring(0, equals), operand.substring(equals + 1));
+                    }
+                }
+            } else if (instruction.is("FROM") && !instruction.operands().isEmpty()) {
+                seenFrom = true;
+                String stagePlatform = instruction.flag("platform");
+                platform = stagePlatform == null ? null : substitute(stagePlatform, globalArgs);
+                if (platform != null && platform.contains("$")) {
+                    platform = null;
+                }
+                List<String> operands = instruction.operands();
+                add(substitute(operands.get(0), globalArgs), platform, instruction.line(), stages, images, unresolved);
+                if (operands.size() >= 3 && operands.get(1).equalsIgnoreCase("AS")) {
+                    stages.add(operands.get(2).toLowerCase(Locale.ROOT));
+                } else {
+                    stages.add(null);
+                }
+            } else if (instruction.is("COPY") || instruction.is("ADD")) {
+                String from = instruction.flag("from");
+                if (from != null) {
+                    add(substitute(from, globalArgs), platform, instruction.line(), stages, images, unresolved);
+                }
+            } else if (instruction.is("RUN")) {
+                for (Map<String, String> mount : instruction.mounts()) {
+                    String from = mount.get("from");
+                    if (from != null) {
+                        add(substitute(from, globalArgs), platform, instruction.line(), stages, images, unresolved);
+                    }
+                }
+            }
+        }
+        return new Analysis(List.copyOf(images.values()), List.copyOf(unresolved));
+    }
+
+    /**
+     * Splits {@code name[:tag][@digest]}, defaulting the tag to {@code latest}. A colon only
+     * starts a tag after the last slash, so registry ports are left alone.
+     */
+    public static Image parse(String reference, String platform, int line) {
+        String name = reference;
+        String digest = null;
+        int at = name.indexOf('@');
+        if (at >= 0) {
+            digest = name.substring(at + 1);
+            name = name.substring(0, at);
+        }
+        String tag = "latest";
+        int colon = name.lastIndexOf(':');
+        if (colon > name.lastIndexOf('/')) {
+            tag = name.substring(colon + 1);
+            name = name.substring(0, colon);
+        }
+        return new Image(name, digest != null ? digest : tag, platform, line);
+    }
+
+    private static void add(String reference, String platform, int line, List<String> stages,
+                            Map<String, Image> images, List<String> unresolved) {
+        String lower = reference.toLowerCase(Locale.ROOT);
+        if (lower.equals("scratch") || stages.contains(lower) || isStageIndex(reference, stages.size())) {
+            return;
+        }
+        if (reference.contains("$")) {
+            if (!unresolved.contains(reference)) {
+                unresolved.add(reference);
+            }
+            return;
+        }
+        Image image = parse(reference, platform, line);
+        images.putIfAbsent(image + "|" + platform, image);
+    }
+
+    private static boolean isStageIndex(String reference, int stageCount) {
+        if (reference.isEmpty() || !reference.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        return reference.length() < 4 && Integer.parseInt(reference) < stageCount;
+    }
+
+    /**
+     * Replaces {@code $NAME}, {@code ${NAME}} and {@code ${NAME:-default}} using the global ARG
+     * defaults; variables without a value are left in place.
+     */
+    static String substitute(String text, Map<String, String> args) {
+        Matcher matcher = VARIABLE.matcher(text);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(3);
+            String value = args.get(name);
+            if ((value == null || value.isEmpty()) && matcher.group(2) != null) {
+                value = matcher.group(2);
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+}
@@ -0,0 +1,178 @@
+package uk.laurencegouws.devc.build;
+
+import uk.laurencegouws.devc.archive.TarArchive;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A build context that devc packs itself instead of letting the builder upload the whole
+ * working directory. {@link #scan} applies {@code .dockerignore} and any extra excluded
+ * directories up front, so the exact tar size is known before anything is sent, and
+ * {@link #writeTo} then streams it as a {@link TarArchive}.
+ */
+public final class BuildContext {
+
+    private final Path root;
+    private final String dockerfileName;
+    private final TarArchive archive;
+    private final long excludedBytes;
+    private final int excludedFiles;
+    private final List<String> skippedDirectories;
+    private final long scanNanos;
+    private volatile long streamNanos;
+
+    private BuildContext(Path root, String dockerfileName, TarArchive archive, long excludedBytes,
+                         int excludedFiles, List<String> skippedDirectories, long scanNanos) {
+        this.root = root;
+        this.dockerfileName = dockerfileName;
+        this.archive = archive;
+        this.excludedBytes = excludedBytes;
+        this.excludedFiles = excludedFiles;
+        this.skippedDirectories = skippedDirectories;
+        this.scanNanos = scanNanos;
+    }
+
+    /**
+     * Collects the context below {@code root}. Paths matched by {@code .dockerignore} and
+     * everything under {@code excludedDirectories} are left out; the Dockerfile and
+     * {@code .dockerignore} themselves are always sent, as the docker CLI does.
+     */
+    public static BuildContext scan(Path root, Path dockerfile, Collection<Path> excludedDirectories) throws IOException {
+        long started = System.nanoTime();
+        Path contextRoot = root.toAbsolutePath().normalize();
+        Path dockerfilePath = dockerfile.toAbsolutePath().normalize();
+        DockerIgnore ignore = DockerIgnore.load(contextRoot);
+        boolean canPrune = !ignore.hasExceptions();
+        Set<Path> forced = Set.copyOf(excludedDirectories.stream().map(p -> p.toAbsolutePath().normalize()).toList());
+
+        List<TarArchive.Entry> entries = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        long[] excluded = new long[2];
+        Files.walkFileTree(contextRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (dir.equals(contextRoot)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = relative(contextRoot, dir);
+                if (forced.contains(dir) || (canPrune && ignore.isExcluded(name))) {
+                    // Not walked at all, so its size stays unknown; these are often the largest trees
+                    skipped.add(name);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!ignore.isExcluded(name)) {
+                    entries.add(TarArchive.entry(name + "/", dir, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String name = relative(contextRoot, file);
+                boolean always = file.equals(dockerfilePath) || name.equals(".dockerignore");
+                if (!always && ignore.isExcluded(name)) {
+                    excluded[0] += attributes.size();
+                    excluded[1]++;
+                } else if (attributes.isRegularFile() || attributes.isSymbolicLink()) {
+                    entries.add(TarArchive.entry(name, file, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                throw new IOException("Cannot read " + file + " for the build context: " + e.getMessage(), e);
+            }
+        });
+
+        String dockerfileName;
+        if (dockerfilePath.startsWith(contextRoot)) {
+            dockerfileName = relative(contextRoot, dockerfilePath);
+        } else {
+            // A Dockerfile outside the context travels inside the tar under a private name
+            dockerfileName = ".devc.Dockerfile";
+            entries.add(TarArchive.entry(dockerfileName, dockerfilePath,
+                Files.readAttributes(dockerfilePath, BasicFileAttributes.class)));
+        }
+        return new BuildContext(contextRoot, dockerfileName, new TarArchive(entries), excluded[0], (int) excluded[1],
+            List.copyOf(skipped), System.nanoTime() - started);
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * Path of the Dockerfile inside the context tar.
+     */
+    public String dockerfileName() {
+        return dockerfileName;
+    }
+
+    /**
+     * Exact number of bytes {@link #writeTo} produces.
+     */
+    public long size() {
+        return archive.size();
+    }
+
+    public long contentBytes() {
+        return archive.contentBytes();
+    }
+
+    public int fileCount() {
+        return archive.fileCount();
+    }
+
+    /**
+     * Bytes of the excluded files that were visited; {@link #skippedDirectories} are not counted.
+     */
+    public long excludedBytes() {
+        return excludedBytes;
+    }
+
+    public int excludedFiles() {
+        return excludedFiles;
+    }
+
+    /**
+     * Context-relative directories left out whole without being walked.
+     */
+    public List<String> skippedDirectories() {
+        return skippedDirectories;
+    }
+
+    public long scanNanos() {
+        return scanNanos;
+    }
+
+    /**
+     * Time the last {@link #writeTo} took, which includes waiting for the receiver.
+     */
+    public long streamNanos() {
+        return streamNanos;
+    }
+
+    /**
+     * Streams the context as a tar archive; see {@link TarArchive#writeTo}.
+     */
+    public void writeTo(WritableByteChannel target) throws IOException {
+        long started = System.nanoTime();
+        archive.writeTo(target);
+        streamNanos = System.nanoTime() - started;
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+}
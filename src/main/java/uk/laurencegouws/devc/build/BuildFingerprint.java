@@ -0,0 +1,163 @@
+package uk.laurencegouws.devc.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Content fingerprint of everything a build reads: the Dockerfile text plus every file its
+ * {@code COPY}/{@code ADD} instructions and {@code RUN --mount=type=bind} mounts pull from the
+ * context (path, exec bit and SHA-256).
+ * Stored as an image label so an unchanged environment can skip the build entirely.
+ */
+public final class BuildFingerprint {
+
+    /** Image label holding the fingerprint of the inputs the image was built from. */
+    public static final String LABEL = "devc.fingerprint";
+
+    private final String value;
+    private final int fileCount;
+
+    private BuildFingerprint(String value, int fileCount) {
+        this.value = value;
+        this.fileCount = fileCount;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * Number of context files that went into the fingerprint.
+     */
+    public int fileCount() {
+        return fileCount;
+    }
+
+    public boolean matches(String label) {
+        return value.equals(label);
+    }
+
+    public static BuildFingerprint compute(Dockerfile dockerfile, Path context, FileHashCache cache) throws IOException {
+        Path root = context.toAbsolutePath().normalize();
+        DockerIgnore ignore = DockerIgnore.load(root);
+        Set<String> remoteSources = new TreeSet<>();
+        Set<Path> files = new TreeSet<>();
+        for (Dockerfile.Instruction instruction : dockerfile.instructions()) {
+            if (instruction.is("RUN")) {
+                for (Map<String, String> mount : instruction.mounts()) {
+                    // Without a source, a bind mount is the whole context
+                    if (mount.get("type").equals("bind") && mount.get("from") == null) {
+                        collect(root, mount.getOrDefault("source", mount.getOrDefault("src", ".")), files);
+                    }
+                }
+                continue;
+            }
+            if (!(instruction.is("COPY") || instruction.is("ADD")) || instruction.flag("from") != null) {
+                continue;
+            }
+            List<String> operands = instruction.operands();
+            // Last operand is the destination
+            for (String source : operands.subList(0, Math.max(0, operands.size() - 1))) {
+                if (source.contains("://")) {
+                    remoteSources.add(source);
+                } else {
+                    collect(root, source, files);
+                }
+            }
+        }
+
+        // Hashing dominates for large contexts; the cache makes repeat runs stat-only
+        TreeMap<String, String> entries = new TreeMap<>();
+        List<Path> ordered = new ArrayList<>(files);
+        // Files the context leaves out can't affect the image
+        ordered.removeIf(file -> ignore.isExcluded(root.relativize(file).toString()));
+        List<String> hashes;
+        try {
+            hashes = ordered.parallelStream().map(file -> {
+                try {
+                    return cache.hash(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            Path file = ordered.get(i);
+            String mode = Files.isExecutable(file) ? "x" : "-";
+            entries.put(root.relativize(file).toString(), mode + " " + hashes.get(i));
+        }
+
+        MessageDigest digest = FileHashCache.newDigest();
+        update(digest, dockerfile.content());
+        for (String remote : remoteSources) {
+            update(digest, "url " + remote);
+        }
+        entries.forEach((path, hash) -> update(digest, path + " " + hash));
+        return new BuildFingerprint(HexFormat.of().formatHex(digest.digest()), entries.size());
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Adds the files a COPY/ADD source refers to. Wildcards are matched relative to the context
+     * and only the directory prefix before the first wildcard is walked.
+     */
+    static void collect(Path root, String source, Set<Path> files) throws IOException {
+        String relative = source.startsWith("/") ? source.substring(1) : source;
+        if (!hasWildcard(relative)) {
+            addTree(root.resolve(relative).normalize(), files);
+            return;
+        }
+        Path base = root;
+        String[] segments = relative.split("/");
+        int firstWildcard = 0;
+        while (firstWildcard < segments.length && !hasWildcard(segments[firstWildcard])) {
+            base = base.resolve(segments[firstWildcard++]);
+        }
+        if (!Files.isDirectory(base)) {
+            return;
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+        int depth = segments.length - firstWildcard;
+        try (Stream<Path> candidates = Files.walk(base, depth)) {
+            for (Path candidate : candidates.toList()) {
+                if (matcher.matches(root.relativize(candidate))) {
+                    addTree(candidate, files);
+                }
+            }
+        }
+    }
+
+    private static void addTree(Path path, Set<Path> files) throws IOException {
+        if (Files.isRegularFile(path)) {
+            files.add(path);
+        } else if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile).forEach(files::add);
+            }
+        }
+    }
+
+    private static boolean hasWildcard(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0 || pattern.indexOf('[') >= 0;
+    }
+}
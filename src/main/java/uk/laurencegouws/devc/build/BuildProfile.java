@@ -0,0 +1,186 @@
+package uk.laurencegouws.devc.build;
+
+import uk.laurencegouws.devc.cleanup.CleanupPlan;
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Where the time of one image build went: every step the builder reported, with its duration,
+ * whether it came from the cache and how many bytes it transferred. Profiles are saved as JSON,
+ * one step per line, and matched step by step against an earlier profile so a step that got
+ * slower, or stopped being cached, stands out.
+ */
+public record BuildProfile(String builder, long nanos, List<Step> steps) {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int RANKED_STEPS = 5;
+
+    /** BuildKit's {@code [stage 2/5]} and the classic builder's step counters shift when steps are added. */
+    private static final Pattern STEP_COUNTER = Pattern.compile("^\\[(?:[^\\]\\s]+\\s+)?\\d+/\\d+]\\s*");
+
+    /**
+     * One build step; {@code bytes} is what it pulled, uploaded or exported, 0 when nothing was
+     * reported, and {@code error} is null unless the step failed.
+     */
+    public record Step(String name, long nanos, boolean cached, long bytes, String error) {
+
+        /**
+         * The step's name without its position, for matching it in another build.
+         */
+        public String key() {
+            return STEP_COUNTER.matcher(name).replaceFirst("");
+        }
+    }
+
+    public long cachedSteps() {
+        return steps.stream().filter(Step::cached).count();
+    }
+
+    public long bytes() {
+        return steps.stream().mapToLong(Step::bytes).sum();
+    }
+
+    /**
+     * Prints the slowest steps, and how they compare to {@code previous} when it is given.
+     */
+    public void printSummary(PrintStream out, BuildProfile previous) {
+        out.printf("Build profile: %d step(s) (%d cached) in %.1fs, %s transferred%s%n",
+            steps.size(), cachedSteps(), nanos / 1e9, CleanupPlan.formatBytes(bytes()),
+            previous != null ? " (" + comparison(nanos - previous.nanos()) + ")" : "");
+        Map<Step, Step> matches = previous != null ? match(previous) : Map.of();
+        List<Step> ranked = steps.stream()
+            .filter(step -> !step.cached() && step.nanos() > 0)
+            .sorted(Comparator.comparingLong(Step::nanos).reversed())
+            .limit(RANKED_STEPS)
+            .toList();
+        int width = ranked.stream().mapToInt(step -> Math.min(60, step.name().length())).max().orElse(0);
+        for (Step step : ranked) {
+            String name = step.name().length() > 60 ? step.name().substring(0, 57) + "..." : step.name();
+            StringBuilder line = new StringBuilder(String.format("  %7.1fs  %-" + width + "s", step.nanos() / 1e9, name));
+            if (step.bytes() > 0) {
+                line.append("  ").append(CleanupPlan.formatBytes(step.bytes()));
+            }
+            Step before = matches.get(step);
+            if (before != null && before.cached()) {
+                line.append("  (cached last build)");
+            } else if (before != null) {
+                line.append("  (").append(comparison(step.nanos() - before.nanos())).append(')');
+            } else if (previous != null) {
+                line.append("  (new)");
+            }
+            out.println(line.toString().stripTrailing());
+        }
+    }
+
+    /**
+     * Pairs each step with the same step of {@code previous}, matching names in order so a
+     * repeated command pairs with its own counterpart.
+     */
+    public Map<Step, Step> match(BuildProfile previous) {
+        Map<String, List<Step>> byKey = new HashMap<>();
+        for (Step step : previous.steps()) {
+            byKey.computeIfAbsent(step.key(), key -> new ArrayList<>()).add(step);
+        }
+        // Identical steps are still different steps
+        Map<Step, Step> matches = new IdentityHashMap<>();
+        for (Step step : steps) {
+            List<Step> candidates = byKey.get(step.key());
+            if (candidates != null && !candidates.isEmpty()) {
+                matches.put(step, candidates.removeFirst());
+            }
+        }
+        return matches;
+    }
+
+    private static String comparison(long delta) {
+        if (Math.abs(delta) < 50_000_000L) {
+            return "same as the last build";
+        }
+        return String.format("%s%.1fs vs the last build", delta > 0 ? "+" : "-", Math.abs(delta) / 1e9);
+    }
+
+    /**
+     * Where the profile of the last build from {@code dockerfile} is kept, under the devc cache
+     * directory, so each project is compared with its own previous build.
+     */
+    public static Path lastProfile(Path dockerfile) {
+        MessageDigest digest = FileHashCache.newDigest();
+        digest.update(dockerfile.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        String name = HexFormat.of().formatHex(digest.digest()).substring(0, 16) + ".json";
+        return FileHashCache.defaultLocation("build-profiles").resolve(name);
+    }
+
+    /**
+     * Writes the profile as JSON with one step per line, so two profiles diff cleanly.
+     */
+    public void save(Path file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"version\":").append(FORMAT_VERSION)
+            .append(",\"builder\":").append(Json.write(builder))
+            .append(",\"durationMs\":").append(nanos / 1_000_000)
+            .append(",\"cachedSteps\":").append(cachedSteps())
+            .append(",\"bytes\":").append(bytes())
+            .append(",\"steps\":[");
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("key", step.key());
+            entry.put("name", step.name());
+            entry.put("durationMs", step.nanos() / 1_000_000);
+            entry.put("cached", step.cached());
+            entry.put("bytes", step.bytes());
+            if (step.error() != null) {
+                entry.put("error", step.error());
+            }
+            json.append(i == 0 ? "\n  " : ",\n  ").append(Json.write(entry));
+        }
+        json.append("\n]}\n");
+
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        Files.writeString(temporary, json);
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a profile written by {@link #save}, or returns null when there is none or it can't be read.
+     */
+    public static BuildProfile load(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            Map<String, Object> json = Json.parseObject(Files.readString(file));
+            if (Json.number(json.get("version")) != FORMAT_VERSION) {
+                return null;
+            }
+            List<Step> steps = new ArrayList<>();
+            for (Object item : Json.array(json.get("steps"))) {
+                Map<String, Object> step = Json.object(item);
+                steps.add(new Step(Json.string(step.get("name")), Json.number(step.get("durationMs")) * 1_000_000,
+                    Boolean.TRUE.equals(step.get("cached")), Json.number(step.get("bytes")), Json.string(step.get("error"))));
+            }
+            return new BuildProfile(Json.string(json.get("builder")), Json.number(json.get("durationMs")) * 1_000_000,
+                List.copyOf(steps));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
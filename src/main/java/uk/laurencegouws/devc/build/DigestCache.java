@@ -0,0 +1,80 @@
+package uk.laurencegouws.devc.build;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest digests that image tags resolved to in their registry, with the time they were
+ * looked up, in a small tab-separated file under the user's cache directory. Within the
+ * time-to-live a tag is assumed not to have moved, so repeated checks stay off the network.
+ */
+final class DigestCache {
+
+    private record Entry(long checkedAt, String digest) {
+    }
+
+    private final Path cacheFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    DigestCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * The digest {@code image} resolved to less than {@code ttl} ago, or null.
+     */
+    String get(String image, Duration ttl) {
+        Entry entry = entries.get(image);
+        if (entry == null || System.currentTimeMillis() - entry.checkedAt() > ttl.toMillis()) {
+            return null;
+        }
+        return entry.digest();
+    }
+
+    void put(String image, String digest) {
+        entries.put(image, new Entry(System.currentTimeMillis(), digest));
+        dirty = true;
+    }
+
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(entries.size());
+        entries.forEach((image, entry) -> lines.add(entry.checkedAt() + "\t" + entry.digest() + "\t" + image));
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temporary = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            Files.write(temporary, lines);
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException ignored) {
+            // Only costs a registry round trip next time
+        }
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(cacheFile)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    entries.put(fields[2], new Entry(Long.parseLong(fields[0]), fields[1]));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package uk.laurencegouws.devc.build;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * {@code .dockerignore} rules with the same semantics as the docker CLI: patterns are relative
+ * to the context root, {@code **} spans directories, {@code !} re-includes, the last matching
+ * rule wins and a rule matching a directory also covers everything beneath it.
+ */
+public final class DockerIgnore {
+
+    private record Rule(Pattern pattern, boolean exclude) {
+    }
+
+    private static final DockerIgnore EMPTY = new DockerIgnore(List.of());
+
+    private final List<Rule> rules;
+
+    private DockerIgnore(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Reads {@code .dockerignore} from the context root; a missing file excludes nothing.
+     */
+    public static DockerIgnore load(Path contextRoot) throws IOException {
+        Path file = contextRoot.resolve(".dockerignore");
+        return Files.isRegularFile(file) ? parse(Files.readAllLines(file)) : EMPTY;
+    }
+
+    public static DockerIgnore parse(List<String> lines) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean exclude = true;
+            if (pattern.startsWith("!")) {
+                exclude = false;
+                pattern = pattern.substring(1).strip();
+            }
+            pattern = clean(pattern);
+            if (!pattern.isEmpty()) {
+                rules.add(new Rule(Pattern.compile(toRegex(pattern)), exclude));
+            }
+        }
+        return new DockerIgnore(List.copyOf(rules));
+    }
+
+    /**
+     * Whether any rule re-includes paths; without one, an excluded directory can be skipped whole.
+     */
+    public boolean hasExceptions() {
+        return rules.stream().anyMatch(rule -> !rule.exclude());
+    }
+
+    /**
+     * Whether a context-relative path (using {@code /} separators) is left out of the build context.
+     */
+    public boolean isExcluded(String relativePath) {
+        boolean excluded = false;
+        for (Rule rule : rules) {
+            if (excluded != rule.exclude() && matchesOrParentMatches(rule.pattern(), relativePath)) {
+                excluded = rule.exclude();
+            }
+        }
+        return excluded;
+    }
+
+    private static boolean matchesOrParentMatches(Pattern pattern, String path) {
+        if (pattern.matcher(path).matches()) {
+            return true;
+        }
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            if (pattern.matcher(path.substring(0, slash)).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Normalises a pattern like Go's {@code filepath.Clean} and drops any leading slash.
+     */
+    private static String clean(String pattern) {
+        List<String> parts = new ArrayList<>();
+        for (String part : pattern.split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                if (!parts.isEmpty()) {
+                    parts.remove(parts.size() - 1);
+                }
+                continue;
+            }
+            parts.add(part);
+        }
+        return String.join("/", parts);
+    }
+
+    private static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '/') {
+                        // "**/" matches zero or more leading directories
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '[') {
+                int end = pattern.indexOf(']', i + 1);
+                if (end < 0) {
+                    regex.append("\\[");
+                    continue;
+                }
+                String set = pattern.substring(i + 1, end);
+                if (set.startsWith("!") || set.startsWith("^")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\")).append(']');
+                i = end;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package uk.laurencegouws.devc.build;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Just enough of a Dockerfile parser for devc: joins continuation lines, drops comments and
+ * splits each instruction into its keyword, flags ({@code --chown=...}) and operands.
+ */
+public final class Dockerfile {
+
+    /** A {@code # syntax=} parser directive, which selects a BuildKit frontend. */
+    private static final Pattern SYNTAX_DIRECTIVE = Pattern.compile("(?i)^#\\s*syntax\\s*=");
+
+    private static final Pattern HEREDOC = Pattern.compile("<<-?[\"']?[A-Za-z_][A-Za-z0-9_]*[\"']?");
+
+    /** Instruction flags the classic builder rejects. */
+    private static final List<String> BUILDKIT_FLAGS = List.of(
+        "--mount=", "--network=", "--security=", "--chmod=", "--link", "--parents", "--exclude=", "--checksum=");
+
+    /**
+     * One instruction, e.g. {@code COPY --chown=developer env/*.sh /scripts/}.
+     *
+     * @param line 1-based line the instruction starts on
+     */
+    public record Instruction(String keyword, List<String> flags, List<String> operands, String arguments, int line) {
+
+        public boolean is(String name) {
+            return keyword.equals(name);
+        }
+
+        /**
+         * Value of a {@code --name=value} flag, or {@code null}.
+         */
+        public String flag(String name) {
+            String prefix = "--" + name + "=";
+            for (String flag : flags) {
+                if (flag.startsWith(prefix)) {
+                    return flag.substring(prefix.length());
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Options of each {@code --mount=type=...,target=...} flag, in order. A mount without a
+         * {@code type} is a bind mount.
+         */
+        public List<Map<String, String>> mounts() {
+            List<Map<String, String>> mounts = new ArrayList<>();
+            for (String flag : flags) {
+                if (!flag.startsWith("--mount=")) {
+                    continue;
+                }
+                Map<String, String> options = new LinkedHashMap<>();
+                options.put("type", "bind");
+                for (String option : flag.substring("--mount=".length()).split(",")) {
+                    int equals = option.indexOf('=');
+                    if (equals > 0) {
+                        options.put(option.substring(0, equals).strip(), option.substring(equals + 1).strip());
+                    } else if (!option.isBlank()) {
+                        options.put(option.strip(), "true");
+                    }
+                }
+                mounts.add(options);
+            }
+            return mounts;
+        }
+    }
+
+    private final String content;
+    private final List<Instruction> instructions;
+
+    private Dockerfile(String content, List<Instruction> instructions) {
+        this.content = content;
+        this.instructions = instructions;
+    }
+
+    public static Dockerfile read(Path path) throws IOException {
+        return parse(Files.readString(path));
+    }
+
+    public static Dockerfile parse(String content) {
+        List<Instruction> instructions = new ArrayList<>();
+        String[] lines = content.split("\r?\n", -1);
+        StringBuilder current = new StringBuilder();
+        int startLine = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String trimmed = line.strip();
+            if (trimmed.startsWith("#") || (trimmed.isEmpty() && current.isEmpty())) {
+                continue;
+            }
+            if (current.isEmpty()) {
+                startLine = i + 1;
+            }
+            if (trimmed.endsWith("\\")) {
+                current.append(trimmed, 0, trimmed.length() - 1).append(' ');
+                continue;
+            }
+            current.append(trimmed);
+            instructions.add(toInstruction(current.toString().strip(), startLine));
+            current.setLength(0);
+        }
+        if (!current.isEmpty()) {
+            instructions.add(toInstruction(current.toString().strip(), startLine));
+        }
+        return new Dockerfile(content, List.copyOf(instructions));
+    }
+
+    public String content() {
+        return content;
+    }
+
+    public List<Instruction> instructions() {
+        return instructions;
+    }
+
+    /**
+     * Whether the file only builds with BuildKit: it names a frontend with {@code # syntax=},
+     * uses heredocs, or uses flags such as {@code RUN --mount} the classic builder rejects.
+     */
+    public boolean requiresBuildKit() {
+        for (String line : content.split("\r?\n")) {
+            String trimmed = line.strip();
+            if (!trimmed.startsWith("#")) {
+                break;
+            }
+            if (SYNTAX_DIRECTIVE.matcher(trimmed).find()) {
+                return true;
+            }
+        }
+        for (Instruction instruction : instructions) {
+            if (HEREDOC.matcher(instruction.arguments()).find()) {
+                return true;
+            }
+            for (String flag : instruction.flags()) {
+                if (BUILDKIT_FLAGS.stream().anyMatch(flag::startsWith)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Instruction toInstruction(String text, int line) {
+        int space = text.indexOf(' ');
+        String keyword = (space < 0 ? text : text.substring(0, space)).toUpperCase(Locale.ROOT);
+        String arguments = space < 0 ? "" : text.substring(space + 1).strip();
+
+        List<String> flags = new ArrayList<>();
+        String rest = arguments;
+        while (rest.startsWith("--")) {
+            int end = rest.indexOf(' ');
+            if (end < 0) {
+                flags.add(rest);
+                rest = "";
+                break;
+            }
+            flags.add(rest.substring(0, end));
+            rest = rest.substring(end + 1).strip();
+        }
+        // Exec (JSON array) form vs shell form
+        List<String> operands = rest.startsWith("[") ? parseJsonArray(rest) : splitWords(rest);
+        return new Instruction(keyword, List.copyOf(flags), List.copyOf(operands), arguments, line);
+    }
+
+    /**
+     * Splits on whitespace, honouring simple single and double quotes.
+     */
+    private static List<String> splitWords(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (Character.isWhitespace(c)) {
+                if (!word.isEmpty()) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static List<String> parseJsonArray(String text) {
+        List<String> values = new ArrayList<>();
+        int i = text.indexOf('"');
+        while (i >= 0) {
+            int end = text.indexOf('"', i + 1);
+            if (end < 0) {
+                break;
+            }
+            values.add(text.substring(i + 1, end));
+            i = text.indexOf('"', end + 1);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,406 @@
+package uk.laurencegouws.devc.build;
+
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Finds patterns in a Dockerfile that make the build cache less effective, and estimates what
+ * each costs when it strikes: which steps then run again and, when the image's history covers
+ * them, how long they took and how many layer bytes they wrote in the last build.
+ */
+public final class DockerfileAnalyzer {
+
+    /** A longer gap between two layers means the later one was built on an old cached layer. */
+    private static final long MAX_STEP_SECONDS = 6 * 3600;
+
+    /** Scripts bigger than this aren't read when looking for package installs. */
+    private static final long MAX_SCRIPT_BYTES = 256 * 1024;
+
+    private static final Pattern TRIVIAL_COMMAND = Pattern.compile("(chmod|chown|mkdir|ln|touch|echo|rm|cp|mv)\\b.*");
+    private static final Pattern OWNERSHIP_COMMAND = Pattern.compile("(chmod|chown)\\b.*");
+    private static final Pattern APT_UPDATE = Pattern.compile("\\bapt(-get)?\\s+update\\b");
+    private static final Pattern APT_INSTALL = Pattern.compile("\\bapt(-get)?\\s+(-\\S+\\s+)*install\\b");
+    private static final Pattern APT_CLEAN = Pattern.compile(
+        "\\bapt(-get)?\\s+clean\\b|rm\\s+-\\S*\\s+/var/lib/apt/lists|rm\\s+-\\S*\\s+/var/cache/apt");
+
+    /**
+     * A package manager that downloads into a directory a cache mount can keep between builds.
+     */
+    private record PackageManager(String name, Pattern command, String cacheDirectory, String mountHint) {
+    }
+
+    private static final List<PackageManager> PACKAGE_MANAGERS = List.of(
+        new PackageManager("apt", APT_INSTALL, "/var/cache/apt",
+            "--mount=type=cache,target=/var/cache/apt,sharing=locked --mount=type=cache,target=/var/lib/apt,sharing=locked"),
+        new PackageManager("apk", Pattern.compile("\\bapk\\s+add\\b"), "/var/cache/apk",
+            "--mount=type=cache,target=/var/cache/apk (and drop --no-cache)"),
+        new PackageManager("cargo", Pattern.compile("\\bcargo\\s+(build|install|fetch)\\b"), "cargo/registry",
+            "--mount=type=cache,target=$CARGO_HOME/registry --mount=type=cache,target=$CARGO_HOME/git"),
+        new PackageManager("npm", Pattern.compile("\\bnpm\\s+(ci|install|i)\\b"), ".npm",
+            "--mount=type=cache,target=/root/.npm"),
+        new PackageManager("pip", Pattern.compile("\\bpip3?\\s+install\\b"), ".cache/pip",
+            "--mount=type=cache,target=/root/.cache/pip"),
+        new PackageManager("go", Pattern.compile("\\bgo\\s+(build|install|mod\\s+download)\\b"), "go/pkg/mod",
+            "--mount=type=cache,target=/root/go/pkg/mod --mount=type=cache,target=/root/.cache/go-build"),
+        new PackageManager("maven", Pattern.compile("\\bmvnw?\\s"), ".m2",
+            "--mount=type=cache,target=/root/.m2"),
+        new PackageManager("gradle", Pattern.compile("\\bgradlew?\\s"), ".gradle",
+            "--mount=type=cache,target=/root/.gradle"));
+
+    /**
+     * What one instruction took in the last build; {@code nanos} is -1 when the history can't tell.
+     */
+    public record StepCost(long nanos, long bytes) {
+    }
+
+    /**
+     * One cache-hostile pattern.
+     *
+     * @param rebuilt the steps that run again when it strikes
+     * @param nanos   their total duration in the last build, or -1 when unknown
+     * @param bytes   the layer bytes they wrote in the last build, or -1 when unknown
+     */
+    public record Finding(Dockerfile.Instruction instruction, String problem, String fix,
+                          List<Dockerfile.Instruction> rebuilt, long nanos, long bytes) {
+    }
+
+    private record Stage(String name, List<Dockerfile.Instruction> instructions, Set<Integer> dependsOn) {
+    }
+
+    private DockerfileAnalyzer() {
+    }
+
+    /**
+     * Analyzes {@code dockerfile}, reading copied scripts from {@code context} to see what they
+     * install. {@code costs} come from {@link #costsFromHistory} and may be empty.
+     */
+    public static List<Finding> analyze(Dockerfile dockerfile, Path context,
+                                        Map<Dockerfile.Instruction, StepCost> costs) throws IOException {
+        Path root = context.toAbsolutePath().normalize();
+        List<Stage> stages = stages(dockerfile);
+        List<Finding> findings = new ArrayList<>();
+        for (int s = 0; s < stages.size(); s++) {
+            Stage stage = stages.get(s);
+            Map<String, Path> scripts = new HashMap<>();
+            boolean dockerCleanRemoved = false;
+            for (int i = 0; i < stage.instructions().size(); i++) {
+                Dockerfile.Instruction instruction = stage.instructions().get(i);
+                List<Dockerfile.Instruction> later = stage.instructions().subList(i + 1, stage.instructions().size());
+
+                if (instruction.is("FROM")) {
+                    String image = instruction.operands().isEmpty() ? "" : instruction.operands().get(0);
+                    if (isUnpinned(image, stages, s)) {
+                        findings.add(finding(instruction,
+                            "Base image '" + image + "' has no fixed version; when it moves, every step is rebuilt.",
+                            "Pin a version tag such as ubuntu:22.04, or a digest.",
+                            rebuiltFrom(stages, s, i), costs));
+                    }
+                } else if ((instruction.is("COPY") || instruction.is("ADD")) && instruction.flag("from") == null) {
+                    List<String> operands = instruction.operands();
+                    List<String> sources = operands.subList(0, Math.max(0, operands.size() - 1));
+                    Set<Path> files = new TreeSet<>();
+                    for (String source : sources) {
+                        if (source.contains("://")) {
+                            findings.add(finding(instruction,
+                                "ADD of " + source + " is checked on every build, and a change upstream rebuilds every later step.",
+                                "Add --checksum=sha256:... to pin it, or download a fixed version in a RUN step.",
+                                rebuiltFrom(stages, s, i), costs));
+                        } else {
+                            BuildFingerprint.collect(root, source, files);
+                        }
+                    }
+                    for (Path file : files) {
+                        scripts.putIfAbsent(file.getFileName().toString(), file);
+                    }
+                    long laterRuns = later.stream().filter(step -> step.is("RUN")).count();
+                    boolean broad = sources.stream().anyMatch(source -> source.equals(".") || source.equals("./"))
+                        || files.size() > 1;
+                    if (broad && laterRuns > 0) {
+                        findings.add(finding(instruction,
+                            String.format("Copies %d file(s) before %d RUN step(s); changing any of them re-runs every later step.",
+                                files.size(), laterRuns),
+                            copyFix(sources, later, files),
+                            rebuiltFrom(stages, s, i), costs));
+                    }
+                } else if (instruction.is("RUN")) {
+                    List<Map<String, String>> mounts = instruction.mounts();
+                    for (Map<String, String> mount : mounts) {
+                        if (mount.get("type").equals("bind") && mount.get("from") == null) {
+                            Set<Path> files = new TreeSet<>();
+                            BuildFingerprint.collect(root, mount.getOrDefault("source", mount.getOrDefault("src", ".")), files);
+                            for (Path file : files) {
+                                scripts.putIfAbsent(file.getFileName().toString(), file);
+                            }
+                        }
+                    }
+                    String command = String.join(" ", instruction.operands());
+                    String text = command + "\n" + scriptText(command, scripts);
+                    dockerCleanRemoved |= command.contains("docker-clean");
+                    List<Dockerfile.Instruction> self = List.of(instruction);
+
+                    for (PackageManager manager : PACKAGE_MANAGERS) {
+                        if (manager.command().matcher(text).find() && !hasCacheMount(mounts, manager.cacheDirectory())) {
+                            findings.add(finding(instruction,
+                                "Installs with " + manager.name() + " without a cache mount, so every re-run downloads everything again.",
+                                "Add " + manager.mountHint() + ".",
+                                self, costs));
+                        }
+                    }
+                    if (APT_UPDATE.matcher(text).find() && !APT_INSTALL.matcher(text).find()) {
+                        findings.add(finding(instruction,
+                            "Runs apt-get update without installing; the package lists are cached in their own layer and go stale.",
+                            "Run apt-get update in the same step as apt-get install.",
+                            self, costs));
+                    }
+                    if (hasCacheMount(mounts, "/var/cache/apt")) {
+                        if (APT_CLEAN.matcher(text).find()) {
+                            findings.add(finding(instruction,
+                                "Cleans out the apt cache mount, so the next build downloads every package again.",
+                                "Drop apt-get clean and rm -rf /var/lib/apt/lists; the mounts aren't part of the image.",
+                                self, costs));
+                        } else if (!dockerCleanRemoved) {
+                            findings.add(finding(instruction,
+                                "Debian and Ubuntu images delete downloaded packages after each install (docker-clean), "
+                                    + "which leaves the apt cache mount empty.",
+                                "Start the step with rm -f /etc/apt/apt.conf.d/docker-clean.",
+                                self, costs));
+                        }
+                    }
+                    if (isAll(command, OWNERSHIP_COMMAND) && i > 0 && isCopy(stage.instructions().get(i - 1))) {
+                        findings.add(finding(instruction,
+                            "Changes permissions or ownership of copied files in a separate step, which writes them into a second layer.",
+                            "Use COPY --chmod=... or COPY --chown=... instead.",
+                            self, costs));
+                    } else if (isAll(command, TRIVIAL_COMMAND) && i + 1 < stage.instructions().size()
+                            && stage.instructions().get(i + 1).is("RUN")) {
+                        findings.add(finding(instruction,
+                            "A small RUN step directly before another adds a layer of its own.",
+                            "Merge it into the next RUN step with &&.",
+                            self, costs));
+                    }
+                }
+            }
+        }
+        findings.sort(Comparator.comparingLong(Finding::nanos).reversed()
+            .thenComparing(Comparator.comparingInt((Finding finding) -> finding.rebuilt().size()).reversed())
+            .thenComparingInt(finding -> finding.instruction().line()));
+        return findings;
+    }
+
+    /**
+     * Lines the image's history up with the final stage of {@code dockerfile}: every instruction
+     * after {@code FROM} commits one history entry, so the last entries belong to the last
+     * stage. Durations are the gaps between commit times. Returns an empty map when the history
+     * doesn't match, e.g. because the image was built from an older Dockerfile.
+     */
+    public static Map<Dockerfile.Instruction, StepCost> costsFromHistory(Dockerfile dockerfile,
+                                                                        List<DockerClient.ImageLayer> history) {
+        List<Stage> stages = stages(dockerfile);
+        if (stages.isEmpty()) {
+            return Map.of();
+        }
+        List<Dockerfile.Instruction> steps = stages.getLast().instructions();
+        steps = steps.subList(1, steps.size());
+        int offset = history.size() - steps.size();
+        if (offset < 0) {
+            return Map.of();
+        }
+        Map<Dockerfile.Instruction, StepCost> costs = new HashMap<>();
+        boolean anyGap = false;
+        for (int i = 0; i < steps.size(); i++) {
+            DockerClient.ImageLayer layer = history.get(offset + i);
+            if (!steps.get(i).keyword().equals(recordedKeyword(layer.createdBy()))) {
+                return Map.of();
+            }
+            // The first step follows the base image's last layer, which was committed whenever the base was built
+            long gap = i > 0 ? layer.created() - history.get(offset + i - 1).created() : -1;
+            anyGap |= gap > 0;
+            costs.put(steps.get(i), new StepCost(gap >= 0 && gap <= MAX_STEP_SECONDS ? gap * 1_000_000_000L : -1,
+                layer.size()));
+        }
+        if (!anyGap) {
+            // Every layer carries the same time (BuildKit can stamp them all at export), so only sizes are known
+            costs.replaceAll((step, cost) -> new StepCost(-1, cost.bytes()));
+        }
+        return costs;
+    }
+
+    /**
+     * The keyword of a history entry's {@code CreatedBy}: classic builder metadata steps read
+     * {@code /bin/sh -c #(nop) COPY ...}, BuildKit writes {@code COPY ... # buildkit}, and
+     * anything else is a shell command from RUN.
+     */
+    private static String recordedKeyword(String createdBy) {
+        String text = createdBy == null ? "" : createdBy.strip();
+        int nop = text.indexOf("#(nop)");
+        if (nop >= 0) {
+            text = text.substring(nop + "#(nop)".length()).strip();
+        }
+        int space = text.indexOf(' ');
+        String first = space < 0 ? text : text.substring(0, space);
+        if (!first.isEmpty() && first.equals(first.toUpperCase(Locale.ROOT)) && Character.isLetter(first.charAt(0))) {
+            return first;
+        }
+        return "RUN";
+    }
+
+    private static List<Stage> stages(Dockerfile dockerfile) {
+        List<Stage> stages = new ArrayList<>();
+        for (Dockerfile.Instruction instruction : dockerfile.instructions()) {
+            if (instruction.is("FROM")) {
+                List<String> operands = instruction.operands();
+                String name = operands.size() >= 3 && operands.get(1).equalsIgnoreCase("AS")
+                    ? operands.get(2).toLowerCase(Locale.ROOT) : null;
+                Set<Integer> dependsOn = new LinkedHashSet<>();
+                if (!operands.isEmpty()) {
+                    addStageReference(operands.get(0), stages, dependsOn);
+                }
+                stages.add(new Stage(name, new ArrayList<>(List.of(instruction)), dependsOn));
+            } else if (!stages.isEmpty()) {
+                Stage stage = stages.getLast();
+                stage.instructions().add(instruction);
+                String from = instruction.flag("from");
+                if (from != null) {
+                    addStageReference(from, stages, stage.dependsOn());
+                }
+                for (Map<String, String> mount : instruction.mounts()) {
+                    if (mount.get("from") != null) {
+                        addStageReference(mount.get("from"), stages, stage.dependsOn());
+                    }
+                }
+            }
+        }
+        return stages;
+    }
+
+    private static void addStageReference(String reference, List<Stage> stages, Set<Integer> dependsOn) {
+        String lower = reference.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < stages.size(); i++) {
+            if (lower.equals(stages.get(i).name()) || lower.equals(Integer.toString(i))) {
+                dependsOn.add(i);
+            }
+        }
+    }
+
+    /**
+     * The steps after instruction {@code index} of stage {@code stage}, plus every step of the
+     * stages built on it.
+     */
+    private static List<Dockerfile.Instruction> rebuiltFrom(List<Stage> stages, int stage, int index) {
+        List<Dockerfile.Instruction> steps = new ArrayList<>();
+        List<Dockerfile.Instruction> own = stages.get(stage).instructions();
+        steps.addAll(own.subList(index + (own.get(index).is("FROM") ? 1 : 0), own.size()));
+        Set<Integer> affected = new LinkedHashSet<>(List.of(stage));
+        for (int later = stage + 1; later < stages.size(); later++) {
+            Stage candidate = stages.get(later);
+            if (candidate.dependsOn().stream().anyMatch(affected::contains)) {
+                affected.add(later);
+                List<Dockerfile.Instruction> instructions = candidate.instructions();
+                steps.addAll(instructions.subList(1, instructions.size()));
+            }
+        }
+        return steps;
+    }
+
+    private static Finding finding(Dockerfile.Instruction instruction, String problem, String fix,
+                                   List<Dockerfile.Instruction> rebuilt, Map<Dockerfile.Instruction, StepCost> costs) {
+        List<Dockerfile.Instruction> steps = rebuilt.stream()
+            .filter(step -> step.is("RUN") || step.is("COPY") || step.is("ADD"))
+            .toList();
+        long nanos = -1;
+        long bytes = -1;
+        for (Dockerfile.Instruction step : steps) {
+            StepCost cost = costs.get(step);
+            if (cost != null) {
+                nanos = cost.nanos() < 0 ? nanos : Math.max(0, nanos) + cost.nanos();
+                bytes = Math.max(0, bytes) + cost.bytes();
+            }
+        }
+        return new Finding(instruction, problem, fix, steps, nanos, bytes);
+    }
+
+    private static boolean isUnpinned(String image, List<Stage> stages, int stage) {
+        String lower = image.toLowerCase(Locale.ROOT);
+        if (lower.equals("scratch") || lower.contains("$") || image.contains("@")
+                || !stages.get(stage).dependsOn().isEmpty()) {
+            return false;
+        }
+        BaseImages.Image parsed = BaseImages.parse(image, null, 0);
+        return parsed.reference().equals("latest");
+    }
+
+    private static String copyFix(List<String> sources, List<Dockerfile.Instruction> later, Set<Path> files) {
+        for (Dockerfile.Instruction step : later) {
+            if (step.is("RUN") && files.stream().anyMatch(file -> step.arguments().contains(file.getFileName().toString()))) {
+                return "Bind-mount each script into the step that runs it "
+                    + "(RUN --mount=type=bind,source=<script>,target=/scripts/<script> ...), or copy it just before that step.";
+            }
+        }
+        if (sources.stream().anyMatch(source -> source.equals(".") || source.equals("./"))) {
+            return "Copy only the dependency manifests first and install dependencies, then copy the rest just before the build step.";
+        }
+        return "Copy these files just before the first step that needs them.";
+    }
+
+    private static boolean hasCacheMount(List<Map<String, String>> mounts, String directory) {
+        return mounts.stream().anyMatch(mount -> mount.get("type").equals("cache")
+            && mount.getOrDefault("target", mount.getOrDefault("dst", "")).contains(directory));
+    }
+
+    private static boolean isCopy(Dockerfile.Instruction instruction) {
+        return instruction.is("COPY") || instruction.is("ADD");
+    }
+
+    /**
+     * Whether every {@code &&}- or {@code ;}-separated command in {@code command} matches {@code pattern}.
+     */
+    private static boolean isAll(String command, Pattern pattern) {
+        String[] parts = command.split("&&|;");
+        for (String part : parts) {
+            if (!pattern.matcher(part.strip()).matches()) {
+                return false;
+            }
+        }
+        return parts.length > 0;
+    }
+
+    /**
+     * Contents of the context scripts a RUN command names, so installs inside them are seen too.
+     */
+    private static String scriptText(String command, Map<String, Path> scripts) {
+        StringBuilder text = new StringBuilder();
+        for (String word : command.split("\\s+")) {
+            String name = word.substring(word.lastIndexOf('/') + 1);
+            Path script = scripts.get(name);
+            if (script == null) {
+                continue;
+            }
+            try {
+                if (Files.size(script) <= MAX_SCRIPT_BYTES) {
+                    for (String line : Files.readAllLines(script)) {
+                        if (!line.strip().startsWith("#")) {
+                            text.append(line).append('\n');
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Unreadable or binary files just aren't inspected
+            }
+        }
+        // Line continuations would hide "apt-get install" behind a newline
+        return text.toString().replace("\\\n", " ");
+    }
+}
@@ -0,0 +1,116 @@
+package uk.laurencegouws.devc.build;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 file hashes cached by (size, mtime) in a small tab-separated file under the user's
+ * cache directory, so unchanged files are never re-read between runs.
+ */
+public class FileHashCache {
+
+    private record Entry(long size, long modified, String hash) {
+    }
+
+    private final Path cacheFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public FileHashCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * {@code $XDG_CACHE_HOME/devc/<name>}, falling back to {@code ~/.cache/devc/<name>}.
+     */
+    public static Path defaultLocation(String name) {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isBlank()
+            ? Path.of(cacheHome)
+            : Path.of(System.getProperty("user.home"), ".cache");
+        return base.resolve("devc").resolve(name);
+    }
+
+    public String hash(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String key = file.toAbsolutePath().normalize().toString();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry cached = entries.get(key);
+        if (cached != null && cached.size() == attributes.size() && cached.modified() == modified) {
+            return cached.hash();
+        }
+        String hash = sha256(file);
+        entries.put(key, new Entry(attributes.size(), modified, hash));
+        dirty = true;
+        return hash;
+    }
+
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(entries.size());
+        entries.forEach((path, entry) -> lines.add(entry.size() + "\t" + entry.modified() + "\t" + entry.hash() + "\t" + path));
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            Files.write(temporary, lines);
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException ignored) {
+            // The cache is an optimisation; a read-only home directory just means rehashing next time
+        }
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(cacheFile)) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4) {
+                    entries.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            entries.clear();
+        }
+    }
+
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UncheckedIOException(new IOException("SHA-256 is not available", e));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package uk.laurencegouws.devc.build;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.cleanup.CleanupPlan;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes a Dockerfile's base images available locally before the build needs them, all at
+ * once rather than one after another inside the build. An image is pulled when it is missing,
+ * or when its tag now resolves to a manifest the local copy wasn't pulled from. Those registry
+ * lookups are cached for {@code devc.prefetch.digest-ttl} in {@code image-digests.tsv} under
+ * the devc cache directory. A pull of an image that is already being fetched, e.g. one the
+ * daemon started in the background, is joined instead of started twice.
+ * <p>
+ * Pulls are anonymous, like the engine's own pulls during a build without credentials.
+ */
+@ApplicationScoped
+public class ImagePrefetch {
+
+    public enum Outcome {
+        /** The local copy is current (or the registry couldn't be asked). */
+        PRESENT,
+        /** Was missing and has been pulled. */
+        PULLED,
+        /** The tag had moved; the new manifest has been pulled. */
+        UPDATED,
+        FAILED
+    }
+
+    /**
+     * What happened to one image; {@code detail} explains a failure or a skipped check.
+     */
+    public record Result(BaseImages.Image image, Outcome outcome, String detail, long nanos) {
+    }
+
+    @Inject
+    DockerBackend docker;
+
+    @ConfigProperty(name = "devc.prefetch.digest-ttl", defaultValue = "1h")
+    Duration digestTtl;
+
+    Path digestCacheFile = FileHashCache.defaultLocation("image-digests.tsv");
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Starts fetching every image concurrently and returns without waiting. Layer progress goes
+     * to {@code progress}, one line at a time, or nowhere when it is null.
+     */
+    public List<CompletableFuture<Result>> start(List<BaseImages.Image> images, PrintStream progress) {
+        DigestCache digests = new DigestCache(digestCacheFile);
+        List<CompletableFuture<Result>> futures = new ArrayList<>(images.size());
+        for (BaseImages.Image image : images) {
+            String key = image + "|" + image.platform();
+            CompletableFuture<Result> future = new CompletableFuture<>();
+            CompletableFuture<Result> running = inFlight.putIfAbsent(key, future);
+            if (running != null) {
+                if (progress != null) {
+                    progress.printf("[%s] already being fetched, waiting for it%n", image);
+                }
+                futures.add(running);
+                continue;
+            }
+            executor.execute(() -> {
+                Result result = prepare(image, digests, progress);
+                digests.save();
+                inFlight.remove(key, future);
+                future.complete(result);
+            });
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    /**
+     * Fetches every image concurrently and waits for all of them.
+     */
+    public List<Result> fetch(List<BaseImages.Image> images, PrintStream progress) {
+        List<Result> results = new ArrayList<>(images.size());
+        for (CompletableFuture<Result> future : start(images, progress)) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private Result prepare(BaseImages.Image image, DigestCache digests, PrintStream progress) {
+        long start = System.nanoTime();
+        String name = image.toString();
+        try {
+            List<String> local = DockerBackend.await(docker.imageDigests(name));
+            if (local == null) {
+                pull(image, digests, progress);
+                return new Result(image, Outcome.PULLED, null, System.nanoTime() - start);
+            }
+            if (image.isPinned() || local.isEmpty()) {
+                // A digest can't move, and an image with no repository digest was built or loaded locally
+                return new Result(image, Outcome.PRESENT, null, System.nanoTime() - start);
+            }
+            String remote = digests.get(name, digestTtl);
+            if (remote == null) {
+                try {
+                    remote = DockerBackend.await(docker.registryDigest(name));
+                } catch (IOException e) {
+                    return new Result(image, Outcome.PRESENT, "registry not reachable, using the local copy",
+                        System.nanoTime() - start);
+                }
+                digests.put(name, remote);
+            }
+            String pulledFrom = "@" + remote;
+            if (local.stream().anyMatch(digest -> digest.endsWith(pulledFrom))) {
+                return new Result(image, Outcome.PRESENT, null, System.nanoTime() - start);
+            }
+            pull(image, digests, progress);
+            return new Result(image, Outcome.UPDATED, null, System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            return new Result(image, Outcome.FAILED, e.getMessage(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Pulls {@code image} and records the manifest digest the pull reports, so the next check
+     * within the time-to-live doesn't have to ask the registry.
+     */
+    private void pull(BaseImages.Image image, DigestCache digests, PrintStream progress) throws IOException {
+        if (progress != null) {
+            progress.printf("[%s] pulling%s%n", image, image.platform() != null ? " for " + image.platform() : "");
+        }
+        LayerProgress layers = new LayerProgress(image.toString(), progress);
+        DockerBackend.await(docker.pullImage(image.repository(), image.reference(), image.platform(), layers));
+        if (layers.digest != null && !image.isPinned()) {
+            digests.put(image.toString(), layers.digest);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Turns the engine's per-layer status stream into a line per finished layer and, at most
+     * once a second, a running total for the image. Keeps the manifest digest from the
+     * {@code Digest:} line at the end.
+     */
+    private static final class LayerProgress implements DockerClient.PullProgress {
+
+        private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+        private final String image;
+        private final PrintStream out;
+        private final Map<String, long[]> layers = new LinkedHashMap<>();
+        private final Set<String> finished = new HashSet<>();
+        private long lastReport = System.nanoTime();
+        private String digest;
+
+        LayerProgress(String image, PrintStream out) {
+            this.image = image;
+            this.out = out;
+        }
+
+        @Override
+        public void update(String layer, String status, long current, long total) {
+            if (layer == null && status != null && status.startsWith("Digest: ")) {
+                digest = status.substring("Digest: ".length()).strip();
+                return;
+            }
+            // Other status lines without a layer id ("Pulling from ...", "Status: ...") carry nothing new
+            if (out == null || layer == null || status == null || layer.length() != 12) {
+                return;
+            }
+            long[] bytes = layers.computeIfAbsent(layer, id -> new long[2]);
+            if (status.equals("Downloading") && total > 0) {
+                bytes[0] = current;
+                bytes[1] = total;
+            } else if (status.equals("Already exists") && finished.add(layer)) {
+                out.printf("[%s] %s already present%n", image, layer);
+            } else if (status.equals("Pull complete") && finished.add(layer)) {
+                bytes[0] = bytes[1];
+                out.printf("[%s] %s pulled%s%n", image, layer,
+                    bytes[1] > 0 ? " (" + CleanupPlan.formatBytes(bytes[1]) + ")" : "");
+            }
+
+            long now = System.nanoTime();
+            if (status.equals("Downloading") && now - lastReport >= REPORT_INTERVAL_NANOS) {
+                lastReport = now;
+                long done = 0;
+                long size = 0;
+                for (long[] value : layers.values()) {
+                    done += value[0];
+                    size += value[1];
+                }
+                out.printf("[%s] %d/%d layers, %s of %s%n", image, finished.size(), layers.size(),
+                    CleanupPlan.formatBytes(done), CleanupPlan.formatBytes(size));
+            }
+        }
+    }
+}
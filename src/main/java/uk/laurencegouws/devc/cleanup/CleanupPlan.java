@@ -0,0 +1,219 @@
+package uk.laurencegouws.devc.cleanup;
+
+import uk.laurencegouws.devc.build.BuildFingerprint;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out what a devc-scoped cleanup would remove from one {@code GET /system/df} snapshot.
+ * Only resources devc created are considered: stopped containers and unused images and volumes
+ * that carry the {@code devc.managed} (or, for images, {@code devc.fingerprint}) label. An image
+ * or volume used only by containers in the plan counts as unused, since those go first. Build
+ * cache records carry no labels at all, so they are reported but only removed on request.
+ */
+public final class CleanupPlan {
+
+    public enum Kind {
+        CONTAINER("containers"),
+        IMAGE("images"),
+        VOLUME("volumes"),
+        BUILD_CACHE("build cache");
+
+        private final String plural;
+
+        Kind(String plural) {
+            this.plural = plural;
+        }
+
+        public String plural() {
+            return plural;
+        }
+    }
+
+    /**
+     * One removable resource. {@code bytes} is the space removing it frees: the writable layer
+     * of a container, the layers an image shares with no other image, a volume's contents.
+     */
+    public record Candidate(Kind kind, String id, String name, long bytes, Instant created) {
+    }
+
+    /**
+     * What to include: resources older than {@code olderThan} (any age when null), and tagged
+     * images as well as dangling ones when {@code allImages} is set.
+     */
+    public record Policy(Duration olderThan, boolean allImages, Instant now) {
+
+        boolean oldEnough(Instant created) {
+            return olderThan == null || created == null || !created.isAfter(now.minus(olderThan));
+        }
+    }
+
+    private final List<Candidate> candidates;
+
+    private CleanupPlan(List<Candidate> candidates) {
+        this.candidates = candidates;
+    }
+
+    public static CleanupPlan from(Map<String, Object> df, Policy policy) {
+        List<Candidate> candidates = new ArrayList<>();
+        // Containers are removed first, so whatever only they use is free by the time images and volumes go
+        Map<String, Integer> imageUsersRemoved = new HashMap<>();
+        Map<String, Integer> volumeUsersRemoved = new HashMap<>();
+        for (Object item : Json.array(df.get("Containers"))) {
+            Map<String, Object> container = Json.object(item);
+            String name = firstName(container);
+            Instant created = Instant.ofEpochSecond(Json.number(container.get("Created")));
+            // Pool entries are stopped on purpose; "devc pool --clear" removes them
+            if (isManaged(container) && !"running".equals(Json.string(container.get("State")))
+                    && !WarmPool.isPooled(name) && policy.oldEnough(created)) {
+                candidates.add(new Candidate(Kind.CONTAINER, Json.string(container.get("Id")), name,
+                    Math.max(0, Json.number(container.get("SizeRw"))), created));
+                imageUsersRemoved.merge(Json.string(container.get("ImageID")), 1, Integer::sum);
+                for (Object mount : Json.array(container.get("Mounts"))) {
+                    Map<String, Object> details = Json.object(mount);
+                    if ("volume".equals(Json.string(details.get("Type")))) {
+                        volumeUsersRemoved.merge(Json.string(details.get("Name")), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Object item : Json.array(df.get("Images"))) {
+            Map<String, Object> image = Json.object(item);
+            Map<String, Object> labels = Json.object(image.get("Labels"));
+            boolean devcImage = labels.containsKey(Fleet.MANAGED_LABEL) || labels.containsKey(BuildFingerprint.LABEL);
+            String tag = firstTag(image);
+            Instant created = Instant.ofEpochSecond(Json.number(image.get("Created")));
+            String id = Json.string(image.get("Id"));
+            long users = Json.number(image.get("Containers")) - imageUsersRemoved.getOrDefault(id, 0);
+            if (devcImage && users <= 0
+                    && (tag == null || policy.allImages()) && policy.oldEnough(created)) {
+                long unique = Json.number(image.get("Size")) - Math.max(0, Json.number(image.get("SharedSize")));
+                candidates.add(new Candidate(Kind.IMAGE, id, tag != null ? tag : shortId(id), Math.max(0, unique), created));
+            }
+        }
+        for (Object item : Json.array(df.get("Volumes"))) {
+            Map<String, Object> volume = Json.object(item);
+            Map<String, Object> usage = Json.object(volume.get("UsageData"));
+            Instant created = timestamp(volume.get("CreatedAt"));
+            String name = Json.string(volume.get("Name"));
+            long users = Json.number(usage.get("RefCount")) - volumeUsersRemoved.getOrDefault(name, 0);
+            if (isManaged(volume) && users <= 0 && policy.oldEnough(created)) {
+                candidates.add(new Candidate(Kind.VOLUME, name, name, Math.max(0, Json.number(usage.get("Size"))), created));
+            }
+        }
+        for (Object item : Json.array(df.get("BuildCache"))) {
+            Map<String, Object> record = Json.object(item);
+            Instant lastUsed = timestamp(record.get("LastUsedAt"));
+            if (!Boolean.TRUE.equals(record.get("InUse")) && policy.oldEnough(lastUsed != null ? lastUsed : timestamp(record.get("CreatedAt")))) {
+                String id = Json.string(record.get("ID"));
+                candidates.add(new Candidate(Kind.BUILD_CACHE, id, shortId(id),
+                    Boolean.TRUE.equals(record.get("Shared")) ? 0 : Math.max(0, Json.number(record.get("Size"))), lastUsed));
+            }
+        }
+        return new CleanupPlan(List.copyOf(candidates));
+    }
+
+    public List<Candidate> candidates(Kind kind) {
+        return candidates.stream().filter(candidate -> candidate.kind() == kind).toList();
+    }
+
+    /**
+     * Reclaimable bytes per kind, every kind present even when it has nothing to remove.
+     */
+    public Map<Kind, Long> reclaimable() {
+        Map<Kind, Long> totals = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            totals.put(kind, 0L);
+        }
+        candidates.forEach(candidate -> totals.merge(candidate.kind(), candidate.bytes(), Long::sum));
+        return totals;
+    }
+
+    /**
+     * Parses an age such as {@code 90m}, {@code 12h}, {@code 7d} or {@code 2w}.
+     */
+    public static Duration parseAge(String value) {
+        String text = value.strip().toLowerCase();
+        IllegalArgumentException invalid = new IllegalArgumentException("Invalid age '" + value + "'. Use a number and a unit: s, m, h, d or w (e.g. 7d).");
+        if (text.length() < 2) {
+            throw invalid;
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1));
+        } catch (NumberFormatException e) {
+            throw invalid;
+        }
+        if (amount < 0) {
+            throw invalid;
+        }
+        return switch (text.charAt(text.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            case 'd' -> Duration.ofDays(amount);
+            case 'w' -> Duration.ofDays(amount * 7);
+            default -> throw invalid;
+        };
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+
+    private static boolean isManaged(Map<String, Object> resource) {
+        return "true".equals(Json.string(Json.object(resource.get("Labels")).get(Fleet.MANAGED_LABEL)));
+    }
+
+    private static String firstName(Map<String, Object> container) {
+        List<Object> names = Json.array(container.get("Names"));
+        String name = names.isEmpty() ? "" : Json.string(names.get(0));
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    private static String firstTag(Map<String, Object> image) {
+        for (Object tag : Json.array(image.get("RepoTags"))) {
+            String value = Json.string(tag);
+            if (value != null && !value.equals("<none>:<none>")) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String shortId(String id) {
+        String bare = id.startsWith("sha256:") ? id.substring(7) : id;
+        return bare.length() > 12 ? bare.substring(0, 12) : bare;
+    }
+
+    private static Instant timestamp(Object value) {
+        String text = Json.string(value);
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.index.DirectoryIndex;
+import uk.laurencegouws.devc.index.DirectoryIndexer;
+import uk.laurencegouws.devc.index.WorkspacePaths;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 @Command(
     name = "cd",
@@ -10,11 +22,20 @@ import picocli.CommandLine.Parameters;
     mixinStandardHelpOptions = true, // Adds --help and --version options
     usageHelpAutoWidth = true
 )
-public class CdCommand implements Runnable {
+public class CdCommand implements Callable<Integer> {
+
+    @Inject
+    DirectoryIndexer indexer;
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
 
     @Parameters(
         paramLabel = "<path>",
-        description = "The path to set as the active workspace inside the container.",
+        description = "The directory to make active, absolute or relative to the active one.",
         defaultValue = "",
         arity = "0..1" // Makes the parameter optional
     )
@@ -27,34 +48,105 @@ public class CdCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
         }
 
         if (path == null || path.isBlank()) {
             System.err.println("Error: Path cannot be null or empty unless using --examples.");
             System.err.println("Use --help for usage details.");
-            return;
+            return 1;
         }
 
-        // Inform the user how to persist the workspace path
-        System.out.println("To set the active workspace path, run the following command in your shell:");
-        System.out.printf("export DEVC_WORKSPACE_PATH=%s%n", path);
+        if (selection.isFleet()) {
+            System.err.println("Error: 'cd' works on one container at a time.");
+            return 2;
+        }
+        String container = selection.single();
+        String target = WorkspacePaths.resolve(path);
+        String relative = WorkspacePaths.relativeToRoot(target);
+        if (relative == null) {
+            // Outside the workspace the index can't answer; ask the container once
+            if (!existsOutsideWorkspace(container, target)) {
+                return 1;
+            }
+        } else if (!existsInWorkspace(container, target, relative)) {
+            return 1;
+        }
+
+        // The hint would break `eval $(devc cd ...)`, so only a terminal gets it
+        if (Invocation.current().isInteractive()) {
+            System.out.println("To set the active workspace path, run the following command in your shell:");
+        }
+        System.out.printf("export DEVC_WORKSPACE_PATH=%s%n", shellQuote(target));
+        return 0;
+    }
+
+    /**
+     * Checks {@code relative} against the container's directory index. A hit is trusted even when
+     * the index is stale, which is then refreshed in the background (or, outside the daemon, before
+     * exiting); a miss is only final once the index has been refreshed.
+     */
+    private boolean existsInWorkspace(String container, String target, String relative) {
+        DirectoryIndex index = indexer.open(container);
+        if (index != null && index.contains(relative)) {
+            if (indexer.isStale(index)) {
+                CompletableFuture<DirectoryIndex> refresh = indexer.refreshInBackground(container);
+                if (!Invocation.current().isRemote()) {
+                    refresh.exceptionally(e -> null).join();
+                }
+            }
+            return true;
+        }
+        try {
+            index = indexer.refresh(container);
+        } catch (IOException e) {
+            System.err.printf("Warning: Could not check '%s' in container '%s'. %s%n", target, container, e.getMessage());
+            return true;
+        }
+        if (index != null && index.contains(relative)) {
+            return true;
+        }
+        System.err.printf("Error: No such directory in container '%s': %s%n", container, target);
+        return false;
+    }
+
+    private boolean existsOutsideWorkspace(String container, String target) {
+        try {
+            int exitCode = DockerBackend.await(docker.exec(container, List.of("test", "-d", target)));
+            if (exitCode == 0) {
+                return true;
+            }
+            System.err.printf("Error: No such directory in container '%s': %s%n", container, target);
+            return false;
+        } catch (IOException e) {
+            System.err.printf("Warning: Could not check '%s' in container '%s'. %s%n", target, container, e.getMessage());
+            return true;
+        }
+    }
+
+    private static String shellQuote(String value) {
+        if (value.matches("[A-Za-z0-9_./@%+=:,-]+")) {
+            return value;
+        }
+        return "'" + value.replace("'", "'\\''") + "'";
     }
 
     private void printExamples() {
         System.out.println("Examples:");
         System.out.println();
-        System.out.println("  1. Change to a subdirectory inside the container workspace:");
+        System.out.println("  1. Change to a subdirectory of the active workspace directory:");
         System.out.println("     devc cd subdirectory");
         System.out.println();
         System.out.println("  2. Change to the root workspace directory:");
         System.out.println("     devc cd /home/developer/workspace");
         System.out.println();
+        System.out.println("  3. Go up one level in a named environment:");
+        System.out.println("     devc cd --name api-dev ..");
+        System.out.println();
         System.out.println("After running 'cd', persist the workspace path by executing:");
         System.out.println("  eval $(devc cd <path>)");
     }
 }
-
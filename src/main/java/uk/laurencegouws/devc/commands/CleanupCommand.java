@@ -1,20 +1,37 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.cleanup.CleanupPlan;
+import uk.laurencegouws.devc.cleanup.CleanupPlan.Candidate;
+import uk.laurencegouws.devc.cleanup.CleanupPlan.Kind;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.fleet.Fleet;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
 
 @Command(
     name = "cleanup",
-    description = "Clean up unused containers, images, networks, and optionally volumes.",
+    description = "Remove stopped devc containers and unused devc images, volumes and build cache.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class CleanupCommand implements Runnable {
+public class CleanupCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
 
     @Option(
         names = {"--all", "-a"},
-        description = "Remove all unused containers, networks, and images (not just dangling ones)."
+        description = "Remove unused tagged images as well as dangling ones."
     )
     private boolean all;
 
@@ -24,6 +41,38 @@ public class CleanupCommand implements Runnable {
     )
     private boolean volumes;
 
+    @Option(
+        names = {"--build-cache"},
+        description = "Also prune unused build cache. Build cache records carry no labels, so this covers every build on the host."
+    )
+    private boolean buildCache;
+
+    @Option(
+        names = {"--older-than"},
+        paramLabel = "<age>",
+        description = "Only remove resources older than this age (build cache: unused for this long), e.g. 12h, 7d, 2w."
+    )
+    private String olderThan;
+
+    @Option(
+        names = {"--dry-run"},
+        description = "Show what would be removed and how much space it would free, without removing anything."
+    )
+    private boolean dryRun;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        description = "Maximum number of concurrent removals. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--global"},
+        description = "Prune unused resources across the whole Docker host, not just those devc created."
+    )
+    private boolean global;
+
     @Option(
         names = {"--force", "-f"},
         description = "Skip the confirmation prompt."
@@ -37,64 +86,224 @@ public class CleanupCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
+        }
+        if (global) {
+            if (dryRun || olderThan != null) {
+                System.err.println("Error: --dry-run and --older-than apply to devc-scoped cleanup only, not --global.");
+                return 2;
+            }
+            return pruneGlobally();
+        }
+
+        Duration age = null;
+        if (olderThan != null) {
+            try {
+                age = CleanupPlan.parseAge(olderThan);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                return 2;
+            }
+        }
+
+        CleanupPlan plan;
+        try {
+            plan = CleanupPlan.from(DockerBackend.await(docker.systemDf()),
+                new CleanupPlan.Policy(age, all, Instant.now()));
+        } catch (IOException e) {
+            System.err.println("Error: Failed to read Docker disk usage. " + e.getMessage());
+            System.err.println("Use 'devc cleanup --global' to prune the whole host instead.");
+            return 1;
+        }
+
+        if (dryRun) {
+            printPlan(plan);
+            return 0;
+        }
+        List<Kind> kinds = selectedKinds();
+        if (kinds.stream().allMatch(kind -> plan.candidates(kind).isEmpty())) {
+            System.out.println("Nothing to clean up.");
+            return 0;
+        }
+
+        if (!force) {
+            printSummary(plan);
+            System.out.println("Do you want to remove these resources? [y/N]");
+            if (!confirmed()) {
+                System.out.println("Cleanup operation cancelled.");
+                return 0;
+            }
+        }
+
+        // Containers first: the plan counts images and volumes only they use as unused
+        Fleet fleet = new Fleet(jobs);
+        long start = System.nanoTime();
+        long reclaimed = 0;
+        int removed = 0;
+        int attempted = 0;
+        List<Fleet.Outcome> failures = new ArrayList<>();
+        for (Kind kind : kinds) {
+            if (kind == Kind.BUILD_CACHE) {
+                continue;
+            }
+            Map<String, Candidate> byName = new HashMap<>();
+            plan.candidates(kind).forEach(candidate -> byName.put(candidate.name(), candidate));
+            if (byName.isEmpty()) {
+                continue;
+            }
+            System.out.printf("Removing %d %s...%n", byName.size(), kind.plural());
+            List<Fleet.Outcome> outcomes = fleet.run(List.copyOf(byName.keySet()), name -> remove(byName.get(name)), System.out);
+            for (Fleet.Outcome outcome : outcomes) {
+                attempted++;
+                if (outcome.succeeded()) {
+                    removed++;
+                    reclaimed += byName.get(outcome.container()).bytes();
+                } else {
+                    failures.add(outcome);
+                }
+            }
+        }
+        if (buildCache) {
+            System.out.println("Pruning build cache...");
+            try {
+                long freed = DockerBackend.await(docker.pruneBuildCache(age == null ? null : age.toSeconds() + "s"));
+                reclaimed += freed >= 0 ? freed : plan.reclaimable().get(Kind.BUILD_CACHE);
+            } catch (IOException e) {
+                failures.add(new Fleet.Outcome("build cache", 0, e));
+            }
         }
 
-        // Construct the Docker command
-        StringBuilder command = new StringBuilder("docker system prune -f");
-        if (all) {
-            command.append(" --all");
+        System.out.printf("Removed %d of %d resource(s) in %.2fs, reclaimed about %s.%n",
+            removed, attempted, (System.nanoTime() - start) / 1e9, CleanupPlan.formatBytes(reclaimed));
+        if (failures.isEmpty()) {
+            return 0;
         }
+        System.err.printf("Error: %d removal(s) failed:%n", failures.size());
+        for (Fleet.Outcome failure : failures) {
+            System.err.printf("  %s: %s%n", failure.container(), failure.error().getMessage());
+        }
+        return 1;
+    }
+
+    /**
+     * Kinds this run removes, in removal order. Volumes and build cache are reported either way.
+     */
+    private List<Kind> selectedKinds() {
+        List<Kind> kinds = new ArrayList<>(List.of(Kind.CONTAINER, Kind.IMAGE));
         if (volumes) {
-            command.append(" --volumes");
+            kinds.add(Kind.VOLUME);
+        }
+        if (buildCache) {
+            kinds.add(Kind.BUILD_CACHE);
+        }
+        return kinds;
+    }
+
+    private void remove(Candidate candidate) throws IOException {
+        switch (candidate.kind()) {
+            case CONTAINER -> DockerBackend.await(docker.removeContainer(candidate.id(), false));
+            case IMAGE -> DockerBackend.await(docker.removeImage(candidate.id()));
+            case VOLUME -> DockerBackend.await(docker.removeVolume(candidate.id()));
+            case BUILD_CACHE -> throw new IllegalStateException("Build cache is pruned, not removed record by record");
+        }
+    }
+
+    private void printPlan(CleanupPlan plan) {
+        for (Kind kind : List.of(Kind.CONTAINER, Kind.IMAGE, Kind.VOLUME)) {
+            for (Candidate candidate : plan.candidates(kind)) {
+                System.out.printf("  %-10s %-40s %10s  %s%n", kind.plural(), candidate.name(),
+                    CleanupPlan.formatBytes(candidate.bytes()), age(candidate.created()));
+            }
+        }
+        printSummary(plan);
+        System.out.println("Dry run: nothing was removed.");
+    }
+
+    private void printSummary(CleanupPlan plan) {
+        Map<Kind, Long> reclaimable = plan.reclaimable();
+        List<Kind> kinds = selectedKinds();
+        System.out.printf("%-12s %6s %12s%n", "TYPE", "COUNT", "RECLAIMABLE");
+        long total = 0;
+        for (Kind kind : Kind.values()) {
+            String note = "";
+            if (kind == Kind.VOLUME && !volumes) {
+                note = "  (add --volumes)";
+            } else if (kind == Kind.BUILD_CACHE) {
+                note = buildCache ? "  (host-wide)" : "  (host-wide, add --build-cache)";
+            }
+            if (kinds.contains(kind)) {
+                total += reclaimable.get(kind);
+            }
+            System.out.printf("%-12s %6d %12s%s%n", kind.plural(), plan.candidates(kind).size(),
+                CleanupPlan.formatBytes(reclaimable.get(kind)), note);
         }
+        System.out.printf("%-12s %6s %12s%n", "total", "", CleanupPlan.formatBytes(total));
+    }
 
+    private static String age(Instant created) {
+        if (created == null) {
+            return "";
+        }
+        Duration age = Duration.between(created, Instant.now());
+        if (age.toDays() > 0) {
+            return age.toDays() + "d old";
+        }
+        if (age.toHours() > 0) {
+            return age.toHours() + "h old";
+        }
+        return Math.max(0, age.toMinutes()) + "m old";
+    }
+
+    private int pruneGlobally() {
         // Confirm cleanup unless forced
         if (!force) {
-            System.out.println("Warning: This action will remove unused containers, images, networks, and optionally volumes.");
+            System.out.println("Warning: This action will remove unused containers, images, networks, and optionally volumes"
+                + " across the whole Docker host, not just those devc created.");
             System.out.println("Do you want to proceed? [y/N]");
-            Scanner scanner = new Scanner(System.in);
-            String input = scanner.nextLine().trim().toLowerCase();
-            if (!input.equals("y")) {
+            if (!confirmed()) {
                 System.out.println("Cleanup operation cancelled.");
-                return;
+                return 0;
             }
         }
 
-        // Execute the Docker cleanup command
-        executeDockerCommand(command.toString().split(" "));
-    }
-
-    private void executeDockerCommand(String... command) {
+        // Prune through the Docker engine (or the CLI fallback)
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                System.err.println("Error: Failed to clean up Docker resources.");
-            } else {
-                System.out.println("Cleanup completed successfully.");
+            long reclaimed = DockerBackend.await(docker.prune(all, volumes));
+            if (reclaimed >= 0) {
+                System.out.printf("Total reclaimed space: %.1f MB%n", reclaimed / (1024.0 * 1024.0));
             }
-        } catch (Exception e) {
-            System.err.println("Error executing Docker command: " + e.getMessage());
+            System.out.println("Cleanup completed successfully.");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Failed to clean up Docker resources. " + e.getMessage());
+            return 1;
         }
     }
 
+    private static boolean confirmed() {
+        Scanner scanner = new Scanner(System.in);
+        return scanner.hasNextLine() && scanner.nextLine().trim().equalsIgnoreCase("y");
+    }
+
     private void printExamples() {
         System.out.println("Examples:");
         System.out.println();
-        System.out.println("  1. Clean up dangling images, containers, and networks:");
+        System.out.println("  1. See what devc cleanup would remove and how much space it would free:");
+        System.out.println("     devc cleanup --dry-run");
+        System.out.println();
+        System.out.println("  2. Remove stopped devc containers and dangling devc images:");
         System.out.println("     devc cleanup");
         System.out.println();
-        System.out.println("  2. Clean up all unused resources, including volumes:");
-        System.out.println("     devc cleanup --all --volumes");
+        System.out.println("  3. Remove devc resources older than a week, including volumes and tagged images:");
+        System.out.println("     devc cleanup --older-than 7d --all --volumes");
         System.out.println();
-        System.out.println("  3. Force cleanup without confirmation:");
-        System.out.println("     devc cleanup --force");
+        System.out.println("  4. Also prune build cache unused for a day, without confirmation:");
+        System.out.println("     devc cleanup --build-cache --older-than 24h --force");
+        System.out.println();
+        System.out.println("  5. Prune unused resources across the whole Docker host:");
+        System.out.println("     devc cleanup --global --all --volumes");
     }
 }
-
@@ -1,29 +1,88 @@
 package uk.laurencegouws.devc.commands;
 
 import picocli.CommandLine.Command;
-import picocli.AutoComplete;
-import uk.laurencegouws.devc.DevcCommand;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
 
-@Command(name = "completion", description = "Generate bash/zsh completion script for all devc commands and arguments.")
-public class CompletionCommand implements Runnable {
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+/**
+ * Prints the completion script generated from the command model at build time (see the
+ * {@code generate-completion} execution in the pom), followed by the hooks that complete
+ * container names, workspace directories and snapshot names through {@code devc __complete}.
+ * The same script serves zsh through its bash completion emulation.
+ */
+@Command(
+    name = "completion",
+    description = "Print the bash or zsh completion script for all devc commands and arguments.",
+    mixinStandardHelpOptions = true, // Adds --help and --version options
+    usageHelpAutoWidth = true
+)
+public class CompletionCommand implements Callable<Integer> {
+
+    private static final String GENERATED_SCRIPT = "/devc_completion";
+    private static final String DYNAMIC_SCRIPT = "/completion/dynamic.bash";
+
+    @Parameters(
+        paramLabel = "<shell>",
+        description = "bash or zsh. Default: bash",
+        defaultValue = "bash",
+        arity = "0..1"
+    )
+    private String shell;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'completion' command."
+    )
+    private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+
+        if (!shell.equals("bash") && !shell.equals("zsh")) {
+            System.err.printf("Error: Unsupported shell '%s'. Use 'bash' or 'zsh'.%n", shell);
+            return 2;
+        }
         try {
-            // Generate the completion script dynamically
-            String scriptName = "devc_completion";
-
-            AutoComplete.main(new String[] {
-                "--name=devc",                        // Name for the script
-                "--force",                              // Overwrite the existing script
-                DevcCommand.class.getCanonicalName()  // Main command class
-            });
-
-            System.out.printf("Generated completion script: %s%n", scriptName);
-            System.out.println("Source it using: source " + scriptName);
-        } catch (Exception e) {
-            System.err.printf("Error generating completion script: %s%n", e.getMessage());
-            e.printStackTrace();
+            String generated = readResource(GENERATED_SCRIPT);
+            String dynamic = readResource(DYNAMIC_SCRIPT);
+            System.out.print(generated);
+            System.out.print(dynamic);
+            System.out.flush();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = CompletionCommand.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("The completion script " + name + " is missing from this build.");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
         }
     }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Enable completion in the current bash session:");
+        System.out.println("     source <(devc completion bash)");
+        System.out.println();
+        System.out.println("  2. Enable completion for every zsh session:");
+        System.out.println("     echo 'source <(devc completion zsh)' >> ~/.zshrc");
+        System.out.println();
+        System.out.println("  3. Install the script for bash-completion to load on demand:");
+        System.out.println("     devc completion bash > ~/.local/share/bash-completion/completions/devc");
+    }
 }
@@ -0,0 +1,114 @@
+package uk.laurencegouws.devc.commands;
+
+import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Options choosing which containers a command acts on: explicit names, every devc container,
+ * or the devc containers matching a label selector. Shared by the lifecycle commands and exec.
+ */
+public class ContainerSelection {
+
+    @Option(
+        names = {"--name", "-n"},
+        paramLabel = "<name>",
+        description = "Container to act on (repeatable). Default: $DEVC_CONTAINER or devc-container"
+    )
+    List<String> names = new ArrayList<>();
+
+    @Option(
+        names = {"--all", "-a"},
+        description = "Act on every container started by devc."
+    )
+    boolean all;
+
+    @Option(
+        names = {"--selector", "-l"},
+        paramLabel = "<key[=value]>",
+        description = "Act on the devc containers carrying this label (repeatable; all must match)."
+    )
+    List<String> selectors = new ArrayList<>();
+
+    /**
+     * Whether more than one container may be selected.
+     */
+    public boolean isFleet() {
+        return all || !selectors.isEmpty() || names.size() > 1;
+    }
+
+    /**
+     * Whether containers are chosen by label rather than only by name.
+     */
+    public boolean usesLabels() {
+        return all || !selectors.isEmpty();
+    }
+
+    /**
+     * The explicitly named containers, or the default one when no names, {@code --all} or
+     * selectors were given.
+     */
+    public List<String> named() {
+        if (!names.isEmpty()) {
+            return List.copyOf(new LinkedHashSet<>(names));
+        }
+        return usesLabels() ? List.of() : List.of(defaultName());
+    }
+
+    /**
+     * The single container for commands that act on one.
+     */
+    public String single() {
+        return names.isEmpty() ? defaultName() : names.get(0);
+    }
+
+    /**
+     * Label filters for the selected devc containers.
+     */
+    public List<String> labelFilters() {
+        List<String> filters = new ArrayList<>();
+        filters.add(Fleet.MANAGED_LABEL + "=true");
+        filters.addAll(selectors);
+        return filters;
+    }
+
+    /**
+     * Names of the containers matched by {@code --all} or the selectors, in listing order.
+     * Unclaimed warm pool entries are never selected.
+     */
+    public List<String> selected(DockerBackend docker, boolean includeStopped) throws IOException {
+        if (!usesLabels()) {
+            return List.of();
+        }
+        List<String> selected = new ArrayList<>();
+        for (ContainerSummary container : DockerBackend.await(docker.listContainers(null, labelFilters(), includeStopped))) {
+            if (!WarmPool.isPooled(container.name())) {
+                selected.add(container.name());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Named containers followed by those matched by label, without duplicates.
+     */
+    public List<String> resolve(DockerBackend docker, boolean includeStopped) throws IOException {
+        Set<String> containers = new LinkedHashSet<>(named());
+        containers.addAll(selected(docker, includeStopped));
+        return List.copyOf(containers);
+    }
+
+    static String defaultName() {
+        String name = Invocation.current().env(Fleet.NAME_ENV);
+        return name == null || name.isBlank() ? Fleet.DEFAULT_NAME : name;
+    }
+}
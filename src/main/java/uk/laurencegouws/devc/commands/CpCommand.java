@@ -0,0 +1,158 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.transfer.ArchiveCopy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "cp",
+    description = "Copy files between the host and a container. Prefix the container side with "
+        + "'<container>:' or just ':' for the selected container.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class CpCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Parameters(
+        index = "0",
+        paramLabel = "<source>",
+        description = "File or directory to copy: a host path, or [<container>]:<path>."
+    )
+    private String source;
+
+    @Parameters(
+        index = "1",
+        paramLabel = "<destination>",
+        description = "Where to copy it: a host path, or [<container>]:<path>. Relative container paths "
+            + "start at the active workspace."
+    )
+    private String destination;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "Maximum parallel tar streams for large trees. Default: 4",
+        defaultValue = "4"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--resume"},
+        description = "Skip files that already exist on the other side with the same size and modification time."
+    )
+    private boolean resume;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'cp' command."
+    )
+    private boolean showExamples;
+
+    /**
+     * One side of the copy: {@code container} is null for a host path.
+     */
+    record Location(String container, String path) {
+
+        boolean isRemote() {
+            return container != null;
+        }
+    }
+
+    @Override
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+        if (selection.isFleet()) {
+            System.err.println("Error: 'cp' works on one container at a time.");
+            return 2;
+        }
+
+        Location from = parse(source);
+        Location to = parse(destination);
+        if (from.isRemote() == to.isRemote()) {
+            System.err.println("Error: Exactly one of <source> and <destination> must be in a container, e.g. ':data' or 'devc-container:/tmp'.");
+            return 2;
+        }
+
+        ArchiveCopy copy = new ArchiveCopy(docker, jobs, resume);
+        try {
+            ArchiveCopy.Result result;
+            if (to.isRemote()) {
+                result = copy.upload(Invocation.current().resolve(from.path()), to.container(), to.path());
+                System.out.printf("Copied %s to %s:%s: %s%n", from.path(), to.container(), to.path(), result.describe());
+            } else {
+                boolean into = to.path().endsWith("/") || to.path().endsWith(File.separator);
+                result = copy.download(from.container(), from.path(), Invocation.current().resolve(to.path()), into);
+                System.out.printf("Copied %s:%s to %s: %s%n", from.container(), from.path(), to.path(), result.describe());
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Copy failed. " + e.getMessage());
+            if (!resume) {
+                System.err.println("Run the same command with --resume to continue where it stopped.");
+            }
+            return 1;
+        }
+    }
+
+    /**
+     * Splits {@code container:path}. A leading ':' means the selected container; a single letter
+     * before the colon followed by a separator is a Windows drive, not a container.
+     */
+    Location parse(String argument) {
+        int colon = argument.indexOf(':');
+        if (colon < 0) {
+            return new Location(null, argument);
+        }
+        String prefix = argument.substring(0, colon);
+        if (prefix.contains("/") || prefix.contains("\\")
+                || (prefix.length() == 1 && argument.length() > 2 && (argument.charAt(2) == '\\' || argument.charAt(2) == '/'))) {
+            return new Location(null, argument);
+        }
+        String container = prefix.isEmpty() ? selection.single() : prefix;
+        String path = argument.substring(colon + 1);
+        if (!path.startsWith("/")) {
+            String workspace = Invocation.current().env("DEVC_WORKSPACE_PATH");
+            if (workspace == null || workspace.isBlank()) {
+                workspace = "/home/developer/workspace";
+            }
+            path = path.isEmpty() || path.equals(".") ? workspace : workspace + "/" + path;
+        }
+        return new Location(container, path);
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Copy a dataset into the workspace of the default container:");
+        System.out.println("     devc cp ./data :data");
+        System.out.println();
+        System.out.println("  2. Copy build output out of a named environment:");
+        System.out.println("     devc cp api-dev:target/app.jar ./app.jar");
+        System.out.println();
+        System.out.println("  3. Use eight parallel streams for a large tree:");
+        System.out.println("     devc cp -j 8 ./datasets :/tmp/datasets");
+        System.out.println();
+        System.out.println("  4. Continue a copy that was interrupted:");
+        System.out.println("     devc cp --resume ./datasets :/tmp/datasets");
+        System.out.println();
+        System.out.println("  5. View help for the 'cp' command:");
+        System.out.println("     devc cp --help");
+    }
+}
@@ -0,0 +1,87 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.daemon.DaemonServer;
+
+import java.io.IOException;
+
+@Command(
+    name = "daemon",
+    description = "Run a resident devc process that other devc invocations forward to.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class DaemonCommand implements Runnable {
+
+    @Inject
+    DaemonServer server;
+
+    @Option(
+        names = {"--status", "-s"},
+        description = "Check whether a daemon is running."
+    )
+    private boolean status;
+
+    @Option(
+        names = {"--stop"},
+        description = "Stop the running daemon."
+    )
+    private boolean stop;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'daemon' command."
+    )
+    private boolean showExamples;
+
+    @Override
+    public void run() {
+        if (showExamples) {
+            printExamples();
+            return;
+        }
+
+        if (status) {
+            if (DaemonServer.isRunning()) {
+                System.out.printf("devc daemon is running on %s%n", DaemonServer.socketPath());
+            } else {
+                System.out.println("devc daemon is not running.");
+            }
+            return;
+        }
+
+        if (stop) {
+            if (DaemonServer.requestShutdown()) {
+                System.out.println("devc daemon stopped.");
+            } else {
+                System.err.println("Error: No devc daemon is running.");
+            }
+            return;
+        }
+
+        System.out.printf("Starting devc daemon on %s%n", DaemonServer.socketPath());
+        try {
+            server.serve();
+            System.out.println("devc daemon stopped.");
+        } catch (IOException e) {
+            System.err.println("Error: Failed to run the devc daemon. " + e.getMessage());
+        }
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Start the daemon in the background:");
+        System.out.println("     devc daemon &");
+        System.out.println();
+        System.out.println("  2. Check whether the daemon is running:");
+        System.out.println("     devc daemon --status");
+        System.out.println();
+        System.out.println("  3. Stop the daemon:");
+        System.out.println("     devc daemon --stop");
+        System.out.println();
+        System.out.println("Note: While the daemon runs, other devc commands are forwarded to it automatically.");
+        System.out.println("      Set DEVC_DAEMON=false to run a command in-process instead.");
+    }
+}
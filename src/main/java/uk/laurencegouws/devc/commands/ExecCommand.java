@@ -1,24 +1,91 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+import uk.laurencegouws.devc.exec.ParallelExec;
+import uk.laurencegouws.devc.session.ShellSessions;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @Command(
     name = "exec",
     description = "Execute a command inside the Docker container.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class ExecCommand implements Runnable {
+public class ExecCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    ShellSessions sessions;
 
     @Parameters(
         paramLabel = "<command>",
-        description = "The command to execute inside the container.",
-        defaultValue = "",
-        arity = "0..1" // Makes the parameter optional
+        description = "The command to execute inside the container. With --parallel, any number of commands.",
+        arity = "0..*" // Makes the parameter optional
     )
+    private List<String> commands = new ArrayList<>();
+
     private String command;
 
+    @Option(
+        names = {"--parallel", "-p"},
+        description = "Run several commands concurrently, with prefixed output and a summary."
+    )
+    private boolean parallel;
+
+    @Option(
+        names = {"--commands-file", "-f"},
+        paramLabel = "<file>",
+        description = "With --parallel, read commands from a file, one per line ('-' for stdin)."
+    )
+    private String commandsFile;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--spread"},
+        description = "With --parallel and several containers, give each command to one container in turn instead of running every command on every container."
+    )
+    private boolean spread;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "With --parallel, the maximum number of commands running at once. Default: 4",
+        defaultValue = "4"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--session", "-s"},
+        description = "Run in a warm shell kept by 'devc daemon' instead of a new bash per command. "
+            + "Also enabled by DEVC_EXEC_SESSION=true."
+    )
+    private boolean session;
+
+    @Option(
+        names = {"--no-tty", "-T"},
+        description = "Never allocate a TTY, even when attached to a terminal (the default when stdin or stdout is redirected)."
+    )
+    private boolean noTty;
+
     @Option(
         names = {"--examples", "-e"},
         description = "Show examples of using the 'exec' command."
@@ -26,45 +93,145 @@ public class ExecCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
+        }
+
+        // Get DEVC_WORKSPACE_PATH from the environment
+        String workspacePath = Invocation.current().env("DEVC_WORKSPACE_PATH");
+        if (workspacePath == null || workspacePath.isBlank()) {
+            workspacePath = "/home/developer/workspace";
         }
 
-        if (command == null || command.isBlank()) {
+        if (parallel) {
+            return executeParallel(workspacePath);
+        }
+        if (selection.isFleet()) {
+            System.err.println("Error: Use --parallel to run on several containers.");
+            return 1;
+        }
+
+        if (commands.size() > 1) {
+            System.err.println("Error: Quote the command as a single argument, or use --parallel to run several.");
+            return 1;
+        }
+        command = commands.isEmpty() ? "" : commands.get(0);
+        if (command.isBlank()) {
             System.err.println("Error: No command provided to execute.");
             System.err.println("Use --help for usage details.");
-            return;
+            return 1;
         }
 
-        // Get DEVC_WORKSPACE_PATH from the environment
-        String workspacePath = System.getenv("DEVC_WORKSPACE_PATH");
-        if (workspacePath == null || workspacePath.isBlank()) {
-            workspacePath = "/home/developer/workspace";
+        // Status lines only for a terminal; under pipes stdout carries nothing but the command's output
+        boolean tty = Invocation.current().isInteractive() && !noTty;
+        if (tty) {
+            System.out.printf("Executing command in workspace: %s%n", workspacePath);
         }
 
-        System.out.printf("Executing command in workspace: %s%n", workspacePath);
+        if (session || "true".equalsIgnoreCase(Invocation.current().env("DEVC_EXEC_SESSION"))) {
+            return executeInSession(workspacePath, tty);
+        }
 
         // Prefix the command with `cd` to the workspace
         String fullCommand = String.format("cd %s && %s", workspacePath, command);
 
-        executeDockerCommand("docker", "exec", "-it", "devc-container", "bash", "-c", fullCommand);
-    }
+        if (!tty) {
+            return executeAttached(fullCommand);
+        }
 
-    private void executeDockerCommand(String... command) {
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
+            int exitCode = DockerBackend.await(docker.exec(selection.single(), List.of("bash", "-c", fullCommand)));
             if (exitCode != 0) {
                 System.err.println("Error: Failed to execute the command inside the Docker container.");
             } else {
                 System.out.println("Command executed successfully.");
             }
-        } catch (Exception e) {
+            return exitCode;
+        } catch (IOException e) {
+            System.err.println("Error executing Docker command: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Runs without a TTY, streaming stdin, stdout and stderr byte for byte, so devc exec works
+     * in pipelines, scripts and cron and can carry binary data such as tar streams.
+     */
+    private int executeAttached(String fullCommand) {
+        try (ExecProcess process = DockerBackend.await(docker.openExec(selection.single(), List.of("bash", "-c", fullCommand)))) {
+            System.out.flush();
+            System.err.flush();
+            // Plain exec always runs in-process (never in the daemon), so the real descriptors are used
+            // directly and output never passes through PrintStream buffers
+            return process.relay(
+                new FileInputStream(FileDescriptor.in).getChannel(),
+                new FileOutputStream(FileDescriptor.out).getChannel(),
+                new FileOutputStream(FileDescriptor.err).getChannel());
+        } catch (IOException e) {
             System.err.println("Error executing Docker command: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private int executeParallel(String workspacePath) {
+        List<String> batch = new ArrayList<>(commands);
+        if (commandsFile != null) {
+            try {
+                List<String> lines = commandsFile.equals("-")
+                    ? new String(System.in.readAllBytes(), StandardCharsets.UTF_8).lines().toList()
+                    : Files.readAllLines(Invocation.current().resolve(commandsFile));
+                lines.stream()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .forEach(batch::add);
+            } catch (IOException e) {
+                System.err.println("Error: Failed to read commands file. " + e.getMessage());
+                return 1;
+            }
+        }
+        if (batch.isEmpty()) {
+            System.err.println("Error: No commands provided to execute.");
+            System.err.println("Use --help for usage details.");
+            return 1;
+        }
+        if (session) {
+            System.err.println("Error: --session can't be combined with --parallel; a session runs one command at a time.");
+            return 1;
+        }
+
+        List<String> containers;
+        try {
+            containers = selection.resolve(docker, false);
+        } catch (IOException e) {
+            System.err.println("Error: Could not list the devc containers. Ensure Docker is running. " + e.getMessage());
+            return 1;
+        }
+        if (containers.isEmpty()) {
+            System.err.println("Error: No running devc containers match the selection.");
+            return 1;
+        }
+
+        List<ParallelExec.Task> tasks = ParallelExec.plan(batch, containers, spread);
+        long start = System.nanoTime();
+        List<ParallelExec.Result> results = new ParallelExec(docker, jobs)
+            .run(tasks, workspacePath, System.out, System.err);
+        System.out.flush();
+        // Summary on stderr so stdout carries only the commands' output
+        return ParallelExec.summarize(results, System.nanoTime() - start, System.err);
+    }
+
+    private int executeInSession(String workspacePath, boolean tty) {
+        try {
+            int exitCode = sessions.run(selection.single(), workspacePath, command, System.out, System.err);
+            if (exitCode != 0 && tty) {
+                System.err.printf("Error: Command exited with code %d.%n", exitCode);
+            }
+            return exitCode;
+        } catch (IOException e) {
+            System.err.println("Error executing command in shell session: " + e.getMessage());
+            return 1;
         }
     }
 
@@ -72,11 +239,23 @@ public class ExecCommand implements Runnable {
         System.out.println("Examples:");
         System.out.println();
         System.out.println("  1. Execute a shell command inside the container:");
-        System.out.println("     devc exec ls -la");
+        System.out.println("     devc exec -- ls -la");
         System.out.println();
         System.out.println("  2. Start an interactive Bash session:");
         System.out.println("     devc exec bash");
         System.out.println();
+        System.out.println("  3. Run a command in the warm shell kept by 'devc daemon' (no new bash per call):");
+        System.out.println("     devc exec --session \"make test\"");
+        System.out.println();
+        System.out.println("  4. Stream data through the container without a TTY (detected automatically):");
+        System.out.println("     tar c src | devc exec 'tar x -C /tmp'");
+        System.out.println();
+        System.out.println("  5. Run test shards concurrently, at most two at a time:");
+        System.out.println("     devc exec --parallel -j 2 'make test SHARD=1' 'make test SHARD=2' 'make test SHARD=3'");
+        System.out.println();
+        System.out.println("  6. Spread the commands in a file across several containers:");
+        System.out.println("     devc exec --parallel --spread -n dev-a -n dev-b -f shards.txt");
+        System.out.println();
         System.out.println("Note: The current workspace path is determined by the DEVC_WORKSPACE_PATH environment variable.");
         System.out.println("      To set the workspace path, use `devc cd <path>`.");
     }
@@ -1,13 +1,28 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.build.BaseImages;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.build.BuildFingerprint;
+import uk.laurencegouws.devc.build.BuildProfile;
+import uk.laurencegouws.devc.build.Dockerfile;
+import uk.laurencegouws.devc.build.DockerfileAnalyzer;
+import uk.laurencegouws.devc.build.FileHashCache;
+import uk.laurencegouws.devc.build.ImagePrefetch;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+import uk.laurencegouws.devc.fleet.Fleet;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 @Command(
     name = "init",
@@ -16,6 +31,12 @@ import java.util.Scanner;
 )
 public class InitCommand implements Runnable {
 
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    ImagePrefetch prefetch;
+
     @Option(
         names = {"-f", "--file"},
         description = "Specify the location of the Dockerfile. Default: ./Dockerfile",
@@ -35,12 +56,46 @@ public class InitCommand implements Runnable {
     )
     private boolean force;
 
+    @Option(
+        names = {"-m", "--mount"},
+        description = "Workspace directory mounted by 'devc start'; always left out of the build context. Default: ./volumes/workspace",
+        defaultValue = "./volumes/workspace"
+    )
+    private String mountPath;
+
+    @Option(
+        names = {"-r", "--rebuild"},
+        description = "Build the image even if the Dockerfile and copied files are unchanged."
+    )
+    private boolean rebuild;
+
+    @Option(
+        names = {"--no-prefetch"},
+        description = "Leave pulling base images to the build instead of fetching them all at once beforehand."
+    )
+    private boolean noPrefetch;
+
+    @Option(
+        names = {"--profile"},
+        paramLabel = "<file>",
+        description = "Also write the build's per-step profile (duration, cache hit, bytes) as JSON to this file."
+    )
+    private String profilePath;
+
+    @Option(
+        names = {"--analyze"},
+        description = "Report steps in the Dockerfile that defeat the build cache, with what each costs, instead of building."
+    )
+    private boolean analyze;
+
     @Option(
         names = {"-e", "--examples"},
         description = "Show examples of using the 'init' command."
     )
     private boolean showExamples;
 
+    private long prefetchStart;
+
     @Override
     public void run() {
         if (showExamples) {
@@ -53,6 +108,11 @@ public class InitCommand implements Runnable {
             return;
         }
 
+        if (analyze) {
+            analyzeDockerfile();
+            return;
+        }
+
         buildDockerImage();
     }
 
@@ -64,12 +124,193 @@ public class InitCommand implements Runnable {
             return;
         }
 
+        Path context = Path.of(".");
+        FileHashCache hashCache = new FileHashCache(FileHashCache.defaultLocation("file-hashes.tsv"));
+        Dockerfile parsed;
+        BuildFingerprint fingerprint;
+        try {
+            parsed = Dockerfile.read(dockerfile.toPath());
+            fingerprint = BuildFingerprint.compute(parsed, context, hashCache);
+        } catch (IOException e) {
+            System.err.println("Error: Failed to read build inputs. " + e.getMessage());
+            return;
+        } finally {
+            hashCache.save();
+        }
+
+        if (!rebuild && isUpToDate(fingerprint)) {
+            System.out.printf("Docker image is up to date (Dockerfile and %d copied file(s) unchanged). "
+                + "Use --rebuild to build anyway.%n", fingerprint.fileCount());
+            return;
+        }
+
+        if (!noPrefetch) {
+            prefetchBaseImages(parsed);
+        }
+
         System.out.printf("Building Docker image using Dockerfile at: %s%n", dockerfilePath);
 
+        BuildContext buildContext;
         try {
-            executeDockerCommand("docker", "build", "-t", "devc-container", "-f", dockerfilePath, ".");
-        } catch (Exception e) {
+            buildContext = BuildContext.scan(context, dockerfile.toPath(), List.of(Path.of(mountPath)));
+        } catch (IOException e) {
+            System.err.println("Error: Failed to pack the build context. " + e.getMessage());
+            return;
+        }
+        System.out.printf("Build context: %d files, %s (excluded %d files, %s%s) scanned in %d ms%n",
+            buildContext.fileCount(), formatSize(buildContext.size()),
+            buildContext.excludedFiles(), formatSize(buildContext.excludedBytes()),
+            buildContext.skippedDirectories().isEmpty() ? "" : "; skipped " + String.join(", ", buildContext.skippedDirectories()),
+            buildContext.scanNanos() / 1_000_000);
+
+        BuildProfile profile;
+        try {
+            profile = DockerBackend.await(docker.buildImage("devc-container", buildContext,
+                Map.of(BuildFingerprint.LABEL, fingerprint.value(), Fleet.MANAGED_LABEL, "true"),
+                parsed.requiresBuildKit()));
+            System.out.printf("Build context streamed in %d ms%n", buildContext.streamNanos() / 1_000_000);
+        } catch (IOException e) {
             System.err.println("Error: Failed to build the Docker image. " + e.getMessage());
+            return;
+        }
+        reportProfile(profile);
+    }
+
+    /**
+     * Prints where the build's time went, compared with the previous build, and keeps the
+     * profile for the next comparison (and in {@code --profile}'s file when given).
+     */
+    private void reportProfile(BuildProfile profile) {
+        if (profile.steps().isEmpty()) {
+            return;
+        }
+        Path last = BuildProfile.lastProfile(Path.of(dockerfilePath));
+        profile.printSummary(System.out, BuildProfile.load(last));
+        try {
+            profile.save(last);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not keep the build profile for the next comparison. " + e.getMessage());
+        }
+        if (profilePath != null) {
+            try {
+                profile.save(Path.of(profilePath));
+                System.out.printf("Build profile written to %s%n", profilePath);
+            } catch (IOException e) {
+                System.err.printf("Error: Failed to write the build profile to %s. %s%n", profilePath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Prints the cache-hostile patterns in the Dockerfile, most expensive first. Costs come from
+     * the history of the last devc-container build when it was built from this Dockerfile.
+     */
+    private void analyzeDockerfile() {
+        Path path = Path.of(dockerfilePath);
+        if (!Files.isRegularFile(path)) {
+            System.err.printf("Error: Dockerfile not found at specified location: %s%n", dockerfilePath);
+            return;
+        }
+        Dockerfile parsed;
+        List<DockerfileAnalyzer.Finding> findings;
+        try {
+            parsed = Dockerfile.read(path);
+            Map<Dockerfile.Instruction, DockerfileAnalyzer.StepCost> costs = Map.of();
+            try {
+                List<DockerClient.ImageLayer> history = DockerBackend.await(docker.imageHistory("devc-container"));
+                if (history != null) {
+                    costs = DockerfileAnalyzer.costsFromHistory(parsed, history);
+                }
+            } catch (IOException e) {
+                // Without the engine the findings are still useful, just without costs
+            }
+            findings = DockerfileAnalyzer.analyze(parsed, Path.of("."), costs);
+        } catch (IOException e) {
+            System.err.println("Error: Failed to analyze the Dockerfile. " + e.getMessage());
+            return;
+        }
+
+        long stages = parsed.instructions().stream().filter(instruction -> instruction.is("FROM")).count();
+        System.out.printf("Analyzed %s: %d instructions in %d stage(s), %d finding(s).%n",
+            dockerfilePath, parsed.instructions().size(), stages, findings.size());
+        int number = 1;
+        for (DockerfileAnalyzer.Finding finding : findings) {
+            Dockerfile.Instruction instruction = finding.instruction();
+            String text = instruction.keyword() + " " + instruction.arguments();
+            System.out.println();
+            System.out.printf("  %d. Line %d: %s%n", number++, instruction.line(),
+                text.length() > 72 ? text.substring(0, 69) + "..." : text);
+            System.out.printf("     %s%n", finding.problem());
+            StringBuilder cost = new StringBuilder("re-runs " + finding.rebuilt().size() + " step(s)");
+            if (finding.nanos() >= 0 || finding.bytes() >= 0) {
+                cost.append(" (");
+                if (finding.nanos() >= 0) {
+                    cost.append(String.format("~%.1fs", finding.nanos() / 1e9));
+                    cost.append(finding.bytes() >= 0 ? ", " : "");
+                }
+                if (finding.bytes() >= 0) {
+                    cost.append(formatSize(finding.bytes())).append(" of layers");
+                }
+                cost.append(" in the last build)");
+            }
+            System.out.printf("     Rebuild cost: %s%n", cost);
+            System.out.printf("     Fix: %s%n", finding.fix());
+        }
+    }
+
+    /**
+     * Pulls the Dockerfile's base images concurrently, so the build finds them in place instead
+     * of pulling them one stage at a time. Failures are only reported: the build pulls whatever
+     * is still missing and explains any real problem.
+     */
+    private void prefetchBaseImages(Dockerfile parsed) {
+        BaseImages.Analysis analysis = BaseImages.of(parsed);
+        for (String reference : analysis.unresolved()) {
+            System.out.printf("Base image '%s' depends on a build argument; leaving it to the build.%n", reference);
+        }
+        if (analysis.images().isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        reportPrefetch(prefetch.fetch(analysis.images(), System.out), System.nanoTime() - start);
+    }
+
+    private static void reportPrefetch(List<ImagePrefetch.Result> results, long nanos) {
+        int present = 0;
+        int pulled = 0;
+        int updated = 0;
+        for (ImagePrefetch.Result result : results) {
+            switch (result.outcome()) {
+                case PRESENT -> present++;
+                case PULLED -> pulled++;
+                case UPDATED -> updated++;
+                case FAILED -> System.err.printf("Warning: Could not prefetch %s. %s%n", result.image(), result.detail());
+            }
+            if (result.outcome() == ImagePrefetch.Outcome.PRESENT && result.detail() != null) {
+                System.out.printf("[%s] %s%n", result.image(), result.detail());
+            }
+        }
+        System.out.printf("Base images: %d up to date, %d pulled, %d updated in %d ms%n",
+            present, pulled, updated, nanos / 1_000_000);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+
+    private boolean isUpToDate(BuildFingerprint fingerprint) {
+        try {
+            Map<String, String> labels = DockerBackend.await(docker.imageLabels("devc-container"));
+            return labels != null && fingerprint.matches(labels.get(BuildFingerprint.LABEL));
+        } catch (IOException e) {
+            // Can't tell, so build; the build itself reports any real Docker problem
+            return false;
         }
     }
 
@@ -83,16 +324,46 @@ public class InitCommand implements Runnable {
 
             // Create or overwrite files as needed
             createFileWithConfirmation("./Dockerfile", getDefaultDockerfileContent());
+            // Pulls overlap with the rest of the setup, including any overwrite prompts
+            List<CompletableFuture<ImagePrefetch.Result>> pending = noPrefetch
+                ? List.of()
+                : startPrefetch(Dockerfile.read(Path.of("./Dockerfile")));
             createFileWithConfirmation("./env/setup_user.sh", getSetupUserScript());
             createFileWithConfirmation("./env/setup_tools.sh", getSetupToolsScript());
             createFileWithConfirmation("./env/developer_bashrc", getBashrcContent());
 
             System.out.println("Default template setup complete.");
+            finishPrefetch(pending);
         } catch (IOException e) {
             System.err.println("Error: Failed to set up default template. " + e.getMessage());
         }
     }
 
+    private List<CompletableFuture<ImagePrefetch.Result>> startPrefetch(Dockerfile parsed) {
+        List<BaseImages.Image> images = BaseImages.of(parsed).images();
+        if (images.isEmpty()) {
+            return List.of();
+        }
+        prefetchStart = System.nanoTime();
+        System.out.printf("Fetching base images in the background: %s%n",
+            String.join(", ", images.stream().map(BaseImages.Image::toString).toList()));
+        return prefetch.start(images, null);
+    }
+
+    /**
+     * Waits for a prefetch started during template setup. Pulls stop when this process exits,
+     * so leaving early only hands the remainder to the first build.
+     */
+    private void finishPrefetch(List<CompletableFuture<ImagePrefetch.Result>> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (pending.stream().anyMatch(future -> !future.isDone())) {
+            System.out.println("Waiting for the base images to finish pulling (Ctrl-C leaves it to 'devc init')...");
+        }
+        reportPrefetch(pending.stream().map(CompletableFuture::join).toList(), System.nanoTime() - prefetchStart);
+    }
+
     private void ensureDirectory(String path) throws IOException {
         Files.createDirectories(Path.of(path));
     }
@@ -130,35 +401,53 @@ public class InitCommand implements Runnable {
         System.out.println();
         System.out.println("  4. Force overwrite existing files when setting up the template:");
         System.out.println("     devc init --setup-template --force");
+        System.out.println();
+        System.out.println("  5. Rebuild the image even though nothing it copies has changed:");
+        System.out.println("     devc init --rebuild");
+        System.out.println();
+        System.out.println("  6. Build with a different workspace directory excluded from the build context:");
+        System.out.println("     devc init --mount ./my-workspace");
+        System.out.println();
+        System.out.println("  7. Build without pulling base images ahead of the build:");
+        System.out.println("     devc init --no-prefetch");
+        System.out.println();
+        System.out.println("  8. Find steps that defeat the build cache and what they cost:");
+        System.out.println("     devc init --analyze");
+        System.out.println();
+        System.out.println("  9. Save the build's per-step profile to compare it with a later build:");
+        System.out.println("     devc init --rebuild --profile build-profile.json");
     }
 
     private String getDefaultDockerfileContent() {
         return """
-            # Use Ubuntu as the base image for a minimal workstation
+            # syntax=docker/dockerfile:1
+            # Use Ubuntu as the base image for a minimal workstation. The cache and bind mounts below need
+            # BuildKit, which devc switches on for this file.
             FROM ubuntu:22.04
 
-            # Set working directory
-            WORKDIR /scripts
-
-            # Copy all setup scripts to the container
-            COPY env/*.sh /scripts/
-
-            # Ensure all scripts are executable
-            RUN chmod +x /scripts/*.sh
+            # Steps run from least to most likely to change, so editing one reuses every layer above it.
+            # Setup scripts are bind-mounted instead of copied: a step re-runs only when its own script
+            # changes, and the scripts don't end up in the image.
 
-            # Run the necessary setup scripts directly in the Dockerfile
-            RUN /scripts/setup_user.sh
-            RUN /scripts/setup_tools.sh
+            # Create the developer user (and its workspace directory)
+            RUN --mount=type=bind,source=env/setup_user.sh,target=/scripts/setup_user.sh \\
+                bash /scripts/setup_user.sh
 
-            # Copy the custom .bashrc for the developer user (AFTER setup_user.sh)
-            COPY env/developer_bashrc /home/developer/.bashrc
+            # Install tools. Downloaded packages and package lists live in BuildKit cache mounts, so
+            # adding a tool only downloads what is new. The base image's docker-clean hook would delete
+            # the downloads after every install, so it goes first.
+            RUN --mount=type=cache,target=/var/cache/apt,sharing=locked \\
+                --mount=type=cache,target=/var/lib/apt,sharing=locked \\
+                --mount=type=bind,source=env/setup_tools.sh,target=/scripts/setup_tools.sh \\
+                rm -f /etc/apt/apt.conf.d/docker-clean \\
+                && echo 'Binary::apt::APT::Keep-Downloaded-Packages "true";' > /etc/apt/apt.conf.d/keep-cache \\
+                && bash /scripts/setup_tools.sh
 
-            # Fix ownership of the .bashrc file
-            RUN chown developer:developer /home/developer/.bashrc
+            # The developer's shell configuration changes most often, so it comes last
+            COPY --chown=developer:developer env/developer_bashrc /home/developer/.bashrc
 
             # Set default user and keep the container alive
             USER developer
-            RUN mkdir -p /home/developer/workspace
             WORKDIR /home/developer/workspace
             ENTRYPOINT ["tail", "-f", "/dev/null"]
             """;
@@ -179,17 +468,19 @@ public class InitCommand implements Runnable {
         return """
             #!/bin/bash
             set -e
-            apt-get update && apt-get install -y \
-                sudo \
-                curl \
-                git \
-                vim \
-                tmux \
-                build-essential \
-                clang \
-                libssl-dev \
-                pkg-config \
-                && apt-get clean
+            # /var/cache/apt and /var/lib/apt are BuildKit cache mounts: no apt-get clean, so the next
+            # build finds the packages it already downloaded
+            apt-get update
+            apt-get install -y \\
+                sudo \\
+                curl \\
+                git \\
+                vim \\
+                tmux \\
+                build-essential \\
+                clang \\
+                libssl-dev \\
+                pkg-config
             """;
     }
 
@@ -199,15 +490,5 @@ public class InitCommand implements Runnable {
             export PATH="$PATH:/usr/local/bin"
             """;
     }
-
-    private void executeDockerCommand(String... command) throws IOException, InterruptedException {
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.inheritIO();
-        Process process = pb.start();
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("Docker command failed: " + String.join(" ", command));
-        }
-    }
 }
 
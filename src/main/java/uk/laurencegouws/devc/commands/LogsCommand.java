@@ -0,0 +1,335 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+import uk.laurencegouws.devc.logs.LogFilter;
+import uk.laurencegouws.devc.logs.LogLevel;
+import uk.laurencegouws.devc.logs.LogOutput;
+import uk.laurencegouws.devc.logs.LogTail;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+@Command(
+    name = "logs",
+    description = "Show the container's log, optionally following it and filtering as it is read.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class LogsCommand implements Callable<Integer> {
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)([smhd])");
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--since"},
+        paramLabel = "<time>",
+        description = "Only lines logged since this time: a duration ago (30s, 10m, 1h30m, 2d), an RFC 3339 time, a date or Unix seconds."
+    )
+    private String since;
+
+    @Option(
+        names = {"--tail"},
+        paramLabel = "<n>",
+        description = "Only the last n lines (after filtering), or 'all'. Default: all",
+        defaultValue = "all"
+    )
+    private String tail;
+
+    @Option(
+        names = {"--follow", "-f"},
+        description = "Keep printing new lines as they are logged, until the container stops."
+    )
+    private boolean follow;
+
+    @Option(
+        names = {"--grep", "-g"},
+        paramLabel = "<regex>",
+        description = "Only lines matching this regular expression."
+    )
+    private String grep;
+
+    @Option(
+        names = {"--level"},
+        paramLabel = "<level>",
+        description = "Only lines at this level or above: trace, debug, info, warn, error or fatal. "
+            + "Lines without a level (stack traces) go with the line before them."
+    )
+    private String level;
+
+    @Option(
+        names = {"--rate"},
+        paramLabel = "<lines/s>",
+        description = "Print at most this many lines a second, skipping the rest and reporting how many were skipped."
+    )
+    private double rate;
+
+    @Option(
+        names = {"--timestamps", "-t"},
+        description = "Start every line with the time it was logged."
+    )
+    private boolean timestamps;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'logs' command."
+    )
+    private boolean showExamples;
+
+    @Override
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+        if (selection.isFleet()) {
+            System.err.println("Error: devc logs reads one container's log; name a single container with --name.");
+            return 1;
+        }
+
+        Instant sinceTime;
+        int tailLines;
+        LogFilter filter;
+        try {
+            sinceTime = since == null ? null : parseSince(since, Instant.now());
+            tailLines = parseTail(tail);
+            filter = new LogFilter(level == null ? null : LogLevel.parse(level), grep == null ? null : Pattern.compile(grep));
+        } catch (PatternSyntaxException e) {
+            System.err.println("Error: Invalid --grep pattern. " + e.getDescription());
+            return 1;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+
+        String container = selection.single();
+        // Logs only ever run in-process, so lines go straight to the descriptors, not through PrintStreams
+        LogOutput output = new LogOutput(
+            new FileOutputStream(FileDescriptor.out).getChannel(),
+            new FileOutputStream(FileDescriptor.err).getChannel(),
+            rate);
+        try {
+            boolean found = filter.isActive() && tailLines >= 0
+                ? tailFiltered(container, sinceTime, tailLines, filter, output)
+                : read(container, new DockerClient.LogQuery(sinceTime, tailLines, follow, timestamps),
+                    new Lines(filter, output, timestamps, null));
+            output.finish();
+            if (!found) {
+                System.err.printf("Error: No such container: %s%n", container);
+                return 1;
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Could not read the container's log. Ensure Docker is running. " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * {@code --tail} with a filter: the engine's tail counts lines before filtering, so the whole
+     * history is read through the filter into a ring of the last matches instead. A follow then
+     * resumes from the timestamp of the last line read, skipping lines already seen.
+     */
+    private boolean tailFiltered(String container, Instant sinceTime, int tailLines, LogFilter filter,
+                                 LogOutput output) throws IOException {
+        LogTail ring = new LogTail(tailLines);
+        Lines history = new Lines(filter, output, true, ring);
+        if (!read(container, new DockerClient.LogQuery(sinceTime, -1, false, true), history)) {
+            return false;
+        }
+        ring.drainTo(output);
+        if (!follow) {
+            return true;
+        }
+        Instant resume = history.lastStamp();
+        Lines live = new Lines(filter, output, true, null);
+        live.skipThrough = resume;
+        return read(container, new DockerClient.LogQuery(resume != null ? resume : sinceTime, -1, true, true), live);
+    }
+
+    private boolean read(String container, DockerClient.LogQuery query, Lines lines) throws IOException {
+        return DockerBackend.await(docker.containerLogs(container, query, lines));
+    }
+
+    /**
+     * Filters lines as they are read and passes the kept ones on, to the output or to a tail
+     * ring. When the engine stamps lines, the stamp is left out of filtering, shown only with
+     * {@code --timestamps}, and the last one is remembered so a follow can resume after it.
+     */
+    private final class Lines implements DockerClient.LogSink {
+
+        private final LogFilter filter;
+        private final LogOutput output;
+        private final boolean stamped;
+        private final LogTail ring;
+        private final byte[] stamp = new byte[64];
+        private int stampLength;
+        private Instant skipThrough;
+
+        Lines(LogFilter filter, LogOutput output, boolean stamped, LogTail ring) {
+            this.filter = filter;
+            this.output = output;
+            this.stamped = stamped;
+            this.ring = ring;
+        }
+
+        @Override
+        public void line(byte[] buffer, int offset, int length, boolean stderr) throws IOException {
+            int message = 0;
+            if (stamped) {
+                int space = indexOf(buffer, offset, length, (byte) ' ');
+                message = space < 0 ? 0 : space - offset + 1;
+                if (skipThrough != null) {
+                    Instant logged = parseStamp(buffer, offset, message - 1);
+                    if (logged != null && !logged.isAfter(skipThrough)) {
+                        return;
+                    }
+                    skipThrough = null;
+                }
+                stampLength = Math.min(Math.max(0, message - 1), stamp.length);
+                System.arraycopy(buffer, offset, stamp, 0, stampLength);
+            }
+            if (!filter.accepts(buffer, offset + message, length - message, stderr)) {
+                return;
+            }
+            int start = timestamps ? offset : offset + message;
+            int kept = timestamps ? length : length - message;
+            if (ring != null) {
+                ring.add(buffer, start, kept, stderr);
+            } else {
+                output.line(buffer, start, kept, stderr);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (ring == null) {
+                output.flush();
+            }
+        }
+
+        Instant lastStamp() {
+            return parseStamp(stamp, 0, stampLength);
+        }
+    }
+
+    private static int indexOf(byte[] buffer, int offset, int length, byte value) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Instant parseStamp(byte[] buffer, int offset, int length) {
+        if (length <= 0) {
+            return null;
+        }
+        try {
+            return Instant.parse(new String(buffer, offset, length, StandardCharsets.US_ASCII));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads {@code --since}: a duration before {@code now} such as {@code 1h30m}, an RFC 3339
+     * time, a local date and time or date, or Unix seconds.
+     */
+    static Instant parseSince(String value, Instant now) {
+        String text = value.strip();
+        if (text.matches("\\d+(\\.\\d{1,9})?")) {
+            String[] parts = text.split("\\.");
+            long nanos = parts.length > 1 ? Long.parseLong((parts[1] + "00000000").substring(0, 9)) : 0;
+            return Instant.ofEpochSecond(Long.parseLong(parts[0]), nanos);
+        }
+        if (text.matches("(\\d+[smhd])+")) {
+            Duration ago = Duration.ZERO;
+            Matcher matcher = DURATION.matcher(text);
+            while (matcher.find()) {
+                long amount = Long.parseLong(matcher.group(1));
+                ago = ago.plus(switch (matcher.group(2)) {
+                    case "s" -> Duration.ofSeconds(amount);
+                    case "m" -> Duration.ofMinutes(amount);
+                    case "h" -> Duration.ofHours(amount);
+                    default -> Duration.ofDays(amount);
+                });
+            }
+            return now.minus(ago);
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // Not a full RFC 3339 time
+        }
+        try {
+            return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException ignored) {
+            // Not a local date and time
+        }
+        try {
+            return LocalDate.parse(text).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Can't read --since '" + value
+                + "'. Use a duration such as 10m or 1h30m, an RFC 3339 time, a date or Unix seconds.");
+        }
+    }
+
+    static int parseTail(String value) {
+        if (value.equalsIgnoreCase("all")) {
+            return -1;
+        }
+        try {
+            int lines = Integer.parseInt(value.strip());
+            if (lines >= 0) {
+                return lines;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("--tail takes a number of lines or 'all', not '" + value + "'.");
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Show the whole log of the default container:");
+        System.out.println("     devc logs");
+        System.out.println();
+        System.out.println("  2. Follow the log, starting from the last 100 lines:");
+        System.out.println("     devc logs -f --tail 100");
+        System.out.println();
+        System.out.println("  3. Show the errors of the last hour, stack traces included:");
+        System.out.println("     devc logs --since 1h --level error");
+        System.out.println();
+        System.out.println("  4. Show the last 20 lines mentioning a request id, with their timestamps:");
+        System.out.println("     devc logs --grep 'req-[0-9a-f]{8}' --tail 20 -t");
+        System.out.println();
+        System.out.println("  5. Follow a chatty container at no more than 200 lines a second:");
+        System.out.println("     devc logs -f --rate 200 --name api-dev");
+        System.out.println();
+        System.out.println("Note: Filtering happens as the log is read, so --tail counts only matching lines.");
+    }
+}
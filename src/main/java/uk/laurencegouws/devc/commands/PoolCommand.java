@@ -0,0 +1,138 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "pool",
+    description = "Show, fill or clear the warm pool of pre-created containers used by 'start'.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class PoolCommand implements Callable<Integer> {
+
+    @Inject
+    WarmPool pool;
+
+    @Option(
+        names = {"--fill"},
+        description = "Top the pool up now for the given image and workspace mount."
+    )
+    private boolean fill;
+
+    @Option(
+        names = {"--clear"},
+        description = "Remove every container in the pool."
+    )
+    private boolean clear;
+
+    @Option(
+        names = {"--mount", "-m"},
+        description = "Workspace mount the pooled containers are created with. Default: ./volumes/workspace",
+        defaultValue = "./volumes/workspace"
+    )
+    private String mountPath;
+
+    @Option(
+        names = {"--image", "-i"},
+        description = "Image the pooled containers are created from. Default: devc-container",
+        defaultValue = "devc-container"
+    )
+    private String image;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'pool' command."
+    )
+    private boolean showExamples;
+
+    @Override
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+
+        try {
+            if (clear) {
+                System.out.printf("Removed %d pooled container(s).%n", pool.clear());
+                return 0;
+            }
+            if (fill) {
+                if (!pool.isEnabled()) {
+                    System.err.println("Error: The warm pool is disabled. Set DEVC_POOL_SIZE (devc.pool.size) to enable it.");
+                    return 1;
+                }
+                File mountDir = Invocation.current().resolve(mountPath).toFile();
+                if (!mountDir.isDirectory()) {
+                    System.err.printf("Error: Specified mount path '%s' does not exist or is not a directory.%n", mountPath);
+                    return 1;
+                }
+                WarmPool.Refill refill = pool.refill(image, mountDir.getAbsolutePath());
+                System.out.printf("Warm pool: %d ready (created %d, evicted %d).%n",
+                    refill.ready(), refill.created(), refill.evicted());
+                return 0;
+            }
+            printStatus(pool.entries());
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Could not manage the warm pool. Ensure Docker is running. " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void printStatus(List<ContainerSummary> entries) {
+        System.out.printf("Pool size: %d per image and mount%s%n", pool.size(), pool.isEnabled() ? "" : " (disabled)");
+
+        Map<String, Integer> ready = new TreeMap<>();
+        for (ContainerSummary entry : entries) {
+            String key = entry.labels().getOrDefault(WarmPool.TAG_LABEL, "?") + "\t"
+                + shortId(entry.labels().getOrDefault(WarmPool.IMAGE_LABEL, "")) + "\t"
+                + entry.labels().getOrDefault(WarmPool.MOUNT_LABEL, "?");
+            ready.merge(key, entry.isRunning() ? 0 : 1, Integer::sum);
+        }
+        if (!ready.isEmpty()) {
+            String format = "%-20s %-14s %-6s %s%n";
+            System.out.printf(format, "IMAGE", "IMAGE ID", "READY", "MOUNT");
+            ready.forEach((key, count) -> {
+                String[] parts = key.split("\t", 3);
+                System.out.printf(format, parts[0], parts[1], count, parts[2]);
+            });
+        }
+
+        WarmPool.Stats stats = pool.stats();
+        System.out.printf("Hits: %d, misses: %d (hit rate %.0f%%), evicted: %d, created: %d%n",
+            stats.hits(), stats.misses(), stats.hitRate() * 100, stats.evictions(), stats.created());
+    }
+
+    private static String shortId(String imageId) {
+        String hex = imageId.startsWith("sha256:") ? imageId.substring(7) : imageId;
+        return hex.length() > 12 ? hex.substring(0, 12) : hex;
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Show pooled containers and hit/miss counters:");
+        System.out.println("     devc pool");
+        System.out.println();
+        System.out.println("  2. Pre-create containers for the default workspace now:");
+        System.out.println("     DEVC_POOL_SIZE=2 devc pool --fill");
+        System.out.println();
+        System.out.println("  3. Remove all pooled containers:");
+        System.out.println("     devc pool --clear");
+        System.out.println();
+        System.out.println("  4. View help for the 'pool' command:");
+        System.out.println("     devc pool --help");
+    }
+}
@@ -1,14 +1,60 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.lifecycle.Restarter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @Command(
     name = "restart",
     description = "Restart the Docker container.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class RestartCommand implements Runnable {
+public class RestartCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "With several containers, how many to restart at once. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--time", "-t"},
+        paramLabel = "<seconds>",
+        description = "Seconds to wait for the container to stop before killing it. "
+            + "Default: none when PID 1 ignores SIGTERM, otherwise 10"
+    )
+    private Integer graceSeconds;
+
+    @Option(
+        names = {"--ready-timeout"},
+        paramLabel = "<seconds>",
+        description = "How long to wait for the container to accept an exec after starting. Default: 30",
+        defaultValue = "30"
+    )
+    private int readyTimeout;
+
+    @Option(
+        names = {"--no-wait"},
+        description = "Return once the container has started, without waiting until it accepts an exec."
+    )
+    private boolean noWait;
 
     @Option(
         names = {"--examples", "-e"},
@@ -17,39 +63,60 @@ public class RestartCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
         }
 
-        System.out.println("Restarting Docker container: devc-container...");
-
-        boolean stopSuccessful = executeDockerCommand("docker", "stop", "devc-container");
-        if (!stopSuccessful) {
-            System.err.println("Error: Failed to stop the container. Ensure it is running.");
-            return;
+        if (selection.isFleet()) {
+            return restartFleet();
         }
 
-        boolean startSuccessful = executeDockerCommand("docker", "start", "devc-container");
-        if (!startSuccessful) {
-            System.err.println("Error: Failed to start the container. Check the Docker logs for details.");
-        } else {
-            System.out.println("Container restarted successfully.");
+        String container = selection.single();
+        System.out.printf("Restarting Docker container: %s...%n", container);
+        try {
+            Restarter.Timing timing = restarter().restart(container);
+            if (graceSeconds == null && timing.graceSeconds() == 0) {
+                System.out.println("PID 1 ignores SIGTERM; stopped without a grace period.");
+            }
+            System.out.println("Container restarted successfully: " + timing.describe() + ".");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Failed to restart the container. Check the Docker logs for details. " + e.getMessage());
+            return 1;
         }
     }
 
-    private boolean executeDockerCommand(String... command) {
+    private Restarter restarter() {
+        return new Restarter(docker, graceSeconds, noWait ? Duration.ZERO : Duration.ofSeconds(readyTimeout));
+    }
+
+    private int restartFleet() {
+        List<String> containers;
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            System.err.println("Error executing Docker command: " + e.getMessage());
-            return false;
+            containers = selection.resolve(docker, true);
+        } catch (IOException e) {
+            System.err.println("Error: Could not list the devc containers. Ensure Docker is running. " + e.getMessage());
+            return 1;
         }
+        if (containers.isEmpty()) {
+            System.err.println("Error: No devc containers match the selection.");
+            return 1;
+        }
+
+        System.out.printf("Restarting %d container(s), %d at a time...%n", containers.size(), Math.max(1, jobs));
+        Restarter restarter = restarter();
+        long start = System.nanoTime();
+        List<Fleet.Outcome> outcomes = new Fleet(jobs).run(containers, container -> {
+            try {
+                System.out.printf("  %-6s %s: %s%n", "ok", container, restarter.restart(container).describe());
+            } catch (IOException e) {
+                System.out.printf("  %-6s %s%n", "failed", container);
+                throw e;
+            }
+        }, null);
+        return Fleet.report("Restarted", outcomes, System.nanoTime() - start, System.out, System.err);
     }
 
     private void printExamples() {
@@ -58,8 +125,16 @@ public class RestartCommand implements Runnable {
         System.out.println("  1. Restart the container:");
         System.out.println("     devc restart");
         System.out.println();
-        System.out.println("  2. View help for the 'restart' command:");
+        System.out.println("  2. Restart two named environments in parallel:");
+        System.out.println("     devc restart -n api-dev -n web-dev");
+        System.out.println();
+        System.out.println("  3. Restart every devc container labelled team=payments:");
+        System.out.println("     devc restart -l team=payments");
+        System.out.println();
+        System.out.println("  4. Give the container 30 seconds to shut down cleanly:");
+        System.out.println("     devc restart --time 30");
+        System.out.println();
+        System.out.println("  5. View help for the 'restart' command:");
         System.out.println("     devc restart --help");
     }
 }
-
@@ -0,0 +1,290 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import uk.laurencegouws.devc.cleanup.CleanupPlan;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.snapshot.SnapshotStore;
+import uk.laurencegouws.devc.sync.WorkspaceSync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "snapshot",
+    description = "Save, restore, list or remove snapshots of a container's workspace.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class SnapshotCommand implements Callable<Integer> {
+
+    private static final DateTimeFormatter DEFAULT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final DateTimeFormatter CREATED = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Parameters(
+        index = "0",
+        paramLabel = "<action>",
+        description = "save, restore, list or rm.",
+        completionCandidates = Actions.class
+    )
+    private String action;
+
+    @Parameters(
+        index = "1",
+        arity = "0..1",
+        paramLabel = "<snapshot>",
+        description = "Snapshot name. 'save' defaults to <container>-<date>-<time>."
+    )
+    private String snapshotName;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "Chunks hashed and written, or read back, concurrently. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--force", "-f"},
+        description = "Restore without asking for confirmation."
+    )
+    private boolean force;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'snapshot' command."
+    )
+    private boolean showExamples;
+
+    static class Actions extends ArrayList<String> {
+        Actions() {
+            super(List.of("save", "restore", "list", "rm"));
+        }
+    }
+
+    @Override
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+        if (selection.isFleet()) {
+            System.err.println("Error: 'snapshot' works on one container at a time.");
+            return 2;
+        }
+
+        if (snapshotName != null && !SnapshotStore.VALID_NAME.matcher(snapshotName).matches()) {
+            System.err.printf("Error: '%s' is not a valid snapshot name. Use letters, digits, '.', '_' and '-'.%n", snapshotName);
+            return 2;
+        }
+
+        SnapshotStore store = new SnapshotStore(SnapshotStore.defaultLocation());
+        try {
+            return switch (action) {
+                case "save" -> save(store);
+                case "restore" -> restore(store);
+                case "list" -> list(store);
+                case "rm" -> remove(store);
+                default -> {
+                    System.err.printf("Error: Unknown action '%s'. Use save, restore, list or rm.%n", action);
+                    yield 2;
+                }
+            };
+        } catch (IOException e) {
+            System.err.printf("Error: Snapshot %s failed. %s%n", action, e.getMessage());
+            return 1;
+        }
+    }
+
+    private int save(SnapshotStore store) throws IOException {
+        String container = selection.single();
+        String name = snapshotName != null
+            ? snapshotName
+            : container + "-" + LocalDateTime.now().format(DEFAULT_NAME);
+        if (!SnapshotStore.VALID_NAME.matcher(name).matches()) {
+            // Only the generated default gets here; a given name was checked up front
+            System.err.printf("Error: '%s' is not a valid snapshot name. Use letters, digits, '.', '_' and '-'.%n", name);
+            return 2;
+        }
+        if (store.find(name) != null) {
+            System.err.printf("Error: Snapshot '%s' already exists. Remove it with 'devc snapshot rm %s' or pick another name.%n",
+                name, name);
+            return 1;
+        }
+        if (DockerBackend.await(docker.inspectContainer(container)) == null) {
+            System.err.printf("Error: No container named '%s'.%n", container);
+            return 1;
+        }
+
+        SnapshotStore.SaveResult[] result = new SnapshotStore.SaveResult[1];
+        boolean found = DockerBackend.await(docker.getArchive(container, WorkspaceSync.REMOTE_ROOT,
+            tar -> result[0] = store.save(name, container, WorkspaceSync.REMOTE_ROOT, tar, jobs)));
+        if (!found) {
+            System.err.printf("Error: Container '%s' has no %s to snapshot.%n", container, WorkspaceSync.REMOTE_ROOT);
+            return 1;
+        }
+
+        SnapshotStore.SaveResult saved = result[0];
+        SnapshotStore.Snapshot snapshot = saved.snapshot();
+        System.out.printf("Saved snapshot '%s' of '%s': %s in %d chunk(s), %s new in %d chunk(s).%n",
+            name, container, CleanupPlan.formatBytes(snapshot.size()), snapshot.chunkCount(),
+            CleanupPlan.formatBytes(saved.newBytes()), saved.newChunks());
+        System.out.printf("Dedup ratio %s, %s in %d ms.%n", ratio(saved.dedupRatio()),
+            throughput(snapshot.size(), saved.nanos()), saved.nanos() / 1_000_000);
+        return 0;
+    }
+
+    private int restore(SnapshotStore store) throws IOException {
+        if (snapshotName == null) {
+            System.err.println("Error: Name the snapshot to restore, e.g. 'devc snapshot restore <snapshot>'.");
+            return 2;
+        }
+        SnapshotStore.Snapshot snapshot = store.find(snapshotName);
+        if (snapshot == null) {
+            System.err.printf("Error: No snapshot named '%s'. See 'devc snapshot list'.%n", snapshotName);
+            return 1;
+        }
+        String container = selection.single();
+        Map<String, Object> inspect = DockerBackend.await(docker.inspectContainer(container));
+        if (inspect == null || !Boolean.TRUE.equals(Json.object(inspect.get("State")).get("Running"))) {
+            System.err.printf("Error: Container '%s' is not running. Start it with 'devc start'.%n", container);
+            return 1;
+        }
+
+        if (!force) {
+            System.out.printf("This replaces everything in %s in '%s' with snapshot '%s' (%s). Continue? [y/N]%n",
+                snapshot.path(), container, snapshot.name(), CleanupPlan.formatBytes(snapshot.size()));
+            if (!confirmed()) {
+                System.out.println("Restore cancelled.");
+                return 0;
+            }
+        }
+
+        long start = System.nanoTime();
+        // Every chunk is checked before the workspace is emptied, and stays held until uploaded
+        try (SnapshotStore.Restore restore = store.restore(snapshot.name(), jobs)) {
+            clear(container, snapshot.path());
+            String parent = snapshot.path().substring(0, Math.max(1, snapshot.path().lastIndexOf('/')));
+            DockerBackend.await(docker.putArchive(container, parent, restore.archive()));
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("Restored snapshot '%s' into '%s': %s in %d ms (%s).%n", snapshot.name(), container,
+            CleanupPlan.formatBytes(snapshot.size()), nanos / 1_000_000, throughput(snapshot.size(), nanos));
+
+        String source = Json.string(Json.object(Json.object(inspect.get("Config")).get("Labels"))
+            .get(WorkspaceSync.SOURCE_LABEL));
+        if (source != null) {
+            // The sync manifest described the volume before the restore
+            WorkspaceSync.forget(container);
+            System.out.printf("Note: '%s' syncs from %s. The next 'devc sync' makes the workspace match that directory again.%n",
+                container, source);
+        }
+        return 0;
+    }
+
+    private int list(SnapshotStore store) throws IOException {
+        List<SnapshotStore.Snapshot> snapshots = store.list();
+        if (snapshots.isEmpty()) {
+            System.out.println("No snapshots yet. Save one with 'devc snapshot save'.");
+            return 0;
+        }
+        String format = "%-32s %-20s %-16s %10s %8s%n";
+        System.out.printf(format, "NAME", "CONTAINER", "CREATED", "SIZE", "CHUNKS");
+        long logical = 0;
+        for (SnapshotStore.Snapshot snapshot : snapshots) {
+            System.out.printf(format, snapshot.name(), snapshot.container(),
+                CREATED.format(snapshot.created().atZone(ZoneId.systemDefault())),
+                CleanupPlan.formatBytes(snapshot.size()), snapshot.chunkCount());
+            logical += snapshot.size();
+        }
+        long stored = store.storedBytes();
+        System.out.printf("%d snapshot(s), %s stored as %s on disk (dedup ratio %s) in %s%n", snapshots.size(),
+            CleanupPlan.formatBytes(logical), CleanupPlan.formatBytes(stored),
+            ratio(stored == 0 ? Double.POSITIVE_INFINITY : (double) logical / stored), store.root());
+        return 0;
+    }
+
+    private int remove(SnapshotStore store) throws IOException {
+        if (snapshotName == null) {
+            System.err.println("Error: Name the snapshot to remove, e.g. 'devc snapshot rm <snapshot>'.");
+            return 2;
+        }
+        if (store.find(snapshotName) == null) {
+            System.err.printf("Error: No snapshot named '%s'.%n", snapshotName);
+            return 1;
+        }
+        long freed = store.delete(snapshotName);
+        System.out.printf("Removed snapshot '%s', freeing %s of chunks no other snapshot uses.%n",
+            snapshotName, CleanupPlan.formatBytes(freed));
+        return 0;
+    }
+
+    /**
+     * Empties {@code path} in the container, keeping the directory itself (it may be a mount point).
+     */
+    private void clear(String container, String path) throws IOException {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try (ExecProcess process = DockerBackend.await(docker.openExec(container,
+                List.of("find", path, "-mindepth", "1", "-delete")))) {
+            int exitCode = process.relay(Channels.newChannel(InputStream.nullInputStream()),
+                Channels.newChannel(errors), Channels.newChannel(errors));
+            if (exitCode != 0) {
+                throw new IOException("Could not empty " + path + ": " + errors.toString(StandardCharsets.UTF_8).strip());
+            }
+        }
+    }
+
+    private static String ratio(double ratio) {
+        return Double.isInfinite(ratio) ? "all chunks reused" : String.format("%.1fx", ratio);
+    }
+
+    private static String throughput(long bytes, long nanos) {
+        return String.format("%.1f MB/s", bytes / (1024.0 * 1024.0) / Math.max(1e-9, nanos / 1e9));
+    }
+
+    private static boolean confirmed() {
+        Scanner scanner = new Scanner(System.in);
+        return scanner.hasNextLine() && scanner.nextLine().trim().equalsIgnoreCase("y");
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Snapshot the workspace of the default container:");
+        System.out.println("     devc snapshot save");
+        System.out.println();
+        System.out.println("  2. Save a named checkpoint of another environment:");
+        System.out.println("     devc snapshot save before-upgrade -n api-dev");
+        System.out.println();
+        System.out.println("  3. List snapshots with their sizes and the store's dedup ratio:");
+        System.out.println("     devc snapshot list");
+        System.out.println();
+        System.out.println("  4. Put the workspace back as it was, without a prompt:");
+        System.out.println("     devc snapshot restore before-upgrade -n api-dev -f");
+        System.out.println();
+        System.out.println("  5. Remove a snapshot and the chunks only it used:");
+        System.out.println("     devc snapshot rm before-upgrade");
+    }
+}
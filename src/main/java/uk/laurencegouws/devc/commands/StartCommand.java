@@ -1,14 +1,41 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.lifecycle.Provisioner;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+import uk.laurencegouws.devc.sync.WorkspaceSync;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
 @Command(
     name = "start",
     description = "Start the Docker container in detached mode.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class StartCommand implements Runnable {
+public class StartCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    WarmPool pool;
+
+    @Mixin
+    ContainerSelection selection;
 
     @Option(
         names = {"--mount", "-m"},
@@ -17,6 +44,40 @@ public class StartCommand implements Runnable {
     )
     private String mountPath;
 
+    @Option(
+        names = {"--image", "-i"},
+        description = "Image for newly created containers. Default: devc-container",
+        defaultValue = "devc-container"
+    )
+    private String image;
+
+    @Option(
+        names = {"--label"},
+        paramLabel = "<key=value>",
+        description = "Label new containers, for use with --selector (repeatable)."
+    )
+    private Map<String, String> labels = new LinkedHashMap<>();
+
+    @Option(
+        names = {"--recreate"},
+        description = "Replace an existing devc container instead of reusing it, even a running one with another workspace, e.g. after rebuilding the image."
+    )
+    private boolean recreate;
+
+    @Option(
+        names = {"--sync"},
+        description = "Copy the workspace into a named volume instead of bind-mounting it; keep it current with 'devc sync'."
+    )
+    private boolean sync;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "With several containers, how many to start at once. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
+
     @Option(
         names = {"--examples", "-e"},
         description = "Show examples of using the 'start' command."
@@ -24,40 +85,136 @@ public class StartCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
         }
 
-        System.out.printf("Starting the Docker container with workspace mount: %s%n", mountPath);
-
-        File mountDir = new File(mountPath);
-        if (!mountDir.exists() || !mountDir.isDirectory()) {
+        File mountDir = Invocation.current().resolve(mountPath).toFile();
+        boolean creates = !selection.named().isEmpty();
+        if (creates && (!mountDir.exists() || !mountDir.isDirectory())) {
             System.err.printf("Error: Specified mount path '%s' does not exist or is not a directory.%n", mountPath);
-            return;
+            return 1;
         }
+        String mount = mountDir.getAbsolutePath();
+        Provisioner provisioner = new Provisioner(docker, pool, recreate);
 
-        executeDockerCommand(
-            "docker", "run", "-d", "--name", "devc-container",
-            "-v", new File(mountPath).getAbsolutePath() + ":/home/developer/workspace",
-            "devc-container"
-        );
+        int exitCode;
+        if (selection.isFleet()) {
+            exitCode = startFleet(provisioner, mount);
+        } else {
+            String name = selection.single();
+            System.out.printf("Starting the Docker container with workspace %s: %s%n", sync ? "sync" : "mount", mountPath);
+            try {
+                if (sync) {
+                    WorkspaceSync.Push push = startSynced(provisioner, name, mount);
+                    if (push.isEmpty()) {
+                        System.out.printf("Workspace volume '%s' is up to date.%n", WorkspaceSync.volumeName(name));
+                    } else {
+                        System.out.printf("Synced the workspace into volume '%s': %s%n", WorkspaceSync.volumeName(name), push.describe());
+                    }
+                    System.out.println("Run 'devc sync --watch' to keep pushing changes.");
+                } else {
+                    System.out.println(describe(name, provisioner.ensureStarted(name, image, mount, labels)));
+                }
+                exitCode = 0;
+            } catch (IOException e) {
+                System.err.println("Error: Failed to start the Docker container. " + e.getMessage());
+                return 1;
+            }
+        }
+
+        if (creates && pool.isEnabled() && !sync) {
+            refillPool(mount);
+        }
+        return exitCode;
     }
 
-    private void executeDockerCommand(String... command) {
+    /**
+     * Starts the named containers (reusing or creating each) and the existing ones matched by
+     * label, in parallel.
+     */
+    private int startFleet(Provisioner provisioner, String mount) {
+        List<String> named = selection.named();
+        List<String> containers;
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                System.err.println("Error: Failed to start the Docker container.");
+            containers = selection.resolve(docker, true);
+        } catch (IOException e) {
+            System.err.println("Error: Could not list the devc containers. Ensure Docker is running. " + e.getMessage());
+            return 1;
+        }
+        if (containers.isEmpty()) {
+            System.err.println("Error: No devc containers match the selection.");
+            return 1;
+        }
+
+        Set<String> toProvision = new HashSet<>(named);
+        System.out.printf("Starting %d container(s), %d at a time...%n", containers.size(), Math.max(1, jobs));
+        long start = System.nanoTime();
+        List<Fleet.Outcome> outcomes = new Fleet(jobs).run(containers, container -> {
+            if (toProvision.contains(container) && sync) {
+                startSynced(provisioner, container, mount);
+            } else if (toProvision.contains(container)) {
+                provisioner.ensureStarted(container, image, mount, labels);
             } else {
-                System.out.println("Docker container started successfully.");
+                DockerBackend.await(docker.startContainer(container));
             }
-        } catch (Exception e) {
-            System.err.println("Error executing Docker command: " + e.getMessage());
+        }, System.out);
+        return Fleet.report("Started", outcomes, System.nanoTime() - start, System.out, System.err);
+    }
+
+    /**
+     * Starts {@code name} on its sync volume in place of the bind mount, then copies in whatever
+     * the volume doesn't have yet.
+     */
+    private WorkspaceSync.Push startSynced(Provisioner provisioner, String name, String mount) throws IOException {
+        String volumeIdentity = WorkspaceSync.ensureVolume(docker, name, mount);
+        Map<String, String> syncLabels = new LinkedHashMap<>(labels);
+        syncLabels.put(WorkspaceSync.SOURCE_LABEL, mount);
+        Provisioner.Result result = provisioner.ensureStarted(name, image, WorkspaceSync.volumeName(name), syncLabels);
+        System.out.println(describe(name, result));
+        return new WorkspaceSync(docker, name, Path.of(mount), volumeIdentity, List.of()).catchUp();
+    }
+
+    private static String describe(String name, Provisioner.Result result) {
+        String message = switch (result.outcome()) {
+            case ALREADY_RUNNING -> String.format("Container '%s' is already running.", name);
+            case STARTED_EXISTING -> String.format("Started the existing container '%s'.", name);
+            case POOL_HIT -> String.format("%s%nDocker container started successfully from the warm pool.", result.id());
+            case CREATED -> String.format("%s%nDocker container started successfully.", result.id());
+            case REPLACED -> String.format("%s%nReplaced '%s', which had a different workspace mount.", result.id(), name);
+        };
+        if (result.staleImage()) {
+            message += String.format("%nNote: the container was created from an older build of the image; "
+                + "use --recreate to pick up the new one.");
+        }
+        return message;
+    }
+
+    /**
+     * Tops the warm pool back up. The daemon does this in the background; a one-shot process
+     * does it after reporting, since its background threads would die with it.
+     */
+    private void refillPool(String mount) {
+        if (Invocation.current().isRemote()) {
+            Thread.ofVirtual().name("devc-pool-refill").start(() -> {
+                try {
+                    pool.refill(image, mount);
+                } catch (IOException ignored) {
+                    // Retried on the next start
+                }
+            });
+            return;
+        }
+        try {
+            WarmPool.Refill refill = pool.refill(image, mount);
+            if (refill.created() > 0 || refill.evicted() > 0) {
+                System.out.printf("Warm pool: %d ready (created %d, evicted %d).%n",
+                    refill.ready(), refill.created(), refill.evicted());
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: Could not refill the warm pool. " + e.getMessage());
         }
     }
 
@@ -70,8 +227,22 @@ public class StartCommand implements Runnable {
         System.out.println("  2. Start the container with a custom workspace mount:");
         System.out.println("     devc start --mount /path/to/your/workspace");
         System.out.println();
-        System.out.println("  3. View help for the 'start' command:");
+        System.out.println("  3. Start a second, named environment with a label:");
+        System.out.println("     devc start --name api-dev --label project=api");
+        System.out.println();
+        System.out.println("  4. Start every stopped devc container, eight at a time:");
+        System.out.println("     devc start --all");
+        System.out.println();
+        System.out.println("  5. Start the containers labelled project=api:");
+        System.out.println("     devc start -l project=api -j 4");
+        System.out.println();
+        System.out.println("  6. Recreate the container after rebuilding the image:");
+        System.out.println("     devc start --recreate");
+        System.out.println();
+        System.out.println("  7. Copy the workspace into a volume instead of bind-mounting it:");
+        System.out.println("     devc start --sync && devc sync --watch");
+        System.out.println();
+        System.out.println("  8. View help for the 'start' command:");
         System.out.println("     devc start --help");
     }
 }
-
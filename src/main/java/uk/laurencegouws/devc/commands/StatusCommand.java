@@ -1,14 +1,75 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.daemon.Invocation;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.EventStream;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+import uk.laurencegouws.devc.state.StateCache;
+import uk.laurencegouws.devc.state.StateSubscriber;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Command(
     name = "status",
     description = "Check the status of the Docker container.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class StatusCommand implements Runnable {
+public class StatusCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    StateCache cache;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "With several named containers, how many to look up at once. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
+
+    @Option(
+        names = {"--json"},
+        description = "Print the containers as a JSON array."
+    )
+    private boolean json;
+
+    @Option(
+        names = {"--watch", "-w"},
+        description = "Keep running and print the status again whenever a container changes state."
+    )
+    private boolean watch;
+
+    @Option(
+        names = {"--no-cache"},
+        description = "Ask Docker directly instead of reading the daemon's state cache."
+    )
+    private boolean noCache;
 
     @Option(
         names = {"--examples", "-e"},
@@ -17,31 +78,196 @@ public class StatusCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
         }
 
-        System.out.println("Checking the status of the Docker container: devc-container...");
-        boolean success = executeDockerCommand("docker", "ps", "-f", "name=devc-container");
+        if (watch) {
+            return watch();
+        }
 
-        if (!success) {
-            System.err.println("Error: Could not retrieve the container status. Ensure Docker is running.");
+        if (!json && !selection.isFleet()) {
+            System.out.printf("Checking the status of the Docker container: %s...%n", selection.single());
+        }
+        try {
+            return render(query(!noCache));
+        } catch (IOException e) {
+            System.err.println("Error: Could not retrieve the container status. Ensure Docker is running. " + e.getMessage());
+            return 1;
         }
     }
 
-    private boolean executeDockerCommand(String... command) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            System.err.println("Error executing Docker command: " + e.getMessage());
-            return false;
+    /**
+     * Containers matching the selection plus the names that could not be found, answered
+     * from the state cache when the daemon is keeping it fresh and from Docker otherwise.
+     */
+    private View query(boolean useCache) throws IOException {
+        Optional<StateCache.Snapshot> snapshot = useCache ? cache.read() : Optional.empty();
+        if (snapshot.isPresent()) {
+            return select(snapshot.get().containers());
+        }
+        if (!selection.isFleet()) {
+            // Docker's name filter matches substrings; only the container actually named counts
+            return select(DockerBackend.await(docker.listContainers(selection.single(), false)));
+        }
+        return liveFleet();
+    }
+
+    /**
+     * Applies the selection to a full listing the same way the Docker filters would.
+     */
+    private View select(List<ContainerSummary> all) {
+        if (!selection.isFleet()) {
+            String name = selection.single();
+            return new View(all.stream()
+                .filter(container -> container.isRunning() && container.name().equals(name))
+                .toList(), List.of());
+        }
+        Map<String, ContainerSummary> rows = new LinkedHashMap<>();
+        if (selection.usesLabels()) {
+            List<String> filters = selection.labelFilters();
+            all.stream()
+                .filter(container -> !WarmPool.isPooled(container.name()))
+                .filter(container -> filters.stream().allMatch(container::hasLabel))
+                .forEach(container -> rows.put(container.id(), container));
+        }
+        List<String> failures = new ArrayList<>();
+        for (String name : selection.named()) {
+            all.stream()
+                .filter(container -> container.name().equals(name))
+                .findFirst()
+                .ifPresentOrElse(container -> rows.put(container.id(), container),
+                    () -> failures.add(name + ": No such container"));
         }
+        return new View(sorted(rows.values()), failures);
+    }
+
+    /**
+     * One listing for the label selection plus a concurrent lookup per named container,
+     * stopped ones included, merged into a single table.
+     */
+    private View liveFleet() throws IOException {
+        Map<String, ContainerSummary> rows = new ConcurrentHashMap<>();
+        if (selection.usesLabels()) {
+            DockerBackend.await(docker.listContainers(null, selection.labelFilters(), true)).stream()
+                .filter(container -> !WarmPool.isPooled(container.name()))
+                .forEach(container -> rows.put(container.id(), container));
+        }
+
+        List<Fleet.Outcome> outcomes = new Fleet(jobs).run(selection.named(), name -> {
+            ContainerSummary match = DockerBackend.await(docker.listContainers(name, true)).stream()
+                .filter(container -> container.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IOException("No such container"));
+            rows.put(match.id(), match);
+        }, null);
+
+        List<String> failures = outcomes.stream()
+            .filter(outcome -> !outcome.succeeded())
+            .map(outcome -> outcome.container() + ": " + outcome.error().getMessage())
+            .toList();
+        return new View(sorted(rows.values()), failures);
+    }
+
+    private static List<ContainerSummary> sorted(Collection<ContainerSummary> containers) {
+        List<ContainerSummary> list = new ArrayList<>(containers);
+        list.sort(Comparator.comparing(ContainerSummary::name));
+        return list;
+    }
+
+    private int render(View view) {
+        if (json) {
+            List<Object> rows = new ArrayList<>();
+            view.containers().forEach(container -> rows.add(container.toJson()));
+            System.out.println(Json.write(rows));
+        } else {
+            printTable(view.containers());
+            if (selection.isFleet()) {
+                long running = view.containers().stream().filter(ContainerSummary::isRunning).count();
+                System.out.printf("%d container(s), %d running.%n", view.containers().size(), running);
+            }
+        }
+        if (view.failures().isEmpty()) {
+            return 0;
+        }
+        System.err.printf("Error: %d container(s) could not be checked:%n", view.failures().size());
+        view.failures().forEach(failure -> System.err.println("  " + failure));
+        return 1;
+    }
+
+    /**
+     * Re-renders whenever a container event arrives rather than on a timer. Each event is
+     * answered with a live listing, since the cache may not have caught up with it yet.
+     */
+    private int watch() {
+        boolean clearScreen = !json && Invocation.current().isInteractive();
+        try (EventStream events = DockerBackend.await(docker.containerEvents(StateSubscriber.STATE_EVENTS))) {
+            List<String> shown = null;
+            do {
+                View view = query(false);
+                List<String> key = view.containers().stream()
+                    .map(container -> container.id() + "/" + container.name() + "/" + container.state())
+                    .toList();
+                if (key.equals(shown)) {
+                    continue;
+                }
+                shown = key;
+                if (clearScreen) {
+                    System.out.print("\033[H\033[2J");
+                } else if (!json) {
+                    System.out.printf("--- %s ---%n", LocalTime.now().truncatedTo(ChronoUnit.SECONDS));
+                }
+                render(view);
+                if (System.out.checkError()) {
+                    // Reader went away (e.g. the end of a pipe closed)
+                    return 0;
+                }
+            } while (events.next() != null);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Lost the Docker event stream. " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private record View(List<ContainerSummary> containers, List<String> failures) {
+    }
+
+    private void printTable(List<ContainerSummary> containers) {
+        String format = "%-15s %-20s %-25s %-18s %-25s %s%n";
+        System.out.printf(format, "CONTAINER ID", "IMAGE", "COMMAND", "CREATED", "STATUS", "NAMES");
+        for (ContainerSummary container : containers) {
+            System.out.printf(format,
+                container.shortId(),
+                container.image(),
+                "\"" + abbreviate(container.command(), 20) + "\"",
+                formatAge(container.created()),
+                container.status(),
+                container.name());
+        }
+    }
+
+    private static String abbreviate(String text, int max) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > max ? text.substring(0, max - 3) + "..." : text;
+    }
+
+    private static String formatAge(long createdEpochSeconds) {
+        Duration age = Duration.between(Instant.ofEpochSecond(createdEpochSeconds), Instant.now());
+        if (age.toDays() > 0) {
+            return age.toDays() + " days ago";
+        }
+        if (age.toHours() > 0) {
+            return age.toHours() + " hours ago";
+        }
+        if (age.toMinutes() > 0) {
+            return age.toMinutes() + " minutes ago";
+        }
+        return age.toSeconds() + " seconds ago";
     }
 
     private void printExamples() {
@@ -50,7 +276,19 @@ public class StatusCommand implements Runnable {
         System.out.println("  1. Check the status of the container:");
         System.out.println("     devc status");
         System.out.println();
-        System.out.println("  2. View help for the 'status' command:");
+        System.out.println("  2. Check a named environment:");
+        System.out.println("     devc status --name api-dev");
+        System.out.println();
+        System.out.println("  3. List every devc container, running or stopped:");
+        System.out.println("     devc status --all");
+        System.out.println();
+        System.out.println("  4. Print machine-readable status for a prompt or script:");
+        System.out.println("     devc status --json");
+        System.out.println();
+        System.out.println("  5. Follow state changes of every devc container as they happen:");
+        System.out.println("     devc status --all --watch");
+        System.out.println();
+        System.out.println("  6. View help for the 'status' command:");
         System.out.println("     devc status --help");
     }
 }
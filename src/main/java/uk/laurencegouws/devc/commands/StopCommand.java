@@ -1,14 +1,36 @@
 package uk.laurencegouws.devc.commands;
 
+import jakarta.inject.Inject;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.fleet.Fleet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @Command(
     name = "stop",
     description = "Stop the Docker container.",
     mixinStandardHelpOptions = true // Adds --help and --version options
 )
-public class StopCommand implements Runnable {
+public class StopCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--jobs", "-j"},
+        paramLabel = "<n>",
+        description = "With several containers, how many to stop at once. Default: 8",
+        defaultValue = "8"
+    )
+    private int jobs;
 
     @Option(
         names = {"--examples", "-e"},
@@ -17,33 +39,46 @@ public class StopCommand implements Runnable {
     private boolean showExamples;
 
     @Override
-    public void run() {
+    public Integer call() {
         if (showExamples) {
             printExamples();
-            return;
+            return 0;
         }
 
-        System.out.println("Stopping the Docker container: devc-container...");
-        boolean success = executeDockerCommand("docker", "stop", "devc-container");
+        if (selection.isFleet()) {
+            return stopFleet();
+        }
 
-        if (!success) {
-            System.err.println("Error: Could not stop the container. Ensure it is running.");
-        } else {
+        String container = selection.single();
+        System.out.printf("Stopping the Docker container: %s...%n", container);
+        try {
+            DockerBackend.await(docker.stopContainer(container));
             System.out.println("Container stopped successfully.");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Could not stop the container. Ensure it is running. " + e.getMessage());
+            return 1;
         }
     }
 
-    private boolean executeDockerCommand(String... command) {
+    private int stopFleet() {
+        List<String> containers;
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.inheritIO();
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            return exitCode == 0;
-        } catch (Exception e) {
-            System.err.println("Error executing Docker command: " + e.getMessage());
-            return false;
+            containers = selection.resolve(docker, false);
+        } catch (IOException e) {
+            System.err.println("Error: Could not list the devc containers. Ensure Docker is running. " + e.getMessage());
+            return 1;
+        }
+        if (containers.isEmpty()) {
+            System.out.println("No running devc containers match the selection.");
+            return 0;
         }
+
+        System.out.printf("Stopping %d container(s), %d at a time...%n", containers.size(), Math.max(1, jobs));
+        long start = System.nanoTime();
+        List<Fleet.Outcome> outcomes = new Fleet(jobs).run(containers,
+            container -> DockerBackend.await(docker.stopContainer(container)), System.out);
+        return Fleet.report("Stopped", outcomes, System.nanoTime() - start, System.out, System.err);
     }
 
     private void printExamples() {
@@ -52,8 +87,13 @@ public class StopCommand implements Runnable {
         System.out.println("  1. Stop the container:");
         System.out.println("     devc stop");
         System.out.println();
-        System.out.println("  2. View help for the 'stop' command:");
+        System.out.println("  2. Stop a named environment:");
+        System.out.println("     devc stop --name api-dev");
+        System.out.println();
+        System.out.println("  3. Stop every running devc container:");
+        System.out.println("     devc stop --all");
+        System.out.println();
+        System.out.println("  4. View help for the 'stop' command:");
         System.out.println("     devc stop --help");
     }
 }
-
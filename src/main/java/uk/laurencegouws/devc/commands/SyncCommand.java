@@ -0,0 +1,149 @@
+package uk.laurencegouws.devc.commands;
+
+import jakarta.inject.Inject;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import uk.laurencegouws.devc.archive.TarReader;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.sync.SyncWatcher;
+import uk.laurencegouws.devc.sync.WorkspaceSync;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+@Command(
+    name = "sync",
+    description = "Push workspace changes into a container started with 'start --sync', optionally watching for more.",
+    mixinStandardHelpOptions = true // Adds --help and --version options
+)
+public class SyncCommand implements Callable<Integer> {
+
+    @Inject
+    DockerBackend docker;
+
+    @Mixin
+    ContainerSelection selection;
+
+    @Option(
+        names = {"--watch", "-w"},
+        description = "Keep running and push changes as they happen, until interrupted."
+    )
+    private boolean watch;
+
+    @Option(
+        names = {"--pull"},
+        paramLabel = "<path>",
+        description = "Workspace-relative path to copy back from the container, e.g. build output (repeatable). Never pushed."
+    )
+    private List<String> pulls = new ArrayList<>();
+
+    @Option(
+        names = {"--pull-interval"},
+        paramLabel = "<seconds>",
+        description = "With --watch, how often to copy --pull paths back. Default: 5",
+        defaultValue = "5"
+    )
+    private int pullIntervalSeconds;
+
+    @Option(
+        names = {"--debounce"},
+        paramLabel = "<ms>",
+        description = "With --watch, how long the workspace must be quiet before a batch is pushed. Default: 200",
+        defaultValue = "200"
+    )
+    private int debounceMillis;
+
+    @Option(
+        names = {"--max-delay"},
+        paramLabel = "<ms>",
+        description = "With --watch, the longest a change waits while the workspace keeps changing. Default: 2000",
+        defaultValue = "2000"
+    )
+    private int maxDelayMillis;
+
+    @Option(
+        names = {"--examples", "-e"},
+        description = "Show examples of using the 'sync' command."
+    )
+    private boolean showExamples;
+
+    @Override
+    public Integer call() {
+        if (showExamples) {
+            printExamples();
+            return 0;
+        }
+        if (selection.isFleet()) {
+            System.err.println("Error: 'sync' works on one container at a time.");
+            return 2;
+        }
+
+        String name = selection.single();
+        WorkspaceSync sync;
+        try {
+            Map<String, Object> container = DockerBackend.await(docker.inspectContainer(name));
+            if (container == null) {
+                System.err.printf("Error: No container named '%s'. Start it with 'devc start --sync'.%n", name);
+                return 1;
+            }
+            String source = Json.string(Json.object(Json.object(container.get("Config")).get("Labels"))
+                .get(WorkspaceSync.SOURCE_LABEL));
+            if (source == null) {
+                System.err.printf("Error: Container '%s' bind-mounts its workspace. Restart it with 'devc start --sync --recreate'.%n", name);
+                return 1;
+            }
+            String volumeIdentity = WorkspaceSync.ensureVolume(docker, name, source);
+            sync = new WorkspaceSync(docker, name, Path.of(source), volumeIdentity, pulls);
+
+            WorkspaceSync.Push push = sync.catchUp();
+            System.out.println(push.isEmpty() ? "Workspace is up to date." : "Pushed " + push.describe());
+            for (String path : pulls) {
+                TarReader.Stats stats = sync.pull(path);
+                if (stats == null) {
+                    System.out.printf("Nothing to pull at %s yet.%n", path);
+                } else {
+                    System.out.printf("Pulled %s: %d file(s), %.1f MB%n", path, stats.files(), stats.bytes() / (1024.0 * 1024.0));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Failed to sync the workspace. " + e.getMessage());
+            return 1;
+        }
+
+        if (!watch) {
+            return 0;
+        }
+        System.out.printf("Watching %s for changes (Ctrl-C to stop)...%n", sync.root());
+        try (SyncWatcher watcher = new SyncWatcher(sync, Duration.ofMillis(debounceMillis), Duration.ofMillis(maxDelayMillis),
+                pulls, Duration.ofSeconds(Math.max(1, pullIntervalSeconds)), System.out)) {
+            watcher.run();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: Stopped watching the workspace. " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void printExamples() {
+        System.out.println("Examples:");
+        System.out.println();
+        System.out.println("  1. Push whatever changed since the last sync:");
+        System.out.println("     devc sync");
+        System.out.println();
+        System.out.println("  2. Keep the container's workspace in step while you edit:");
+        System.out.println("     devc sync --watch");
+        System.out.println();
+        System.out.println("  3. Also copy build output back every 10 seconds:");
+        System.out.println("     devc sync --watch --pull target --pull-interval 10");
+        System.out.println();
+        System.out.println("  4. Sync a named environment:");
+        System.out.println("     devc sync -n api-dev --watch");
+    }
+}
@@ -0,0 +1,123 @@
+package uk.laurencegouws.devc.completion;
+
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.fleet.Fleet;
+import uk.laurencegouws.devc.index.DirectoryIndex;
+import uk.laurencegouws.devc.index.DirectoryIndexer;
+import uk.laurencegouws.devc.index.WorkspacePaths;
+import uk.laurencegouws.devc.lifecycle.WarmPool;
+import uk.laurencegouws.devc.snapshot.SnapshotStore;
+import uk.laurencegouws.devc.state.StateCache;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The hidden {@code devc __complete <kind> ...} entry point the completion script calls for
+ * values it can't know in advance. It runs before the application starts and only reads local
+ * caches (the daemon's state file, the directory indexes and the snapshot store), so a tab
+ * press never waits on Docker; a value that isn't cached yet is simply not offered.
+ * <p>
+ * Kinds:
+ * <ul>
+ *   <li>{@code containers}: devc containers the daemon last saw, the default container and
+ *       every container with a directory index.</li>
+ *   <li>{@code paths <container> <typed>}: workspace directories completing {@code <typed>},
+ *       with the container defaulting to {@code DEVC_CONTAINER} when empty.</li>
+ *   <li>{@code snapshots}: saved snapshot names.</li>
+ * </ul>
+ */
+public final class Completer {
+
+    public static final String ENTRY = "__complete";
+
+    private static final int MAX_PATHS = 200;
+
+    private Completer() {
+    }
+
+    /**
+     * Prints one candidate per line and returns the exit code; unknown kinds print nothing.
+     */
+    public static int run(String[] args, PrintStream out) {
+        String kind = args.length > 1 ? args[1] : "";
+        try {
+            switch (kind) {
+                case "containers" -> containers().forEach(out::println);
+                case "snapshots" -> snapshots().forEach(out::println);
+                case "paths" -> paths(args.length > 2 ? args[2] : "", args.length > 3 ? args[3] : "", out);
+                default -> {
+                    return 2;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Offering nothing beats printing an error into the middle of the command line
+            return 1;
+        }
+        out.flush();
+        return 0;
+    }
+
+    private static Set<String> containers() throws IOException {
+        Set<String> names = new TreeSet<>();
+        names.add(defaultContainer());
+        StateCache.Snapshot state = new StateCache().readAny();
+        if (state != null) {
+            for (ContainerSummary container : state.containers()) {
+                if (container.hasLabel(Fleet.MANAGED_LABEL + "=true") && !WarmPool.isPooled(container.name())) {
+                    names.add(container.name());
+                }
+            }
+        }
+        Path indexes = DirectoryIndexer.location(Fleet.DEFAULT_NAME).getParent();
+        if (Files.isDirectory(indexes)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(indexes, "*.idx")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    names.add(name.substring(0, name.length() - ".idx".length()));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> snapshots() throws IOException {
+        Set<String> names = new TreeSet<>();
+        for (SnapshotStore.Snapshot snapshot : new SnapshotStore(SnapshotStore.defaultLocation()).list()) {
+            names.add(snapshot.name());
+        }
+        return names;
+    }
+
+    /**
+     * Prints the directories completing {@code typed} as typed, each with a trailing slash so
+     * the next tab descends into it.
+     */
+    private static void paths(String container, String typed, PrintStream out) {
+        DirectoryIndex index = DirectoryIndex.open(DirectoryIndexer.location(
+            container.isBlank() ? defaultContainer() : container));
+        if (index == null) {
+            return;
+        }
+        int slash = typed.lastIndexOf('/');
+        String directoryPart = slash < 0 ? "" : typed.substring(0, slash + 1);
+        String namePrefix = typed.substring(slash + 1);
+        String relative = WorkspacePaths.relativeToRoot(WorkspacePaths.resolve(directoryPart.isEmpty() ? "." : directoryPart));
+        if (relative == null) {
+            return;
+        }
+        for (String child : index.children(relative, namePrefix, MAX_PATHS)) {
+            out.println(directoryPart + child + "/");
+        }
+    }
+
+    private static String defaultContainer() {
+        String name = System.getenv(Fleet.NAME_ENV);
+        return name == null || name.isBlank() ? Fleet.DEFAULT_NAME : name;
+    }
+}
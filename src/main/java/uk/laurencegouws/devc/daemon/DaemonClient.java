@@ -0,0 +1,161 @@
+package uk.laurencegouws.devc.daemon;
+
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.DataInputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thin client that hands a command line to a running {@code devc daemon} and relays its
+ * output and exit code. Deliberately plain JDK so it runs before Quarkus is booted.
+ */
+public final class DaemonClient {
+
+    /** Returned by {@link #forward(String[])} when the command must run in-process. */
+    public static final int NOT_FORWARDED = Integer.MIN_VALUE;
+
+    /**
+     * Commands that need the caller's terminal or filesystem directly, or stream output for as long
+     * as they run, and always run locally.
+     */
+    private static final Set<String> LOCAL_COMMANDS = Set.of("daemon", "exec", "init", "completion", "sync", "logs");
+
+    private DaemonClient() {
+    }
+
+    /**
+     * Forwards {@code args} to the daemon, returning the remote exit code, or
+     * {@link #NOT_FORWARDED} when there is no daemon or the command is local-only.
+     */
+    public static int forward(String[] args) {
+        if ("false".equalsIgnoreCase(System.getenv("DEVC_DAEMON")) || isLocalCommand(args)) {
+            return NOT_FORWARDED;
+        }
+        Path socket = DaemonProtocol.socketPath();
+        if (!Files.exists(socket)) {
+            return NOT_FORWARDED;
+        }
+        try {
+            DaemonProtocol.checkPrivate(socket.getParent());
+        } catch (IOException e) {
+            // Never hand the environment to a socket another user could have planted
+            System.err.println("Warning: Not using the devc daemon. " + e.getMessage());
+            return NOT_FORWARDED;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            // Stale socket from a daemon that died; run in-process instead
+            return NOT_FORWARDED;
+        }
+        try (channel) {
+            return relay(channel, args);
+        } catch (IOException e) {
+            System.err.println("Error: Lost connection to devc daemon: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Sends a single control frame (ping or shutdown) and reports whether the daemon answered.
+     */
+    static boolean control(byte type) {
+        Path socket = DaemonProtocol.socketPath();
+        if (!Files.exists(socket)) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            DaemonProtocol.checkPrivate(socket.getParent());
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DaemonProtocol.write(channel, type, new byte[0]);
+            DaemonProtocol.Frame reply = DaemonProtocol.read(new DataInputStream(DaemonProtocol.inputStream(channel)));
+            return reply.type() == type;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isLocalCommand(String[] args) {
+        String command = Arrays.stream(args)
+            .filter(arg -> !arg.startsWith("-"))
+            .findFirst()
+            .orElse("");
+        // Session execs have no terminal of their own; their shells live in the daemon
+        if (command.equals("exec") && isSessionExec(args)) {
+            return false;
+        }
+        // Watching runs until interrupted, which only the local process sees
+        if (command.equals("status") && (Arrays.asList(args).contains("--watch") || Arrays.asList(args).contains("-w"))) {
+            return true;
+        }
+        return LOCAL_COMMANDS.contains(command);
+    }
+
+    private static boolean isSessionExec(String[] args) {
+        return Arrays.asList(args).contains("--session") || Arrays.asList(args).contains("-s")
+            || "true".equalsIgnoreCase(System.getenv("DEVC_EXEC_SESSION"));
+    }
+
+    private static int relay(SocketChannel channel, String[] args) throws IOException {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("args", Arrays.asList(args));
+        request.put("cwd", Path.of("").toAbsolutePath().toString());
+        request.put("env", System.getenv());
+        request.put("tty", System.console() != null);
+        DaemonProtocol.write(channel, DaemonProtocol.REQUEST, Json.write(request).getBytes(StandardCharsets.UTF_8));
+
+        OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        OutputStream stderr = new FileOutputStream(FileDescriptor.err);
+        DataInputStream in = new DataInputStream(DaemonProtocol.inputStream(channel));
+        while (true) {
+            DaemonProtocol.Frame frame = DaemonProtocol.read(in);
+            switch (frame.type()) {
+                case DaemonProtocol.STDOUT -> stdout.write(frame.payload());
+                case DaemonProtocol.STDERR -> stderr.write(frame.payload());
+                case DaemonProtocol.READ_STDIN -> startStdinPump(channel);
+                case DaemonProtocol.EXIT -> {
+                    return DaemonProtocol.exitCode(frame.payload());
+                }
+                default -> throw new IOException("Unexpected frame type " + (char) frame.type());
+            }
+        }
+    }
+
+    /**
+     * Stdin is only forwarded once the remote command reads it, so shell loops that feed
+     * devc from a pipe don't have their input swallowed.
+     */
+    private static void startStdinPump(SocketChannel channel) {
+        Thread pump = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            InputStream stdin = System.in;
+            try {
+                int n;
+                while ((n = stdin.read(buffer)) != -1) {
+                    DaemonProtocol.write(channel, DaemonProtocol.STDIN, buffer, 0, n);
+                }
+                DaemonProtocol.write(channel, DaemonProtocol.STDIN_EOF, new byte[0]);
+            } catch (IOException ignored) {
+                // Daemon finished or connection dropped; the main loop reports it
+            }
+        }, "devc-stdin");
+        pump.setDaemon(true);
+        pump.start();
+    }
+}
@@ -0,0 +1,210 @@
+package uk.laurencegouws.devc.daemon;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wire format between the thin client and the daemon: a stream of frames, each a one-byte
+ * type, a four-byte big-endian length and the payload.
+ */
+final class DaemonProtocol {
+
+    /** Client to daemon: JSON request with args, cwd, env and tty flag. */
+    static final byte REQUEST = 'A';
+    /** Client to daemon: a block of the client's stdin. */
+    static final byte STDIN = 'I';
+    /** Client to daemon: the client's stdin reached EOF. */
+    static final byte STDIN_EOF = 'i';
+    /** Client to daemon: liveness probe, answered with the same frame. */
+    static final byte PING = 'P';
+    /** Client to daemon: shut the daemon down. */
+    static final byte SHUTDOWN = 'Q';
+
+    /** Daemon to client: the command started reading stdin, start forwarding it. */
+    static final byte READ_STDIN = 'R';
+    /** Daemon to client: stdout bytes. */
+    static final byte STDOUT = 'O';
+    /** Daemon to client: stderr bytes. */
+    static final byte STDERR = 'E';
+    /** Daemon to client: four-byte exit code, always the last frame. */
+    static final byte EXIT = 'X';
+
+    private static final int MAX_FRAME = 16 * 1024 * 1024;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    private static final Map<SocketChannel, ReentrantLock> WRITE_LOCKS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * Per-user socket under {@code $XDG_RUNTIME_DIR}, or {@code /tmp/devc-$USER} when unset.
+     */
+    static Path socketPath() {
+        String override = System.getenv("DEVC_DAEMON_SOCKET");
+        if (override != null && !override.isBlank()) {
+            return Path.of(override);
+        }
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDir != null && !runtimeDir.isBlank()) {
+            return Path.of(runtimeDir, "devc", "daemon.sock");
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "devc-" + System.getProperty("user.name"), "daemon.sock");
+    }
+
+    /**
+     * Creates the socket's directory if needed and makes sure it is private, see
+     * {@link #checkPrivate(Path)}. A directory we own with looser permissions is tightened.
+     */
+    static void createPrivate(Path directory) throws IOException {
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(directory.getParent());
+            Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        }
+        PosixFileAttributes attributes = attributes(directory);
+        if (attributes.isDirectory() && !attributes.isSymbolicLink() && attributes.owner().equals(currentUser())
+            && !attributes.permissions().equals(OWNER_ONLY)) {
+            Files.setPosixFilePermissions(directory, OWNER_ONLY);
+        }
+        checkPrivate(directory);
+    }
+
+    /**
+     * Fails unless {@code directory} is a real directory (not a symlink) owned by the current
+     * user with mode 0700. The client sends its whole environment to the socket inside it, and
+     * under {@code /tmp} another user could have created the directory first.
+     */
+    static void checkPrivate(Path directory) throws IOException {
+        PosixFileAttributes attributes = attributes(directory);
+        if (attributes.isSymbolicLink() || !attributes.isDirectory()) {
+            throw new IOException(directory + " is not a directory");
+        }
+        if (!attributes.owner().equals(currentUser())) {
+            throw new IOException(directory + " belongs to " + attributes.owner().getName() + ", not "
+                + System.getProperty("user.name"));
+        }
+        if (!attributes.permissions().equals(OWNER_ONLY)) {
+            throw new IOException(directory + " has mode " + PosixFilePermissions.toString(attributes.permissions())
+                + ", expected rwx------");
+        }
+    }
+
+    private static PosixFileAttributes attributes(Path directory) throws IOException {
+        try {
+            return Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("Can't check the owner of " + directory + " on this file system");
+        }
+    }
+
+    private static UserPrincipal currentUser() throws IOException {
+        // user.name comes from the process's uid, not from $USER
+        return FileSystems.getDefault().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+    }
+
+    record Frame(byte type, byte[] payload) {
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new EOFException("Connection closed");
+        }
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame((byte) type, payload);
+    }
+
+    /**
+     * Writes one whole frame. Frames from stdout, stderr and control paths share the channel, so
+     * each is written under a per-channel lock (a lock rather than a monitor, so a virtual thread
+     * blocked on a slow reader doesn't pin its carrier).
+     */
+    static void write(SocketChannel channel, byte type, byte[] payload, int offset, int length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5).put(type).putInt(length).flip();
+        ByteBuffer body = ByteBuffer.wrap(payload, offset, length);
+        ByteBuffer[] frame = {header, body};
+        ReentrantLock lock = WRITE_LOCKS.computeIfAbsent(channel, key -> new ReentrantLock());
+        lock.lock();
+        try {
+            // Even a blocking channel can write part of a gathering write, notably on a virtual thread
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(frame);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static void write(SocketChannel channel, byte type, byte[] payload) throws IOException {
+        write(channel, type, payload, 0, payload.length);
+    }
+
+    static byte[] exitPayload(int exitCode) {
+        return ByteBuffer.allocate(4).putInt(exitCode).array();
+    }
+
+    static int exitCode(byte[] payload) {
+        return ByteBuffer.wrap(payload).getInt();
+    }
+
+    /**
+     * Blocking input stream reading straight from the channel, independent of concurrent writers.
+     */
+    static InputStream inputStream(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int n = read(single, 0, 1);
+                return n == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    /**
+     * Output stream that wraps every write in a frame of the given type.
+     */
+    static OutputStream framedOutput(SocketChannel channel, byte type) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > 0) {
+                    DaemonProtocol.write(channel, type, b, off, len);
+                }
+            }
+        };
+    }
+}
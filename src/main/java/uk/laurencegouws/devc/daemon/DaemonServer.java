@@ -0,0 +1,192 @@
+package uk.laurencegouws.devc.daemon;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import picocli.CommandLine;
+import picocli.CommandLine.Help.Ansi;
+import uk.laurencegouws.devc.DevcCommand;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.state.StateSubscriber;
+import uk.laurencegouws.devc.trace.MetricsServer;
+import uk.laurencegouws.devc.trace.Trace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived devc process listening on a per-user Unix socket. Each forwarded command line
+ * runs on its own virtual thread against the already-booted container, reusing the warm
+ * Docker engine connection and cached container state held by {@link DockerBackend}. While
+ * it runs, a {@link StateSubscriber} keeps the shared container state cache current and a
+ * {@link MetricsServer} exposes counters and latency histograms for scraping.
+ */
+@ApplicationScoped
+public class DaemonServer {
+
+    @Inject
+    CommandLine.IFactory factory;
+
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    StateSubscriber stateSubscriber;
+
+    @Inject
+    MetricsServer metrics;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile ServerSocketChannel server;
+
+    public static Path socketPath() {
+        return DaemonProtocol.socketPath();
+    }
+
+    public static boolean isRunning() {
+        return DaemonClient.control(DaemonProtocol.PING);
+    }
+
+    public static boolean requestShutdown() {
+        return DaemonClient.control(DaemonProtocol.SHUTDOWN);
+    }
+
+    /**
+     * Fails unless the directory holding the socket, state cache and metrics socket is a
+     * directory private to the current user.
+     */
+    public static void checkRuntimeDirectory() throws IOException {
+        DaemonProtocol.checkPrivate(socketPath().getParent());
+    }
+
+    /**
+     * Binds the socket and serves requests until a shutdown frame arrives.
+     */
+    public void serve() throws IOException {
+        Path socket = socketPath();
+        if (isRunning()) {
+            throw new IOException("A devc daemon is already listening on " + socket);
+        }
+        try {
+            DaemonProtocol.createPrivate(socket.getParent());
+        } catch (IOException e) {
+            throw new IOException("Refusing to listen in a directory other users can reach: " + e.getMessage(), e);
+        }
+        Files.deleteIfExists(socket);
+
+        // `devc --trace daemon` traces startup only; requests get traces of their own
+        Trace.finishProcess();
+        RoutedStreams.install();
+        // Connect to Docker before the first request instead of during it
+        docker.client();
+        stateSubscriber.start();
+        metrics.start();
+
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            server = channel;
+            while (channel.isOpen()) {
+                SocketChannel connection;
+                try {
+                    connection = channel.accept();
+                } catch (IOException e) {
+                    if (!channel.isOpen()) {
+                        break;
+                    }
+                    throw e;
+                }
+                executor.submit(() -> handle(connection));
+            }
+        } finally {
+            server = null;
+            metrics.stop();
+            stateSubscriber.stop();
+            Files.deleteIfExists(socket);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(SocketChannel connection) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(DaemonProtocol.inputStream(connection));
+            DaemonProtocol.Frame first = DaemonProtocol.read(in);
+            switch (first.type()) {
+                case DaemonProtocol.PING -> DaemonProtocol.write(connection, DaemonProtocol.PING, new byte[0]);
+                case DaemonProtocol.SHUTDOWN -> {
+                    DaemonProtocol.write(connection, DaemonProtocol.SHUTDOWN, new byte[0]);
+                    ServerSocketChannel channel = server;
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+                case DaemonProtocol.REQUEST -> execute(connection, in, first.payload());
+                default -> throw new IOException("Unexpected frame type " + (char) first.type());
+            }
+        } catch (IOException e) {
+            // Client went away; nothing to report to
+        }
+    }
+
+    private void execute(SocketChannel connection, DataInputStream in, byte[] payload) throws IOException {
+        Map<String, Object> request = Json.parseObject(new String(payload, StandardCharsets.UTF_8));
+        String[] args = Json.array(request.get("args")).stream().map(Json::string).toArray(String[]::new);
+        Map<String, String> environment = new LinkedHashMap<>();
+        Json.object(request.get("env")).forEach((key, value) -> environment.put(key, Json.string(value)));
+        boolean tty = Boolean.TRUE.equals(request.get("tty"));
+
+        RemoteStdin stdin = new RemoteStdin(connection);
+        PrintStream stdout = new PrintStream(
+            new BufferedOutputStream(DaemonProtocol.framedOutput(connection, DaemonProtocol.STDOUT), 8192), true);
+        PrintStream stderr = new PrintStream(DaemonProtocol.framedOutput(connection, DaemonProtocol.STDERR), true);
+        Invocation invocation = new Invocation(Path.of(Json.string(request.get("cwd"))), environment, tty,
+            stdin, stdout, stderr);
+
+        // Feed stdin frames to the command, and cancel it if the client disconnects (e.g. Ctrl-C)
+        Thread worker = Thread.currentThread();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try {
+                while (true) {
+                    DaemonProtocol.Frame frame = DaemonProtocol.read(in);
+                    if (frame.type() == DaemonProtocol.STDIN) {
+                        stdin.offer(frame.payload());
+                    } else if (frame.type() == DaemonProtocol.STDIN_EOF) {
+                        stdin.finish();
+                    }
+                }
+            } catch (IOException e) {
+                stdin.finish();
+                worker.interrupt();
+            }
+        });
+
+        Trace trace = Trace.forInvocation(args, environment, invocation.workingDirectory());
+        long started = System.nanoTime();
+        int[] exitCode = {0};
+        invocation.run(() -> trace.run(() -> {
+            exitCode[0] = DevcCommand.newCommandLine(factory, tty ? Ansi.ON : Ansi.OFF).execute(args);
+            trace.finish();
+            System.out.flush();
+            System.err.flush();
+        }));
+        metrics.recordInvocation(trace.command(), System.nanoTime() - started, exitCode[0]);
+        stdout.flush();
+        DaemonProtocol.write(connection, DaemonProtocol.EXIT, DaemonProtocol.exitPayload(exitCode[0]));
+        reader.interrupt();
+        Thread.interrupted(); // Clear a late interrupt from the reader before the pooled thread exits
+    }
+}
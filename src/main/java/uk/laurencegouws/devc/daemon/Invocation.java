@@ -0,0 +1,96 @@
+package uk.laurencegouws.devc.daemon;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The caller's view of the world for one command execution: working directory, environment
+ * and standard streams. In a one-shot process this is simply the process itself; inside the
+ * daemon each forwarded request gets its own invocation so relative paths and variables such
+ * as {@code DEVC_WORKSPACE_PATH} resolve against the client, not the daemon.
+ */
+public final class Invocation {
+
+    private static final InheritableThreadLocal<Invocation> CURRENT = new InheritableThreadLocal<>();
+
+    private static final Invocation PROCESS = new Invocation(
+        Path.of("").toAbsolutePath(), System.getenv(), System.console() != null, null, null, null);
+
+    private final Path workingDirectory;
+    private final Map<String, String> environment;
+    private final boolean interactive;
+    private final InputStream stdin;
+    private final PrintStream stdout;
+    private final PrintStream stderr;
+
+    Invocation(Path workingDirectory, Map<String, String> environment, boolean interactive,
+               InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        this.workingDirectory = workingDirectory;
+        this.environment = environment;
+        this.interactive = interactive;
+        this.stdin = stdin;
+        this.stdout = stdout;
+        this.stderr = stderr;
+    }
+
+    public static Invocation current() {
+        Invocation invocation = CURRENT.get();
+        return invocation != null ? invocation : PROCESS;
+    }
+
+    /**
+     * Runs {@code action} with this invocation bound to the current thread (and any threads it starts).
+     */
+    void run(Runnable action) {
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    public boolean isRemote() {
+        return this != PROCESS;
+    }
+
+    public Path workingDirectory() {
+        return workingDirectory;
+    }
+
+    public String env(String name) {
+        return environment.get(name);
+    }
+
+    public Map<String, String> environment() {
+        return environment;
+    }
+
+    /**
+     * Whether the caller is attached to a terminal.
+     */
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * Resolves a user-supplied path against the caller's working directory.
+     */
+    public Path resolve(String path) {
+        return workingDirectory.resolve(path).normalize();
+    }
+
+    InputStream stdin() {
+        return stdin;
+    }
+
+    PrintStream stdout() {
+        return stdout;
+    }
+
+    PrintStream stderr() {
+        return stderr;
+    }
+}
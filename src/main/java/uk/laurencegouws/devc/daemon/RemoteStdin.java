@@ -0,0 +1,95 @@
+package uk.laurencegouws.devc.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A forwarded client's stdin. The first read asks the client to start sending data,
+ * after which blocks arrive as {@link DaemonProtocol#STDIN} frames.
+ */
+final class RemoteStdin extends InputStream {
+
+    private static final byte[] EOF = new byte[0];
+
+    private final SocketChannel channel;
+    private final BlockingQueue<byte[]> blocks = new LinkedBlockingQueue<>();
+    // Not synchronized: blocking in a monitor would pin the virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private boolean requested;
+    private boolean finished;
+    private byte[] current = EOF;
+    private int position;
+
+    RemoteStdin(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    void offer(byte[] block) {
+        blocks.add(block);
+    }
+
+    void finish() {
+        blocks.add(EOF);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            return readLocked(b, off, len);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int readLocked(byte[] b, int off, int len) throws IOException {
+        while (position == current.length) {
+            if (finished) {
+                return -1;
+            }
+            if (!requested) {
+                requested = true;
+                DaemonProtocol.write(channel, DaemonProtocol.READ_STDIN, new byte[0]);
+            }
+            try {
+                current = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for client stdin");
+            }
+            position = 0;
+            if (current == EOF) {
+                finished = true;
+            }
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return current.length - position;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package uk.laurencegouws.devc.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Replaces {@code System.out}, {@code System.err} and {@code System.in} with streams that
+ * follow the current {@link Invocation}, so commands written against the standard streams
+ * talk to whichever client forwarded them. Each invocation has its own {@code PrintStream};
+ * the replacements only pick one.
+ */
+final class RoutedStreams {
+
+    private static boolean installed;
+
+    private RoutedStreams() {
+    }
+
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        InputStream in = System.in;
+        System.setOut(new RoutedPrintStream(out, false));
+        System.setErr(new RoutedPrintStream(err, true));
+        System.setIn(new RoutedInput(in));
+    }
+
+    /**
+     * Hands every call straight to the current invocation's own stream. It never takes a lock of
+     * its own: a {@code PrintStream} holds one for each write, and a shared one would let a
+     * client that stops reading stall the output of every other command in the daemon.
+     */
+    private static final class RoutedPrintStream extends PrintStream {
+
+        private final PrintStream fallback;
+        private final boolean error;
+
+        RoutedPrintStream(PrintStream fallback, boolean error) {
+            super(OutputStream.nullOutputStream());
+            this.fallback = fallback;
+            this.error = error;
+        }
+
+        private PrintStream target() {
+            Invocation invocation = Invocation.current();
+            PrintStream stream = error ? invocation.stderr() : invocation.stdout();
+            return stream != null ? stream : fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void writeBytes(byte[] b) {
+            target().writeBytes(b);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+
+        @Override
+        public void close() {
+            // The invocation's streams belong to its connection, and the fallback to the process
+        }
+
+        @Override
+        public boolean checkError() {
+            return target().checkError();
+        }
+
+        @Override
+        public Charset charset() {
+            return target().charset();
+        }
+
+        @Override
+        public void print(boolean b) {
+            target().print(b);
+        }
+
+        @Override
+        public void print(char c) {
+            target().print(c);
+        }
+
+        @Override
+        public void print(int i) {
+            target().print(i);
+        }
+
+        @Override
+        public void print(long l) {
+            target().print(l);
+        }
+
+        @Override
+        public void print(float f) {
+            target().print(f);
+        }
+
+        @Override
+        public void print(double d) {
+            target().print(d);
+        }
+
+        @Override
+        public void print(char[] s) {
+            target().print(s);
+        }
+
+        @Override
+        public void print(String s) {
+            target().print(s);
+        }
+
+        @Override
+        public void print(Object obj) {
+            target().print(obj);
+        }
+
+        @Override
+        public void println() {
+            target().println();
+        }
+
+        @Override
+        public void println(boolean x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(char x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(int x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(long x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(float x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(double x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(char[] x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(String x) {
+            target().println(x);
+        }
+
+        @Override
+        public void println(Object x) {
+            target().println(x);
+        }
+
+        @Override
+        public PrintStream printf(String format, Object... args) {
+            target().printf(format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream printf(Locale l, String format, Object... args) {
+            target().printf(l, format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream format(String format, Object... args) {
+            target().format(format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream format(Locale l, String format, Object... args) {
+            target().format(l, format, args);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(CharSequence csq) {
+            target().append(csq);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(CharSequence csq, int start, int end) {
+            target().append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public PrintStream append(char c) {
+            target().append(c);
+            return this;
+        }
+    }
+
+    private static final class RoutedInput extends InputStream {
+
+        private final InputStream fallback;
+
+        RoutedInput(InputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private InputStream source() {
+            InputStream stream = Invocation.current().stdin();
+            return stream != null ? stream : fallback;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return source().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return source().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source().available();
+        }
+    }
+}
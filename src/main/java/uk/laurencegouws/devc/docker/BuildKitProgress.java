@@ -0,0 +1,180 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.build.BuildProfile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the BuildKit status updates the engine sends during a {@code version=2} build (JSON
+ * messages with id {@code moby.buildkit.trace} and a base64 {@code StatusResponse} in
+ * {@code aux}) as the plain, line-per-event output {@code docker build --progress=plain} prints.
+ * Updates repeat a vertex each time its state changes, so every vertex remembers what has
+ * already been printed for it, and what it took for the build profile.
+ */
+final class BuildKitProgress {
+
+    static final String TRACE_ID = "moby.buildkit.trace";
+
+    private static final class Vertex {
+        final int number;
+        String name;
+        boolean cached;
+        long started;
+        long completed;
+        String error;
+        boolean announced;
+        boolean finished;
+        final Map<String, Long> transferred = new HashMap<>();
+
+        Vertex(int number) {
+            this.number = number;
+        }
+    }
+
+    private final PrintStream out;
+    private final Map<String, Vertex> vertexes = new LinkedHashMap<>();
+    private final Map<String, Boolean> finishedStatuses = new HashMap<>();
+
+    BuildKitProgress(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Applies one {@code aux} payload.
+     */
+    void accept(String aux) throws IOException {
+        ProtoReader response = new ProtoReader(Base64.getDecoder().decode(aux));
+        while (response.next()) {
+            switch (response.field()) {
+                case 1 -> vertex(response.message());
+                case 2 -> status(response.message());
+                case 3 -> log(response.message());
+                default -> response.skip();
+            }
+        }
+    }
+
+    private void vertex(ProtoReader message) throws IOException {
+        String digest = null;
+        String name = null;
+        boolean cached = false;
+        long started = 0;
+        long completed = 0;
+        String error = null;
+        while (message.next()) {
+            switch (message.field()) {
+                case 1 -> digest = message.string();
+                case 3 -> name = message.string();
+                case 4 -> cached = message.varint() != 0;
+                case 5 -> started = message.timestamp();
+                case 6 -> completed = message.timestamp();
+                case 7 -> error = message.string();
+                default -> message.skip();
+            }
+        }
+        if (digest == null) {
+            return;
+        }
+        Vertex vertex = vertexes.computeIfAbsent(digest, key -> new Vertex(vertexes.size() + 1));
+        if (name != null) {
+            vertex.name = name;
+        }
+        vertex.cached |= cached;
+        vertex.started = started != 0 ? started : vertex.started;
+        vertex.completed = completed != 0 ? completed : vertex.completed;
+        vertex.error = error != null && !error.isEmpty() ? error : vertex.error;
+
+        if (!vertex.announced && (vertex.started != 0 || vertex.cached)) {
+            vertex.announced = true;
+            out.printf("#%d %s%n", vertex.number, vertex.name);
+        }
+        if (!vertex.finished && (vertex.completed != 0 || vertex.cached)) {
+            vertex.finished = true;
+            if (vertex.error != null) {
+                out.printf("#%d ERROR: %s%n", vertex.number, vertex.error);
+            } else if (vertex.cached) {
+                out.printf("#%d CACHED%n", vertex.number);
+            } else {
+                out.printf("#%d DONE %.1fs%n", vertex.number, Math.max(0, vertex.completed - vertex.started) / 1e9);
+            }
+        }
+    }
+
+    private void status(ProtoReader message) throws IOException {
+        String id = null;
+        String digest = null;
+        long total = 0;
+        long current = 0;
+        long completed = 0;
+        while (message.next()) {
+            switch (message.field()) {
+                case 1 -> id = message.string();
+                case 2 -> digest = message.string();
+                case 4 -> current = message.varint();
+                case 5 -> total = message.varint();
+                case 8 -> completed = message.timestamp();
+                default -> message.skip();
+            }
+        }
+        Vertex vertex = digest == null ? null : vertexes.get(digest);
+        if (vertex != null && id != null) {
+            vertex.transferred.merge(id, current, Math::max);
+        }
+        // Transfers are reported once, when they finish, rather than at every tick
+        if (vertex == null || id == null || completed == 0 || finishedStatuses.putIfAbsent(digest + id, true) != null) {
+            return;
+        }
+        String size = total > 0
+            ? String.format("%.2fMB / %.2fMB", current / 1e6, total / 1e6)
+            : String.format("%.2fMB", current / 1e6);
+        out.printf("#%d %s %s done%n", vertex.number, id, size);
+    }
+
+    /**
+     * The vertexes that ran or came from the cache, in the order they started.
+     */
+    List<BuildProfile.Step> steps() {
+        List<BuildProfile.Step> steps = new ArrayList<>();
+        for (Vertex vertex : vertexes.values()) {
+            if (!vertex.announced) {
+                continue;
+            }
+            long nanos = vertex.started != 0 && vertex.completed != 0 ? Math.max(0, vertex.completed - vertex.started) : 0;
+            long bytes = vertex.transferred.values().stream().mapToLong(Long::longValue).sum();
+            steps.add(new BuildProfile.Step(vertex.name, nanos, vertex.cached, bytes, vertex.error));
+        }
+        return steps;
+    }
+
+    private void log(ProtoReader message) throws IOException {
+        String digest = null;
+        long timestamp = 0;
+        byte[] bytes = null;
+        while (message.next()) {
+            switch (message.field()) {
+                case 1 -> digest = message.string();
+                case 2 -> timestamp = message.timestamp();
+                case 4 -> bytes = message.bytes();
+                default -> message.skip();
+            }
+        }
+        Vertex vertex = digest == null ? null : vertexes.get(digest);
+        if (vertex == null || bytes == null) {
+            return;
+        }
+        double elapsed = vertex.started != 0 ? Math.max(0, timestamp - vertex.started) / 1e9 : 0;
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\r?\n")) {
+            if (!line.isEmpty()) {
+                out.printf("#%d %.3f %s%n", vertex.number, elapsed, line);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Stream views of channels. Unlike {@link java.nio.channels.Channels}' adapters these hold no
+ * monitor while blocked, so a virtual thread waiting on one doesn't pin its carrier and starve
+ * the thread that would unblock it.
+ */
+final class ChannelStreams {
+
+    private ChannelStreams() {
+    }
+
+    static InputStream input(ReadableByteChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int n = read(single, 0, 1);
+                return n == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    static OutputStream output(WritableByteChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+
+    static WritableByteChannel channel(OutputStream out) {
+        return new WritableByteChannel() {
+            private final byte[] chunk = new byte[64 * 1024];
+            private boolean open = true;
+
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                int count = source.remaining();
+                while (source.hasRemaining()) {
+                    int n = Math.min(chunk.length, source.remaining());
+                    source.get(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() throws IOException {
+                open = false;
+                out.close();
+            }
+        };
+    }
+}
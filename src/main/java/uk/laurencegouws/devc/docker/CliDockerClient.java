@@ -0,0 +1,627 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.archive.ArchiveSource;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.build.BuildProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fallback client that forks the docker CLI for every operation.
+ */
+public class CliDockerClient implements DockerClient {
+
+    private static final DateTimeFormatter CREATED_AT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    @Override
+    public String describe() {
+        return "docker CLI";
+    }
+
+    @Override
+    public String runContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "run", "-d", "--name", name));
+        for (String bind : binds) {
+            command.add("-v");
+            command.add(bind);
+        }
+        labels.forEach((key, value) -> {
+            command.add("--label");
+            command.add(key + "=" + value);
+        });
+        command.add(image);
+        return capture(command).strip();
+    }
+
+    @Override
+    public String createContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "create", "--name", name));
+        for (String bind : binds) {
+            command.add("-v");
+            command.add(bind);
+        }
+        labels.forEach((key, value) -> {
+            command.add("--label");
+            command.add(key + "=" + value);
+        });
+        command.add(image);
+        return capture(command).strip();
+    }
+
+    @Override
+    public Map<String, Object> inspectContainer(String name) throws IOException {
+        String output = inspect(List.of("docker", "container", "inspect", name));
+        if (output == null) {
+            return null;
+        }
+        List<Object> documents = Json.array(Json.parse(output));
+        return documents.isEmpty() ? null : Json.object(documents.get(0));
+    }
+
+    @Override
+    public void renameContainer(String name, String newName) throws IOException {
+        capture(List.of("docker", "rename", name, newName));
+    }
+
+    @Override
+    public void removeContainer(String name, boolean force) throws IOException {
+        capture(force ? List.of("docker", "rm", "-f", name) : List.of("docker", "rm", name));
+    }
+
+    @Override
+    public void startContainer(String name) throws IOException {
+        capture(List.of("docker", "start", name));
+    }
+
+    @Override
+    public void stopContainer(String name) throws IOException {
+        capture(List.of("docker", "stop", name));
+    }
+
+    @Override
+    public void restartContainer(String name, int timeoutSeconds) throws IOException {
+        capture(List.of("docker", "restart", "-t", String.valueOf(timeoutSeconds), name));
+    }
+
+    @Override
+    public List<ContainerSummary> listContainers(String nameFilter, List<String> labelFilters, boolean all) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "ps", "--no-trunc",
+            "--format", "{{.ID}}\t{{.Names}}\t{{.Image}}\t{{.Command}}\t{{.CreatedAt}}\t{{.State}}\t{{.Status}}\t{{.Labels}}"));
+        if (all) {
+            command.add("-a");
+        }
+        if (nameFilter != null) {
+            command.add("-f");
+            command.add("name=" + nameFilter);
+        }
+        for (String label : labelFilters) {
+            command.add("-f");
+            command.add("label=" + label);
+        }
+        List<ContainerSummary> containers = new ArrayList<>();
+        for (String line : capture(command).split("\n")) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 8) {
+                continue;
+            }
+            String commandText = fields[3].startsWith("\"") && fields[3].endsWith("\"") && fields[3].length() > 1
+                ? fields[3].substring(1, fields[3].length() - 1)
+                : fields[3];
+            containers.add(new ContainerSummary(fields[0], fields[1], fields[2], commandText,
+                parseCreatedAt(fields[4]), fields[5], fields[6], parseLabels(fields[7])));
+        }
+        return containers;
+    }
+
+    @Override
+    public EventStream containerEvents(List<String> actions, String container) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "events", "--format", "{{json .}}",
+            "--filter", "type=container"));
+        for (String action : actions) {
+            command.add("--filter");
+            command.add("event=" + action);
+        }
+        if (container != null) {
+            command.add("--filter");
+            command.add("container=" + container);
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = pb.start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        return new EventStream() {
+            @Override
+            public Map<String, Object> next() throws IOException {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        return Json.object(Json.parse(line));
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                // Closes the pipe, so a blocked next() sees the end of the stream
+                process.destroy();
+            }
+        };
+    }
+
+    @Override
+    public boolean containerLogs(String container, LogQuery query, LogSink sink) throws IOException {
+        if (inspectContainer(container) == null) {
+            return false;
+        }
+        List<String> command = new ArrayList<>(List.of("docker", "logs"));
+        if (query.follow()) {
+            command.add("--follow");
+        }
+        if (query.timestamps()) {
+            command.add("--timestamps");
+        }
+        if (query.since() != null) {
+            command.add("--since");
+            command.add(query.since().getEpochSecond() + "." + String.format("%09d", query.since().getNano()));
+        }
+        command.add("--tail");
+        command.add(query.tail() < 0 ? "all" : Integer.toString(query.tail()));
+        command.add(container);
+        Process process = new ProcessBuilder(command).start();
+        // The CLI has already split the streams; stderr is read on its own thread into the same sink
+        ReentrantLock lock = new ReentrantLock();
+        LogSink shared = new LogSink() {
+            @Override
+            public void line(byte[] buffer, int offset, int length, boolean stderr) throws IOException {
+                lock.lock();
+                try {
+                    sink.line(buffer, offset, length, stderr);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                lock.lock();
+                try {
+                    sink.flush();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+        IOException[] stderrFailure = new IOException[1];
+        Thread stderr = Thread.ofVirtual().start(() -> {
+            try (InputStream in = process.getErrorStream()) {
+                new LogDecoder(shared).decodeRaw(in, true);
+            } catch (IOException e) {
+                stderrFailure[0] = e;
+            }
+        });
+        try (InputStream in = process.getInputStream()) {
+            new LogDecoder(shared).decodeRaw(in, false);
+        }
+        try {
+            stderr.join();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading docker logs", e);
+        }
+        if (stderrFailure[0] != null) {
+            throw stderrFailure[0];
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker logs exited with code " + exitCode);
+        }
+        return true;
+    }
+
+    @Override
+    public int exec(String container, List<String> command) throws IOException {
+        List<String> full = new ArrayList<>(List.of("docker", "exec", "-it", container));
+        full.addAll(command);
+        return inherit(full);
+    }
+
+    @Override
+    public ExecProcess openExec(String container, List<String> command) throws IOException {
+        List<String> full = new ArrayList<>(List.of("docker", "exec", "-i", container));
+        full.addAll(command);
+        Process process = new ProcessBuilder(full).start();
+        return new ExecProcess() {
+            @Override
+            public OutputStream stdin() {
+                return process.getOutputStream();
+            }
+
+            @Override
+            public InputStream stdout() {
+                return process.getInputStream();
+            }
+
+            @Override
+            public InputStream stderr() {
+                return process.getErrorStream();
+            }
+
+            @Override
+            public boolean isAlive() {
+                return process.isAlive();
+            }
+
+            @Override
+            public int waitFor() throws IOException {
+                return CliDockerClient.waitFor(process);
+            }
+
+            @Override
+            public void close() {
+                process.destroy();
+            }
+        };
+    }
+
+    @Override
+    public BuildProfile buildImage(String tag, BuildContext context, Map<String, String> labels, boolean buildKit) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "build", "-t", tag, "-f", context.dockerfileName()));
+        labels.forEach((key, value) -> {
+            command.add("--label");
+            command.add(key + "=" + value);
+        });
+        if (buildKit) {
+            // Plain progress names every step with its duration, which the profile is made from
+            command.add("--progress=plain");
+        }
+        // "-" reads the context tar from stdin, so the CLI sends exactly what devc packed
+        command.add("-");
+        ProcessBuilder pb = new ProcessBuilder(command);
+        if (buildKit) {
+            // Already the default on current CLIs; older ones still need asking
+            pb.environment().put("DOCKER_BUILDKIT", "1");
+        }
+        long start = System.nanoTime();
+        Process process = pb.start();
+        // The classic builder reports steps on stdout, BuildKit on stderr
+        TextBuildSteps stdoutSteps = new TextBuildSteps();
+        TextBuildSteps stderrSteps = new TextBuildSteps();
+        Thread stdout = Thread.ofVirtual().start(() -> relay(process.getInputStream(), System.out, stdoutSteps));
+        Thread stderr = Thread.ofVirtual().start(() -> relay(process.getErrorStream(), System.err, stderrSteps));
+        try (OutputStream stdin = process.getOutputStream()) {
+            context.writeTo(Channels.newChannel(stdin));
+        } catch (IOException e) {
+            // docker exited early (bad Dockerfile, daemon down); its exit code explains why
+        }
+        int exitCode = waitFor(process);
+        try {
+            stdout.join();
+            stderr.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for docker", e);
+        }
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker build exited with code " + exitCode);
+        }
+        List<BuildProfile.Step> steps = buildKit ? stderrSteps.steps() : stdoutSteps.steps();
+        return new BuildProfile(buildKit ? "buildkit" : "classic", System.nanoTime() - start, steps);
+    }
+
+    /**
+     * Copies a docker output stream line by line to {@code out}, recording the build steps in it.
+     */
+    private static void relay(InputStream in, PrintStream out, TextBuildSteps steps) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.println(line);
+                steps.accept(line + "\n");
+            }
+        } catch (IOException e) {
+            // The stream closes when docker exits
+        }
+    }
+
+    @Override
+    public Map<String, String> imageLabels(String image) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder("docker", "image", "inspect", "--format", "{{json .Config.Labels}}", image);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = pb.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+        if (waitFor(process) != 0) {
+            // docker image inspect fails with "No such image"
+            return null;
+        }
+        Map<String, String> labels = new LinkedHashMap<>();
+        if (!output.isEmpty() && !output.equals("null")) {
+            Json.object(Json.parse(output)).forEach((key, value) -> labels.put(key, Json.string(value)));
+        }
+        return labels;
+    }
+
+    @Override
+    public String imageId(String image) throws IOException {
+        String output = inspect(List.of("docker", "image", "inspect", "--format", "{{.Id}}", image));
+        return output == null || output.isEmpty() ? null : output;
+    }
+
+    @Override
+    public List<ImageLayer> imageHistory(String image) throws IOException {
+        String output = inspect(List.of("docker", "image", "history", "--no-trunc", "--human=false",
+            "--format", "{{.CreatedAt}}\t{{.Size}}\t{{.CreatedBy}}", image));
+        if (output == null) {
+            return null;
+        }
+        List<ImageLayer> layers = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            String[] fields = line.split("\t", 3);
+            if (fields.length == 3) {
+                try {
+                    layers.add(new ImageLayer(OffsetDateTime.parse(fields[0]).toEpochSecond(), fields[2],
+                        Long.parseLong(fields[1].strip())));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    layers.add(new ImageLayer(0, fields[2], 0));
+                }
+            }
+        }
+        return layers.reversed();
+    }
+
+    @Override
+    public List<String> imageDigests(String image) throws IOException {
+        String output = inspect(List.of("docker", "image", "inspect", "--format", "{{json .RepoDigests}}", image));
+        if (output == null) {
+            return null;
+        }
+        List<String> digests = new ArrayList<>();
+        for (Object digest : Json.array(Json.parse(output))) {
+            digests.add(Json.string(digest));
+        }
+        return digests;
+    }
+
+    @Override
+    public String registryDigest(String image) throws IOException {
+        // buildx ships with current CLIs; without it there is no registry lookup short of pulling
+        String output = inspect(List.of("docker", "buildx", "imagetools", "inspect", "--format", "{{json .Manifest}}", image));
+        if (output == null || output.isEmpty()) {
+            throw new DockerException(1, "Could not look up " + image + " with docker buildx imagetools");
+        }
+        return Json.string(Json.object(Json.parse(output)).get("digest"));
+    }
+
+    @Override
+    public void pullImage(String repository, String reference, String platform, PullProgress progress) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "pull"));
+        if (platform != null) {
+            command.add("--platform");
+            command.add(platform);
+        }
+        command.add(repository + (reference.startsWith("sha256:") ? "@" : ":") + reference);
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        // Without a terminal the CLI prints one "<layer>: <status>" line per layer transition
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(": ");
+                if (colon == 12 && line.substring(0, colon).chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                    progress.update(line.substring(0, colon), line.substring(colon + 2).strip(), 0, 0);
+                } else if (line.startsWith("Digest: ")) {
+                    // Same shape as the engine's status message without a layer id
+                    progress.update(null, line.strip(), 0, 0);
+                }
+            }
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker pull exited with code " + exitCode);
+        }
+    }
+
+    @Override
+    public void removeImage(String image) throws IOException {
+        capture(List.of("docker", "rmi", image));
+    }
+
+    @Override
+    public Map<String, Object> createVolume(String name, Map<String, String> labels) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "volume", "create"));
+        labels.forEach((key, value) -> {
+            command.add("--label");
+            command.add(key + "=" + value);
+        });
+        command.add(name);
+        capture(command);
+        List<Object> documents = Json.array(Json.parse(capture(List.of("docker", "volume", "inspect", name))));
+        return documents.isEmpty() ? Map.of() : Json.object(documents.get(0));
+    }
+
+    @Override
+    public void removeVolume(String name) throws IOException {
+        capture(List.of("docker", "volume", "rm", name));
+    }
+
+    @Override
+    public Map<String, Object> systemDf() throws IOException {
+        // "docker system df -v" only reports rounded, human-readable sizes
+        throw new DockerException(-1, "Disk usage accounting needs the Docker Engine API socket");
+    }
+
+    @Override
+    public long pruneBuildCache(String until) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "builder", "prune", "-f"));
+        if (until != null) {
+            command.add("--filter");
+            command.add("until=" + until);
+        }
+        int exitCode = inherit(command);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker builder prune exited with code " + exitCode);
+        }
+        return -1;
+    }
+
+    @Override
+    public void putArchive(String container, String path, ArchiveSource archive) throws IOException {
+        // "-" reads a tar from stdin; -a keeps ownership with the container's user, as copyUIDGID does
+        ProcessBuilder pb = new ProcessBuilder("docker", "cp", "-a", "-", container + ":" + path);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        try (WritableByteChannel stdin = ChannelStreams.channel(process.getOutputStream())) {
+            archive.writeTo(stdin);
+        } catch (IOException e) {
+            // docker exited early; its exit code explains why
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker cp exited with code " + exitCode);
+        }
+    }
+
+    @Override
+    public boolean getArchive(String container, String path, ArchiveReader reader) throws IOException {
+        if (inspect(List.of("docker", "exec", container, "test", "-e", path)) == null) {
+            return false;
+        }
+        ProcessBuilder pb = new ProcessBuilder("docker", "cp", container + ":" + path, "-");
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        try (InputStream tar = process.getInputStream()) {
+            reader.read(tar);
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker cp exited with code " + exitCode);
+        }
+        return true;
+    }
+
+    @Override
+    public PathStat statPath(String container, String path) throws IOException {
+        // The CLI has no stat call; ask the container, which therefore has to be running
+        String output = inspect(List.of("docker", "exec", container, "stat", "-c", "%F|%s|%Y", "--", path));
+        if (output == null) {
+            return null;
+        }
+        String[] fields = output.split("\\|");
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return new PathStat(name, Long.parseLong(fields[1]), fields[0].equals("directory"), Long.parseLong(fields[2]));
+    }
+
+    @Override
+    public long prune(boolean all, boolean volumes) throws IOException {
+        List<String> command = new ArrayList<>(List.of("docker", "system", "prune", "-f"));
+        if (all) {
+            command.add("--all");
+        }
+        if (volumes) {
+            command.add("--volumes");
+        }
+        int exitCode = inherit(command);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, "docker system prune exited with code " + exitCode);
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        // Nothing held between CLI invocations
+    }
+
+    /**
+     * Runs a CLI command with stdout captured and stderr passed through.
+     */
+    private String capture(List<String> command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectInput(ProcessBuilder.Redirect.INHERIT);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        int exitCode = waitFor(process);
+        if (exitCode != 0) {
+            throw new DockerException(exitCode, String.join(" ", command) + " exited with code " + exitCode);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Runs an inspect command, returning its trimmed output or {@code null} when the object
+     * doesn't exist (the CLI only signals that through a non-zero exit code).
+     */
+    private static String inspect(List<String> command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Process process = pb.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+        return waitFor(process) == 0 ? output : null;
+    }
+
+    private int inherit(List<String> command) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.inheritIO();
+        return waitFor(pb.start());
+    }
+
+    private static int waitFor(Process process) throws IOException {
+        try {
+            return process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for docker", e);
+        }
+    }
+
+    private static Map<String, String> parseLabels(String labels) {
+        // e.g. "devc.managed=true,project=api"
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String label : labels.split(",")) {
+            int equals = label.indexOf('=');
+            if (equals > 0) {
+                parsed.put(label.substring(0, equals), label.substring(equals + 1));
+            }
+        }
+        return parsed;
+    }
+
+    private static long parseCreatedAt(String createdAt) {
+        // e.g. "2024-05-01 10:11:12 +0000 UTC"
+        int zoneName = createdAt.lastIndexOf(' ');
+        try {
+            return OffsetDateTime.parse(createdAt.substring(0, zoneName), CREATED_AT).toEpochSecond();
+        } catch (DateTimeParseException | StringIndexOutOfBoundsException e) {
+            return 0L;
+        }
+    }
+}
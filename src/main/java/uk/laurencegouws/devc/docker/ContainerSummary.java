@@ -0,0 +1,79 @@
+package uk.laurencegouws.devc.docker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One row of a container listing, as returned by either the Engine API or the CLI.
+ *
+ * @param created creation time in epoch seconds
+ */
+public record ContainerSummary(
+    String id,
+    String name,
+    String image,
+    String command,
+    long created,
+    String state,
+    String status,
+    Map<String, String> labels
+) {
+
+    public String shortId() {
+        return id.length() > 12 ? id.substring(0, 12) : id;
+    }
+
+    public boolean isRunning() {
+        return "running".equals(state);
+    }
+
+    /**
+     * The same row with another status text, e.g. one brought up to date from a cached listing.
+     */
+    public ContainerSummary withStatus(String newStatus) {
+        return new ContainerSummary(id, name, image, command, created, state, newStatus, labels);
+    }
+
+    /**
+     * Whether the container carries {@code filter}, given as {@code key} or {@code key=value}
+     * in the same form as Docker's label filter.
+     */
+    public boolean hasLabel(String filter) {
+        int equals = filter.indexOf('=');
+        if (equals < 0) {
+            return labels.containsKey(filter);
+        }
+        return filter.substring(equals + 1).equals(labels.get(filter.substring(0, equals)));
+    }
+
+    /**
+     * The fields as a JSON-ready map, used for {@code status --json} and the state cache.
+     */
+    public Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("name", name);
+        json.put("image", image);
+        json.put("command", command);
+        json.put("created", created);
+        json.put("state", state);
+        json.put("status", status);
+        json.put("labels", labels);
+        return json;
+    }
+
+    public static ContainerSummary fromJson(Map<String, Object> json) {
+        Map<String, String> labels = new LinkedHashMap<>();
+        Json.object(json.get("labels")).forEach((key, value) -> labels.put(key, Json.string(value)));
+        return new ContainerSummary(
+            Json.string(json.get("id")),
+            Json.string(json.get("name")),
+            Json.string(json.get("image")),
+            Json.string(json.get("command")),
+            Json.number(json.get("created")),
+            Json.string(json.get("state")),
+            Json.string(json.get("status")),
+            labels
+        );
+    }
+}
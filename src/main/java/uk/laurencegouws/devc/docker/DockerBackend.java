@@ -0,0 +1,422 @@
+package uk.laurencegouws.devc.docker;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.archive.ArchiveSource;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.build.BuildProfile;
+import uk.laurencegouws.devc.trace.Trace;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared entry point for every Docker operation. Calls run on virtual threads (archive uploads
+ * on platform threads, see {@link #putArchive}) and return
+ * {@link CompletableFuture}s so commands can overlap independent work; each call gets a
+ * timeout, cancelling the future interrupts the underlying call, and per-operation latency
+ * is recorded in a {@link LatencyHistogram} and, when tracing, as a span of the caller's {@link Trace}.
+ */
+@ApplicationScoped
+public class DockerBackend {
+
+    /** Timeout value meaning "wait as long as it takes", used for interactive and build calls. */
+    public static final Duration NO_TIMEOUT = Duration.ZERO;
+
+    @FunctionalInterface
+    public interface DockerCall<T> {
+        T call(DockerClient client) throws IOException;
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Archive uploads run on platform threads. A connection they open stays blocking, so
+    // TarArchive's transferTo hands whole files to the kernel; on a virtual thread's socket it
+    // stops at every full send buffer and the rest is copied through user space
+    private final ExecutorService uploads = Executors.newCachedThreadPool(Thread.ofPlatform()
+        .name("devc-upload-", 0).daemon(true).factory());
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> streamBytes = new ConcurrentHashMap<>();
+    private final Map<String, CachedListing> containerState = new ConcurrentHashMap<>();
+    private final ReentrantLock clientLock = new ReentrantLock();
+    private volatile DockerClient client;
+
+    @ConfigProperty(name = "devc.docker.timeout", defaultValue = "60s")
+    Duration defaultTimeout;
+
+    @ConfigProperty(name = "devc.docker.state-ttl", defaultValue = "2s")
+    Duration stateTtl;
+
+    @ConfigProperty(name = "devc.timings", defaultValue = "false")
+    boolean printTimings;
+
+    /**
+     * Returns the shared client, connecting on first use.
+     */
+    public DockerClient client() {
+        DockerClient connected = client;
+        if (connected != null) {
+            return connected;
+        }
+        // A lock rather than synchronized so connecting doesn't pin a virtual thread's carrier
+        clientLock.lock();
+        try {
+            if (client == null) {
+                client = DockerClient.connect();
+            }
+            return client;
+        } finally {
+            clientLock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code call} on a virtual thread, recording its latency under {@code operation}.
+     * A zero or negative timeout disables the deadline.
+     */
+    public <T> CompletableFuture<T> submit(String operation, Duration timeout, DockerCall<T> call) {
+        return submit(operation, timeout, call, executor);
+    }
+
+    private <T> CompletableFuture<T> submit(String operation, Duration timeout, DockerCall<T> call, ExecutorService on) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // Pooled upload threads don't inherit the caller's trace, so hand it over explicitly
+        Trace trace = Trace.current();
+        Future<?> task = on.submit(() -> trace.run(() -> {
+            long start = System.nanoTime();
+            try {
+                result.complete(call.call(client()));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                long end = System.nanoTime();
+                histogram(operation).record(end - start);
+                trace.complete(operation, "docker", start, end, Map.of());
+            }
+        }));
+        // Timeouts and caller cancellation both interrupt the call; blocked socket channels
+        // are interruptible and CLI processes are destroyed on interrupt
+        result.whenComplete((value, failure) -> {
+            if (failure instanceof CancellationException || failure instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        if (timeout != null && timeout.isPositive()) {
+            result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    public <T> CompletableFuture<T> submit(String operation, DockerCall<T> call) {
+        return submit(operation, defaultTimeout, call);
+    }
+
+    public CompletableFuture<String> runContainer(String name, String image, List<String> binds, Map<String, String> labels) {
+        return submit("run", client -> {
+            containerState.clear();
+            return client.runContainer(name, image, binds, labels);
+        });
+    }
+
+    public CompletableFuture<String> createContainer(String name, String image, List<String> binds, Map<String, String> labels) {
+        return submit("create", client -> {
+            containerState.clear();
+            return client.createContainer(name, image, binds, labels);
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> inspectContainer(String name) {
+        return submit("inspect", client -> client.inspectContainer(name));
+    }
+
+    public CompletableFuture<Void> renameContainer(String name, String newName) {
+        return submit("rename", client -> {
+            containerState.clear();
+            client.renameContainer(name, newName);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeContainer(String name, boolean force) {
+        return submit("rm", client -> {
+            containerState.clear();
+            client.removeContainer(name, force);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> startContainer(String name) {
+        return submit("start", client -> {
+            containerState.clear();
+            client.startContainer(name);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> stopContainer(String name) {
+        return submit("stop", client -> {
+            containerState.clear();
+            client.stopContainer(name);
+            return null;
+        });
+    }
+
+    /**
+     * Restarts through a single engine call. The deadline is extended by the stop grace
+     * period, which the engine may wait out in full.
+     */
+    public CompletableFuture<Void> restartContainer(String name, int timeoutSeconds) {
+        return submit("restart", defaultTimeout.plusSeconds(timeoutSeconds), client -> {
+            containerState.clear();
+            client.restartContainer(name, timeoutSeconds);
+            return null;
+        });
+    }
+
+    /**
+     * Lists containers, answering from a short-lived cache when the same listing was fetched
+     * within {@code devc.docker.state-ttl}. Mostly pays off in the daemon, where status loops
+     * hit a warm process; any lifecycle call through this backend invalidates the cache.
+     */
+    public CompletableFuture<List<ContainerSummary>> listContainers(String nameFilter, boolean all) {
+        return listContainers(nameFilter, List.of(), all);
+    }
+
+    public CompletableFuture<List<ContainerSummary>> listContainers(String nameFilter, List<String> labelFilters, boolean all) {
+        String key = nameFilter + "|" + labelFilters + "|" + all;
+        CachedListing cached = containerState.get(key);
+        if (cached != null && System.nanoTime() - cached.fetchedAt() < stateTtl.toNanos()) {
+            histogram("ps-cached").record(0L);
+            return CompletableFuture.completedFuture(cached.containers());
+        }
+        return submit("ps", client -> {
+            List<ContainerSummary> containers = client.listContainers(nameFilter, labelFilters, all);
+            containerState.put(key, new CachedListing(System.nanoTime(), containers));
+            return containers;
+        });
+    }
+
+    /**
+     * Opens a container event subscription; the stream itself is read by the caller.
+     */
+    public CompletableFuture<EventStream> containerEvents(List<String> actions) {
+        return containerEvents(actions, null);
+    }
+
+    public CompletableFuture<EventStream> containerEvents(List<String> actions, String container) {
+        return submit("events", client -> client.containerEvents(actions, container));
+    }
+
+    public CompletableFuture<Boolean> containerLogs(String container, DockerClient.LogQuery query, DockerClient.LogSink sink) {
+        // Unbounded: a followed log runs until the container stops
+        return submit("logs", NO_TIMEOUT, client -> client.containerLogs(container, query, sink));
+    }
+
+    public CompletableFuture<Integer> exec(String container, List<String> command) {
+        return submit("exec", NO_TIMEOUT, client -> client.exec(container, command));
+    }
+
+    public CompletableFuture<ExecProcess> openExec(String container, List<String> command) {
+        return submit("exec-open", client -> new MeteredExecProcess(client.openExec(container, command), this));
+    }
+
+    public CompletableFuture<BuildProfile> buildImage(String tag, BuildContext context, Map<String, String> labels,
+                                                      boolean buildKit) {
+        return submit("build", NO_TIMEOUT, client -> client.buildImage(tag, context, labels, buildKit));
+    }
+
+    public CompletableFuture<Map<String, String>> imageLabels(String image) {
+        return submit("image-inspect", client -> client.imageLabels(image));
+    }
+
+    public CompletableFuture<String> imageId(String image) {
+        return submit("image-inspect", client -> client.imageId(image));
+    }
+
+    public CompletableFuture<List<DockerClient.ImageLayer>> imageHistory(String image) {
+        return submit("image-history", client -> client.imageHistory(image));
+    }
+
+    public CompletableFuture<List<String>> imageDigests(String image) {
+        return submit("image-inspect", client -> client.imageDigests(image));
+    }
+
+    public CompletableFuture<String> registryDigest(String image) {
+        return submit("distribution", client -> client.registryDigest(image));
+    }
+
+    public CompletableFuture<Void> pullImage(String repository, String reference, String platform,
+                                             DockerClient.PullProgress progress) {
+        // A base image can be gigabytes on a slow link
+        return submit("pull", NO_TIMEOUT, client -> {
+            client.pullImage(repository, reference, platform, progress);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> removeImage(String image) {
+        return submit("rmi", client -> {
+            client.removeImage(image);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> createVolume(String name, Map<String, String> labels) {
+        return submit("volume-create", client -> client.createVolume(name, labels));
+    }
+
+    public CompletableFuture<Void> removeVolume(String name) {
+        return submit("volume-rm", client -> {
+            client.removeVolume(name);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Map<String, Object>> systemDf() {
+        // Walking every layer and volume can take a while on a busy host
+        return submit("df", NO_TIMEOUT, DockerClient::systemDf);
+    }
+
+    public CompletableFuture<Long> pruneBuildCache(String until) {
+        return submit("build-prune", NO_TIMEOUT, client -> client.pruneBuildCache(until));
+    }
+
+    public CompletableFuture<Void> putArchive(String container, String path, ArchiveSource archive) {
+        // Unbounded: the initial copy of a large workspace is one long upload
+        return submit("archive-put", NO_TIMEOUT, client -> {
+            try (Trace.Span span = Trace.current().span("archive-put-stream", "stream").bytes(archive.size())) {
+                client.putArchive(container, path, archive);
+            }
+            countStream("archive-put", archive.size());
+            return null;
+        }, uploads);
+    }
+
+    public CompletableFuture<DockerClient.PathStat> statPath(String container, String path) {
+        return submit("archive-stat", client -> client.statPath(container, path));
+    }
+
+    public CompletableFuture<Boolean> getArchive(String container, String path, DockerClient.ArchiveReader reader) {
+        return submit("archive-get", NO_TIMEOUT, client -> {
+            long[] received = {0};
+            Trace.Span span = Trace.current().span("archive-get-stream", "stream");
+            try {
+                return client.getArchive(container, path, tar -> reader.read(new FilterInputStream(tar) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        received[0] += b < 0 ? 0 : 1;
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int n = super.read(buffer, offset, length);
+                        received[0] += Math.max(0, n);
+                        return n;
+                    }
+                }));
+            } finally {
+                countStream("archive-get", received[0]);
+                span.bytes(received[0]).close();
+            }
+        });
+    }
+
+    public CompletableFuture<Long> prune(boolean all, boolean volumes) {
+        return submit("prune", NO_TIMEOUT, client -> {
+            containerState.clear();
+            return client.prune(all, volumes);
+        });
+    }
+
+    /**
+     * Blocks for a result, unwrapping failures back into the {@link IOException}s commands already handle.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for Docker", e);
+        } catch (CancellationException e) {
+            throw new IOException("Docker operation was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new IOException("Timed out waiting for Docker", cause);
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    public LatencyHistogram histogram(String operation) {
+        return histograms.computeIfAbsent(operation, key -> new LatencyHistogram());
+    }
+
+    public Map<String, LatencyHistogram> histograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    void countStream(String stream, long bytes) {
+        streamBytes.computeIfAbsent(stream, key -> new LongAdder()).add(bytes);
+    }
+
+    /**
+     * Bytes moved through exec streams and archive transfers since startup, by stream.
+     */
+    public Map<String, Long> streamBytes() {
+        Map<String, Long> totals = new TreeMap<>();
+        streamBytes.forEach((stream, bytes) -> totals.put(stream, bytes.sum()));
+        return totals;
+    }
+
+    public void printTimings(PrintStream out) {
+        out.printf("%-14s %6s %10s %10s %10s %10s%n", "OPERATION", "CALLS", "P50 ms", "P90 ms", "MAX ms", "TOTAL ms");
+        histograms().forEach((operation, histogram) -> out.printf("%-14s %6d %10.1f %10.1f %10.1f %10.1f%n",
+            operation,
+            histogram.count(),
+            histogram.percentileNanos(50) / 1e6,
+            histogram.percentileNanos(90) / 1e6,
+            histogram.maxNanos() / 1e6,
+            histogram.totalNanos() / 1e6));
+    }
+
+    private record CachedListing(long fetchedAt, List<ContainerSummary> containers) {
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (printTimings && !histograms.isEmpty()) {
+            printTimings(System.err);
+        }
+        executor.shutdownNow();
+        uploads.shutdownNow();
+        if (client != null) {
+            client.close();
+        }
+    }
+}
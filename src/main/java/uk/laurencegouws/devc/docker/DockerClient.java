@@ -0,0 +1,252 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.archive.ArchiveSource;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.build.BuildProfile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Docker operations devc needs. The default implementation talks to the Engine API
+ * directly over its Unix socket; the docker CLI remains available as a fallback when the
+ * socket is unreachable or {@code DEVC_DOCKER_CLIENT=cli} is set.
+ */
+public interface DockerClient extends Closeable {
+
+    /** Environment variable selecting the client: {@code engine}, {@code cli} or unset for auto. */
+    String CLIENT_ENV = "DEVC_DOCKER_CLIENT";
+
+    /**
+     * Short human-readable description of the transport in use.
+     */
+    String describe();
+
+    /**
+     * Creates and starts a detached container carrying {@code labels}, returning its id.
+     */
+    String runContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException;
+
+    /**
+     * Creates a container without starting it, returning its id.
+     */
+    String createContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException;
+
+    /**
+     * The engine's inspect document for a container, or {@code null} when it doesn't exist.
+     */
+    Map<String, Object> inspectContainer(String name) throws IOException;
+
+    void renameContainer(String name, String newName) throws IOException;
+
+    void removeContainer(String name, boolean force) throws IOException;
+
+    void startContainer(String name) throws IOException;
+
+    void stopContainer(String name) throws IOException;
+
+    /**
+     * Restarts a container in one engine call, waiting {@code timeoutSeconds} after SIGTERM
+     * before killing it.
+     */
+    void restartContainer(String name, int timeoutSeconds) throws IOException;
+
+    /**
+     * Lists containers whose name matches {@code nameFilter} (any, when null) and which carry
+     * every label in {@code labelFilters}, each given as {@code key} or {@code key=value}.
+     */
+    List<ContainerSummary> listContainers(String nameFilter, List<String> labelFilters, boolean all) throws IOException;
+
+    default List<ContainerSummary> listContainers(String nameFilter, boolean all) throws IOException {
+        return listContainers(nameFilter, List.of(), all);
+    }
+
+    /**
+     * Subscribes to container events whose action is one of {@code actions}, for one
+     * container or, when {@code container} is null, for all of them.
+     */
+    EventStream containerEvents(List<String> actions, String container) throws IOException;
+
+    /**
+     * Streams a container's log as {@code docker logs} does, handing it to {@code sink} line by
+     * line as it is read. Returns false, without calling the sink, when the container doesn't exist.
+     */
+    boolean containerLogs(String container, LogQuery query, LogSink sink) throws IOException;
+
+    /**
+     * Which part of a log to read: lines written since {@code since} (the whole log when null),
+     * only the last {@code tail} of those (all when negative), and with {@code follow} new lines
+     * as they are written, until the container stops. With {@code timestamps} every line starts
+     * with the time it was logged, in RFC 3339 with nanoseconds, and a space.
+     */
+    record LogQuery(Instant since, int tail, boolean follow, boolean timestamps) {
+    }
+
+    /**
+     * Runs a command inside a container attached to the current terminal and returns its exit code.
+     */
+    int exec(String container, List<String> command) throws IOException;
+
+    /**
+     * Starts a command inside a container with piped, separate stdin, stdout and stderr.
+     */
+    ExecProcess openExec(String container, List<String> command) throws IOException;
+
+    /**
+     * Builds {@code tag} from a pre-packed context, stamping the image with {@code labels}.
+     * {@code buildKit} selects BuildKit over the classic builder, which Dockerfiles using cache
+     * mounts and other BuildKit syntax need. Build output is written to stdout as it arrives, and
+     * the steps it reports are returned as the build's profile.
+     */
+    BuildProfile buildImage(String tag, BuildContext context, Map<String, String> labels, boolean buildKit) throws IOException;
+
+    /**
+     * Labels of a local image, or {@code null} when no such image exists.
+     */
+    Map<String, String> imageLabels(String image) throws IOException;
+
+    /**
+     * Id of a local image, or {@code null} when no such image exists.
+     */
+    String imageId(String image) throws IOException;
+
+    /**
+     * The layers of a local image, oldest first, or {@code null} when no such image exists.
+     */
+    List<ImageLayer> imageHistory(String image) throws IOException;
+
+    /**
+     * One entry of an image's history: when the instruction that made it was committed, in
+     * epoch seconds, the instruction as the builder recorded it, and the bytes it added.
+     */
+    record ImageLayer(long created, String createdBy, long size) {
+    }
+
+    /**
+     * Repository digests ({@code name@sha256:...}) of a local image, or {@code null} when no
+     * such image exists.
+     */
+    List<String> imageDigests(String image) throws IOException;
+
+    /**
+     * Digest of the manifest {@code image} currently resolves to in its registry. The engine
+     * asks the registry, so every call is a network round trip.
+     */
+    String registryDigest(String image) throws IOException;
+
+    /**
+     * Pulls {@code repository} at {@code reference} (a tag or digest) for {@code platform}, or
+     * the engine's default platform when null, reporting per-layer progress as it arrives.
+     */
+    void pullImage(String repository, String reference, String platform, PullProgress progress) throws IOException;
+
+    void removeImage(String image) throws IOException;
+
+    /**
+     * Creates a named volume, or returns the existing one, as the engine's volume document.
+     */
+    Map<String, Object> createVolume(String name, Map<String, String> labels) throws IOException;
+
+    void removeVolume(String name) throws IOException;
+
+    /**
+     * The engine's disk usage document ({@code GET /system/df}): containers, images, volumes
+     * and build cache records, each with its size, labels and creation time.
+     */
+    Map<String, Object> systemDf() throws IOException;
+
+    /**
+     * Removes unused build cache records not used for {@code until} (a Go duration such as
+     * {@code 24h}; everything unused when null) and returns the reclaimed bytes, or -1 when unknown.
+     */
+    long pruneBuildCache(String until) throws IOException;
+
+    /**
+     * Prunes unused resources and returns the reclaimed bytes, or -1 when unknown.
+     */
+    long prune(boolean all, boolean volumes) throws IOException;
+
+    /**
+     * Extracts {@code archive} into the directory {@code path} inside a container. Members are
+     * owned by the container's configured user, as with {@code docker cp -a}.
+     */
+    void putArchive(String container, String path, ArchiveSource archive) throws IOException;
+
+    /**
+     * Streams {@code path} inside a container as a tar archive to {@code reader}. Returns false,
+     * without calling the reader, when the path doesn't exist.
+     */
+    boolean getArchive(String container, String path, ArchiveReader reader) throws IOException;
+
+    /**
+     * What {@code path} is inside a container, or null when it doesn't exist.
+     */
+    PathStat statPath(String container, String path) throws IOException;
+
+    /**
+     * A container path's type, size and modification time in epoch seconds.
+     */
+    record PathStat(String name, long size, boolean directory, long modified) {
+    }
+
+    @FunctionalInterface
+    interface PullProgress {
+        /**
+         * {@code current} and {@code total} are bytes, or 0 when the status carries no byte count.
+         */
+        void update(String layer, String status, long current, long total);
+    }
+
+    interface LogSink {
+        /**
+         * One line without its line ending. The bytes are only valid during the call.
+         */
+        void line(byte[] buffer, int offset, int length, boolean stderr) throws IOException;
+
+        /**
+         * Called when everything read so far has been handed over, before waiting for more.
+         */
+        default void flush() throws IOException {
+        }
+    }
+
+    @FunctionalInterface
+    interface ArchiveReader {
+        void read(InputStream tar) throws IOException;
+    }
+
+    @Override
+    void close();
+
+    /**
+     * Connects to the Docker engine socket, falling back to the docker CLI when the socket
+     * is missing or not accessible.
+     */
+    static DockerClient connect() {
+        String mode = System.getenv(CLIENT_ENV);
+        if ("cli".equalsIgnoreCase(mode)) {
+            return new CliDockerClient();
+        }
+        Path socket = DockerEngineClient.defaultSocketPath();
+        if (!"engine".equalsIgnoreCase(mode) && !Files.exists(socket)) {
+            return new CliDockerClient();
+        }
+        DockerEngineClient engine = new DockerEngineClient(socket);
+        try {
+            engine.connect();
+        } catch (IOException e) {
+            engine.close();
+            if ("engine".equalsIgnoreCase(mode)) {
+                throw new IllegalStateException("Cannot connect to Docker engine at " + socket + ": " + e.getMessage(), e);
+            }
+            return new CliDockerClient();
+        }
+        return new EngineDockerClient(engine);
+    }
+}
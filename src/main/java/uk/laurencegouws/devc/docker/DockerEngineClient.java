@@ -0,0 +1,290 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * HTTP/1.1 client for the Docker Engine API over its Unix domain socket.
+ * Connections are kept alive and pooled, so a sequence of calls costs a single
+ * connect instead of a fork/exec of the docker CLI per call.
+ */
+public class DockerEngineClient implements Closeable {
+
+    public static final String DEFAULT_SOCKET = "/var/run/docker.sock";
+
+    /** Engine API version every request is pinned to (Docker 20.10+). */
+    static final String API_VERSION = "/v1.41";
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    /**
+     * A request body of known length written straight onto the connection, so large uploads
+     * such as a build context are never buffered in memory. Written at most once, as only a
+     * request whose head never left this process is sent again.
+     */
+    public interface RequestBody {
+
+        long length();
+
+        void writeTo(WritableByteChannel channel) throws IOException;
+
+        static RequestBody of(byte[] bytes) {
+            return new RequestBody() {
+                @Override
+                public long length() {
+                    return bytes.length;
+                }
+
+                @Override
+                public void writeTo(WritableByteChannel channel) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            };
+        }
+    }
+
+    private final Path socketPath;
+    private final Deque<EngineConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    public DockerEngineClient(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Resolves the engine socket from {@code DOCKER_HOST} (when it is a {@code unix://} URL)
+     * or falls back to {@value #DEFAULT_SOCKET}.
+     */
+    public static Path defaultSocketPath() {
+        String dockerHost = System.getenv("DOCKER_HOST");
+        if (dockerHost != null && dockerHost.startsWith("unix://")) {
+            return Path.of(dockerHost.substring("unix://".length()));
+        }
+        return Path.of(DEFAULT_SOCKET);
+    }
+
+    public Path socketPath() {
+        return socketPath;
+    }
+
+    /**
+     * Opens a connection up front and parks it in the pool, failing fast when the socket
+     * is missing or not accessible so callers can fall back to the CLI.
+     */
+    public void connect() throws IOException {
+        release(EngineConnection.open(socketPath));
+    }
+
+    public EngineResponse get(String path) throws IOException {
+        return execute("GET", path, null, (RequestBody) null);
+    }
+
+    public EngineResponse post(String path) throws IOException {
+        return execute("POST", path, null, (RequestBody) null);
+    }
+
+    public EngineResponse post(String path, Object jsonBody) throws IOException {
+        return execute("POST", path, "application/json",
+            Json.write(jsonBody).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public EngineResponse delete(String path) throws IOException {
+        return execute("DELETE", path, null, (RequestBody) null);
+    }
+
+    /**
+     * Convenience for the common "GET and parse the whole JSON body" case.
+     */
+    public Object getJson(String path) throws IOException {
+        try (EngineResponse response = get(path).requireStatus()) {
+            return response.json();
+        }
+    }
+
+    /**
+     * Sends a POST that asks the engine to hijack the connection (exec or container attach) and
+     * returns the connection, now a raw bidirectional stream. It is never returned to the pool.
+     */
+    EngineConnection upgrade(String path, Object jsonBody) throws IOException {
+        byte[] body = Json.write(jsonBody).getBytes(StandardCharsets.UTF_8);
+        String head = "POST " + API_VERSION + path + " HTTP/1.1\r\n"
+            + "Host: docker\r\n"
+            + "User-Agent: devc\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: " + body.length + "\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Upgrade: tcp\r\n"
+            + "\r\n";
+        EngineConnection connection = EngineConnection.open(socketPath);
+        try {
+            connection.write(head);
+            connection.write(body);
+            EngineResponse response = readResponse(connection, "POST");
+            // 101 on current engines; older ones answer 200 and hijack anyway
+            if (response.status() != 101 && response.status() != 200) {
+                throw response.error();
+            }
+            return connection;
+        } catch (IOException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+    }
+
+    public EngineResponse execute(String method, String path, String contentType, byte[] body) throws IOException {
+        return execute(method, path, contentType, body == null ? null : RequestBody.of(body));
+    }
+
+    public EngineResponse execute(String method, String path, String contentType, RequestBody body) throws IOException {
+        StringBuilder head = new StringBuilder(256)
+            .append(method).append(' ').append(API_VERSION).append(path).append(" HTTP/1.1\r\n")
+            .append("Host: docker\r\n")
+            .append("User-Agent: devc\r\n");
+        if (contentType != null) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        if (body != null || !"GET".equals(method)) {
+            head.append("Content-Length: ").append(body == null ? 0 : body.length()).append("\r\n");
+        }
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        EngineConnection pooled = pollIdle();
+        if (pooled != null) {
+            long writtenBefore = pooled.written();
+            try {
+                return send(pooled, method, headBytes, body);
+            } catch (IOException e) {
+                closeQuietly(pooled);
+                // The engine may have dropped the keep-alive connection. Send again on a fresh one
+                // only when it can't have acted on the first attempt: none of it got out, or the
+                // request only reads. A half-sent create, build or start must not run twice.
+                if (pooled.written() != writtenBefore && !isIdempotent(method)) {
+                    throw e;
+                }
+            }
+        }
+        EngineConnection fresh = EngineConnection.open(socketPath);
+        try {
+            return send(fresh, method, headBytes, body);
+        } catch (IOException e) {
+            closeQuietly(fresh);
+            throw e;
+        }
+    }
+
+    /**
+     * The most recently used idle connection the engine hasn't closed in the meantime.
+     */
+    private EngineConnection pollIdle() {
+        EngineConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (!connection.isStale()) {
+                return connection;
+            }
+            closeQuietly(connection);
+        }
+        return null;
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    private EngineResponse send(EngineConnection connection, String method, byte[] head, RequestBody body) throws IOException {
+        connection.write(head);
+        if (body != null) {
+            body.writeTo(connection.channel());
+        }
+        return readResponse(connection, method);
+    }
+
+    EngineResponse readResponse(EngineConnection connection, String method) throws IOException {
+        String statusLine = connection.readLine();
+        if (statusLine == null || !statusLine.startsWith("HTTP/1.")) {
+            throw new IOException("Malformed response from Docker engine: " + statusLine);
+        }
+        String[] parts = statusLine.split(" ", 3);
+        int status = Integer.parseInt(parts[1]);
+        boolean keepAlive = !statusLine.startsWith("HTTP/1.0");
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = connection.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        if ("close".equalsIgnoreCase(headers.get("connection"))) {
+            keepAlive = false;
+        }
+
+        EngineResponse.BodyInputStream body;
+        String contentLength = headers.get("content-length");
+        if ("HEAD".equals(method) || status == 204 || status == 304 || status / 100 == 1) {
+            body = new EngineResponse.EmptyBody();
+        } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            body = new EngineResponse.ChunkedBody(connection);
+        } else if (contentLength != null) {
+            long length = Long.parseLong(contentLength);
+            body = length == 0 ? new EngineResponse.EmptyBody() : new EngineResponse.FixedLengthBody(connection, length);
+        } else {
+            body = new EngineResponse.UntilCloseBody(connection);
+            keepAlive = false;
+        }
+        return new EngineResponse(status, headers, body, connection, this, keepAlive);
+    }
+
+    void release(EngineConnection connection) {
+        if (closed || !connection.isOpen() || idle.size() >= MAX_IDLE_CONNECTIONS) {
+            closeQuietly(connection);
+            return;
+        }
+        idle.offerFirst(connection);
+    }
+
+    /**
+     * Percent-encodes a single query parameter value.
+     */
+    public static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Encodes an Engine API {@code filters} parameter, e.g. {@code {"name":["devc-container"]}}.
+     */
+    public static String filters(Map<String, ?> filters) {
+        return encode(Json.write(filters));
+    }
+
+    private static void closeQuietly(EngineConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do with a failed close
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        EngineConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            closeQuietly(connection);
+        }
+    }
+}
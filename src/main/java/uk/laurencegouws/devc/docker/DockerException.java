@@ -0,0 +1,25 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.IOException;
+
+/**
+ * A Docker operation that reached the engine (or CLI) but was rejected by it.
+ * The status is the HTTP status code for Engine API calls, or the exit code of the CLI.
+ */
+public class DockerException extends IOException {
+
+    private final int status;
+
+    public DockerException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public boolean isNotFound() {
+        return status == 404;
+    }
+}
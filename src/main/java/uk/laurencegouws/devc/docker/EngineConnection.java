@@ -0,0 +1,220 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A single HTTP/1.1 connection to the Docker Engine over its Unix domain socket.
+ * Reads are buffered internally so the status line, headers and body can be parsed
+ * straight off the channel without an extra stream layer.
+ */
+final class EngineConnection implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final ByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer readView = ByteBuffer.wrap(buffer);
+    private int position;
+    private int limit;
+    private long written;
+
+    /**
+     * Wraps an already connected channel; {@link #open} is the way in for a real engine, this one
+     * lets the parsing be driven from memory.
+     */
+    EngineConnection(ByteChannel channel) {
+        this.channel = channel;
+    }
+
+    static EngineConnection open(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new EngineConnection(channel);
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    int read(byte[] target, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == limit) {
+            // Large reads bypass the internal buffer entirely
+            if (length >= BUFFER_SIZE) {
+                return channel.read(ByteBuffer.wrap(target, offset, length));
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, target, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Bytes already read off the socket and not yet consumed, which a read returns without blocking.
+     */
+    int buffered() {
+        return limit - position;
+    }
+
+    /**
+     * Reads a CRLF (or bare LF) terminated line, or {@code null} at end of stream.
+     */
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        while (true) {
+            if (position == limit && !fill()) {
+                return line.isEmpty() ? null : line.toString();
+            }
+            byte b = buffer[position++];
+            if (b == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) (b & 0xff));
+        }
+    }
+
+    void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            written += channel.write(data);
+        }
+    }
+
+    /**
+     * Bytes handed to the socket through {@link #write} so far, to tell whether a failed request
+     * got any of its head out.
+     */
+    long written() {
+        return written;
+    }
+
+    /**
+     * Whether the engine has closed this idle connection, or sent something nobody asked for;
+     * checked with a non-blocking read before the connection is reused.
+     */
+    boolean isStale() {
+        if (!channel.isOpen() || position < limit) {
+            return true;
+        }
+        if (!(channel instanceof SocketChannel socket)) {
+            return false;
+        }
+        try {
+            socket.configureBlocking(false);
+            try {
+                readView.clear();
+                return socket.read(readView) != 0;
+            } finally {
+                socket.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The raw channel, for request bodies that stream file contents with {@code transferTo}.
+     */
+    WritableByteChannel channel() {
+        return channel;
+    }
+
+    /**
+     * The connection as a raw byte stream once the engine has hijacked it (exec attach): anything
+     * already buffered after the response headers comes first, then reads go straight to the socket.
+     */
+    ReadableByteChannel rawInput() {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer target) throws IOException {
+                if (position < limit) {
+                    int count = Math.min(target.remaining(), limit - position);
+                    target.put(buffer, position, count);
+                    position += count;
+                    return count;
+                }
+                return channel.read(target);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Half-closes the connection, which the engine forwards to the process as stdin EOF.
+     * Channels other than sockets have no half-close and are left open.
+     */
+    void shutdownOutput() throws IOException {
+        if (channel instanceof SocketChannel socket) {
+            socket.shutdownOutput();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        readView.clear();
+        int read = channel.read(readView);
+        if (read <= 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,493 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.archive.ArchiveSource;
+import uk.laurencegouws.devc.build.BuildContext;
+import uk.laurencegouws.devc.build.BuildProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DockerClient} backed by the Engine API. Interactive TTY execs are still delegated
+ * to the CLI, which owns terminal raw mode.
+ */
+public class EngineDockerClient implements DockerClient {
+
+    private final DockerEngineClient engine;
+    private final CliDockerClient cli = new CliDockerClient();
+
+    public EngineDockerClient(DockerEngineClient engine) {
+        this.engine = engine;
+    }
+
+    public DockerEngineClient engine() {
+        return engine;
+    }
+
+    @Override
+    public String describe() {
+        return "Docker engine at unix://" + engine.socketPath();
+    }
+
+    @Override
+    public String runContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException {
+        String id = createContainer(name, image, binds, labels);
+        startContainer(id);
+        return id;
+    }
+
+    @Override
+    public String createContainer(String name, String image, List<String> binds, Map<String, String> labels) throws IOException {
+        Map<String, Object> hostConfig = new LinkedHashMap<>();
+        hostConfig.put("Binds", binds);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("Image", image);
+        body.put("Labels", labels);
+        body.put("HostConfig", hostConfig);
+
+        try (EngineResponse response = engine.post("/containers/create?name=" + DockerEngineClient.encode(name), body)
+                .requireStatus()) {
+            return Json.string(Json.object(response.json()).get("Id"));
+        }
+    }
+
+    @Override
+    public Map<String, Object> inspectContainer(String name) throws IOException {
+        try (EngineResponse response = engine.get("/containers/" + DockerEngineClient.encode(name) + "/json")) {
+            if (response.status() == 404) {
+                return null;
+            }
+            return Json.object(response.requireStatus().json());
+        }
+    }
+
+    @Override
+    public void renameContainer(String name, String newName) throws IOException {
+        try (EngineResponse ignored = engine.post("/containers/" + DockerEngineClient.encode(name)
+                + "/rename?name=" + DockerEngineClient.encode(newName)).requireStatus()) {
+            // No body
+        }
+    }
+
+    @Override
+    public void removeContainer(String name, boolean force) throws IOException {
+        try (EngineResponse ignored = engine.delete("/containers/" + DockerEngineClient.encode(name) + "?force=" + force)
+                .requireStatus()) {
+            // No body
+        }
+    }
+
+    @Override
+    public void startContainer(String name) throws IOException {
+        // 304: already running, which the CLI also treats as success
+        try (EngineResponse ignored = engine.post("/containers/" + DockerEngineClient.encode(name) + "/start")
+                .requireStatus(304)) {
+            // No body
+        }
+    }
+
+    @Override
+    public void stopContainer(String name) throws IOException {
+        try (EngineResponse ignored = engine.post("/containers/" + DockerEngineClient.encode(name) + "/stop")
+                .requireStatus(304)) {
+            // No body
+        }
+    }
+
+    @Override
+    public void restartContainer(String name, int timeoutSeconds) throws IOException {
+        try (EngineResponse ignored = engine.post("/containers/" + DockerEngineClient.encode(name) + "/restart?t=" + timeoutSeconds)
+                .requireStatus()) {
+            // No body
+        }
+    }
+
+    @Override
+    public List<ContainerSummary> listContainers(String nameFilter, List<String> labelFilters, boolean all) throws IOException {
+        StringBuilder path = new StringBuilder("/containers/json?all=").append(all);
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        if (nameFilter != null) {
+            filters.put("name", List.of(nameFilter));
+        }
+        if (!labelFilters.isEmpty()) {
+            filters.put("label", labelFilters);
+        }
+        if (!filters.isEmpty()) {
+            path.append("&filters=").append(DockerEngineClient.filters(filters));
+        }
+        List<ContainerSummary> containers = new ArrayList<>();
+        for (Object item : Json.array(engine.getJson(path.toString()))) {
+            containers.add(toSummary(Json.object(item)));
+        }
+        return containers;
+    }
+
+    @Override
+    public EventStream containerEvents(List<String> actions, String container) throws IOException {
+        Map<String, List<String>> filters = new LinkedHashMap<>();
+        filters.put("type", List.of("container"));
+        filters.put("event", actions);
+        if (container != null) {
+            filters.put("container", List.of(container));
+        }
+        return eventStream(engine.get("/events?filters=" + DockerEngineClient.filters(filters)).requireStatus());
+    }
+
+    /**
+     * Reads an {@code /events} body as it arrives, one JSON object per line.
+     */
+    static EventStream eventStream(EngineResponse response) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+        return new EventStream() {
+            @Override
+            public Map<String, Object> next() throws IOException {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        return Json.object(Json.parse(line));
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                try {
+                    // The body never ends on its own, so this closes the connection
+                    response.close();
+                } catch (IOException ignored) {
+                    // Already gone
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean containerLogs(String container, LogQuery query, LogSink sink) throws IOException {
+        Map<String, Object> inspect = inspectContainer(container);
+        if (inspect == null) {
+            return false;
+        }
+        StringBuilder path = new StringBuilder("/containers/").append(DockerEngineClient.encode(container))
+            .append("/logs?stdout=true&stderr=true")
+            .append("&follow=").append(query.follow())
+            .append("&timestamps=").append(query.timestamps())
+            .append("&tail=").append(query.tail() < 0 ? "all" : Integer.toString(query.tail()));
+        if (query.since() != null) {
+            path.append("&since=").append(query.since().getEpochSecond())
+                .append('.').append(String.format("%09d", query.since().getNano()));
+        }
+        try (EngineResponse response = engine.get(path.toString())) {
+            if (response.status() == 404) {
+                // Removed since the inspect
+                return false;
+            }
+            // A TTY container's log is the raw terminal output; otherwise stdout and stderr are framed
+            LogDecoder decoder = new LogDecoder(sink);
+            if (Boolean.TRUE.equals(Json.object(inspect.get("Config")).get("Tty"))) {
+                decoder.decodeRaw(response.requireStatus().body(), false);
+            } else {
+                decoder.decodeFrames(response.requireStatus().body());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int exec(String container, List<String> command) throws IOException {
+        return cli.exec(container, command);
+    }
+
+    @Override
+    public ExecProcess openExec(String container, List<String> command) throws IOException {
+        return EngineExec.start(engine, container, command);
+    }
+
+    @Override
+    public BuildProfile buildImage(String tag, BuildContext context, Map<String, String> labels, boolean buildKit) throws IOException {
+        // With version=2 the engine runs BuildKit on the uploaded context; no client session is
+        // needed as long as the build uses no secrets, SSH or client-side cache export
+        String path = "/build?t=" + DockerEngineClient.encode(tag)
+            + "&dockerfile=" + DockerEngineClient.encode(context.dockerfileName())
+            + "&labels=" + DockerEngineClient.encode(Json.write(labels))
+            + "&rm=true"
+            + (buildKit ? "&version=2" : "");
+        DockerEngineClient.RequestBody tar = new DockerEngineClient.RequestBody() {
+            @Override
+            public long length() {
+                return context.size();
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel channel) throws IOException {
+                context.writeTo(channel);
+            }
+        };
+        long start = System.nanoTime();
+        try (EngineResponse response = engine.execute("POST", path, "application/x-tar", tar).requireStatus()) {
+            List<BuildProfile.Step> steps = printBuildOutput(response, buildKit);
+            return new BuildProfile(buildKit ? "buildkit" : "classic", System.nanoTime() - start, steps);
+        }
+    }
+
+    /**
+     * Relays the engine's JSON-lines build progress to stdout, failing on the first error message,
+     * and returns the steps it reported. BuildKit builds report through encoded trace messages
+     * instead of plain text.
+     */
+    private static List<BuildProfile.Step> printBuildOutput(EngineResponse response, boolean buildKit) throws IOException {
+        BuildKitProgress trace = new BuildKitProgress(System.out);
+        TextBuildSteps classic = new TextBuildSteps();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Map<String, Object> message = Json.object(Json.parse(line));
+            if (message.get("error") != null) {
+                throw new DockerException(500, Json.string(message.get("error")).strip());
+            }
+            Object stream = message.get("stream");
+            if (BuildKitProgress.TRACE_ID.equals(message.get("id")) && message.get("aux") instanceof String aux) {
+                trace.accept(aux);
+            } else if (stream != null) {
+                System.out.print(Json.string(stream));
+                classic.accept(Json.string(stream));
+            } else if (message.get("status") != null) {
+                System.out.println(Json.string(message.get("status")));
+            }
+        }
+        System.out.flush();
+        return buildKit ? trace.steps() : classic.steps();
+    }
+
+    @Override
+    public Map<String, String> imageLabels(String image) throws IOException {
+        try (EngineResponse response = engine.get("/images/" + DockerEngineClient.encode(image) + "/json")) {
+            if (response.status() == 404) {
+                return null;
+            }
+            Map<String, Object> config = Json.object(Json.object(response.requireStatus().json()).get("Config"));
+            Map<String, String> labels = new LinkedHashMap<>();
+            Json.object(config.get("Labels")).forEach((key, value) -> labels.put(key, Json.string(value)));
+            return labels;
+        }
+    }
+
+    @Override
+    public String imageId(String image) throws IOException {
+        try (EngineResponse response = engine.get("/images/" + DockerEngineClient.encode(image) + "/json")) {
+            if (response.status() == 404) {
+                return null;
+            }
+            return Json.string(Json.object(response.requireStatus().json()).get("Id"));
+        }
+    }
+
+    @Override
+    public List<ImageLayer> imageHistory(String image) throws IOException {
+        try (EngineResponse response = engine.get("/images/" + DockerEngineClient.encode(image) + "/history")) {
+            if (response.status() == 404) {
+                return null;
+            }
+            List<ImageLayer> layers = new ArrayList<>();
+            for (Object entry : Json.array(response.requireStatus().json())) {
+                Map<String, Object> layer = Json.object(entry);
+                layers.add(new ImageLayer(Json.number(layer.get("Created")), Json.string(layer.get("CreatedBy")),
+                    Json.number(layer.get("Size"))));
+            }
+            // The engine lists the newest layer first
+            return layers.reversed();
+        }
+    }
+
+    @Override
+    public List<String> imageDigests(String image) throws IOException {
+        try (EngineResponse response = engine.get("/images/" + DockerEngineClient.encode(image) + "/json")) {
+            if (response.status() == 404) {
+                return null;
+            }
+            List<String> digests = new ArrayList<>();
+            for (Object digest : Json.array(Json.object(response.requireStatus().json()).get("RepoDigests"))) {
+                digests.add(Json.string(digest));
+            }
+            return digests;
+        }
+    }
+
+    @Override
+    public String registryDigest(String image) throws IOException {
+        try (EngineResponse response = engine.get("/distribution/" + DockerEngineClient.encode(image) + "/json")
+                .requireStatus()) {
+            return Json.string(Json.object(Json.object(response.json()).get("Descriptor")).get("digest"));
+        }
+    }
+
+    @Override
+    public void pullImage(String repository, String reference, String platform, PullProgress progress) throws IOException {
+        // Always name the tag: an empty tag asks the engine for every tag of the repository
+        String path = "/images/create?fromImage=" + DockerEngineClient.encode(repository)
+            + "&tag=" + DockerEngineClient.encode(reference)
+            + (platform != null ? "&platform=" + DockerEngineClient.encode(platform) : "");
+        try (EngineResponse response = engine.post(path).requireStatus()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> message = Json.object(Json.parse(line));
+                if (message.get("error") != null) {
+                    throw new DockerException(500, Json.string(message.get("error")).strip());
+                }
+                Map<String, Object> detail = Json.object(message.get("progressDetail"));
+                progress.update(Json.string(message.get("id")), Json.string(message.get("status")),
+                    Json.number(detail.get("current")), Json.number(detail.get("total")));
+            }
+        }
+    }
+
+    @Override
+    public void removeImage(String image) throws IOException {
+        try (EngineResponse ignored = engine.delete("/images/" + DockerEngineClient.encode(image)).requireStatus()) {
+            // Body lists the deleted layers
+        }
+    }
+
+    @Override
+    public Map<String, Object> createVolume(String name, Map<String, String> labels) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("Name", name);
+        body.put("Labels", labels);
+        try (EngineResponse response = engine.post("/volumes/create", body).requireStatus()) {
+            return Json.object(response.json());
+        }
+    }
+
+    @Override
+    public void removeVolume(String name) throws IOException {
+        try (EngineResponse ignored = engine.delete("/volumes/" + DockerEngineClient.encode(name)).requireStatus()) {
+            // No body
+        }
+    }
+
+    @Override
+    public Map<String, Object> systemDf() throws IOException {
+        return Json.object(engine.getJson("/system/df"));
+    }
+
+    @Override
+    public long pruneBuildCache(String until) throws IOException {
+        return pruneEndpoint(until == null
+            ? "/build/prune"
+            : "/build/prune?filters=" + DockerEngineClient.filters(Map.of("until", List.of(until))));
+    }
+
+    @Override
+    public void putArchive(String container, String path, ArchiveSource archive) throws IOException {
+        DockerEngineClient.RequestBody tar = new DockerEngineClient.RequestBody() {
+            @Override
+            public long length() {
+                return archive.size();
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel channel) throws IOException {
+                archive.writeTo(channel);
+            }
+        };
+        String target = "/containers/" + DockerEngineClient.encode(container) + "/archive?path="
+            + DockerEngineClient.encode(path) + "&copyUIDGID=true";
+        try (EngineResponse ignored = engine.execute("PUT", target, "application/x-tar", tar).requireStatus()) {
+            // No body
+        }
+    }
+
+    @Override
+    public boolean getArchive(String container, String path, ArchiveReader reader) throws IOException {
+        try (EngineResponse response = engine.get("/containers/" + DockerEngineClient.encode(container)
+                + "/archive?path=" + DockerEngineClient.encode(path))) {
+            if (response.status() == 404) {
+                return false;
+            }
+            reader.read(response.requireStatus().body());
+            return true;
+        }
+    }
+
+    @Override
+    public PathStat statPath(String container, String path) throws IOException {
+        try (EngineResponse response = engine.execute("HEAD", "/containers/" + DockerEngineClient.encode(container)
+                + "/archive?path=" + DockerEngineClient.encode(path), null, (byte[]) null)) {
+            if (response.status() == 404) {
+                return null;
+            }
+            response.requireStatus();
+            // Base64 JSON: name, size, mode (a Go FileMode, directories have the top bit set), mtime
+            String header = response.header("X-Docker-Container-Path-Stat");
+            if (header == null) {
+                throw new IOException("The engine did not describe " + path);
+            }
+            Map<String, Object> stat = Json.parseObject(new String(Base64.getDecoder().decode(header), StandardCharsets.UTF_8));
+            String mtime = Json.string(stat.get("mtime"));
+            return new PathStat(Json.string(stat.get("name")), Json.number(stat.get("size")),
+                (Json.number(stat.get("mode")) & (1L << 31)) != 0,
+                mtime == null ? 0 : OffsetDateTime.parse(mtime).toEpochSecond());
+        }
+    }
+
+    @Override
+    public long prune(boolean all, boolean volumes) throws IOException {
+        long reclaimed = 0;
+        reclaimed += pruneEndpoint("/containers/prune");
+        reclaimed += pruneEndpoint("/networks/prune");
+        String imageFilter = DockerEngineClient.filters(Map.of("dangling", List.of(all ? "false" : "true")));
+        reclaimed += pruneEndpoint("/images/prune?filters=" + imageFilter);
+        if (volumes) {
+            reclaimed += pruneEndpoint("/volumes/prune");
+        }
+        reclaimed += pruneEndpoint("/build/prune?all=" + all);
+        return reclaimed;
+    }
+
+    private long pruneEndpoint(String path) throws IOException {
+        try (EngineResponse response = engine.post(path).requireStatus()) {
+            return Json.number(Json.object(response.json()).get("SpaceReclaimed"));
+        }
+    }
+
+    static ContainerSummary toSummary(Map<String, Object> container) {
+        List<Object> names = Json.array(container.get("Names"));
+        String name = names.isEmpty() ? "" : Json.string(names.get(0));
+        if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        Map<String, String> labels = new LinkedHashMap<>();
+        Json.object(container.get("Labels")).forEach((key, value) -> labels.put(key, Json.string(value)));
+        return new ContainerSummary(
+            Json.string(container.get("Id")),
+            name,
+            Json.string(container.get("Image")),
+            Json.string(container.get("Command")),
+            Json.number(container.get("Created")),
+            Json.string(container.get("State")),
+            Json.string(container.get("Status")),
+            labels
+        );
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+}
@@ -0,0 +1,182 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A non-TTY exec attached through the Engine API: {@code POST /containers/{id}/exec}, then
+ * {@code POST /exec/{id}/start} on a connection the engine hijacks. Stdin is written straight
+ * to the socket, output arrives as one multiplexed stream, and the exit code is read from
+ * {@code GET /exec/{id}/json} once the stream ends.
+ */
+final class EngineExec implements ExecProcess {
+
+    private final DockerEngineClient engine;
+    private final String execId;
+    private final EngineConnection connection;
+    private final ReentrantLock streamsLock = new ReentrantLock();
+    private volatile boolean finished;
+    private Thread demuxThread;
+    private InputStream stdout;
+    private InputStream stderr;
+
+    private EngineExec(DockerEngineClient engine, String execId, EngineConnection connection) {
+        this.engine = engine;
+        this.execId = execId;
+        this.connection = connection;
+    }
+
+    static EngineExec start(DockerEngineClient engine, String container, List<String> command) throws IOException {
+        Map<String, Object> create = new LinkedHashMap<>();
+        create.put("AttachStdin", true);
+        create.put("AttachStdout", true);
+        create.put("AttachStderr", true);
+        create.put("Tty", false);
+        create.put("Cmd", command);
+        String execId;
+        try (EngineResponse response = engine.post("/containers/" + DockerEngineClient.encode(container) + "/exec", create)
+                .requireStatus()) {
+            execId = Json.string(Json.object(response.json()).get("Id"));
+        }
+        Map<String, Object> start = new LinkedHashMap<>();
+        start.put("Detach", false);
+        start.put("Tty", false);
+        return new EngineExec(engine, execId, engine.upgrade("/exec/" + execId + "/start", start));
+    }
+
+    @Override
+    public OutputStream stdin() {
+        OutputStream raw = ChannelStreams.output(connection.channel());
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                raw.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                raw.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                connection.shutdownOutput();
+            }
+        };
+    }
+
+    @Override
+    public InputStream stdout() {
+        startDemuxToPipes();
+        return stdout;
+    }
+
+    @Override
+    public InputStream stderr() {
+        startDemuxToPipes();
+        return stderr;
+    }
+
+    /**
+     * Splits the output into two pipes on a virtual thread. Pipe buffers are bounded, so a
+     * reader that falls behind stalls the demultiplexer rather than buffering without limit.
+     */
+    private void startDemuxToPipes() {
+        streamsLock.lock();
+        try {
+            if (demuxThread != null) {
+                return;
+            }
+            Pipe out = Pipe.open();
+            Pipe err = Pipe.open();
+            stdout = ChannelStreams.input(out.source());
+            stderr = ChannelStreams.input(err.source());
+            demuxThread = Thread.ofVirtual().name("devc-exec-demux").start(() -> {
+                try (WritableByteChannel outSink = out.sink(); WritableByteChannel errSink = err.sink()) {
+                    new StreamDemultiplexer().run(connection.rawInput(), outSink, errSink);
+                } catch (IOException ignored) {
+                    // Connection dropped; readers see EOF and waitFor reports the exit code
+                } finally {
+                    finished = true;
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create exec output pipes", e);
+        } finally {
+            streamsLock.unlock();
+        }
+    }
+
+    @Override
+    public int relay(ReadableByteChannel in, WritableByteChannel out, WritableByteChannel err) throws IOException {
+        // Not interrupted afterwards: interrupting a channel read would close the caller's stdin
+        Thread.ofVirtual().name("devc-exec-stdin").start(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            WritableByteChannel socket = connection.channel();
+            try {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        socket.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                connection.shutdownOutput();
+            } catch (IOException ignored) {
+                // The exec exited before consuming all of stdin
+            }
+        });
+        try {
+            new StreamDemultiplexer().run(connection.rawInput(), out, err);
+        } finally {
+            finished = true;
+        }
+        return waitFor();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !finished && connection.isOpen();
+    }
+
+    @Override
+    public int waitFor() throws IOException {
+        Thread demux = demuxThread;
+        try {
+            if (demux != null) {
+                demux.join();
+            }
+            // The stream can close a moment before the engine records the exit code
+            for (long backoff = 1; ; backoff = Math.min(backoff * 2, 100)) {
+                Map<String, Object> inspect = Json.object(engine.getJson("/exec/" + execId + "/json"));
+                if (!Boolean.TRUE.equals(inspect.get("Running"))) {
+                    return (int) Json.number(inspect.get("ExitCode"));
+                }
+                Thread.sleep(backoff);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for exec " + execId);
+        }
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An HTTP response from the Docker Engine. The body is streamed straight off the
+ * connection; closing the response hands the connection back to the client for
+ * reuse when the body was read to the end and the engine allows keep-alive.
+ */
+public final class EngineResponse implements Closeable {
+
+    private final int status;
+    private final Map<String, String> headers;
+    private final BodyInputStream body;
+    private final EngineConnection connection;
+    private final DockerEngineClient client;
+    private final boolean keepAlive;
+    private boolean closed;
+
+    EngineResponse(int status, Map<String, String> headers, BodyInputStream body,
+                   EngineConnection connection, DockerEngineClient client, boolean keepAlive) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+        this.connection = connection;
+        this.client = client;
+        this.keepAlive = keepAlive;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    public boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Returns a response header by case-insensitive name, or {@code null} if absent.
+     */
+    public String header(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public InputStream body() {
+        return body;
+    }
+
+    public byte[] bodyAsBytes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.transferTo(out);
+        return out.toByteArray();
+    }
+
+    public String bodyAsString() throws IOException {
+        return new String(bodyAsBytes(), StandardCharsets.UTF_8);
+    }
+
+    public Object json() throws IOException {
+        return Json.parse(bodyAsString());
+    }
+
+    /**
+     * Throws a {@link DockerException} carrying the engine's error message unless the
+     * status is 2xx or one of the explicitly accepted codes (e.g. 304 for "already stopped").
+     */
+    public EngineResponse requireStatus(int... accepted) throws IOException {
+        if (isSuccessful()) {
+            return this;
+        }
+        for (int code : accepted) {
+            if (status == code) {
+                return this;
+            }
+        }
+        DockerException error = error();
+        close();
+        throw error;
+    }
+
+    /**
+     * Reads the body of a failed response into an exception carrying the engine's message.
+     */
+    DockerException error() throws IOException {
+        String message = bodyAsString();
+        try {
+            Object parsed = Json.parse(message);
+            if (parsed instanceof Map<?, ?> map && map.get("message") instanceof String text) {
+                message = text;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // Not JSON, report the raw body
+        }
+        return new DockerException(status, message.strip());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (keepAlive && body.exhausted()) {
+            client.release(connection);
+        } else {
+            // Unread or unbounded bodies (e.g. followed streams) cannot be resynchronised
+            connection.close();
+        }
+    }
+
+    /**
+     * Body stream that knows whether it has consumed its framing completely.
+     */
+    abstract static class BodyInputStream extends InputStream {
+
+        abstract boolean exhausted();
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xff;
+        }
+    }
+
+    static final class EmptyBody extends BodyInputStream {
+
+        @Override
+        boolean exhausted() {
+            return true;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return -1;
+        }
+    }
+
+    static final class FixedLengthBody extends BodyInputStream {
+
+        private final EngineConnection connection;
+        private long remaining;
+
+        FixedLengthBody(EngineConnection connection, long length) {
+            this.connection = connection;
+            this.remaining = length;
+        }
+
+        @Override
+        boolean exhausted() {
+            return remaining == 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = connection.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new IOException("Docker engine closed the connection mid-response");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, connection.buffered());
+        }
+    }
+
+    /**
+     * Decodes {@code Transfer-Encoding: chunked}, which the engine uses for every streamed endpoint.
+     */
+    static final class ChunkedBody extends BodyInputStream {
+
+        private final EngineConnection connection;
+        private long chunkRemaining;
+        private boolean finished;
+
+        ChunkedBody(EngineConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        boolean exhausted() {
+            return finished;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (chunkRemaining == 0 && !nextChunk()) {
+                return -1;
+            }
+            int n = connection.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1) {
+                throw new IOException("Docker engine closed the connection mid-chunk");
+            }
+            chunkRemaining -= n;
+            if (chunkRemaining == 0) {
+                connection.readLine(); // CRLF after chunk data
+            }
+            return n;
+        }
+
+        /**
+         * What is left of the current chunk in the connection's buffer. Between chunks, any
+         * buffered byte counts as one: the engine writes a chunk's size line and data together,
+         * so the start of the next chunk having arrived means the rest has too.
+         */
+        @Override
+        public int available() {
+            if (finished) {
+                return 0;
+            }
+            int buffered = connection.buffered();
+            return chunkRemaining == 0 ? Math.min(1, buffered) : (int) Math.min(chunkRemaining, buffered);
+        }
+
+        private boolean nextChunk() throws IOException {
+            String sizeLine = connection.readLine();
+            if (sizeLine == null) {
+                throw new IOException("Docker engine closed the connection before the final chunk");
+            }
+            int extension = sizeLine.indexOf(';');
+            String hex = (extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim();
+            chunkRemaining = Long.parseLong(hex, 16);
+            if (chunkRemaining == 0) {
+                // Skip trailers up to the terminating empty line
+                String trailer;
+                do {
+                    trailer = connection.readLine();
+                } while (trailer != null && !trailer.isEmpty());
+                finished = true;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Body delimited by the engine closing the connection; never reusable.
+     */
+    static final class UntilCloseBody extends BodyInputStream {
+
+        private final EngineConnection connection;
+
+        UntilCloseBody(EngineConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        boolean exhausted() {
+            return false;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return connection.read(b, off, len);
+        }
+    }
+}
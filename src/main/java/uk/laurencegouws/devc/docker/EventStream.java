@@ -0,0 +1,20 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A live feed of Docker events, one JSON object per event in the Engine's {@code /events}
+ * format. Closing the stream from another thread unblocks a pending {@link #next()}.
+ */
+public interface EventStream extends Closeable {
+
+    /**
+     * Blocks for the next event; returns {@code null} once the stream has ended.
+     */
+    Map<String, Object> next() throws IOException;
+
+    @Override
+    void close();
+}
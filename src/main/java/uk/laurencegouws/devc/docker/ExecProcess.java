@@ -0,0 +1,63 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A non-TTY exec running inside a container, with stdin, stdout and stderr kept separate.
+ */
+public interface ExecProcess extends Closeable {
+
+    OutputStream stdin();
+
+    InputStream stdout();
+
+    InputStream stderr();
+
+    boolean isAlive();
+
+    /**
+     * Waits for the exec to finish and returns its exit code.
+     */
+    int waitFor() throws IOException;
+
+    /**
+     * Pumps {@code in} to the exec's stdin (closing it at EOF) and its output to {@code out} and
+     * {@code err} until it exits, then returns the exit code. Use this or the stream accessors,
+     * not both.
+     */
+    default int relay(ReadableByteChannel in, WritableByteChannel out, WritableByteChannel err) throws IOException {
+        // Not interrupted afterwards: interrupting a channel read would close the caller's stdin
+        Thread.ofVirtual().name("devc-exec-stdin").start(() -> {
+            try (OutputStream stdin = stdin()) {
+                ChannelStreams.input(in).transferTo(stdin);
+            } catch (IOException ignored) {
+                // The exec stopped reading; its exit code tells the story
+            }
+        });
+        Thread stderrPump = Thread.ofVirtual().name("devc-exec-stderr").start(() -> {
+            try {
+                stderr().transferTo(ChannelStreams.output(err));
+            } catch (IOException ignored) {
+                // Reported through the exit code
+            }
+        });
+        stdout().transferTo(ChannelStreams.output(out));
+        try {
+            stderrPump.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return waitFor();
+    }
+
+    /**
+     * Terminates the exec if it is still running.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,77 @@
+package uk.laurencegouws.devc.docker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets
+ * (1µs, 2µs, 4µs ... ~36 minutes). Percentiles are reported as bucket upper bounds.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    public void record(long nanos) {
+        long micros = Math.max(1L, nanos / 1_000L);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Number of buckets; the last one also holds everything beyond its bound.
+     */
+    public static int bucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * Exclusive upper bound of {@code bucket}, in nanoseconds.
+     */
+    public static long bucketUpperNanos(int bucket) {
+        return (2L << bucket) * 1_000L;
+    }
+
+    public long bucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Upper bound, in nanoseconds, of the bucket holding the given percentile (0-100).
+     */
+    public long percentileNanos(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperNanos(i), maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+}
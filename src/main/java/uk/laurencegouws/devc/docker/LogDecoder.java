@@ -0,0 +1,173 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts a container log stream into lines for a {@link DockerClient.LogSink}. Containers without
+ * a TTY log in the attach framing (an 8-byte header, stream type in the first byte and
+ * big-endian payload length in the last four); TTY containers log raw bytes.
+ * <p>
+ * One read buffer serves the whole stream, and a line that arrives whole is handed over straight
+ * from it. Only a line split across reads or frames is copied, into a per-stream buffer that is
+ * reused for the next one; a line longer than {@value #MAX_LINE} bytes is handed over in pieces.
+ */
+final class LogDecoder {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int STDERR = 2;
+    private static final int SYSTEM_ERROR = 3;
+    static final int MAX_LINE = 1024 * 1024;
+
+    private final DockerClient.LogSink sink;
+    private final byte[] buffer = new byte[64 * 1024];
+    private final Partial stdout = new Partial(false);
+    private final Partial stderr = new Partial(true);
+    private int position;
+    private int limit;
+
+    LogDecoder(DockerClient.LogSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Decodes framed output until the stream ends.
+     */
+    void decodeFrames(InputStream in) throws IOException {
+        while (true) {
+            if (limit - position < HEADER_SIZE) {
+                if (!fill(in)) {
+                    if (position < limit) {
+                        throw new EOFException("Log stream ended inside a frame header");
+                    }
+                    break;
+                }
+                continue;
+            }
+            int type = buffer[position];
+            long remaining = ((buffer[position + 4] & 0xffL) << 24) | ((buffer[position + 5] & 0xff) << 16)
+                | ((buffer[position + 6] & 0xff) << 8) | (buffer[position + 7] & 0xff);
+            position += HEADER_SIZE;
+            Partial target = type == STDERR || type == SYSTEM_ERROR ? stderr : stdout;
+            while (remaining > 0) {
+                if (position == limit && !fill(in)) {
+                    throw new EOFException("Log stream ended inside a frame");
+                }
+                int count = (int) Math.min(remaining, limit - position);
+                split(target, position, count);
+                position += count;
+                remaining -= count;
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Decodes unframed output, all of it belonging to one stream, until the stream ends.
+     */
+    void decodeRaw(InputStream in, boolean fromStderr) throws IOException {
+        Partial target = fromStderr ? stderr : stdout;
+        while (position < limit || fill(in)) {
+            split(target, position, limit - position);
+            position = limit;
+        }
+        finish();
+    }
+
+    /**
+     * Hands over every complete line in {@code buffer[offset, offset + length)} and keeps the rest.
+     */
+    private void split(Partial target, int offset, int length) throws IOException {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            if (target.length > 0) {
+                target.append(buffer, start, i - start);
+                emit(target.bytes, 0, target.length, target.stderr);
+                target.length = 0;
+            } else {
+                emit(buffer, start, i - start, target.stderr);
+            }
+            start = i + 1;
+        }
+        if (start < end) {
+            target.append(buffer, start, end - start);
+        }
+    }
+
+    private void emit(byte[] bytes, int offset, int length, boolean fromStderr) throws IOException {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        sink.line(bytes, offset, length, fromStderr);
+    }
+
+    /**
+     * Moves unread bytes to the front and reads more, first flushing the sink when nothing else
+     * is waiting to be read, so a followed log shows up as it arrives.
+     */
+    private boolean fill(InputStream in) throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (in.available() == 0) {
+            sink.flush();
+        }
+        int n = in.read(buffer, limit, buffer.length - limit);
+        if (n <= 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    /**
+     * Hands over a last line that had no line ending.
+     */
+    private void finish() throws IOException {
+        for (Partial partial : new Partial[] {stdout, stderr}) {
+            if (partial.length > 0) {
+                emit(partial.bytes, 0, partial.length, partial.stderr);
+                partial.length = 0;
+            }
+        }
+        sink.flush();
+    }
+
+    /**
+     * The start of a line whose end hasn't been read yet.
+     */
+    private final class Partial {
+
+        private final boolean stderr;
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        Partial(boolean stderr) {
+            this.stderr = stderr;
+        }
+
+        void append(byte[] source, int offset, int count) throws IOException {
+            while (length + count > MAX_LINE) {
+                int room = MAX_LINE - length;
+                append(source, offset, room);
+                emit(bytes, 0, length, stderr);
+                length = 0;
+                offset += room;
+                count -= room;
+            }
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(MAX_LINE, Math.max(bytes.length * 2, length + count)));
+            }
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.trace.Trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Counts the bytes an exec's {@link #relay} moves in each direction, adding them to the
+ * backend's stream totals and, when tracing, to an {@code exec-stream} span with the rate.
+ * The stream accessors are passed through untouched.
+ */
+final class MeteredExecProcess implements ExecProcess {
+
+    private final ExecProcess delegate;
+    private final DockerBackend backend;
+
+    MeteredExecProcess(ExecProcess delegate, DockerBackend backend) {
+        this.delegate = delegate;
+        this.backend = backend;
+    }
+
+    @Override
+    public int relay(ReadableByteChannel in, WritableByteChannel out, WritableByteChannel err) throws IOException {
+        CountingInput stdin = new CountingInput(in);
+        CountingOutput stdout = new CountingOutput(out);
+        CountingOutput stderr = new CountingOutput(err);
+        Trace.Span span = Trace.current().span("exec-stream", "stream");
+        try {
+            return delegate.relay(stdin, stdout, stderr);
+        } finally {
+            backend.countStream("exec-stdin", stdin.bytes);
+            backend.countStream("exec-stdout", stdout.bytes);
+            backend.countStream("exec-stderr", stderr.bytes);
+            span.arg("stdin", stdin.bytes).arg("stdout", stdout.bytes).arg("stderr", stderr.bytes)
+                .bytes(stdin.bytes + stdout.bytes + stderr.bytes)
+                .close();
+        }
+    }
+
+    @Override
+    public OutputStream stdin() {
+        return delegate.stdin();
+    }
+
+    @Override
+    public InputStream stdout() {
+        return delegate.stdout();
+    }
+
+    @Override
+    public InputStream stderr() {
+        return delegate.stderr();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return delegate.isAlive();
+    }
+
+    @Override
+    public int waitFor() throws IOException {
+        return delegate.waitFor();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Each counter is only updated by the one thread pumping its channel and read after the
+     * relay has joined that thread.
+     */
+    private static final class CountingInput implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private volatile long bytes;
+
+        CountingInput(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int n = channel.read(buffer);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class CountingOutput implements WritableByteChannel {
+        private final WritableByteChannel channel;
+        private volatile long bytes;
+
+        CountingOutput(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) throws IOException {
+            int n = channel.write(buffer);
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
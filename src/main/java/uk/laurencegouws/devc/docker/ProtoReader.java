@@ -0,0 +1,137 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads protocol buffer wire format field by field, for the few BuildKit messages the engine
+ * embeds in its JSON build stream. Only varint and length-delimited fields carry anything devc
+ * reads; fixed-width fields are skipped.
+ */
+final class ProtoReader {
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private int field;
+    private int wireType;
+
+    ProtoReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    private ProtoReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Moves to the next field, returning false at the end of the message.
+     */
+    boolean next() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        long key = readVarint();
+        field = (int) (key >>> 3);
+        wireType = (int) (key & 7);
+        return true;
+    }
+
+    int field() {
+        return field;
+    }
+
+    long varint() throws IOException {
+        return readVarint();
+    }
+
+    String string() throws IOException {
+        int length = length();
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    byte[] bytes() throws IOException {
+        int length = length();
+        byte[] value = new byte[length];
+        System.arraycopy(data, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * The current length-delimited field as a nested message.
+     */
+    ProtoReader message() throws IOException {
+        int length = length();
+        ProtoReader nested = new ProtoReader(data, position, length);
+        position += length;
+        return nested;
+    }
+
+    /**
+     * A {@code google.protobuf.Timestamp} field as epoch nanoseconds.
+     */
+    long timestamp() throws IOException {
+        ProtoReader timestamp = message();
+        long seconds = 0;
+        long nanos = 0;
+        while (timestamp.next()) {
+            switch (timestamp.field()) {
+                case 1 -> seconds = timestamp.varint();
+                case 2 -> nanos = timestamp.varint();
+                default -> timestamp.skip();
+            }
+        }
+        return seconds * 1_000_000_000L + nanos;
+    }
+
+    void skip() throws IOException {
+        switch (wireType) {
+            case VARINT -> readVarint();
+            case FIXED64 -> advance(8);
+            case LENGTH_DELIMITED -> advance(length());
+            case FIXED32 -> advance(4);
+            default -> throw new IOException("Unsupported protobuf wire type " + wireType);
+        }
+    }
+
+    private int length() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > end - position) {
+            throw new EOFException("Truncated protobuf field");
+        }
+        return (int) length;
+    }
+
+    private void advance(int count) throws IOException {
+        if (count > end - position) {
+            throw new EOFException("Truncated protobuf field");
+        }
+        position += count;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= end) {
+                throw new EOFException("Truncated protobuf varint");
+            }
+            byte b = data[position++];
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed protobuf varint");
+    }
+}
@@ -0,0 +1,85 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Splits the engine's multiplexed attach stream (used whenever a non-TTY exec attaches both
+ * stdout and stderr) back into its two streams. Each frame is an 8-byte header, stream type
+ * in the first byte and big-endian payload length in the last four, followed by the payload.
+ * <p>
+ * One direct buffer is reused for the whole stream: a read usually brings in several frames,
+ * headers are parsed in place and payload slices are written from the same buffer with no
+ * intermediate copy. Writes block until the target takes the bytes, so a slow consumer
+ * throttles reads from the engine instead of growing a queue.
+ */
+public final class StreamDemultiplexer {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int STDERR = 2;
+    private static final int SYSTEM_ERROR = 3;
+
+    private final ByteBuffer buffer;
+
+    public StreamDemultiplexer() {
+        this(128 * 1024);
+    }
+
+    public StreamDemultiplexer(int bufferSize) {
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Copies frames from {@code in} until it ends at a frame boundary.
+     *
+     * @return the number of payload bytes written
+     */
+    public long run(ReadableByteChannel in, WritableByteChannel out, WritableByteChannel err) throws IOException {
+        buffer.clear().flip();
+        long total = 0;
+        long frameRemaining = 0;
+        WritableByteChannel target = out;
+        while (true) {
+            if (frameRemaining > 0) {
+                if (!buffer.hasRemaining() && !fill(in)) {
+                    throw new EOFException("Exec stream ended inside a frame");
+                }
+                int count = (int) Math.min(frameRemaining, buffer.remaining());
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + count);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.limit(limit);
+                frameRemaining -= count;
+                total += count;
+                continue;
+            }
+            if (buffer.remaining() < HEADER_SIZE) {
+                if (!fill(in)) {
+                    if (buffer.hasRemaining()) {
+                        throw new EOFException("Exec stream ended inside a frame header");
+                    }
+                    return total;
+                }
+                continue;
+            }
+            int type = buffer.get(buffer.position());
+            frameRemaining = Integer.toUnsignedLong(buffer.getInt(buffer.position() + 4));
+            buffer.position(buffer.position() + HEADER_SIZE);
+            target = type == STDERR || type == SYSTEM_ERROR ? err : out;
+        }
+    }
+
+    private boolean fill(ReadableByteChannel in) throws IOException {
+        buffer.compact();
+        try {
+            return in.read(buffer) > 0;
+        } finally {
+            buffer.flip();
+        }
+    }
+}
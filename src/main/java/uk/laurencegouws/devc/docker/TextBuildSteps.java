@@ -0,0 +1,133 @@
+package uk.laurencegouws.devc.docker;
+
+import uk.laurencegouws.devc.build.BuildProfile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks build steps out of text build output: the classic builder's {@code Step 2/5 : RUN ...}
+ * lines, timed by when they arrive, and the {@code #5 [2/5] RUN ...} lines of BuildKit's plain
+ * progress, which report each step's own duration and transfers.
+ */
+final class TextBuildSteps {
+
+    private static final Pattern CLASSIC_STEP = Pattern.compile("^Step (\\d+/\\d+) : (.*)$");
+    private static final Pattern PLAIN_LINE = Pattern.compile("^#(\\d+) (.*)$");
+    private static final Pattern PLAIN_DONE = Pattern.compile("^DONE (\\d+(?:\\.\\d+)?)s$");
+    private static final Pattern PLAIN_LOG = Pattern.compile("^\\d+\\.\\d+ .*");
+    private static final Pattern PLAIN_TRANSFER = Pattern.compile(
+        "^(.+?):? (\\d+(?:\\.\\d+)?)([kMGT]?B)(?: / \\d+(?:\\.\\d+)?[kMGT]?B)?(?: \\d+(?:\\.\\d+)?s)? done$");
+
+    private static final class Step {
+        final String name;
+        final long started = System.nanoTime();
+        long nanos;
+        boolean cached;
+        String error;
+        final Map<String, Long> transferred = new LinkedHashMap<>();
+
+        Step(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final StringBuilder partial = new StringBuilder();
+    private Step classic;
+
+    /**
+     * Takes the next piece of output, which need not end at a line break.
+     */
+    void accept(String text) {
+        partial.append(text);
+        int newline;
+        while ((newline = partial.indexOf("\n")) >= 0) {
+            line(partial.substring(0, newline).stripTrailing());
+            partial.delete(0, newline + 1);
+        }
+    }
+
+    private void line(String line) {
+        Matcher matcher = CLASSIC_STEP.matcher(line);
+        if (matcher.matches()) {
+            finishClassic();
+            classic = new Step(matcher.group(2));
+            steps.put(matcher.group(1), classic);
+            return;
+        }
+        if (classic != null) {
+            if (line.strip().equals("---> Using cache")) {
+                classic.cached = true;
+            } else if (line.startsWith("Successfully built")) {
+                finishClassic();
+            }
+            return;
+        }
+
+        matcher = PLAIN_LINE.matcher(line);
+        if (!matcher.matches()) {
+            return;
+        }
+        String number = matcher.group(1);
+        String rest = matcher.group(2);
+        if (number.equals("0")) {
+            // "#0 building with ... instance" names the builder, not a step
+            return;
+        }
+        Step step = steps.get(number);
+        if (step == null) {
+            steps.put(number, new Step(rest));
+            return;
+        }
+        Matcher done = PLAIN_DONE.matcher(rest);
+        Matcher transfer = PLAIN_TRANSFER.matcher(rest);
+        if (done.matches()) {
+            step.nanos = (long) (Double.parseDouble(done.group(1)) * 1e9);
+        } else if (rest.equals("CACHED")) {
+            step.cached = true;
+        } else if (rest.startsWith("ERROR: ")) {
+            step.error = rest.substring("ERROR: ".length());
+        } else if (!PLAIN_LOG.matcher(rest).matches() && transfer.matches()) {
+            step.transferred.put(transfer.group(1), bytes(transfer.group(2), transfer.group(3)));
+        }
+    }
+
+    private void finishClassic() {
+        if (classic != null) {
+            classic.nanos = System.nanoTime() - classic.started;
+            classic = null;
+        }
+    }
+
+    /**
+     * The steps seen so far; a classic step still running is timed up to now.
+     */
+    List<BuildProfile.Step> steps() {
+        finishClassic();
+        List<BuildProfile.Step> result = new ArrayList<>(steps.size());
+        for (Step step : steps.values()) {
+            long bytes = step.transferred.values().stream().mapToLong(Long::longValue).sum();
+            result.add(new BuildProfile.Step(step.name, step.nanos, step.cached, bytes, step.error));
+        }
+        return result;
+    }
+
+    /**
+     * Parses the decimal sizes BuildKit prints, e.g. {@code 27.51MB}.
+     */
+    private static long bytes(String amount, String unit) {
+        double value = Double.parseDouble(amount);
+        return (long) switch (unit) {
+            case "kB" -> value * 1e3;
+            case "MB" -> value * 1e6;
+            case "GB" -> value * 1e9;
+            case "TB" -> value * 1e12;
+            default -> value;
+        };
+    }
+}
@@ -0,0 +1,163 @@
+package uk.laurencegouws.devc.exec;
+
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs a batch of commands across one or more containers, each task on its own virtual thread
+ * with at most {@code jobs} running at once. Every task is a non-TTY exec with no stdin whose
+ * output is relayed line by line with a {@code [label]} prefix.
+ */
+public final class ParallelExec {
+
+    /**
+     * One command bound to one container.
+     */
+    public record Task(String label, String container, String command) {
+    }
+
+    /**
+     * How a task ended; {@code exitCode} is -1 when the exec could not be started.
+     */
+    public record Result(Task task, int exitCode, long nanos, String error) {
+
+        public boolean succeeded() {
+            return exitCode == 0;
+        }
+    }
+
+    /** Tasks get no stdin. */
+    private static final ReadableByteChannel EMPTY = new ReadableByteChannel() {
+        @Override
+        public int read(ByteBuffer target) {
+            return -1;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release
+        }
+    };
+
+    private final DockerBackend docker;
+    private final int jobs;
+
+    public ParallelExec(DockerBackend docker, int jobs) {
+        this.docker = docker;
+        this.jobs = Math.max(1, jobs);
+    }
+
+    /**
+     * Pairs every command with every container, or with the containers in turn when
+     * {@code spread} is set (one shard per container).
+     */
+    public static List<Task> plan(List<String> commands, List<String> containers, boolean spread) {
+        List<Task> tasks = new ArrayList<>();
+        boolean labelContainer = containers.size() > 1;
+        for (int i = 0; i < commands.size(); i++) {
+            List<String> targets = spread ? List.of(containers.get(i % containers.size())) : containers;
+            for (String container : targets) {
+                String label = labelContainer ? container + " " + (i + 1) : String.valueOf(i + 1);
+                tasks.add(new Task(label, container, commands.get(i)));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Runs all tasks from {@code workspacePath} and returns their results in task order.
+     */
+    public List<Result> run(List<Task> tasks, String workspacePath, PrintStream out, PrintStream err) {
+        Semaphore permits = new Semaphore(jobs);
+        ReentrantLock outLock = new ReentrantLock();
+        ReentrantLock errLock = new ReentrantLock();
+        Result[] results = new Result[tasks.size()];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < tasks.size(); i++) {
+                int index = i;
+                executor.submit(() -> {
+                    Task task = tasks.get(index);
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        results[index] = new Result(task, -1, 0, "interrupted");
+                        return;
+                    }
+                    try {
+                        results[index] = runTask(task, workspacePath,
+                            new PrefixedOutput("[" + task.label() + "] ", out, outLock),
+                            new PrefixedOutput("[" + task.label() + "] ", err, errLock));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        return List.of(results);
+    }
+
+    private Result runTask(Task task, String workspacePath, PrefixedOutput out, PrefixedOutput err) {
+        long start = System.nanoTime();
+        String fullCommand = String.format("cd %s && %s", workspacePath, task.command());
+        try (ExecProcess process = DockerBackend.await(docker.openExec(task.container(), List.of("bash", "-c", fullCommand)))) {
+            int exitCode = process.relay(EMPTY, out, err);
+            out.finish();
+            err.finish();
+            return new Result(task, exitCode, System.nanoTime() - start, null);
+        } catch (IOException e) {
+            return new Result(task, -1, System.nanoTime() - start, e.getMessage());
+        }
+    }
+
+    /**
+     * Prints one line per task plus totals, and returns the aggregate exit code: 0 when every
+     * task succeeded, otherwise the largest exit code (1 if a task could not be started).
+     */
+    public static int summarize(List<Result> results, long wallNanos, PrintStream out) {
+        int labelWidth = Math.max(4, results.stream().mapToInt(r -> r.task().label().length()).max().orElse(0));
+        out.println();
+        out.printf("%-" + labelWidth + "s  %6s  %10s  %s%n", "TASK", "EXIT", "TIME", "COMMAND");
+        long totalNanos = 0;
+        int failed = 0;
+        int exitCode = 0;
+        for (Result result : results) {
+            totalNanos += result.nanos();
+            String exit = result.exitCode() < 0 ? "ERR" : String.valueOf(result.exitCode());
+            out.printf("%-" + labelWidth + "s  %6s  %9.2fs  %s%n",
+                result.task().label(), exit, result.nanos() / 1e9, abbreviate(result.task().command(), 50));
+            if (result.error() != null) {
+                out.printf("%-" + labelWidth + "s  %s%n", "", result.error());
+            }
+            if (!result.succeeded()) {
+                failed++;
+                exitCode = Math.max(exitCode, result.exitCode() < 0 ? 1 : result.exitCode());
+            }
+        }
+        out.printf("%d task(s), %d failed, wall %.2fs, total %.2fs (%.1fx)%n",
+            results.size(), failed, wallNanos / 1e9, totalNanos / 1e9,
+            wallNanos > 0 ? (double) totalNanos / wallNanos : 0.0);
+        return exitCode;
+    }
+
+    private static String abbreviate(String value, int maxLength) {
+        String singleLine = value.replace('\n', ' ');
+        return singleLine.length() <= maxLength ? singleLine : singleLine.substring(0, maxLength - 3) + "...";
+    }
+}
@@ -0,0 +1,74 @@
+package uk.laurencegouws.devc.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A channel that collects one task's output into lines and writes each complete line, with
+ * the task's prefix, to a shared stream in one piece, so concurrent tasks never interleave
+ * within a line.
+ */
+final class PrefixedOutput implements WritableByteChannel {
+
+    private final byte[] prefix;
+    private final OutputStream target;
+    private final ReentrantLock targetLock;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+    PrefixedOutput(String prefix, OutputStream target, ReentrantLock targetLock) {
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.target = target;
+        this.targetLock = targetLock;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int count = source.remaining();
+        while (source.hasRemaining()) {
+            byte b = source.get();
+            line.write(b);
+            if (b == '\n') {
+                emit();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes out a final line that had no trailing newline.
+     */
+    void finish() throws IOException {
+        if (line.size() > 0) {
+            line.write('\n');
+            emit();
+        }
+    }
+
+    private void emit() throws IOException {
+        // A lock, not synchronized: the write may block and tasks run on virtual threads
+        targetLock.lock();
+        try {
+            target.write(prefix);
+            line.writeTo(target);
+            target.flush();
+        } finally {
+            targetLock.unlock();
+        }
+        line.reset();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // The shared target outlives every task
+    }
+}
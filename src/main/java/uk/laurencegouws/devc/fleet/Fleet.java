@@ -0,0 +1,110 @@
+package uk.laurencegouws.devc.fleet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Applies one lifecycle action to many containers at once. Each container gets its own virtual
+ * thread and at most {@code workers} actions are in flight, so twenty containers cost roughly
+ * the slowest few rather than the sum of all. A failure only affects its own container; every
+ * outcome is collected and reported together at the end.
+ */
+public final class Fleet {
+
+    /** Container name used when none is given. */
+    public static final String DEFAULT_NAME = "devc-container";
+
+    /** Environment variable overriding {@link #DEFAULT_NAME}. */
+    public static final String NAME_ENV = "DEVC_CONTAINER";
+
+    /** Label stamped on every container devc starts, used by {@code --all} and selectors. */
+    public static final String MANAGED_LABEL = "devc.managed";
+
+    @FunctionalInterface
+    public interface Action {
+        void apply(String container) throws IOException;
+    }
+
+    /**
+     * How the action went for one container; {@code error} is null on success.
+     */
+    public record Outcome(String container, long nanos, Exception error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    private final int workers;
+
+    public Fleet(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Runs {@code action} for every container, printing a line to {@code out} (unless null) as
+     * each one finishes, and returns the outcomes in the order the containers were given.
+     */
+    public List<Outcome> run(List<String> containers, Action action, PrintStream out) {
+        Semaphore permits = new Semaphore(workers);
+        Outcome[] outcomes = new Outcome[containers.size()];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < containers.size(); i++) {
+                int index = i;
+                executor.submit(() -> {
+                    String container = containers.get(index);
+                    long start = System.nanoTime();
+                    Exception error = null;
+                    try {
+                        permits.acquire();
+                        try {
+                            action.apply(container);
+                        } finally {
+                            permits.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        error = e;
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                    Outcome outcome = new Outcome(container, System.nanoTime() - start, error);
+                    outcomes[index] = outcome;
+                    if (out != null) {
+                        out.printf("  %-6s %s (%.2fs)%n",
+                            outcome.succeeded() ? "ok" : "failed", container, outcome.nanos() / 1e9);
+                    }
+                });
+            }
+        }
+        return List.of(outcomes);
+    }
+
+    /**
+     * Prints a one-line summary, then every failure, and returns 0 when all containers
+     * succeeded or 1 otherwise.
+     */
+    public static int report(String verb, List<Outcome> outcomes, long wallNanos, PrintStream out, PrintStream err) {
+        List<Outcome> failures = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            if (!outcome.succeeded()) {
+                failures.add(outcome);
+            }
+        }
+        out.printf("%s %d of %d container(s) in %.2fs.%n",
+            verb, outcomes.size() - failures.size(), outcomes.size(), wallNanos / 1e9);
+        if (failures.isEmpty()) {
+            return 0;
+        }
+        err.printf("Error: %d container(s) failed:%n", failures.size());
+        for (Outcome failure : failures) {
+            err.printf("  %s: %s%n", failure.container(), failure.error().getMessage());
+        }
+        return 1;
+    }
+}
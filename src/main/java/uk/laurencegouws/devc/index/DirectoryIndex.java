@@ -0,0 +1,312 @@
+package uk.laurencegouws.devc.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The directories below a container's workspace, as a memory-mapped sorted prefix table: paths
+ * relative to the workspace root, sorted by their UTF-8 bytes, each stored as the length it
+ * shares with the previous path plus the rest. Every {@value #RESTART_INTERVAL}th path is stored
+ * whole and listed in an offset table, so a lookup is a binary search over those restart points
+ * followed by a short scan, without reading the rest of the file.
+ * <p>
+ * Layout: magic, version, refresh time (local epoch millis), container clock at the listing
+ * (epoch seconds), path count, restart count, then the restart offsets and the path data.
+ */
+public final class DirectoryIndex {
+
+    private static final int MAGIC = 0x44564349; // "DVCI"
+    private static final int VERSION = 1;
+    private static final int RESTART_INTERVAL = 16;
+    private static final int REFRESHED_AT = 8;
+    private static final int HEADER = 32;
+
+    private final Path file;
+    private final ByteBuffer data;
+    private final long refreshedAt;
+    private final long containerClock;
+    private final int count;
+    private final int restarts;
+    private final int dataStart;
+
+    private DirectoryIndex(Path file, ByteBuffer data) throws IOException {
+        this.file = file;
+        this.data = data;
+        if (data.limit() < HEADER || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a devc directory index: " + file);
+        }
+        this.refreshedAt = data.getLong(REFRESHED_AT);
+        this.containerClock = data.getLong(16);
+        this.count = data.getInt(24);
+        this.restarts = data.getInt(28);
+        this.dataStart = HEADER + restarts * 4;
+        if (count < 0 || restarts != (count + RESTART_INTERVAL - 1) / RESTART_INTERVAL || dataStart > data.limit()) {
+            throw new IOException("Corrupt devc directory index: " + file);
+        }
+    }
+
+    /**
+     * Maps an index file, or returns null when there is none or it can't be used.
+     */
+    public static DirectoryIndex open(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new DirectoryIndex(file, map);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes {@code directories} (workspace-relative, without a leading or trailing slash) as a
+     * new index, replacing {@code file} atomically so readers never see half of it.
+     */
+    public static void write(Path file, List<String> directories, long containerClock) throws IOException {
+        List<byte[]> paths = new ArrayList<>(directories.size());
+        for (String directory : directories) {
+            if (!directory.isEmpty()) {
+                paths.add(directory.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        paths.sort(Arrays::compareUnsigned);
+
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int restarts = (paths.size() + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        int[] offsets = new int[restarts];
+        byte[] previous = new byte[0];
+        int written = 0;
+        for (int i = 0; i < paths.size(); i++) {
+            byte[] path = paths.get(i);
+            if (i > 0 && Arrays.equals(path, previous)) {
+                continue;
+            }
+            int shared = 0;
+            if (written % RESTART_INTERVAL == 0) {
+                offsets[written / RESTART_INTERVAL] = entries.size();
+            } else {
+                shared = Arrays.mismatch(previous, path);
+                shared = shared < 0 ? Math.min(previous.length, path.length) : shared;
+            }
+            writeVarint(entries, shared);
+            writeVarint(entries, path.length - shared);
+            entries.write(path, shared, path.length - shared);
+            previous = path;
+            written++;
+        }
+        restarts = (written + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(containerClock);
+            out.writeInt(written);
+            out.writeInt(restarts);
+            for (int i = 0; i < restarts; i++) {
+                out.writeInt(offsets[i]);
+            }
+            entries.writeTo(out);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records that the container's directories were checked and are unchanged.
+     */
+    public void touch(long containerClock) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            header.putLong(System.currentTimeMillis()).putLong(containerClock).flip();
+            channel.write(header, REFRESHED_AT);
+        }
+    }
+
+    /**
+     * When the index was last confirmed against the container, in local epoch millis.
+     */
+    public long refreshedAt() {
+        return refreshedAt;
+    }
+
+    /**
+     * The container's clock when the listing was taken, in epoch seconds; the next refresh only
+     * lists everything again when a directory changed after it.
+     */
+    public long containerClock() {
+        return containerClock;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Whether {@code path} (workspace-relative; empty for the root) is a directory.
+     */
+    public boolean contains(String path) {
+        if (path.isEmpty()) {
+            return true;
+        }
+        byte[] target = path.getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = seek(target);
+        return cursor.valid() && Arrays.equals(cursor.key(), target);
+    }
+
+    /**
+     * The subdirectories of {@code parent} whose names start with {@code prefix}, in sorted
+     * order, at most {@code limit} of them. Each child's own subtree is skipped with a seek, so
+     * the cost depends on the number of children, not on the size of the tree below them.
+     */
+    public List<String> children(String parent, String prefix, int limit) {
+        String base = parent.isEmpty() ? "" : parent + "/";
+        byte[] start = (base + prefix).getBytes(StandardCharsets.UTF_8);
+        int baseLength = base.getBytes(StandardCharsets.UTF_8).length;
+        Set<String> children = new LinkedHashSet<>();
+        Cursor cursor = seek(start);
+        while (cursor.valid() && children.size() < limit && startsWith(cursor.key(), start)) {
+            byte[] key = cursor.key();
+            int slash = indexOf(key, (byte) '/', baseLength);
+            if (slash < 0) {
+                children.add(new String(key, baseLength, key.length - baseLength, StandardCharsets.UTF_8));
+                // Not a seek: siblings extending this name with a byte below '/' ("lib-old",
+                // "conf.d") sort between it and its own subtree
+                cursor.next();
+                continue;
+            }
+            // Inside a child's subtree: "lib/x" comes after "lib-old/..." and "lib" was already listed
+            children.add(new String(key, baseLength, slash - baseLength, StandardCharsets.UTF_8));
+            // '0' follows '/', so this lands after every path inside the child
+            byte[] after = Arrays.copyOf(key, slash + 1);
+            after[slash] = '0';
+            cursor = seek(after);
+        }
+        return new ArrayList<>(children);
+    }
+
+    /**
+     * A position in the table; {@link #key()} is the full path stored there.
+     */
+    private final class Cursor {
+        private int index;
+        private int offset;
+        private byte[] key;
+
+        Cursor(int restart) {
+            index = restart * RESTART_INTERVAL;
+            key = new byte[0];
+            if (valid()) {
+                offset = dataStart + data.getInt(HEADER + restart * 4);
+                read();
+            }
+        }
+
+        boolean valid() {
+            return index < count;
+        }
+
+        byte[] key() {
+            return key;
+        }
+
+        void next() {
+            index++;
+            if (valid()) {
+                read();
+            }
+        }
+
+        private void read() {
+            int[] position = {offset};
+            int shared = readVarint(position);
+            int length = readVarint(position);
+            byte[] next = Arrays.copyOf(key, shared + length);
+            data.get(position[0], next, shared, length);
+            offset = position[0] + length;
+            key = next;
+        }
+    }
+
+    /**
+     * The first path not less than {@code target}.
+     */
+    private Cursor seek(byte[] target) {
+        if (count == 0) {
+            return new Cursor(0);
+        }
+        int low = 0;
+        int high = restarts - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (Arrays.compareUnsigned(restartKey(middle), target) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        Cursor cursor = new Cursor(low);
+        while (cursor.valid() && Arrays.compareUnsigned(cursor.key(), target) < 0) {
+            cursor.next();
+        }
+        return cursor;
+    }
+
+    private byte[] restartKey(int restart) {
+        int[] position = {dataStart + data.getInt(HEADER + restart * 4)};
+        readVarint(position);
+        int length = readVarint(position);
+        byte[] key = new byte[length];
+        data.get(position[0], key);
+        return key;
+    }
+
+    private int readVarint(int[] position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data.get(position[0]++);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,158 @@
+package uk.laurencegouws.devc.index;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.build.FileHashCache;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link DirectoryIndex} of each container's workspace under the devc cache directory
+ * ({@code dir-index/<container>.idx}). A refresh is one exec: it first asks {@code find} whether
+ * any directory changed since the container-clock time of the last listing (adding, removing or
+ * renaming an entry updates its parent's mtime) and only lists every directory again if one did.
+ * {@code .git} directories are indexed but not descended into.
+ */
+@ApplicationScoped
+public class DirectoryIndexer {
+
+    public static final String WORKSPACE_ROOT = "/home/developer/workspace";
+
+    /**
+     * Prints the container clock, then "unchanged", or "changed" followed by every directory
+     * below the root, NUL-terminated. {@code $1} is the root, {@code $2} the previous clock or empty.
+     */
+    private static final String REFRESH_SCRIPT = """
+        cd "$1" || exit 3
+        date +%s
+        if [ -n "$2" ] && [ -z "$(find . -name .git -prune -o -type d -newermt "@$2" -print -quit)" ]; then
+            echo unchanged
+            exit 0
+        fi
+        echo changed
+        find . -mindepth 1 \\( -name .git -type d -printf '%P\\0' -prune \\) -o -type d -printf '%P\\0'
+        """;
+
+    @Inject
+    DockerBackend docker;
+
+    @ConfigProperty(name = "devc.cd.index-ttl", defaultValue = "30s")
+    Duration ttl;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<DirectoryIndex>> inFlight = new ConcurrentHashMap<>();
+
+    public static Path location(String container) {
+        return FileHashCache.defaultLocation("dir-index").resolve(container + ".idx");
+    }
+
+    /**
+     * The container's index as last written, or null when it has never been built.
+     */
+    public DirectoryIndex open(String container) {
+        return DirectoryIndex.open(location(container));
+    }
+
+    public boolean isStale(DirectoryIndex index) {
+        return System.currentTimeMillis() - index.refreshedAt() > ttl.toMillis();
+    }
+
+    /**
+     * Brings the container's index up to date and returns it. Concurrent refreshes of the same
+     * container share one exec.
+     */
+    public DirectoryIndex refresh(String container) throws IOException {
+        try {
+            return refreshInBackground(container).join();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a refresh without waiting for it, or joins the one already running.
+     */
+    public CompletableFuture<DirectoryIndex> refreshInBackground(String container) {
+        CompletableFuture<DirectoryIndex> future = new CompletableFuture<>();
+        CompletableFuture<DirectoryIndex> running = inFlight.putIfAbsent(container, future);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                future.complete(list(container));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(container, future);
+            }
+        });
+        return future;
+    }
+
+    private DirectoryIndex list(String container) throws IOException {
+        Path file = location(container);
+        DirectoryIndex previous = DirectoryIndex.open(file);
+        String since = previous != null ? Long.toString(previous.containerClock()) : "";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try (ExecProcess process = DockerBackend.await(docker.openExec(container,
+                List.of("sh", "-c", REFRESH_SCRIPT, "devc-index", WORKSPACE_ROOT, since)))) {
+            int exitCode = process.relay(Channels.newChannel(InputStream.nullInputStream()),
+                Channels.newChannel(output), Channels.newChannel(errors));
+            if (exitCode != 0) {
+                throw new IOException("Listing directories in container '" + container + "' failed: "
+                    + errors.toString(StandardCharsets.UTF_8).strip());
+            }
+        }
+        String listing = output.toString(StandardCharsets.UTF_8);
+        int first = listing.indexOf('\n');
+        int second = first < 0 ? -1 : listing.indexOf('\n', first + 1);
+        if (second < 0) {
+            throw new IOException("Unexpected directory listing from container '" + container + "'");
+        }
+        long clock;
+        try {
+            clock = Long.parseLong(listing.substring(0, first).strip());
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected directory listing from container '" + container + "'");
+        }
+        if (previous != null && listing.substring(first + 1, second).equals("unchanged")) {
+            previous.touch(clock);
+            return DirectoryIndex.open(file);
+        }
+        List<String> directories = new ArrayList<>();
+        for (String path : listing.substring(second + 1).split("\\x00")) {
+            if (!path.isEmpty()) {
+                directories.add(path);
+            }
+        }
+        DirectoryIndex.write(file, directories, clock);
+        return DirectoryIndex.open(file);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
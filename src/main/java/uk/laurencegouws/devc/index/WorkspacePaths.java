@@ -0,0 +1,50 @@
+package uk.laurencegouws.devc.index;
+
+import uk.laurencegouws.devc.daemon.Invocation;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Container paths as {@code devc cd} and its completion see them: relative paths are taken
+ * against {@code DEVC_WORKSPACE_PATH}, or the workspace root when it isn't set.
+ */
+public final class WorkspacePaths {
+
+    private WorkspacePaths() {
+    }
+
+    /**
+     * Resolves {@code path} against the active workspace directory, collapsing "." and "..".
+     */
+    public static String resolve(String path) {
+        String active = Invocation.current().env("DEVC_WORKSPACE_PATH");
+        if (active == null || active.isBlank()) {
+            active = DirectoryIndexer.WORKSPACE_ROOT;
+        }
+        String combined = path.startsWith("/") ? path : active + "/" + path;
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : combined.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                segments.pollLast();
+            } else {
+                segments.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    /**
+     * {@code absolute} relative to the workspace root, "" for the root itself, or null when it is outside.
+     */
+    public static String relativeToRoot(String absolute) {
+        String root = DirectoryIndexer.WORKSPACE_ROOT;
+        if (absolute.equals(root)) {
+            return "";
+        }
+        return absolute.startsWith(root + "/") ? absolute.substring(root.length() + 1) : null;
+    }
+}
@@ -0,0 +1,109 @@
+package uk.laurencegouws.devc.lifecycle;
+
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.fleet.Fleet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Makes sure a named container is running with the requested workspace mount, doing as little
+ * as possible: an existing container with the same mount is started (or left running), a
+ * ready warm pool entry is renamed and started, and only otherwise is a new one created. A
+ * stopped devc container with a different mount is replaced; a running one only with
+ * {@code --recreate}.
+ */
+public final class Provisioner {
+
+    public enum Outcome {
+        ALREADY_RUNNING,
+        STARTED_EXISTING,
+        POOL_HIT,
+        CREATED,
+        REPLACED
+    }
+
+    /**
+     * @param staleImage whether a reused container was created from an older build of the image
+     */
+    public record Result(String id, Outcome outcome, boolean staleImage) {
+    }
+
+    private final DockerBackend docker;
+    private final WarmPool pool;
+    private final boolean recreate;
+
+    /**
+     * @param recreate replace an existing devc container even when its mount matches
+     */
+    public Provisioner(DockerBackend docker, WarmPool pool, boolean recreate) {
+        this.docker = docker;
+        this.pool = pool;
+        this.recreate = recreate;
+    }
+
+    public Result ensureStarted(String name, String image, String mount, Map<String, String> labels) throws IOException {
+        Map<String, Object> existing = DockerBackend.await(docker.inspectContainer(name));
+        boolean replacing = false;
+        if (existing != null) {
+            String id = Json.string(existing.get("Id"));
+            Map<String, Object> config = Json.object(existing.get("Config"));
+            boolean managed = "true".equals(Json.string(Json.object(config.get("Labels")).get(Fleet.MANAGED_LABEL)));
+            List<String> binds = Json.array(Json.object(existing.get("HostConfig")).get("Binds")).stream()
+                .map(Json::string)
+                .toList();
+            boolean mountMatches = binds.contains(WarmPool.bind(mount));
+            boolean running = Boolean.TRUE.equals(Json.object(existing.get("State")).get("Running"));
+            if (mountMatches && !recreate) {
+                String imageId = DockerBackend.await(docker.imageId(image));
+                boolean staleImage = imageId != null && !imageId.equals(Json.string(existing.get("Image")));
+                if (running) {
+                    return new Result(id, Outcome.ALREADY_RUNNING, staleImage);
+                }
+                DockerBackend.await(docker.startContainer(id));
+                return new Result(id, Outcome.STARTED_EXISTING, staleImage);
+            }
+            if (!managed) {
+                throw new IOException(String.format(
+                    "Container '%s' already exists with a different workspace mount and was not created by devc. "
+                        + "Remove it or choose another --name.", name));
+            }
+            if (running && !recreate) {
+                // The default mount is relative to the working directory, so this is easy to hit by accident
+                throw new IOException(String.format(
+                    "Container '%s' is running with workspace %s, not %s. "
+                        + "Use --recreate to replace it, or choose another --name.",
+                    name, workspace(binds), mount));
+            }
+            DockerBackend.await(docker.removeContainer(id, true));
+            replacing = true;
+        }
+
+        // Pool entries carry only the devc labels, so custom labels always need a fresh create
+        if (pool.isEnabled() && labels.isEmpty()) {
+            Optional<String> claimed = pool.claim(image, mount, name);
+            if (claimed.isPresent()) {
+                DockerBackend.await(docker.startContainer(claimed.get()));
+                return new Result(claimed.get(), Outcome.POOL_HIT, false);
+            }
+        }
+
+        Map<String, String> containerLabels = new LinkedHashMap<>(labels);
+        containerLabels.put(Fleet.MANAGED_LABEL, "true");
+        String id = DockerBackend.await(docker.runContainer(name, image, List.of(WarmPool.bind(mount)), containerLabels));
+        return new Result(id, replacing ? Outcome.REPLACED : Outcome.CREATED, false);
+    }
+
+    private static String workspace(List<String> binds) {
+        String suffix = WarmPool.bind("");
+        return binds.stream()
+            .filter(bind -> bind.endsWith(suffix))
+            .map(bind -> bind.substring(0, bind.length() - suffix.length()))
+            .findFirst()
+            .orElse("a volume");
+    }
+}
@@ -0,0 +1,196 @@
+package uk.laurencegouws.devc.lifecycle;
+
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.EventStream;
+import uk.laurencegouws.devc.docker.ExecProcess;
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarts a container with one engine call and waits until it can run an exec again.
+ * <p>
+ * The stop grace period is chosen per container unless given explicitly: the kernel drops
+ * SIGTERM for a PID 1 that has no handler for it (e.g. a bare {@code tail -f /dev/null}
+ * entrypoint), so waiting for it to exit only burns the timeout. Containers started with an
+ * init, or whose entrypoint traps SIGTERM, keep the normal grace period.
+ * <p>
+ * Stop and start are timed from the container's {@code die} and {@code start} events,
+ * readiness from the first exec probe that succeeds.
+ */
+public final class Restarter {
+
+    /** Grace period the engine uses when none is given. */
+    public static final int DEFAULT_GRACE_SECONDS = 10;
+
+    /** SIGTERM is signal 15, bit 14 of the /proc signal masks. */
+    private static final long SIGTERM_MASK = 1L << 14;
+    private static final long MAX_PROBE_BACKOFF_MILLIS = 500;
+    /** Events can trail the API response slightly; how long to wait for a late one. */
+    private static final long EVENT_GRACE_MILLIS = 1000;
+
+    /**
+     * Latencies of one restart; {@code readyNanos} is zero when readiness was not awaited.
+     */
+    public record Timing(int graceSeconds, long stopNanos, long startNanos, long readyNanos) {
+
+        public long totalNanos() {
+            return stopNanos + startNanos + readyNanos;
+        }
+
+        public String describe() {
+            String text = String.format("stop %d ms, start %d ms", stopNanos / 1_000_000, startNanos / 1_000_000);
+            if (readyNanos > 0) {
+                text += String.format(", ready %d ms", readyNanos / 1_000_000);
+            }
+            return text + String.format(" (total %d ms)", totalNanos() / 1_000_000);
+        }
+    }
+
+    private final DockerBackend docker;
+    private final Integer graceSeconds;
+    private final Duration readyTimeout;
+
+    /**
+     * @param graceSeconds explicit stop grace period, or null to choose per container
+     * @param readyTimeout how long to probe for readiness; zero or negative to skip the wait
+     */
+    public Restarter(DockerBackend docker, Integer graceSeconds, Duration readyTimeout) {
+        this.docker = docker;
+        this.graceSeconds = graceSeconds;
+        this.readyTimeout = readyTimeout;
+    }
+
+    public Timing restart(String container) throws IOException {
+        int grace = graceSeconds != null ? graceSeconds : chooseGrace(container);
+
+        long[] eventTimes = new long[2];
+        CountDownLatch started = new CountDownLatch(1);
+        EventStream events = DockerBackend.await(docker.containerEvents(List.of("die", "start"), container));
+        Thread watcher = Thread.ofVirtual().name("devc-restart-events").start(() -> {
+            try {
+                Map<String, Object> event;
+                while ((event = events.next()) != null) {
+                    String action = Json.string(event.get("Action"));
+                    if ("die".equals(action) && eventTimes[0] == 0) {
+                        eventTimes[0] = System.nanoTime();
+                    } else if ("start".equals(action)) {
+                        eventTimes[1] = System.nanoTime();
+                        started.countDown();
+                        return;
+                    }
+                }
+            } catch (IOException ignored) {
+                // Stream closed below; the API call's own timing is used instead
+            }
+        });
+
+        long begin = System.nanoTime();
+        long returned;
+        try {
+            DockerBackend.await(docker.restartContainer(container, grace));
+            returned = System.nanoTime();
+            awaitQuietly(started, EVENT_GRACE_MILLIS);
+        } finally {
+            events.close();
+            joinQuietly(watcher);
+        }
+
+        long stoppedAt = eventTimes[0] != 0 ? eventTimes[0] : begin;
+        long startedAt = eventTimes[1] != 0 ? eventTimes[1] : returned;
+        Timing timing = new Timing(grace, stoppedAt - begin, startedAt - stoppedAt,
+            readyTimeout.isPositive() ? awaitReady(container, startedAt) : 0);
+        docker.histogram("restart-stop").record(timing.stopNanos());
+        docker.histogram("restart-start").record(timing.startNanos());
+        if (timing.readyNanos() > 0) {
+            docker.histogram("restart-ready").record(timing.readyNanos());
+        }
+        return timing;
+    }
+
+    /**
+     * Whether the container's PID 1 will act on SIGTERM, judged from {@code /proc/1/status}.
+     * Falls back to the default grace period when the container can't be probed.
+     */
+    int chooseGrace(String container) {
+        try (ExecProcess process = DockerBackend.await(docker.openExec(container, List.of("cat", "/proc/1/status")))) {
+            process.stdin().close();
+            String status = new String(process.stdout().readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() == 0 && ignoresSigterm(status)) {
+                return 0;
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // Not running or no cat; let the engine use the usual grace period
+        }
+        return DEFAULT_GRACE_SECONDS;
+    }
+
+    static boolean ignoresSigterm(String procStatus) {
+        long caught = -1;
+        long ignored = 0;
+        for (String line : procStatus.split("\n")) {
+            if (line.startsWith("SigCgt:")) {
+                caught = Long.parseUnsignedLong(line.substring(7).strip(), 16);
+            } else if (line.startsWith("SigIgn:")) {
+                ignored = Long.parseUnsignedLong(line.substring(7).strip(), 16);
+            }
+        }
+        return caught >= 0 && ((caught & SIGTERM_MASK) == 0 || (ignored & SIGTERM_MASK) != 0);
+    }
+
+    /**
+     * Probes with a no-op exec, backing off exponentially, until one succeeds. Returns the
+     * time from {@code startedAt} to the first successful probe.
+     */
+    private long awaitReady(String container, long startedAt) throws IOException {
+        long deadline = System.nanoTime() + readyTimeout.toNanos();
+        long backoff = 5;
+        IOException lastFailure = null;
+        while (true) {
+            CompletableFuture<ExecProcess> probe = docker.openExec(container, List.of("true"));
+            try (ExecProcess process = DockerBackend.await(probe)) {
+                process.stdin().close();
+                if (process.waitFor() == 0) {
+                    return System.nanoTime() - startedAt;
+                }
+            } catch (IOException e) {
+                lastFailure = e;
+            }
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) > deadline) {
+                throw new IOException("Container did not become ready within " + readyTimeout.toSeconds() + "s"
+                    + (lastFailure != null ? ": " + lastFailure.getMessage() : ""));
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + container);
+            }
+            backoff = Math.min(backoff * 2, MAX_PROBE_BACKOFF_MILLIS);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch, long millis) {
+        try {
+            latch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
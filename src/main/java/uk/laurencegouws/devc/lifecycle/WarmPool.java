@@ -0,0 +1,263 @@
+package uk.laurencegouws.devc.lifecycle;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.build.FileHashCache;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerException;
+import uk.laurencegouws.devc.fleet.Fleet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pre-created, stopped containers waiting to be claimed by {@code devc start}. Claiming one is a
+ * rename and a start instead of a full create. Bind mounts are fixed at create time, so entries
+ * are kept per image and workspace mount, and an entry only matches while its image id is still
+ * what the tag points to; anything older is evicted on the next refill.
+ * <p>
+ * Entries are ordinary containers named {@code devc-pool-*} and labelled with the image tag,
+ * image id and mount they were created for. Hit, miss and eviction counts are kept in
+ * {@code pool-stats.properties} under the devc cache directory.
+ */
+@ApplicationScoped
+public class WarmPool {
+
+    public static final String NAME_PREFIX = "devc-pool-";
+    public static final String TAG_LABEL = "devc.pool.tag";
+    public static final String IMAGE_LABEL = "devc.pool.image";
+    public static final String MOUNT_LABEL = "devc.pool.mount";
+
+    /**
+     * Counters since the statistics were last reset.
+     */
+    public record Stats(long hits, long misses, long evictions, long created) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    /**
+     * What one refill did.
+     */
+    public record Refill(int ready, int created, int evicted) {
+    }
+
+    @Inject
+    DockerBackend docker;
+
+    @ConfigProperty(name = "devc.pool.size", defaultValue = "0")
+    int size;
+
+    private final Path statsFile = FileHashCache.defaultLocation("pool-stats.properties");
+    private final ReentrantLock statsLock = new ReentrantLock();
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    /**
+     * Target number of ready containers per image and mount; 0 disables the pool.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    public static boolean isPooled(String containerName) {
+        return containerName.startsWith(NAME_PREFIX);
+    }
+
+    /**
+     * Renames a ready entry for {@code image} and {@code mount} to {@code name}, leaving it
+     * stopped. Two claimers racing for the same entry are settled by the rename: the loser's
+     * fails and it moves on to the next entry.
+     */
+    public Optional<String> claim(String image, String mount, String name) throws IOException {
+        String imageId = DockerBackend.await(docker.imageId(image));
+        if (imageId != null) {
+            for (ContainerSummary entry : ready(image, imageId, mount)) {
+                try {
+                    DockerBackend.await(docker.renameContainer(entry.id(), name));
+                    record(1, 0, 0, 0);
+                    return Optional.of(entry.id());
+                } catch (DockerException e) {
+                    // Claimed by someone else (or removed) in the meantime
+                }
+            }
+        }
+        record(0, 1, 0, 0);
+        return Optional.empty();
+    }
+
+    /**
+     * Removes entries created from an older build of {@code image} and tops the pool for
+     * {@code image} and {@code mount} back up to {@link #size()}.
+     */
+    public Refill refill(String image, String mount) throws IOException {
+        refillLock.lock();
+        try {
+            String imageId = DockerBackend.await(docker.imageId(image));
+            if (imageId == null) {
+                return new Refill(0, 0, 0);
+            }
+            List<CompletableFuture<Void>> evictions = new ArrayList<>();
+            int ready = 0;
+            for (ContainerSummary entry : entries()) {
+                if (!image.equals(entry.labels().get(TAG_LABEL))) {
+                    continue;
+                }
+                if (!imageId.equals(entry.labels().get(IMAGE_LABEL))) {
+                    evictions.add(docker.removeContainer(entry.id(), true));
+                } else if (mount.equals(entry.labels().get(MOUNT_LABEL)) && !entry.isRunning()) {
+                    ready++;
+                }
+            }
+
+            Map<String, String> labels = new LinkedHashMap<>();
+            labels.put(Fleet.MANAGED_LABEL, "true");
+            labels.put(TAG_LABEL, image);
+            labels.put(IMAGE_LABEL, imageId);
+            labels.put(MOUNT_LABEL, mount);
+            List<CompletableFuture<String>> creates = new ArrayList<>();
+            for (int i = ready; i < size; i++) {
+                creates.add(docker.createContainer(newName(imageId), image, List.of(bind(mount)), labels));
+            }
+
+            int evicted = succeeded(evictions);
+            int created = succeeded(creates);
+            record(0, 0, evicted, created);
+            return new Refill(ready + created, created, evicted);
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    /**
+     * Every pool entry, ready or not.
+     */
+    public List<ContainerSummary> entries() throws IOException {
+        return DockerBackend.await(docker.listContainers(null, List.of(IMAGE_LABEL), true)).stream()
+            .filter(container -> isPooled(container.name()))
+            .toList();
+    }
+
+    /**
+     * Removes every pool entry and returns how many were removed.
+     */
+    public int clear() throws IOException {
+        List<CompletableFuture<Void>> removals = new ArrayList<>();
+        for (ContainerSummary entry : entries()) {
+            removals.add(docker.removeContainer(entry.id(), true));
+        }
+        int removed = succeeded(removals);
+        record(0, 0, removed, 0);
+        return removed;
+    }
+
+    public Stats stats() {
+        statsLock.lock();
+        try {
+            Properties properties = loadStats();
+            return new Stats(count(properties, "hits"), count(properties, "misses"),
+                count(properties, "evictions"), count(properties, "created"));
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    /**
+     * The bind spec for the workspace mount.
+     */
+    public static String bind(String mount) {
+        return mount + ":/home/developer/workspace";
+    }
+
+    private List<ContainerSummary> ready(String image, String imageId, String mount) throws IOException {
+        return entries().stream()
+            .filter(entry -> !entry.isRunning())
+            .filter(entry -> image.equals(entry.labels().get(TAG_LABEL)))
+            .filter(entry -> imageId.equals(entry.labels().get(IMAGE_LABEL)))
+            .filter(entry -> mount.equals(entry.labels().get(MOUNT_LABEL)))
+            .toList();
+    }
+
+    private static String newName(String imageId) {
+        String hex = imageId.startsWith("sha256:") ? imageId.substring(7) : imageId;
+        byte[] suffix = new byte[3];
+        ThreadLocalRandom.current().nextBytes(suffix);
+        return NAME_PREFIX + hex.substring(0, Math.min(12, hex.length())) + "-" + HexFormat.of().formatHex(suffix);
+    }
+
+    private static int succeeded(List<? extends CompletableFuture<?>> futures) {
+        int succeeded = 0;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                DockerBackend.await(future);
+                succeeded++;
+            } catch (IOException e) {
+                // One failed entry shouldn't stop the rest; the next refill tries again
+            }
+        }
+        return succeeded;
+    }
+
+    private void record(long hits, long misses, long evictions, long created) {
+        statsLock.lock();
+        try {
+            Properties properties = loadStats();
+            properties.setProperty("hits", String.valueOf(count(properties, "hits") + hits));
+            properties.setProperty("misses", String.valueOf(count(properties, "misses") + misses));
+            properties.setProperty("evictions", String.valueOf(count(properties, "evictions") + evictions));
+            properties.setProperty("created", String.valueOf(count(properties, "created") + created));
+            Files.createDirectories(statsFile.getParent());
+            Path temp = Files.createTempFile(statsFile.getParent(), "pool-stats", ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, "devc warm pool counters");
+            }
+            Files.move(temp, statsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // Counters are informational
+        } finally {
+            statsLock.unlock();
+        }
+    }
+
+    private Properties loadStats() {
+        Properties properties = new Properties();
+        if (Files.exists(statsFile)) {
+            try (Reader reader = Files.newBufferedReader(statsFile)) {
+                properties.load(reader);
+            } catch (IOException ignored) {
+                // Start the counters again
+            }
+        }
+        return properties;
+    }
+
+    private static long count(Properties properties, String key) {
+        try {
+            return Long.parseLong(properties.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package uk.laurencegouws.devc.logs;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides line by line, as the log is read, which lines to keep: those at or above a minimum
+ * level and matching a regular expression. A line with no level of its own (a stack trace line,
+ * say) takes the level of the line before it on the same stream; lines before the first one
+ * with a level are left out when filtering by level.
+ * <p>
+ * Level detection works on the raw bytes. The pattern is matched against a character buffer
+ * the line is decoded into, reused from line to line along with the matcher, so filtering a
+ * busy log allocates nothing per line.
+ */
+public final class LogFilter {
+
+    private final LogLevel minimum;
+    private final Matcher matcher;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer chars = CharBuffer.allocate(1024);
+    private LogLevel stdoutLevel;
+    private LogLevel stderrLevel;
+
+    /**
+     * Either may be null to not filter on it.
+     */
+    public LogFilter(LogLevel minimum, Pattern pattern) {
+        this.minimum = minimum;
+        this.matcher = pattern == null ? null : pattern.matcher("");
+    }
+
+    /**
+     * Whether this filter drops anything at all.
+     */
+    public boolean isActive() {
+        return minimum != null || matcher != null;
+    }
+
+    public boolean accepts(byte[] line, int offset, int length, boolean stderr) {
+        if (minimum != null) {
+            LogLevel level = LogLevel.detect(line, offset, length);
+            if (level == null) {
+                level = stderr ? stderrLevel : stdoutLevel;
+            } else if (stderr) {
+                stderrLevel = level;
+            } else {
+                stdoutLevel = level;
+            }
+            if (level == null || level.compareTo(minimum) < 0) {
+                return false;
+            }
+        }
+        return matcher == null || matcher.reset(decode(line, offset, length)).find();
+    }
+
+    private CharBuffer decode(byte[] line, int offset, int length) {
+        // UTF-8 never decodes to more chars than it has bytes
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(line, offset, length), chars, true);
+        decoder.flush(chars);
+        return chars.flip();
+    }
+}
@@ -0,0 +1,98 @@
+package uk.laurencegouws.devc.logs;
+
+import java.util.Locale;
+
+/**
+ * Severity of a log line, as far as it can be told from the text: the first word near the start
+ * of the line that names a level ({@code ERROR}, {@code [warn]}, {@code level=info},
+ * {@code "level":"debug"} and the like all count).
+ */
+public enum LogLevel {
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    FATAL;
+
+    /** Only this much of a line is searched, so a level word deep in a message doesn't count. */
+    private static final int SEARCH_WINDOW = 160;
+
+    /**
+     * Reads a level given on the command line; {@code warning}, {@code err} and {@code critical}
+     * are accepted as their usual synonyms.
+     */
+    public static LogLevel parse(String name) {
+        LogLevel level = named(name.toLowerCase(Locale.ROOT));
+        if (level == null) {
+            throw new IllegalArgumentException("Unknown log level '" + name + "'; use trace, debug, info, warn, error or fatal");
+        }
+        return level;
+    }
+
+    /**
+     * The level of {@code line[offset, offset + length)}, or {@code null} when it names none.
+     * Runs on every line of a followed log, so it scans bytes and allocates nothing.
+     */
+    public static LogLevel detect(byte[] line, int offset, int length) {
+        int end = offset + Math.min(length, SEARCH_WINDOW);
+        int i = offset;
+        while (i < end) {
+            while (i < end && !isLetter(line[i])) {
+                i++;
+            }
+            int start = i;
+            while (i < end && isLetter(line[i])) {
+                i++;
+            }
+            LogLevel level = word(line, start, i - start);
+            if (level != null) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    private static LogLevel word(byte[] line, int start, int length) {
+        return switch (length) {
+            case 3 -> matches(line, start, "err") ? ERROR : null;
+            case 4 -> matches(line, start, "info") ? INFO : matches(line, start, "warn") ? WARN
+                : matches(line, start, "crit") ? FATAL : null;
+            case 5 -> matches(line, start, "trace") ? TRACE : matches(line, start, "debug") ? DEBUG
+                : matches(line, start, "error") ? ERROR : matches(line, start, "fatal") ? FATAL
+                : matches(line, start, "panic") ? FATAL : null;
+            case 7 -> matches(line, start, "warning") ? WARN : null;
+            case 8 -> matches(line, start, "critical") ? FATAL : null;
+            default -> null;
+        };
+    }
+
+    private static LogLevel named(String name) {
+        return switch (name) {
+            case "trace" -> TRACE;
+            case "debug" -> DEBUG;
+            case "info" -> INFO;
+            case "warn", "warning" -> WARN;
+            case "err", "error" -> ERROR;
+            case "fatal", "crit", "critical", "panic" -> FATAL;
+            default -> null;
+        };
+    }
+
+    /**
+     * Case-insensitive comparison against a lower-case ASCII word.
+     */
+    private static boolean matches(byte[] line, int start, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if ((line[start + i] | 0x20) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        int lower = b | 0x20;
+        return lower >= 'a' && lower <= 'z';
+    }
+}
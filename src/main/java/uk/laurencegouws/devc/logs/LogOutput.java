@@ -0,0 +1,127 @@
+package uk.laurencegouws.devc.logs;
+
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes log lines to stdout and stderr through one direct buffer each, so a history of many
+ * short lines goes out in a few large writes; the buffers are written whenever the reader runs
+ * out of data and when a line switches streams, so followed lines appear at once and in order.
+ * <p>
+ * With a rate, lines beyond it are dropped and counted instead of written (a token bucket
+ * holding one second's worth), so a chatty container can't make a slow terminal hold up reading
+ * the log. How many were dropped is reported on stderr at most once a second and at the end.
+ */
+public final class LogOutput implements DockerClient.LogSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final WritableByteChannel stdout;
+    private final WritableByteChannel stderr;
+    private final ByteBuffer stdoutBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer stderrBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final double linesPerSecond;
+    private final double burst;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private long reportedAt = refilledAt;
+    private long skipped;
+    private boolean lastOnStderr;
+
+    /**
+     * {@code linesPerSecond} of 0 or less writes every line.
+     */
+    public LogOutput(WritableByteChannel stdout, WritableByteChannel stderr, double linesPerSecond) {
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.linesPerSecond = linesPerSecond;
+        this.burst = Math.max(1, linesPerSecond);
+        this.tokens = burst;
+    }
+
+    @Override
+    public void line(byte[] buffer, int offset, int length, boolean fromStderr) throws IOException {
+        if (linesPerSecond > 0) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * linesPerSecond / 1e9);
+            refilledAt = now;
+            if (tokens < 1) {
+                skipped++;
+                return;
+            }
+            tokens--;
+            if (skipped > 0 && now - reportedAt >= REPORT_INTERVAL_NANOS) {
+                reportSkipped();
+                reportedAt = now;
+            }
+        }
+        if (fromStderr != lastOnStderr) {
+            // Keep the two streams in the order the container wrote them
+            drain(lastOnStderr ? stderrBuffer : stdoutBuffer, lastOnStderr ? stderr : stdout);
+            lastOnStderr = fromStderr;
+        }
+        ByteBuffer target = fromStderr ? stderrBuffer : stdoutBuffer;
+        WritableByteChannel channel = fromStderr ? stderr : stdout;
+        if (target.remaining() < length + 1) {
+            drain(target, channel);
+            if (length + 1 > target.capacity()) {
+                write(ByteBuffer.wrap(buffer, offset, length), channel);
+                target.put((byte) '\n');
+                return;
+            }
+        }
+        target.put(buffer, offset, length).put((byte) '\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // The stream written last goes last, so the terminal sees the lines in order
+        if (lastOnStderr) {
+            drain(stdoutBuffer, stdout);
+            drain(stderrBuffer, stderr);
+        } else {
+            drain(stderrBuffer, stderr);
+            drain(stdoutBuffer, stdout);
+        }
+    }
+
+    /**
+     * Writes out everything still buffered, and the count of dropped lines if there were any.
+     */
+    public void finish() throws IOException {
+        if (skipped > 0) {
+            reportSkipped();
+        }
+        flush();
+    }
+
+    private void reportSkipped() throws IOException {
+        drain(stdoutBuffer, stdout);
+        String notice = String.format(Locale.ROOT, "Warning: Skipped %d lines to stay under %s lines/s.%n",
+            skipped, linesPerSecond == Math.rint(linesPerSecond) ? Long.toString((long) linesPerSecond) : linesPerSecond);
+        if (stderrBuffer.remaining() < notice.length()) {
+            drain(stderrBuffer, stderr);
+        }
+        stderrBuffer.put(notice.getBytes(StandardCharsets.US_ASCII));
+        lastOnStderr = true;
+        skipped = 0;
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        write(buffer, channel);
+        buffer.clear();
+    }
+
+    private static void write(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package uk.laurencegouws.devc.logs;
+
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+
+/**
+ * The last {@code capacity} lines offered, in a ring of reusable slots: once the ring is full
+ * each new line overwrites the oldest in place, so reading a long history to keep its end costs
+ * memory for {@code capacity} lines however long the history is.
+ */
+public final class LogTail {
+
+    private final byte[][] lines;
+    private final int[] lengths;
+    private final boolean[] stderr;
+    private int next;
+    private int size;
+
+    public LogTail(int capacity) {
+        lines = new byte[capacity][];
+        lengths = new int[capacity];
+        stderr = new boolean[capacity];
+    }
+
+    public void add(byte[] line, int offset, int length, boolean fromStderr) {
+        if (lines.length == 0) {
+            return;
+        }
+        byte[] slot = lines[next];
+        if (slot == null || slot.length < length) {
+            slot = lines[next] = new byte[Math.max(length, 128)];
+        }
+        System.arraycopy(line, offset, slot, 0, length);
+        lengths[next] = length;
+        stderr[next] = fromStderr;
+        next = (next + 1) % lines.length;
+        size = Math.min(size + 1, lines.length);
+    }
+
+    /**
+     * Hands the kept lines to {@code sink}, oldest first, and empties the ring.
+     */
+    public void drainTo(DockerClient.LogSink sink) throws IOException {
+        int first = (next - size + lines.length) % Math.max(1, lines.length);
+        for (int i = 0; i < size; i++) {
+            int slot = (first + i) % lines.length;
+            sink.line(lines[slot], 0, lengths[slot], stderr[slot]);
+        }
+        size = 0;
+        sink.flush();
+    }
+}
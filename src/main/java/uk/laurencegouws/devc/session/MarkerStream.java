@@ -0,0 +1,117 @@
+package uk.laurencegouws.devc.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads a shell's output stream, passing bytes through until a delimiter the shell prints
+ * after each command. Bytes that might be the start of the delimiter are held back until
+ * they are known not to be, so the delimiter itself is never relayed. The read buffer
+ * outlives a single command, so nothing read past one delimiter is lost.
+ */
+final class MarkerStream {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private final byte[] chunk = new byte[8192];
+    private int position;
+    private int limit;
+
+    MarkerStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Copies bytes to {@code out} until {@code marker} has been consumed.
+     *
+     * @return {@code false} if the stream ended first
+     */
+    boolean copyUntil(byte[] marker, OutputStream out) throws IOException {
+        int[] failure = failureTable(marker);
+        int matched = 0;
+        int pending = 0;
+        while (true) {
+            if (position == limit) {
+                flush(out, pending);
+                pending = 0;
+                if (!fill()) {
+                    // Anything held back as a partial match was real output after all
+                    out.write(marker, 0, matched);
+                    out.flush();
+                    return false;
+                }
+            }
+            byte b = buffer[position++];
+            int held = matched;
+            while (matched > 0 && marker[matched] != b) {
+                matched = failure[matched - 1];
+            }
+            if (marker[matched] == b) {
+                matched++;
+            }
+            // Of the held bytes plus b, everything not still part of a match is plain output
+            int release = held + 1 - matched;
+            for (int i = 0; i < release; i++) {
+                if (pending == chunk.length) {
+                    flush(out, pending);
+                    pending = 0;
+                }
+                chunk[pending++] = i < held ? marker[i] : b;
+            }
+            if (matched == marker.length) {
+                flush(out, pending);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads up to and excluding the next newline, or {@code null} at end of stream.
+     */
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (position == limit && !fill()) {
+                return null;
+            }
+            byte b = buffer[position++];
+            if (b == '\n') {
+                return line.toString();
+            }
+            line.append((char) (b & 0xff));
+        }
+    }
+
+    private void flush(OutputStream out, int count) throws IOException {
+        if (count > 0) {
+            out.write(chunk, 0, count);
+            out.flush();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private static int[] failureTable(byte[] marker) {
+        int[] failure = new int[marker.length];
+        int k = 0;
+        for (int i = 1; i < marker.length; i++) {
+            while (k > 0 && marker[i] != marker[k]) {
+                k = failure[k - 1];
+            }
+            if (marker[i] == marker[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+}
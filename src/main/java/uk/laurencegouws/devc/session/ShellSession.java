@@ -0,0 +1,108 @@
+package uk.laurencegouws.devc.session;
+
+import uk.laurencegouws.devc.docker.ExecProcess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+/**
+ * One long-lived bash inside the container. Each command runs in a subshell (so {@code cd},
+ * {@code exit} and variables don't leak between commands) followed by a random token on
+ * stdout carrying the exit status and the same token on stderr, which tells devc where the
+ * command's output ends on each stream.
+ */
+final class ShellSession implements Closeable {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final ExecProcess process;
+    private final MarkerStream stdout;
+    private final MarkerStream stderr;
+    private volatile boolean broken;
+
+    ShellSession(ExecProcess process) throws IOException {
+        this.process = process;
+        this.stdout = new MarkerStream(process.stdout());
+        this.stderr = new MarkerStream(process.stderr());
+        // Paid once per session instead of once per command
+        send("shopt -s expand_aliases; source ~/.bashrc >/dev/null 2>&1 </dev/null\n");
+    }
+
+    boolean isAlive() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Runs {@code command} from {@code workingDirectory}, relaying its output, and returns its exit
+     * status. If the shell itself dies the session is marked broken and the shell's exit code returned.
+     */
+    int run(String workingDirectory, String command, OutputStream out, OutputStream err) throws IOException {
+        byte[] nonce = new byte[12];
+        RANDOM.nextBytes(nonce);
+        String token = "__devc_" + HexFormat.of().formatHex(nonce);
+        send("( cd " + quote(workingDirectory) + " && eval " + quote(command) + " ) </dev/null\n"
+            + "printf '%s:%d\\n' '" + token + "' \"$?\"\n"
+            + "printf '%s\\n' '" + token + "' >&2\n");
+
+        byte[] stderrMarker = (token + "\n").getBytes(StandardCharsets.US_ASCII);
+        Thread stderrRelay = Thread.ofVirtual().name("devc-session-stderr").start(() -> {
+            try {
+                stderr.copyUntil(stderrMarker, err);
+            } catch (IOException ignored) {
+                // Shell died; stdout handling reports it
+            }
+        });
+
+        try {
+            if (stdout.copyUntil((token + ":").getBytes(StandardCharsets.US_ASCII), out)) {
+                String status = stdout.readLine();
+                if (status != null) {
+                    joinQuietly(stderrRelay);
+                    return Integer.parseInt(status.strip());
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Falls through to treating the session as broken
+        }
+        broken = true;
+        process.close();
+        joinQuietly(stderrRelay);
+        return process.waitFor();
+    }
+
+    private void send(String script) throws IOException {
+        try {
+            OutputStream stdin = process.stdin();
+            stdin.write(script.getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw new IOException("Shell session is not accepting commands: " + e.getMessage(), e);
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Single-quotes a string for bash.
+     */
+    static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        process.close();
+    }
+}
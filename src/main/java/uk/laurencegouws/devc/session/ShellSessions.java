@@ -0,0 +1,81 @@
+package uk.laurencegouws.devc.session;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Warm shells for {@code devc exec --session}, one per container. A shell is started on first
+ * use and kept for the life of this process, which only pays off in {@code devc daemon};
+ * commands on the same container queue behind each other, and a shell that has died is
+ * replaced before the next command.
+ */
+@ApplicationScoped
+public class ShellSessions {
+
+    private static final List<String> SHELL = List.of("bash", "--noprofile", "--norc", "-s");
+
+    @Inject
+    DockerBackend docker;
+
+    private final Map<String, ShellSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Runs {@code command} in the container's warm shell and returns its exit status.
+     */
+    public int run(String container, String workingDirectory, String command, OutputStream out, OutputStream err)
+            throws IOException {
+        ReentrantLock lock = locks.computeIfAbsent(container, key -> new ReentrantLock());
+        lock.lock();
+        try {
+            ShellSession session = sessions.get(container);
+            if (session == null || !session.isAlive()) {
+                if (session != null) {
+                    session.close();
+                    new PrintStream(err, true).println("devc: shell session ended, starting a new one");
+                }
+                session = spawn(container);
+                sessions.put(container, session);
+            }
+            long start = System.nanoTime();
+            try {
+                return session.run(workingDirectory, command, out, err);
+            } catch (IOException e) {
+                sessions.remove(container, session);
+                session.close();
+                throw e;
+            } finally {
+                docker.histogram("session-exec").record(System.nanoTime() - start);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ShellSession spawn(String container) throws IOException {
+        ExecProcess process = DockerBackend.await(docker.openExec(container, SHELL));
+        try {
+            return new ShellSession(process);
+        } catch (IOException e) {
+            process.close();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sessions.values().forEach(ShellSession::close);
+        sessions.clear();
+    }
+}
@@ -0,0 +1,142 @@
+package uk.laurencegouws.devc.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Content-addressed chunk files: each chunk is stored once, under its SHA-256, in a directory
+ * named after the first two hex digits so no single directory grows huge.
+ */
+final class ChunkStore {
+
+    private final Path root;
+
+    ChunkStore(Path root) {
+        this.root = root;
+    }
+
+    static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Stores {@code data} under {@code hash} unless it is already there. Returns true when it
+     * was written.
+     */
+    boolean put(String hash, byte[] data) throws IOException {
+        Path file = path(hash);
+        if (Files.exists(file)) {
+            return false;
+        }
+        Files.createDirectories(file.getParent());
+        // Written aside and renamed, so an interrupted save never leaves a truncated chunk behind
+        Path temporary = Files.createTempFile(file.getParent(), hash, ".tmp");
+        try {
+            Files.write(temporary, data);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a chunk back and checks it still matches its hash.
+     */
+    byte[] read(String hash, int length) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(path(hash));
+        } catch (NoSuchFileException e) {
+            throw new IOException("Chunk " + hash + " is missing from the snapshot store.");
+        }
+        if (data.length != length || !hash(data).equals(hash)) {
+            throw new IOException("Chunk " + hash + " is corrupt.");
+        }
+        return data;
+    }
+
+    /**
+     * Fails unless the chunk is stored with the expected length. Cheaper than {@link #read},
+     * which also checks the hash.
+     */
+    void check(String hash, int length) throws IOException {
+        long size;
+        try {
+            size = Files.size(path(hash));
+        } catch (NoSuchFileException e) {
+            throw new IOException("Chunk " + hash + " is missing from the snapshot store.");
+        }
+        if (size != length) {
+            throw new IOException("Chunk " + hash + " is corrupt.");
+        }
+    }
+
+    /**
+     * Total bytes of all stored chunks.
+     */
+    long size() throws IOException {
+        long[] total = new long[1];
+        walk((file, attributes) -> total[0] += attributes.size());
+        return total[0];
+    }
+
+    /**
+     * Deletes every chunk not in {@code keep} and returns the bytes freed.
+     */
+    long sweep(Set<String> keep) throws IOException {
+        long[] freed = new long[1];
+        walk((file, attributes) -> {
+            String name = file.getFileName().toString();
+            if (!keep.contains(name)) {
+                try {
+                    Files.deleteIfExists(file);
+                    freed[0] += attributes.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        return freed[0];
+    }
+
+    private Path path(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private interface ChunkVisitor {
+        void visit(Path file, BasicFileAttributes attributes);
+    }
+
+    private void walk(ChunkVisitor visitor) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    visitor.visit(file, attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.laurencegouws.devc.snapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Splits a stream into content-defined chunks with a gear rolling hash (FastCDC). Cut points
+ * depend only on the bytes near them, so an edit in one file of a workspace tar changes the
+ * chunks around it and leaves the rest of the stream chunking exactly as before. Chunks are
+ * between {@link #MIN_SIZE} and {@link #MAX_SIZE} bytes and about {@link #AVERAGE_SIZE} on average.
+ */
+final class ContentChunker {
+
+    static final int MIN_SIZE = 16 * 1024;
+    static final int AVERAGE_SIZE = 64 * 1024;
+    static final int MAX_SIZE = 256 * 1024;
+
+    // Normalised chunking: a stricter mask before the average size and a looser one after it
+    // keeps chunk sizes close to the average. The top bits are used because each shift pushes
+    // older bytes out of the high end of the fingerprint.
+    private static final long MASK_STRICT = -1L << (64 - 18);
+    private static final long MASK_LOOSE = -1L << (64 - 14);
+
+    /** Fixed seed: changing the table would change every cut point and defeat deduplication. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6465766353544f52L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int filled;
+    private boolean eof;
+
+    ContentChunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * The next chunk, or null at the end of the stream.
+     */
+    byte[] next() throws IOException {
+        while (!eof && filled < buffer.length) {
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+        }
+        if (filled == 0) {
+            return null;
+        }
+        int cut = cutPoint(buffer, filled);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return chunk;
+    }
+
+    static int cutPoint(byte[] data, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(AVERAGE_SIZE, length);
+        long fingerprint = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xff];
+            if ((fingerprint & MASK_STRICT) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xff];
+            if ((fingerprint & MASK_LOOSE) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
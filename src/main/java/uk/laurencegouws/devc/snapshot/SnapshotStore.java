@@ -0,0 +1,390 @@
+package uk.laurencegouws.devc.snapshot;
+
+import uk.laurencegouws.devc.archive.ArchiveSource;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Local store of workspace snapshots. A snapshot is the tar stream the engine's archive endpoint
+ * returns for a container path, cut into content-defined chunks that are stored once each by
+ * hash, so saving a workspace that changed a little adds only the chunks around the changes.
+ * Each snapshot is a small index file listing its chunks in order; restoring checks every chunk
+ * is there first, then reads them ahead in parallel and streams them back in order as one upload.
+ * <p>
+ * Chunks are shared between snapshots, so saves and restores hold a shared lock on the store
+ * and removing a snapshot holds it exclusively while unreferenced chunks are swept; otherwise
+ * a concurrent save could lose chunks it has written, or reused, before its index exists.
+ */
+public final class SnapshotStore {
+
+    public static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    private static final String INDEX_SUFFIX = ".snapshot";
+    private static final String INDEX_HEADER = "# devc snapshot v1";
+
+    public record Chunk(String hash, int length) {
+    }
+
+    /**
+     * One saved snapshot: {@code path} is the container path it was archived from.
+     */
+    public record Snapshot(String name, String container, String path, Instant created, long size, int chunkCount) {
+    }
+
+    /**
+     * What a save added: {@code newChunks} and {@code newBytes} count only chunks the store
+     * didn't already hold.
+     */
+    public record SaveResult(Snapshot snapshot, int newChunks, long newBytes, long nanos) {
+
+        /**
+         * Logical bytes per byte actually written, i.e. how much deduplication saved.
+         */
+        public double dedupRatio() {
+            return newBytes == 0 ? Double.POSITIVE_INFINITY : (double) snapshot.size() / newBytes;
+        }
+    }
+
+    private final Path root;
+    private final ChunkStore chunks;
+    private final StoreLock lock;
+
+    public SnapshotStore(Path root) {
+        this.root = root;
+        this.chunks = new ChunkStore(root.resolve("chunks"));
+        this.lock = StoreLock.of(root);
+    }
+
+    /**
+     * {@code $XDG_DATA_HOME/devc/snapshots}, falling back to {@code ~/.local/share/devc/snapshots}.
+     * Snapshots are data rather than cache, so they live outside the cache directory.
+     */
+    public static Path defaultLocation() {
+        String dataHome = System.getenv("XDG_DATA_HOME");
+        Path base = dataHome != null && !dataHome.isBlank()
+            ? Path.of(dataHome)
+            : Path.of(System.getProperty("user.home"), ".local", "share");
+        return base.resolve("devc").resolve("snapshots");
+    }
+
+    /**
+     * Chunks {@code tar} into the store and records it as snapshot {@code name}. Up to
+     * {@code jobs} chunks are hashed and written concurrently while the next ones are read.
+     */
+    public SaveResult save(String name, String container, String path, InputStream tar, int jobs) throws IOException {
+        Path index = indexFile(name);
+        try (Closeable ignored = lock.shared()) {
+            return save(index, name, container, path, tar, jobs);
+        }
+    }
+
+    private SaveResult save(Path index, String name, String container, String path, InputStream tar, int jobs)
+            throws IOException {
+        long start = System.nanoTime();
+        ContentChunker chunker = new ContentChunker(tar);
+        Semaphore permits = new Semaphore(Math.max(1, jobs));
+        Set<String> claimed = ConcurrentHashMap.newKeySet();
+        AtomicInteger newChunks = new AtomicInteger();
+        AtomicLong newBytes = new AtomicLong();
+        List<Future<Chunk>> pending = new ArrayList<>();
+        try (ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+            byte[] data;
+            while ((data = chunker.next()) != null) {
+                permits.acquire();
+                byte[] chunk = data;
+                pending.add(writers.submit(() -> {
+                    try {
+                        String hash = ChunkStore.hash(chunk);
+                        // The same chunk can repeat within one stream; only the first occurrence writes it
+                        if (claimed.add(hash) && chunks.put(hash, chunk)) {
+                            newChunks.incrementAndGet();
+                            newBytes.addAndGet(chunk.length);
+                        }
+                        return new Chunk(hash, chunk.length);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving the snapshot.");
+        }
+
+        List<Chunk> saved = new ArrayList<>(pending.size());
+        long size = 0;
+        for (Future<Chunk> future : pending) {
+            Chunk chunk = result(future);
+            saved.add(chunk);
+            size += chunk.length();
+        }
+        Snapshot snapshot = new Snapshot(name, container, path, Instant.now(), size, saved.size());
+        writeIndex(index, snapshot, saved);
+        return new SaveResult(snapshot, newChunks.get(), newBytes.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * A snapshot checked and held for restoring: every chunk was found with the right length,
+     * and until it is closed no snapshot can be removed, so nothing it needs can be swept.
+     */
+    public final class Restore implements Closeable {
+
+        private final Closeable held;
+        private final Snapshot snapshot;
+        private final List<Chunk> list;
+        private final int jobs;
+
+        private Restore(Closeable held, Snapshot snapshot, List<Chunk> list, int jobs) {
+            this.held = held;
+            this.snapshot = snapshot;
+            this.list = list;
+            this.jobs = jobs;
+        }
+
+        public Snapshot snapshot() {
+            return snapshot;
+        }
+
+        /**
+         * The snapshot's tar stream, for uploading back into a container. Up to {@code jobs}
+         * chunks are read and verified against their hash ahead of the one being written.
+         */
+        public ArchiveSource archive() {
+            return new ArchiveSource() {
+                @Override
+                public long size() {
+                    return snapshot.size();
+                }
+
+                @Override
+                public void writeTo(WritableByteChannel target) throws IOException {
+                    ArrayDeque<Future<byte[]>> window = new ArrayDeque<>();
+                    try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+                        int next = 0;
+                        while (next < list.size() || !window.isEmpty()) {
+                            while (next < list.size() && window.size() < Math.max(1, jobs)) {
+                                Chunk chunk = list.get(next++);
+                                window.add(readers.submit(() -> chunks.read(chunk.hash(), chunk.length())));
+                            }
+                            ByteBuffer buffer = ByteBuffer.wrap(result(window.poll()));
+                            while (buffer.hasRemaining()) {
+                                target.write(buffer);
+                            }
+                        }
+                    } finally {
+                        window.forEach(future -> future.cancel(true));
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            held.close();
+        }
+    }
+
+    /**
+     * Takes the shared lock, reads snapshot {@code name} and checks that all of its chunks are
+     * present, so a restore fails before it touches the container rather than halfway through.
+     */
+    public Restore restore(String name, int jobs) throws IOException {
+        Path index = indexFile(name);
+        Closeable held = lock.shared();
+        try {
+            Snapshot snapshot = Files.isRegularFile(index) ? readHeader(index) : null;
+            if (snapshot == null) {
+                throw new IOException("No snapshot named '" + name + "'.");
+            }
+            List<Chunk> list = chunks(name);
+            if (list.size() != snapshot.chunkCount()) {
+                throw new IOException("Snapshot '" + name + "' lists " + list.size() + " of its "
+                    + snapshot.chunkCount() + " chunks.");
+            }
+            for (Chunk chunk : list) {
+                chunks.check(chunk.hash(), chunk.length());
+            }
+            return new Restore(held, snapshot, list, jobs);
+        } catch (IOException | RuntimeException e) {
+            held.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Every snapshot, oldest first.
+     */
+    public List<Snapshot> list() throws IOException {
+        List<Snapshot> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                Snapshot snapshot = readHeader(file);
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        }
+        snapshots.sort(Comparator.comparing(Snapshot::created));
+        return snapshots;
+    }
+
+    /**
+     * The snapshot called {@code name}, or null when there is none.
+     */
+    public Snapshot find(String name) throws IOException {
+        Path file = indexFile(name);
+        return Files.isRegularFile(file) ? readHeader(file) : null;
+    }
+
+    /**
+     * Removes a snapshot and any chunks no other snapshot uses. Returns the bytes freed.
+     */
+    public long delete(String name) throws IOException {
+        Path index = indexFile(name);
+        try (Closeable ignored = lock.exclusive()) {
+            Files.deleteIfExists(index);
+            Set<String> referenced = new HashSet<>();
+            for (Snapshot snapshot : list()) {
+                for (Chunk chunk : chunks(snapshot.name())) {
+                    referenced.add(chunk.hash());
+                }
+            }
+            // No save is running, so leftover temporary files are from one that was interrupted
+            return chunks.sweep(referenced);
+        }
+    }
+
+    /**
+     * Bytes the chunk store occupies on disk, shared by all snapshots.
+     */
+    public long storedBytes() throws IOException {
+        return chunks.size();
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    // --- index files ---
+    //
+    // A header of tab-separated key/value lines ending with "chunks <count>", then one
+    // "<hash> <length>" line per chunk. Listing only reads the header.
+
+    private Path indexFile(String name) throws IOException {
+        if (!VALID_NAME.matcher(name).matches()) {
+            throw new IOException("'" + name + "' is not a valid snapshot name.");
+        }
+        return root.resolve(name + INDEX_SUFFIX);
+    }
+
+    private void writeIndex(Path file, Snapshot snapshot, List<Chunk> list) throws IOException {
+        List<String> lines = new ArrayList<>(list.size() + 7);
+        lines.add(INDEX_HEADER);
+        lines.add("container\t" + snapshot.container());
+        lines.add("path\t" + snapshot.path());
+        lines.add("created\t" + snapshot.created().toEpochMilli());
+        lines.add("size\t" + snapshot.size());
+        lines.add("chunks\t" + list.size());
+        for (Chunk chunk : list) {
+            lines.add(chunk.hash() + "\t" + chunk.length());
+        }
+        Files.createDirectories(root);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Snapshot readHeader(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+        String name = fileName.substring(0, fileName.length() - INDEX_SUFFIX.length());
+        String container = "";
+        String path = "";
+        long created = 0;
+        long size = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            if (!INDEX_HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 2);
+                if (fields.length != 2) {
+                    return null;
+                }
+                switch (fields[0]) {
+                    case "container" -> container = fields[1];
+                    case "path" -> path = fields[1];
+                    case "created" -> created = Long.parseLong(fields[1]);
+                    case "size" -> size = Long.parseLong(fields[1]);
+                    case "chunks" -> {
+                        return new Snapshot(name, container, path, Instant.ofEpochMilli(created), size,
+                            Integer.parseInt(fields[1]));
+                    }
+                    default -> {
+                        // Written by a newer devc; ignore what we don't know
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private List<Chunk> chunks(String name) throws IOException {
+        List<Chunk> list = new ArrayList<>();
+        boolean body = false;
+        for (String line : Files.readAllLines(indexFile(name))) {
+            if (body) {
+                String[] fields = line.split("\t", 2);
+                list.add(new Chunk(fields[0], Integer.parseInt(fields[1])));
+            } else if (line.startsWith("chunks\t")) {
+                body = true;
+            }
+        }
+        return list;
+    }
+
+    private static <T> T result(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the snapshot store.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
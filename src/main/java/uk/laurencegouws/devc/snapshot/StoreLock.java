@@ -0,0 +1,102 @@
+package uk.laurencegouws.devc.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A readers-writer lock on a snapshot store, across threads and processes alike. The daemon runs
+ * commands side by side in one JVM, where a second lock on the same file throws instead of
+ * waiting, so threads queue on an in-process lock and the first shared holder takes the file
+ * lock for all of them.
+ */
+final class StoreLock {
+
+    private static final Map<Path, StoreLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+    private final ReentrantLock sharedLock = new ReentrantLock();
+    private int sharedHolders;
+    private FileChannel sharedChannel;
+
+    private StoreLock(Path file) {
+        this.file = file;
+    }
+
+    static StoreLock of(Path root) {
+        return LOCKS.computeIfAbsent(root.toAbsolutePath().normalize(), path -> new StoreLock(path.resolve("lock")));
+    }
+
+    /**
+     * Held while saving or restoring; closing the result releases it.
+     */
+    Closeable shared() throws IOException {
+        local.readLock().lock();
+        sharedLock.lock();
+        try {
+            if (sharedHolders == 0) {
+                sharedChannel = open(true);
+            }
+            sharedHolders++;
+        } catch (IOException | RuntimeException e) {
+            local.readLock().unlock();
+            throw e;
+        } finally {
+            sharedLock.unlock();
+        }
+        return () -> {
+            sharedLock.lock();
+            try {
+                if (--sharedHolders == 0) {
+                    sharedChannel.close();
+                    sharedChannel = null;
+                }
+            } finally {
+                sharedLock.unlock();
+                local.readLock().unlock();
+            }
+        };
+    }
+
+    /**
+     * Held while sweeping chunks; closing the result releases it.
+     */
+    Closeable exclusive() throws IOException {
+        local.writeLock().lock();
+        FileChannel channel;
+        try {
+            channel = open(false);
+        } catch (IOException | RuntimeException e) {
+            local.writeLock().unlock();
+            throw e;
+        }
+        return () -> {
+            try {
+                channel.close();
+            } finally {
+                local.writeLock().unlock();
+            }
+        };
+    }
+
+    private FileChannel open(boolean shared) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Closing the channel releases the lock
+            channel.lock(0, Long.MAX_VALUE, shared);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
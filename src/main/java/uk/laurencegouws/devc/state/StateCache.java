@@ -0,0 +1,253 @@
+package uk.laurencegouws.devc.state;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.daemon.DaemonServer;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Container state shared through a small memory-mapped file next to the daemon socket. The
+ * daemon's {@link StateSubscriber} is the only writer; any devc process can read it without
+ * talking to Docker. Writes are guarded by a sequence counter (odd while a write is in
+ * progress) so readers in other processes retry instead of seeing a torn snapshot.
+ *
+ * <pre>
+ *   0  int   magic "DEVS"
+ *   4  int   format version
+ *   8  long  sequence
+ *  16  long  snapshot time, epoch millis
+ *  24  long  heartbeat, epoch millis (0 once the writer has stopped)
+ *  32  int   payload length
+ *  40  ...   payload: JSON array of containers
+ * </pre>
+ * Each container also records when it last started or finished ({@code since}, epoch millis),
+ * so its status text ("Up 5 minutes") is worked out at read time instead of frozen at the listing.
+ */
+@ApplicationScoped
+public class StateCache {
+
+    private static final int MAGIC = 0x44455653;
+    private static final int VERSION = 2;
+    private static final int SEQUENCE = 8;
+    private static final int UPDATED = 16;
+    private static final int HEARTBEAT = 24;
+    private static final int LENGTH = 32;
+    private static final int HEADER = 40;
+    private static final int MIN_SIZE = 64 * 1024;
+    private static final int READ_ATTEMPTS = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Containers as of {@code updatedAt}; {@code heartbeat} is when the writer last confirmed
+     * it was still receiving events.
+     */
+    public record Snapshot(List<ContainerSummary> containers, long updatedAt, long heartbeat) {
+
+        public long ageMillis() {
+            return System.currentTimeMillis() - updatedAt;
+        }
+    }
+
+    @ConfigProperty(name = "devc.state.max-age", defaultValue = "15s")
+    Duration maxAge;
+
+    private final Path file = DaemonServer.socketPath().resolveSibling("state");
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeMap;
+
+    /**
+     * The cached state, if a writer has refreshed it within {@code devc.state.max-age}.
+     */
+    public Optional<Snapshot> read() {
+        Snapshot snapshot = readAny();
+        if (snapshot == null || System.currentTimeMillis() - snapshot.heartbeat() > maxAge.toMillis()) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * The cached state regardless of age, or {@code null} when there is none.
+     */
+    public Snapshot readAny() {
+        try {
+            DaemonServer.checkRuntimeDirectory();
+        } catch (IOException e) {
+            // Only trust a cache no other user could have written
+            return null;
+        }
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            MappedByteBuffer map;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER) {
+                    return null;
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                // No daemon has written the cache yet
+                return null;
+            }
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                return null;
+            }
+            long sequence = (long) LONGS.getAcquire(map, SEQUENCE);
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long updatedAt = map.getLong(UPDATED);
+            long heartbeat = map.getLong(HEARTBEAT);
+            int length = map.getInt(LENGTH);
+            if (length < 0 || HEADER + (long) length > map.capacity()) {
+                // The writer grew the file after we mapped it
+                continue;
+            }
+            byte[] payload = new byte[length];
+            map.get(HEADER, payload);
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(map, SEQUENCE) != sequence) {
+                continue;
+            }
+            if (updatedAt == 0) {
+                return null;
+            }
+            List<ContainerSummary> containers = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Object item : Json.array(Json.parse(new String(payload, StandardCharsets.UTF_8)))) {
+                Map<String, Object> json = Json.object(item);
+                ContainerSummary container = ContainerSummary.fromJson(json);
+                containers.add(container.withStatus(StatusText.at(container.status(), Json.number(json.get("since")), now)));
+            }
+            return new Snapshot(List.copyOf(containers), updatedAt, heartbeat);
+        }
+        return null;
+    }
+
+    /**
+     * Publishes a new snapshot, which also counts as a heartbeat. {@code since} holds, by
+     * container id, when each one last started or finished, in epoch millis.
+     */
+    public void write(List<ContainerSummary> containers, Map<String, Long> since) throws IOException {
+        List<Object> json = new ArrayList<>(containers.size());
+        for (ContainerSummary container : containers) {
+            Map<String, Object> entry = container.toJson();
+            entry.put("since", since.getOrDefault(container.id(), 0L));
+            json.add(entry);
+        }
+        byte[] payload = Json.write(json).getBytes(StandardCharsets.UTF_8);
+        writeLock.lock();
+        try {
+            MappedByteBuffer map = mapForWrite(HEADER + payload.length);
+            long now = System.currentTimeMillis();
+            long sequence = beginWrite(map);
+            map.putLong(UPDATED, now);
+            map.putLong(HEARTBEAT, now);
+            map.putInt(LENGTH, payload.length);
+            map.put(HEADER, payload);
+            LONGS.setRelease(map, SEQUENCE, sequence + 2);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Confirms the current snapshot is still being kept up to date.
+     */
+    public void heartbeat() throws IOException {
+        setHeartbeat(System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the snapshot stale at once, so readers go back to asking Docker.
+     */
+    public void invalidate() throws IOException {
+        setHeartbeat(0L);
+    }
+
+    private void setHeartbeat(long value) throws IOException {
+        writeLock.lock();
+        try {
+            if (writeMap == null && !Files.exists(file)) {
+                return;
+            }
+            MappedByteBuffer map = mapForWrite(HEADER);
+            long sequence = beginWrite(map);
+            map.putLong(HEARTBEAT, value);
+            LONGS.setRelease(map, SEQUENCE, sequence + 2);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static long beginWrite(MappedByteBuffer map) {
+        long sequence = (long) LONGS.getVolatile(map, SEQUENCE);
+        if ((sequence & 1) != 0) {
+            // A previous writer died mid-write; step past its odd value
+            sequence++;
+        }
+        LONGS.setVolatile(map, SEQUENCE, sequence + 1);
+        return sequence;
+    }
+
+    /**
+     * Maps the file for writing with room for {@code required} bytes. The file only ever grows,
+     * so a reader's mapping of the old size stays valid.
+     */
+    private MappedByteBuffer mapForWrite(int required) throws IOException {
+        if (writeMap != null && writeMap.capacity() >= required) {
+            return writeMap;
+        }
+        if (writeChannel == null) {
+            DaemonServer.checkRuntimeDirectory();
+            writeChannel = FileChannel.open(file,
+                Set.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        long size = Math.max(writeChannel.size(), Math.max(MIN_SIZE, Integer.highestOneBit(required - 1) << 1));
+        writeMap = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (writeMap.getInt(0) != MAGIC || writeMap.getInt(4) != VERSION) {
+            writeMap.putInt(0, MAGIC);
+            writeMap.putInt(4, VERSION);
+        }
+        return writeMap;
+    }
+
+    @PreDestroy
+    void close() {
+        writeLock.lock();
+        try {
+            if (writeChannel != null) {
+                writeChannel.close();
+            }
+        } catch (IOException ignored) {
+            // Nothing left to flush; the mapping is shared with the page cache
+        } finally {
+            writeChannel = null;
+            writeMap = null;
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package uk.laurencegouws.devc.state;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.docker.ContainerSummary;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.EventStream;
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the {@link StateCache} current from the Docker event stream while the daemon runs.
+ * Every container lifecycle event marks the state dirty; a refresher re-lists containers once
+ * per burst of events and otherwise just beats the heartbeat, so a quiet host costs no Docker
+ * calls at all. Containers new to the listing or named by an event are also inspected for when
+ * they started or finished, so readers can keep "Up 5 minutes" current without a re-list.
+ * <p>
+ * If the stream drops, the heartbeat stops, readers fall back to live queries, and the
+ * subscriber reconnects with backoff.
+ */
+@ApplicationScoped
+public class StateSubscriber {
+
+    /** Container events that can change what {@code devc status} shows. */
+    public static final List<String> STATE_EVENTS = List.of(
+        "create", "start", "restart", "stop", "die", "kill", "pause", "unpause", "destroy", "rename", "oom");
+
+    /** How long to wait after an event for others in the same burst before re-listing. */
+    private static final long COALESCE_MILLIS = 25;
+
+    @Inject
+    DockerBackend docker;
+
+    @Inject
+    StateCache cache;
+
+    @ConfigProperty(name = "devc.state.heartbeat", defaultValue = "5s")
+    Duration heartbeatInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private boolean dirty;
+    private final Set<String> touched = new HashSet<>();
+    /** When each listed container last started or finished; only the refresher uses it. */
+    private Map<String, Long> since = Map.of();
+    private volatile boolean connected;
+    private volatile boolean running;
+    private volatile EventStream stream;
+    private Thread subscriber;
+    private Thread refresher;
+
+    public void start() {
+        running = true;
+        subscriber = Thread.ofVirtual().name("devc-state-events").start(this::subscribe);
+        refresher = Thread.ofVirtual().name("devc-state-refresh").start(this::refresh);
+    }
+
+    public void stop() {
+        running = false;
+        EventStream current = stream;
+        if (current != null) {
+            current.close();
+        }
+        if (subscriber != null) {
+            subscriber.interrupt();
+        }
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+        try {
+            cache.invalidate();
+        } catch (IOException ignored) {
+            // Readers will see the heartbeat age out instead
+        }
+    }
+
+    private void subscribe() {
+        long backoff = 500;
+        while (running) {
+            try (EventStream events = DockerBackend.await(docker.containerEvents(STATE_EVENTS))) {
+                stream = events;
+                connected = true;
+                backoff = 500;
+                // Subscribed first, so nothing that happens during the initial listing is missed
+                markDirty(null);
+                Map<String, Object> event;
+                while ((event = events.next()) != null) {
+                    markDirty(Json.string(Json.object(event.get("Actor")).get("ID")));
+                }
+            } catch (IOException e) {
+                // Engine restarted or the socket went away; retry below
+            } finally {
+                stream = null;
+                connected = false;
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                cache.invalidate();
+                Thread.sleep(backoff);
+            } catch (IOException ignored) {
+                // Nothing else to do until the stream is back
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, 30_000);
+        }
+    }
+
+    private void markDirty(String containerId) {
+        lock.lock();
+        try {
+            dirty = true;
+            if (containerId != null) {
+                touched.add(containerId);
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refresh() {
+        while (running) {
+            try {
+                boolean refreshNow;
+                lock.lock();
+                try {
+                    if (!dirty || !connected) {
+                        changed.await(heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+                    }
+                    refreshNow = dirty;
+                } finally {
+                    lock.unlock();
+                }
+                if (!connected) {
+                    continue;
+                }
+                if (!refreshNow) {
+                    cache.heartbeat();
+                    continue;
+                }
+                Thread.sleep(COALESCE_MILLIS);
+                Set<String> changed;
+                lock.lock();
+                try {
+                    dirty = false;
+                    changed = Set.copyOf(touched);
+                    touched.clear();
+                } finally {
+                    lock.unlock();
+                }
+                List<ContainerSummary> containers = DockerBackend.await(
+                    docker.submit("state-refresh", client -> client.listContainers(null, List.of(), true)));
+                since = changedAt(containers, changed);
+                cache.write(containers, since);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // Leave the heartbeat to age out; the next event or reconnect retries
+                markDirty(null);
+                try {
+                    Thread.sleep(heartbeatInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * When each container last started (running or paused) or finished, inspecting only those
+     * that are new or had an event since the last listing.
+     */
+    private Map<String, Long> changedAt(List<ContainerSummary> containers, Set<String> changed) throws IOException {
+        Map<String, CompletableFuture<Map<String, Object>>> inspections = new HashMap<>();
+        for (ContainerSummary container : containers) {
+            if (changed.contains(container.id()) || !since.containsKey(container.id())) {
+                inspections.put(container.id(), docker.inspectContainer(container.id()));
+            }
+        }
+        Map<String, Long> times = new HashMap<>();
+        for (ContainerSummary container : containers) {
+            CompletableFuture<Map<String, Object>> inspection = inspections.get(container.id());
+            if (inspection == null) {
+                times.put(container.id(), since.get(container.id()));
+                continue;
+            }
+            Map<String, Object> inspect = DockerBackend.await(inspection);
+            if (inspect != null) {
+                Map<String, Object> state = Json.object(inspect.get("State"));
+                String time = Json.string(state.get(container.isRunning() || "paused".equals(container.state())
+                    ? "StartedAt" : "FinishedAt"));
+                times.put(container.id(), epochMillis(time));
+            }
+        }
+        return times;
+    }
+
+    private static long epochMillis(String time) {
+        if (time == null) {
+            return 0;
+        }
+        try {
+            long millis = Instant.parse(time).toEpochMilli();
+            // Docker reports a time that never happened as 0001-01-01T00:00:00Z
+            return Math.max(0, millis);
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.laurencegouws.devc.state;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Docker's human-readable container status ("Up 5 minutes", "Exited (0) 2 hours ago") brought up
+ * to date. The text in a cached listing is only as old as the listing, so the cache keeps when the
+ * container last started or finished and the relative part is worked out again on every read.
+ */
+final class StatusText {
+
+    private static final Pattern UP = Pattern.compile("Up (.+?)( \\(.*\\))?");
+    private static final Pattern AGO = Pattern.compile("((?:Exited|Restarting) \\(-?\\d+\\)) (.+) ago");
+
+    private StatusText() {
+    }
+
+    /**
+     * {@code status} with its duration replaced by the time from {@code sinceMillis} (when the
+     * container started, for "Up", or finished, for "Exited" and "Restarting") to {@code nowMillis}.
+     * Statuses without a duration ("Created", "Dead") come back unchanged.
+     */
+    static String at(String status, long sinceMillis, long nowMillis) {
+        if (status == null || sinceMillis <= 0) {
+            return status;
+        }
+        String duration = human(Duration.ofMillis(Math.max(0, nowMillis - sinceMillis)));
+        Matcher up = UP.matcher(status);
+        if (up.matches()) {
+            return "Up " + duration + (up.group(2) != null ? up.group(2) : "");
+        }
+        Matcher ago = AGO.matcher(status);
+        if (ago.matches()) {
+            return ago.group(1) + " " + duration + " ago";
+        }
+        return status;
+    }
+
+    /**
+     * The same wording and rounding as the Docker CLI.
+     */
+    static String human(Duration duration) {
+        long seconds = duration.toSeconds();
+        if (seconds < 1) {
+            return "Less than a second";
+        } else if (seconds == 1) {
+            return "1 second";
+        } else if (seconds < 60) {
+            return seconds + " seconds";
+        }
+        long minutes = duration.toMinutes();
+        if (minutes == 1) {
+            return "About a minute";
+        } else if (minutes < 60) {
+            return minutes + " minutes";
+        }
+        long hours = Math.round(duration.toMillis() / 3_600_000.0);
+        if (hours == 1) {
+            return "About an hour";
+        } else if (hours < 48) {
+            return hours + " hours";
+        } else if (hours < 24 * 7 * 2) {
+            return hours / 24 + " days";
+        } else if (hours < 24 * 30 * 2) {
+            return hours / 24 / 7 + " weeks";
+        } else if (hours < 24 * 365 * 2) {
+            return hours / 24 / 30 + " months";
+        }
+        return duration.toHours() / 24 / 365 + " years";
+    }
+}
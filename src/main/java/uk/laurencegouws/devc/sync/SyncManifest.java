@@ -0,0 +1,94 @@
+package uk.laurencegouws.devc.sync;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What devc last pushed into a sync volume: the size and mtime of every file (and, with size -1,
+ * every directory), keyed by workspace-relative path. Stored as a tab-separated file under the
+ * devc cache directory and tied to the volume's creation time, so a recreated volume starts over.
+ */
+final class SyncManifest {
+
+    record State(long size, long modified) {
+
+        /** A directory; its size and time don't matter, only that it exists. */
+        static final State DIRECTORY = new State(-1, 0);
+
+        /** Present in the volume, but not sent by devc; never matches a local file. */
+        static final State UNKNOWN = new State(-2, 0);
+    }
+
+    private final Path file;
+    private final String volumeIdentity;
+    private final Map<String, State> entries = new HashMap<>();
+
+    SyncManifest(Path file, String volumeIdentity) {
+        this.file = file;
+        this.volumeIdentity = volumeIdentity;
+        load();
+    }
+
+    State get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, State state) {
+        entries.put(path, state);
+    }
+
+    /**
+     * Forgets {@code path} and everything below it.
+     */
+    void remove(String path) {
+        String prefix = path + "/";
+        entries.keySet().removeIf(key -> key.equals(path) || key.startsWith(prefix));
+    }
+
+    Set<String> paths() {
+        return entries.keySet();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    void save() throws IOException {
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add("# " + volumeIdentity);
+        entries.forEach((path, state) -> lines.add(state.size() + "\t" + state.modified() + "\t" + path));
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file);
+            if (lines.isEmpty() || !lines.get(0).equals("# " + volumeIdentity)) {
+                // Written for an earlier volume of the same name
+                return;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    entries.put(fields[2], new State(Long.parseLong(fields[0]), Long.parseLong(fields[1])));
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Unreadable: the next push sends everything again
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package uk.laurencegouws.devc.sync;
+
+import uk.laurencegouws.devc.archive.TarReader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a synced workspace and pushes changes in batches. Events are collected until the tree
+ * has been quiet for the debounce interval (or the oldest pending change has waited
+ * {@code maxDelay}), so a save-all or a branch switch becomes one tar rather than hundreds of
+ * requests. When the watch service overflows, the next batch falls back to a full manifest
+ * comparison. Paths given to {@code pull} are copied back from the container on an interval.
+ */
+public final class SyncWatcher implements AutoCloseable {
+
+    private final WorkspaceSync sync;
+    private final Duration debounce;
+    private final Duration maxDelay;
+    private final List<String> pulls;
+    private final Duration pullInterval;
+    private final PrintStream out;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    public SyncWatcher(WorkspaceSync sync, Duration debounce, Duration maxDelay, List<String> pulls,
+                       Duration pullInterval, PrintStream out) throws IOException {
+        this.sync = sync;
+        this.debounce = debounce;
+        this.maxDelay = maxDelay;
+        this.pulls = pulls;
+        this.pullInterval = pullInterval;
+        this.out = out;
+        this.watchService = sync.root().getFileSystem().newWatchService();
+    }
+
+    /**
+     * Watches until {@link #close()} is called or the thread is interrupted.
+     */
+    public void run() throws IOException {
+        registerTree(sync.root());
+        Set<String> pending = new LinkedHashSet<>();
+        boolean rescan = false;
+        long batchStart = 0;
+        long lastEvent = 0;
+        long nextPull = System.nanoTime() + pullInterval.toNanos();
+        try {
+            while (true) {
+                boolean hasPending = rescan || !pending.isEmpty();
+                long now = System.nanoTime();
+                long deadline;
+                if (hasPending) {
+                    deadline = Math.min(lastEvent + debounce.toNanos(), batchStart + maxDelay.toNanos());
+                } else if (!pulls.isEmpty()) {
+                    deadline = nextPull;
+                } else {
+                    deadline = now + TimeUnit.SECONDS.toNanos(1);
+                }
+
+                WatchKey key = watchService.poll(Math.max(0, deadline - now), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    do {
+                        rescan |= drain(key, pending);
+                        key = watchService.poll();
+                    } while (key != null);
+                    now = System.nanoTime();
+                    if (!hasPending && (rescan || !pending.isEmpty())) {
+                        batchStart = now;
+                    }
+                    lastEvent = now;
+                }
+
+                now = System.nanoTime();
+                if ((rescan || !pending.isEmpty())
+                        && now >= Math.min(lastEvent + debounce.toNanos(), batchStart + maxDelay.toNanos())) {
+                    try {
+                        WorkspaceSync.Push push = rescan ? sync.catchUp() : sync.push(pending);
+                        if (!push.isEmpty()) {
+                            out.println("Pushed " + push.describe());
+                        }
+                        pending.clear();
+                        rescan = false;
+                    } catch (IOException e) {
+                        // Keep the batch and try again after another quiet period
+                        out.println("Warning: Push failed, will retry. " + e.getMessage());
+                        batchStart = now;
+                        lastEvent = now;
+                    }
+                }
+                if (!pulls.isEmpty() && now >= nextPull) {
+                    pullAll();
+                    nextPull = System.nanoTime() + pullInterval.toNanos();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed from another thread
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Adds the paths a key reported to {@code pending}, registering new directories as they
+     * appear. Returns true when events were lost and the whole tree must be compared.
+     */
+    private boolean drain(WatchKey key, Set<String> pending) throws IOException {
+        Path dir = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            String path = sync.root().relativize(child).toString().replace('\\', '/');
+            if (sync.isExcluded(path)) {
+                continue;
+            }
+            boolean directory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY && directory) {
+                // Changes inside it arrive through its own registration
+                continue;
+            }
+            pending.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && directory) {
+                registerTree(child);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(sync.root()) && sync.isExcluded(sync.root().relativize(dir).toString().replace('\\', '/'))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Vanished before it could be watched; its deletion is already pending
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void pullAll() {
+        for (String path : pulls) {
+            try {
+                TarReader.Stats stats = sync.pull(path);
+                if (stats != null) {
+                    out.printf("Pulled %s: %d file(s), %.1f MB%n", path, stats.files(), stats.bytes() / (1024.0 * 1024.0));
+                }
+            } catch (IOException e) {
+                out.printf("Warning: Could not pull %s. %s%n", path, e.getMessage());
+            }
+        }
+    }
+}
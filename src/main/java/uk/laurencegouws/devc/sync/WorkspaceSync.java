@@ -0,0 +1,333 @@
+package uk.laurencegouws.devc.sync;
+
+import uk.laurencegouws.devc.archive.TarArchive;
+import uk.laurencegouws.devc.archive.TarReader;
+import uk.laurencegouws.devc.build.FileHashCache;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.ExecProcess;
+import uk.laurencegouws.devc.docker.Json;
+import uk.laurencegouws.devc.fleet.Fleet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps a container's workspace volume in step with a host directory. The volume replaces the
+ * bind mount, so builds inside the container run on the engine's own storage; devc copies the
+ * workspace in once and from then on sends only what changed, as one tar per batch through the
+ * engine's archive endpoint. A manifest of what was last sent lets a later run catch up on
+ * changes made while nothing was watching. Paths pulled back from the container (build output)
+ * are never pushed.
+ */
+public final class WorkspaceSync {
+
+    /** Where the workspace lives inside the container. */
+    public static final String REMOTE_ROOT = "/home/developer/workspace";
+
+    /** Label recording the host directory a container's volume is synced from. */
+    public static final String SOURCE_LABEL = "devc.sync.source";
+
+    /** Deletions are sent as {@code rm} execs of at most this many paths each. */
+    private static final int DELETE_BATCH = 500;
+
+    /**
+     * What one push sent.
+     */
+    public record Push(int files, long bytes, int directories, int deleted, long nanos) {
+
+        public boolean isEmpty() {
+            return files == 0 && directories == 0 && deleted == 0;
+        }
+
+        public String describe() {
+            return String.format("%d file(s), %.1f MB, %d dir(s), %d deletion(s) in %d ms",
+                files, bytes / (1024.0 * 1024.0), directories, deleted, nanos / 1_000_000);
+        }
+    }
+
+    private final DockerBackend docker;
+    private final String container;
+    private final Path root;
+    private final List<String> excluded;
+    private final SyncManifest manifest;
+
+    /**
+     * @param volumeIdentity the volume's creation time, tying the manifest to this volume
+     * @param excluded       workspace-relative paths that are pulled back and never pushed
+     */
+    public WorkspaceSync(DockerBackend docker, String container, Path root, String volumeIdentity, Collection<String> excluded) {
+        this.docker = docker;
+        this.container = container;
+        this.root = root.toAbsolutePath().normalize();
+        this.excluded = excluded.stream().map(WorkspaceSync::clean).toList();
+        this.manifest = new SyncManifest(manifestFile(container), volumeIdentity);
+    }
+
+    public static String volumeName(String container) {
+        return "devc-sync-" + container;
+    }
+
+    /**
+     * Creates the sync volume for {@code container} unless it exists and returns its identity
+     * (creation time).
+     */
+    public static String ensureVolume(DockerBackend docker, String container, String source) throws IOException {
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put(Fleet.MANAGED_LABEL, "true");
+        labels.put(SOURCE_LABEL, source);
+        Map<String, Object> volume = DockerBackend.await(docker.createVolume(volumeName(container), labels));
+        String createdAt = Json.string(volume.get("CreatedAt"));
+        return createdAt != null ? createdAt : "unknown";
+    }
+
+    /**
+     * Drops what devc knows about the container's volume, so the next push compares nothing and
+     * sends the whole workspace. Used after the volume's contents were replaced some other way.
+     */
+    public static void forget(String container) throws IOException {
+        Files.deleteIfExists(manifestFile(container));
+    }
+
+    private static Path manifestFile(String container) {
+        return FileHashCache.defaultLocation("sync").resolve(container + ".tsv");
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /**
+     * Sends everything that differs from the manifest: the whole workspace the first time,
+     * afterwards whatever changed while no watcher was running.
+     */
+    public Push catchUp() throws IOException {
+        if (manifest.isEmpty()) {
+            // First sync, a lost manifest or a restored snapshot: the volume may hold anything, so
+            // list it and let the comparison delete what the workspace doesn't have
+            for (String path : listRemote()) {
+                manifest.put(path, SyncManifest.State.UNKNOWN);
+            }
+        }
+        return push(List.of(""));
+    }
+
+    /**
+     * Sends the changes at and below each workspace-relative path: new or modified files and
+     * directories go in one tar, paths that no longer exist are deleted in the container.
+     */
+    public Push push(Collection<String> paths) throws IOException {
+        long start = System.nanoTime();
+        Map<String, TarArchive.Entry> changed = new LinkedHashMap<>();
+        Map<String, SyncManifest.State> states = new LinkedHashMap<>();
+        Set<String> deleted = new TreeSet<>();
+        for (String raw : paths) {
+            String path = clean(raw);
+            if (isExcluded(path)) {
+                continue;
+            }
+            Path local = path.isEmpty() ? root : root.resolve(path);
+            if (!Files.exists(local, LinkOption.NOFOLLOW_LINKS)) {
+                if (manifest.get(path) != null) {
+                    deleted.add(path);
+                }
+                continue;
+            }
+            collect(local, changed, states, deleted);
+        }
+        // Parents the container hasn't seen yet travel with their children so they get the right owner
+        for (String path : List.copyOf(changed.keySet())) {
+            addMissingParents(path, changed, states);
+        }
+
+        TarArchive archive = new TarArchive(List.copyOf(changed.values()));
+        if (!archive.isEmpty()) {
+            DockerBackend.await(docker.putArchive(container, REMOTE_ROOT, archive));
+        }
+        List<String> deletions = topmost(deleted);
+        deleteRemote(deletions);
+
+        states.forEach(manifest::put);
+        deletions.forEach(manifest::remove);
+        if (!archive.isEmpty() || !deletions.isEmpty()) {
+            manifest.save();
+        }
+        return new Push(archive.fileCount(), archive.contentBytes(), archive.entries().size() - archive.fileCount(),
+            deletions.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Copies a workspace-relative path back from the container, replacing the local copy.
+     * Returns null when it doesn't exist in the container.
+     */
+    public TarReader.Stats pull(String path) throws IOException {
+        String relative = clean(path);
+        Path parent = root.resolve(relative).getParent();
+        Files.createDirectories(parent);
+        TarReader.Stats[] stats = new TarReader.Stats[1];
+        boolean found = DockerBackend.await(docker.getArchive(container, REMOTE_ROOT + "/" + relative,
+            tar -> stats[0] = new TarReader(tar).extractTo(parent)));
+        return found ? stats[0] : null;
+    }
+
+    boolean isExcluded(String path) {
+        for (String excludedPath : excluded) {
+            if (path.equals(excludedPath) || path.startsWith(excludedPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks {@code start}, adding whatever differs from the manifest and marking manifest paths
+     * below it that are gone.
+     */
+    private void collect(Path start, Map<String, TarArchive.Entry> changed, Map<String, SyncManifest.State> states,
+                         Set<String> deleted) throws IOException {
+        String startPath = relative(start);
+        Set<String> seen = new HashSet<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                String path = relative(dir);
+                if (isExcluded(path)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!path.isEmpty()) {
+                    seen.add(path);
+                    if (manifest.get(path) == null) {
+                        changed.put(path, TarArchive.entry(path, dir, attributes));
+                        states.put(path, SyncManifest.State.DIRECTORY);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                String path = relative(file);
+                if (isExcluded(path) || !(attributes.isRegularFile() || attributes.isSymbolicLink())) {
+                    return FileVisitResult.CONTINUE;
+                }
+                seen.add(path);
+                SyncManifest.State state = new SyncManifest.State(attributes.size(), attributes.lastModifiedTime().toMillis());
+                if (!state.equals(manifest.get(path))) {
+                    changed.put(path, TarArchive.entry(path, file, attributes));
+                    states.put(path, state);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    // Deleted mid-walk; the watcher reports it separately
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        String prefix = startPath.isEmpty() ? "" : startPath + "/";
+        for (String path : manifest.paths()) {
+            if ((path.startsWith(prefix) || path.equals(startPath)) && !seen.contains(path) && !isExcluded(path)) {
+                deleted.add(path);
+            }
+        }
+    }
+
+    private void addMissingParents(String path, Map<String, TarArchive.Entry> changed, Map<String, SyncManifest.State> states)
+            throws IOException {
+        int slash = path.lastIndexOf('/');
+        while (slash > 0) {
+            String parent = path.substring(0, slash);
+            if (manifest.get(parent) != null || changed.containsKey(parent)) {
+                return;
+            }
+            Path dir = root.resolve(parent);
+            changed.put(parent, TarArchive.entry(parent, dir, Files.readAttributes(dir, BasicFileAttributes.class)));
+            states.put(parent, SyncManifest.State.DIRECTORY);
+            slash = parent.lastIndexOf('/');
+        }
+    }
+
+    /**
+     * Drops paths whose parent is also being deleted, since {@code rm -rf} on the parent covers them.
+     */
+    private static List<String> topmost(Set<String> sorted) {
+        List<String> result = new ArrayList<>();
+        for (String path : sorted) {
+            if (result.isEmpty() || !path.startsWith(result.get(result.size() - 1) + "/")) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private void deleteRemote(List<String> paths) throws IOException {
+        for (int i = 0; i < paths.size(); i += DELETE_BATCH) {
+            List<String> command = new ArrayList<>(List.of("rm", "-rf", "--"));
+            paths.subList(i, Math.min(paths.size(), i + DELETE_BATCH)).forEach(path -> command.add(REMOTE_ROOT + "/" + path));
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            try (ExecProcess process = DockerBackend.await(docker.openExec(container, command))) {
+                int exitCode = process.relay(Channels.newChannel(InputStream.nullInputStream()),
+                    Channels.newChannel(errors), Channels.newChannel(errors));
+                if (exitCode != 0) {
+                    throw new IOException("Deleting in the container failed: " + errors.toString(StandardCharsets.UTF_8).strip());
+                }
+            }
+        }
+    }
+
+    private List<String> listRemote() throws IOException {
+        ByteArrayOutputStream paths = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try (ExecProcess process = DockerBackend.await(docker.openExec(container,
+                List.of("find", REMOTE_ROOT, "-mindepth", "1", "-printf", "%P\\0")))) {
+            int exitCode = process.relay(Channels.newChannel(InputStream.nullInputStream()),
+                Channels.newChannel(paths), Channels.newChannel(errors));
+            if (exitCode != 0) {
+                throw new IOException("Listing the container's workspace failed: " + errors.toString(StandardCharsets.UTF_8).strip());
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String path : paths.toString(StandardCharsets.UTF_8).split("\\x00")) {
+            if (!path.isEmpty()) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    private String relative(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private static String clean(String path) {
+        String cleaned = path.replace('\\', '/');
+        while (cleaned.startsWith("./")) {
+            cleaned = cleaned.substring(2);
+        }
+        while (cleaned.endsWith("/")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 1);
+        }
+        return cleaned.equals(".") ? "" : cleaned;
+    }
+}
@@ -0,0 +1,203 @@
+package uk.laurencegouws.devc.trace;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import uk.laurencegouws.devc.daemon.DaemonServer;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.LatencyHistogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves the daemon's cumulative counters and latency histograms in the Prometheus text format
+ * over HTTP on a Unix socket next to the daemon socket ({@code metrics.sock}), e.g.
+ * {@code curl --unix-socket .../metrics.sock http://localhost/metrics}. Only the daemon runs it;
+ * a one-shot process exits before anything could scrape it.
+ */
+@ApplicationScoped
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int MAX_REQUEST = 8 * 1024;
+
+    @Inject
+    DockerBackend docker;
+
+    @ConfigProperty(name = "devc.metrics.enabled", defaultValue = "true")
+    boolean enabled;
+
+    private final Map<String, LatencyHistogram> invocations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> exitCodes = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+    private volatile ServerSocketChannel server;
+
+    public static Path socketPath() {
+        return DaemonServer.socketPath().resolveSibling("metrics.sock");
+    }
+
+    /**
+     * Binds the socket and answers scrapes on a virtual thread until {@link #stop()}.
+     */
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path socket = socketPath();
+        Files.deleteIfExists(socket);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socket));
+        try {
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        server = channel;
+        Thread.ofVirtual().name("devc-metrics").start(() -> {
+            long backoffMillis = 0;
+            while (channel.isOpen()) {
+                try {
+                    SocketChannel connection = channel.accept();
+                    backoffMillis = 0;
+                    Thread.ofVirtual().start(() -> answer(connection));
+                } catch (IOException e) {
+                    if (!channel.isOpen()) {
+                        break;
+                    }
+                    // Out of descriptors, say: retrying at once would only spin until some are freed
+                    if (backoffMillis == 0) {
+                        System.err.println("Warning: Metrics socket cannot accept connections, retrying. " + e.getMessage());
+                    }
+                    backoffMillis = Math.min(1000, Math.max(10, backoffMillis * 2));
+                    try {
+                        Thread.sleep(backoffMillis);
+                    } catch (InterruptedException interrupted) {
+                        break;
+                    }
+                }
+            }
+        });
+    }
+
+    public void stop() {
+        ServerSocketChannel channel = server;
+        server = null;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(socketPath());
+        } catch (IOException ignored) {
+            // Nothing left to clean up
+        }
+    }
+
+    /**
+     * Counts one forwarded command, by subcommand ("devc" when it never got past parsing).
+     */
+    public void recordInvocation(String command, long nanos, int exitCode) {
+        String name = command != null ? command : "devc";
+        invocations.computeIfAbsent(name, key -> new LatencyHistogram()).record(nanos);
+        exitCodes.computeIfAbsent(name + "\n" + exitCode, key -> new LongAdder()).increment();
+    }
+
+    private void answer(SocketChannel connection) {
+        try (connection) {
+            String request = readHead(connection);
+            String[] requestLine = request.lines().findFirst().orElse("").split(" ");
+            boolean found = requestLine.length >= 2 && requestLine[0].equals("GET")
+                && (requestLine[1].equals("/metrics") || requestLine[1].equals("/"));
+            byte[] body = (found ? render() : "Not found\n").getBytes(StandardCharsets.UTF_8);
+            String head = (found ? "HTTP/1.1 200 OK" : "HTTP/1.1 404 Not Found") + "\r\n"
+                + "Content-Type: " + CONTENT_TYPE + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+            ByteBuffer response = ByteBuffer.allocate(head.length() + body.length);
+            response.put(head.getBytes(StandardCharsets.US_ASCII)).put(body).flip();
+            while (response.hasRemaining()) {
+                connection.write(response);
+            }
+        } catch (IOException e) {
+            // Scraper went away
+        }
+    }
+
+    private static String readHead(SocketChannel connection) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (head.size() < MAX_REQUEST && connection.read(buffer) > 0) {
+            head.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+            if (head.toString(StandardCharsets.US_ASCII).contains("\r\n\r\n")) {
+                break;
+            }
+        }
+        return head.toString(StandardCharsets.US_ASCII);
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP devc_daemon_start_time_seconds When the daemon started, in seconds since the epoch.\n")
+            .append("# TYPE devc_daemon_start_time_seconds gauge\n")
+            .append("devc_daemon_start_time_seconds ").append(startedAt / 1000).append('\n');
+
+        out.append("# HELP devc_invocations_total Commands run by the daemon, by subcommand and exit code.\n")
+            .append("# TYPE devc_invocations_total counter\n");
+        new TreeMap<>(exitCodes).forEach((key, count) -> {
+            String[] parts = key.split("\n", 2);
+            out.append("devc_invocations_total{command=\"").append(escape(parts[0]))
+                .append("\",exit_code=\"").append(parts[1]).append("\"} ").append(count.sum()).append('\n');
+        });
+
+        histograms(out, "devc_invocation_duration_seconds", "How long forwarded commands took, by subcommand.",
+            "command", new TreeMap<>(invocations));
+        histograms(out, "devc_docker_call_duration_seconds", "Latency of Docker calls, by operation.",
+            "operation", docker.histograms());
+
+        out.append("# HELP devc_stream_bytes_total Bytes moved through exec streams and archive transfers.\n")
+            .append("# TYPE devc_stream_bytes_total counter\n");
+        docker.streamBytes().forEach((stream, bytes) -> out.append("devc_stream_bytes_total{stream=\"")
+            .append(escape(stream)).append("\"} ").append(bytes).append('\n'));
+        return out.toString();
+    }
+
+    private static void histograms(StringBuilder out, String metric, String help, String label,
+                                   Map<String, LatencyHistogram> histograms) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n')
+            .append("# TYPE ").append(metric).append(" histogram\n");
+        histograms.forEach((name, histogram) -> {
+            String labels = label + "=\"" + escape(name) + "\"";
+            long cumulative = 0;
+            // The last bucket is open-ended and only appears as +Inf
+            for (int i = 0; i < LatencyHistogram.bucketCount() - 1; i++) {
+                cumulative += histogram.bucket(i);
+                out.append(metric).append("_bucket{").append(labels).append(",le=\"")
+                    .append(LatencyHistogram.bucketUpperNanos(i) / 1e9).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += histogram.bucket(LatencyHistogram.bucketCount() - 1);
+            out.append(metric).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n')
+                .append(metric).append("_sum{").append(labels).append("} ").append(histogram.totalNanos() / 1e9).append('\n')
+                .append(metric).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        });
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
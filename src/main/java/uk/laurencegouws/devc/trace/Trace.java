@@ -0,0 +1,285 @@
+package uk.laurencegouws.devc.trace;
+
+import uk.laurencegouws.devc.docker.Json;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spans recorded during one devc invocation when {@code --trace} or {@code DEVC_TRACE} asks for
+ * them, written as a Chrome trace-event file that chrome://tracing and ui.perfetto.dev open.
+ * Timestamps come from {@link System#nanoTime()}, relative to the process start for a local run
+ * and to the request's arrival in the daemon. Spans on one thread nest by time; Docker calls
+ * appear on the virtual threads that made them.
+ * <p>
+ * Every invocation has a trace, so the command name is known for metrics, but one that isn't
+ * enabled records nothing: {@link #span} returns a shared no-op span.
+ */
+public final class Trace {
+
+    public static final String ENV = "DEVC_TRACE";
+    public static final String OPTION = "--trace";
+
+    private static final InheritableThreadLocal<Trace> CURRENT = new InheritableThreadLocal<>();
+    private static volatile Trace process = new Trace(null, System.nanoTime());
+
+    private final Path file;
+    private final long origin;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Map<String, Object>> events = new ArrayList<>();
+    private final Map<Long, String> threads = new LinkedHashMap<>();
+    private volatile String command;
+
+    private Trace(Path file, long origin) {
+        this.file = file;
+        this.origin = origin;
+    }
+
+    /**
+     * A span still open; {@link #close()} records it. Closing twice records it once.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Trace trace;
+        private final String name;
+        private final String category;
+        private final long start = System.nanoTime();
+        private final Map<String, Object> args = new LinkedHashMap<>();
+        private long bytes = -1;
+        private boolean closed;
+
+        private Span(Trace trace, String name, String category) {
+            this.trace = trace;
+            this.name = name;
+            this.category = category;
+        }
+
+        public Span arg(String key, Object value) {
+            if (trace != null) {
+                args.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Bytes the span moved; the trace also shows them per second of the span.
+         */
+        public Span bytes(long bytes) {
+            if (trace != null) {
+                this.bytes = bytes;
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (trace == null || closed) {
+                return;
+            }
+            closed = true;
+            long end = System.nanoTime();
+            if (bytes >= 0) {
+                args.put("bytes", bytes);
+                args.put("bytesPerSecond", end > start ? (long) (bytes * 1e9 / (end - start)) : bytes);
+            }
+            trace.complete(name, category, start, end, args);
+        }
+    }
+
+    private static final Span NOOP = new Span(null, "", "");
+
+    /**
+     * The trace of the invocation running on this thread.
+     */
+    public static Trace current() {
+        Trace trace = CURRENT.get();
+        return trace != null ? trace : process;
+    }
+
+    /**
+     * Starts the trace of a local run from its command line and environment, with the time
+     * since the process started recorded as the first span.
+     */
+    public static Trace startProcess(String[] args) {
+        long now = System.nanoTime();
+        Path file = requested(args, System.getenv(ENV), Path.of("").toAbsolutePath());
+        if (file == null) {
+            return process;
+        }
+        // The OS reports the start in wall-clock time; convert it once to the monotonic clock
+        long sinceStart = ProcessHandle.current().info().startInstant()
+            .map(start -> Math.max(0L, Duration.between(start, Instant.now()).toNanos()))
+            .orElse(0L);
+        Trace trace = new Trace(file, now - sinceStart);
+        trace.complete("jvm-start", "startup", trace.origin, now, Map.of());
+        process = trace;
+        return trace;
+    }
+
+    /**
+     * A trace for a command line forwarded to the daemon, starting now.
+     */
+    public static Trace forInvocation(String[] args, Map<String, String> environment, Path workingDirectory) {
+        return new Trace(requested(args, environment.get(ENV), workingDirectory), System.nanoTime());
+    }
+
+    /**
+     * Where the trace should go, or null when none was asked for. {@code DEVC_TRACE} is either
+     * a boolean or the file to write; {@code --trace} anywhere before {@code --} turns tracing on.
+     */
+    static Path requested(String[] args, String env, Path workingDirectory) {
+        boolean option = false;
+        for (String arg : args) {
+            if (arg.equals("--")) {
+                break;
+            }
+            option |= arg.equals(OPTION);
+        }
+        String value = env == null ? "" : env.strip();
+        boolean off = value.isEmpty() || value.equals("0") || value.equalsIgnoreCase("false");
+        if (!option && off) {
+            return null;
+        }
+        if (off || value.equals("1") || value.equalsIgnoreCase("true")) {
+            String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            return workingDirectory.resolve("devc-trace-" + stamp + ".json");
+        }
+        return workingDirectory.resolve(value);
+    }
+
+    /**
+     * Runs {@code action} with this trace bound to the current thread (and any threads it starts).
+     */
+    public void run(Runnable action) {
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * The subcommand being run, e.g. "exec", once the command line has been parsed.
+     */
+    public String command() {
+        return command;
+    }
+
+    public void command(String command) {
+        this.command = command;
+    }
+
+    public Span span(String name, String category) {
+        return isEnabled() ? new Span(this, name, category) : NOOP;
+    }
+
+    /**
+     * Records a span measured by the caller, between two {@link System#nanoTime()} readings.
+     */
+    public void complete(String name, String category, long startNanos, long endNanos, Map<String, Object> args) {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("name", name);
+        event.put("cat", category);
+        event.put("ph", "X");
+        event.put("ts", (startNanos - origin) / 1e3);
+        event.put("dur", Math.max(0L, endNanos - startNanos) / 1e3);
+        event.put("pid", ProcessHandle.current().pid());
+        event.put("tid", thread.threadId());
+        if (!args.isEmpty()) {
+            event.put("args", new LinkedHashMap<>(args));
+        }
+        lock.lock();
+        try {
+            events.add(event);
+            threads.putIfAbsent(thread.threadId(), thread.getName().isEmpty()
+                ? (thread.isVirtual() ? "virtual-" : "thread-") + thread.threadId()
+                : thread.getName());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the trace file and says where it went on stderr; does nothing when the trace isn't enabled.
+     */
+    public void finish() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            System.err.printf("Trace written to %s (open it in https://ui.perfetto.dev or chrome://tracing)%n", write());
+        } catch (IOException e) {
+            System.err.printf("Warning: Could not write the trace to %s. %s%n", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes the process-wide trace and stops recording into it, for a process that goes on
+     * serving other invocations (the daemon), which would otherwise collect spans forever.
+     */
+    public static void finishProcess() {
+        Trace trace = process;
+        process = new Trace(null, trace.origin);
+        trace.finish();
+    }
+
+    /**
+     * Writes the trace file, one event per line, and returns where it went; null when the
+     * trace isn't enabled.
+     */
+    public Path write() throws IOException {
+        if (!isEnabled()) {
+            return null;
+        }
+        long pid = ProcessHandle.current().pid();
+        StringBuilder json = new StringBuilder("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        lock.lock();
+        try {
+            json.append("\n").append(Json.write(metadata(pid, 0, "process_name",
+                command != null ? "devc " + command : "devc")));
+            threads.forEach((tid, name) -> json.append(",\n").append(Json.write(metadata(pid, tid, "thread_name", name))));
+            for (Map<String, Object> event : events) {
+                json.append(",\n").append(Json.write(event));
+            }
+        } finally {
+            lock.unlock();
+        }
+        json.append("\n]}\n");
+
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        Files.writeString(temporary, json);
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return absolute;
+    }
+
+    private static Map<String, Object> metadata(long pid, long tid, String kind, String name) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("name", kind);
+        event.put("ph", "M");
+        event.put("pid", pid);
+        event.put("tid", tid);
+        event.put("args", Map.of("name", name));
+        return event;
+    }
+}
@@ -0,0 +1,403 @@
+package uk.laurencegouws.devc.transfer;
+
+import uk.laurencegouws.devc.archive.TarArchive;
+import uk.laurencegouws.devc.archive.TarReader;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+import uk.laurencegouws.devc.docker.ExecProcess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies files between the host and a container through the engine's archive endpoints. A
+ * destination ending in {@code /} is a directory to copy into, as is an existing directory when
+ * the source is a file. Otherwise the destination names the copy, and a directory copied onto an
+ * existing one is merged into it; unlike {@code docker cp}, running the same copy twice therefore
+ * writes to the same place, which is what resuming relies on. Large trees are split into several tar
+ * streams that the engine extracts concurrently. Uploads are balanced by bytes across streams;
+ * downloads fetch the top-level entries of a directory separately. Members keep their modes
+ * and modification times, and uploads are owned by the container's user (the template's
+ * {@code developer}). With resume, files whose size and modification time already match on
+ * the other side are not sent again.
+ */
+public final class ArchiveCopy {
+
+    /** Below this, one stream is faster than splitting: every stream is its own request and extraction. */
+    private static final long SPLIT_THRESHOLD = 8 * 1024 * 1024;
+
+    /**
+     * What a copy moved: {@code skipped} counts files left alone because they already matched.
+     */
+    public record Result(int files, long bytes, int skipped, int streams, long nanos) {
+
+        public String describe() {
+            double seconds = Math.max(1e-9, nanos / 1e9);
+            String skippedPart = skipped > 0 ? String.format(", %d already there", skipped) : "";
+            return String.format("%d file(s), %.1f MB%s, over %d stream(s) in %d ms (%.1f MB/s)",
+                files, bytes / (1024.0 * 1024.0), skippedPart, streams, nanos / 1_000_000,
+                bytes / (1024.0 * 1024.0) / seconds);
+        }
+    }
+
+    /** A file in the container, as listed by {@code find}: size and modification time in seconds. */
+    private record RemoteFile(char type, long size, long modified) {
+    }
+
+    private final DockerBackend docker;
+    private final int streams;
+    private final boolean resume;
+
+    public ArchiveCopy(DockerBackend docker, int streams, boolean resume) {
+        this.docker = docker;
+        this.streams = Math.max(1, streams);
+        this.resume = resume;
+    }
+
+    /**
+     * Copies the local file or directory {@code source} to {@code destination} in the container.
+     */
+    public Result upload(Path source, String container, String destination) throws IOException {
+        long start = System.nanoTime();
+        Path local = source.toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(local, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            throw new IOException("No such file or directory: " + source);
+        }
+
+        String remote = trimSlashes(destination);
+        DockerClient.PathStat target = DockerBackend.await(docker.statPath(container, remote));
+        String directory;
+        String name;
+        if (destination.endsWith("/") || (target != null && target.directory() && !attributes.isDirectory())) {
+            if (target == null || !target.directory()) {
+                throw new IOException("No directory " + remote + " in container '" + container + "'.");
+            }
+            directory = remote;
+            name = local.getFileName().toString();
+        } else {
+            if (target != null && !target.directory() && attributes.isDirectory()) {
+                throw new IOException("Cannot copy a directory onto the file " + remote + ".");
+            }
+            directory = parent(remote);
+            name = remote.substring(remote.lastIndexOf('/') + 1);
+            if (DockerBackend.await(docker.statPath(container, directory)) == null) {
+                throw new IOException("No directory " + directory + " in container '" + container + "'.");
+            }
+        }
+
+        // Directories and links form a skeleton; regular files are what gets balanced across streams
+        List<TarArchive.Entry> skeleton = new ArrayList<>();
+        List<TarArchive.Entry> files = new ArrayList<>();
+        Files.walkFileTree(local, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                skeleton.add(TarArchive.entry(memberName(name, local, dir), dir, attributes));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (attributes.isRegularFile()) {
+                    files.add(TarArchive.entry(memberName(name, local, file), file, attributes));
+                } else if (attributes.isSymbolicLink()) {
+                    skeleton.add(TarArchive.entry(memberName(name, local, file), file, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        int skipped = 0;
+        DockerClient.PathStat existing = resume ? DockerBackend.await(docker.statPath(container, directory + "/" + name)) : null;
+        if (existing != null) {
+            Map<String, RemoteFile> present = existing.directory()
+                ? listRemote(container, directory + "/" + name, name)
+                : Map.of(name, new RemoteFile('f', existing.size(), existing.modified()));
+            int before = files.size();
+            files.removeIf(entry -> {
+                RemoteFile file = present.get(entry.name());
+                return file != null && file.type() == 'f' && file.size() == entry.size() && file.modified() == entry.modified();
+            });
+            skipped = before - files.size();
+        }
+
+        long bytes = files.stream().mapToLong(TarArchive.Entry::size).sum();
+        int count = bytes < SPLIT_THRESHOLD ? 1 : Math.min(streams, files.size());
+        if (count <= 1) {
+            List<TarArchive.Entry> all = new ArrayList<>(skeleton);
+            all.addAll(files);
+            DockerBackend.await(docker.putArchive(container, directory, new TarArchive(all)));
+        } else {
+            // The skeleton goes first so every stream finds its directories in place
+            DockerBackend.await(docker.putArchive(container, directory, new TarArchive(skeleton)));
+            List<CompletableFuture<Void>> uploads = new ArrayList<>();
+            for (List<TarArchive.Entry> bucket : balance(files, count)) {
+                uploads.add(docker.putArchive(container, directory, new TarArchive(bucket)));
+            }
+            awaitAll(uploads);
+        }
+        return new Result(files.size(), bytes, skipped, count, System.nanoTime() - start);
+    }
+
+    /**
+     * Copies {@code source} in the container to the local {@code destination}; with
+     * {@code into}, the destination was given with a trailing separator and must be a directory.
+     */
+    public Result download(String container, String source, Path destination, boolean into) throws IOException {
+        long start = System.nanoTime();
+        String remote = trimSlashes(source);
+        DockerClient.PathStat stat = DockerBackend.await(docker.statPath(container, remote));
+        if (stat == null) {
+            throw new IOException("No such file or directory in container '" + container + "': " + remote);
+        }
+
+        Path local = destination.toAbsolutePath().normalize();
+        Path directory;
+        String name;
+        if (into || (Files.isDirectory(local) && !stat.directory())) {
+            if (!Files.isDirectory(local)) {
+                throw new IOException("No directory " + destination + ".");
+            }
+            directory = local;
+            name = stat.name();
+        } else {
+            if (Files.exists(local) && !Files.isDirectory(local) && stat.directory()) {
+                throw new IOException("Cannot copy a directory onto the file " + destination + ".");
+            }
+            directory = local.getParent();
+            name = local.getFileName().toString();
+            if (!Files.isDirectory(directory)) {
+                throw new IOException("No directory " + directory + ".");
+            }
+        }
+
+        Map<String, RemoteFile> listing = stat.directory() && (streams > 1 || resume) ? listOrNull(container, remote) : null;
+        Map<String, List<String>> units = null;
+        Map<String, Long> unitBytes = new HashMap<>();
+        if (listing != null) {
+            // Each top-level entry of the directory becomes one stream
+            units = new LinkedHashMap<>();
+            long total = 0;
+            for (Map.Entry<String, RemoteFile> entry : listing.entrySet()) {
+                String path = entry.getKey();
+                String unit = path.contains("/") ? path.substring(0, path.indexOf('/')) : path;
+                units.computeIfAbsent(unit, key -> new ArrayList<>()).add(path);
+                unitBytes.merge(unit, entry.getValue().size(), Long::sum);
+                total += entry.getValue().size();
+            }
+            if (!resume && total < SPLIT_THRESHOLD) {
+                units = null;
+            }
+        }
+
+        if (units == null) {
+            TarReader.Stats stats = fetch(container, remote, directory, stat.name(), name);
+            return new Result(stats.files(), stats.bytes(), stats.skipped(), 1, System.nanoTime() - start);
+        }
+
+        Path root = directory.resolve(name);
+        Files.createDirectories(root);
+        int skipped = 0;
+        ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+        List<String> ordered = new ArrayList<>(units.keySet());
+        ordered.sort(Comparator.comparingLong((String unit) -> unitBytes.get(unit)).reversed());
+        for (String unit : ordered) {
+            List<String> paths = units.get(unit);
+            if (resume && allPresent(root, paths, listing)) {
+                skipped += (int) paths.stream().filter(path -> listing.get(path).type() == 'f').count();
+            } else {
+                queue.add(unit);
+            }
+        }
+
+        int count = Math.max(1, Math.min(streams, queue.size()));
+        AtomicInteger files = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger alreadyThere = new AtomicInteger(skipped);
+        List<Future<Void>> workers = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                workers.add(pool.submit(() -> {
+                    String unit;
+                    while ((unit = queue.poll()) != null) {
+                        TarReader.Stats stats = fetch(container, remote + "/" + unit, root, unit, unit);
+                        files.addAndGet(stats.files());
+                        bytes.addAndGet(stats.bytes());
+                        alreadyThere.addAndGet(stats.skipped());
+                    }
+                    return null;
+                }));
+            }
+        }
+        joinAll(workers);
+        return new Result(files.get(), bytes.get(), alreadyThere.get(), count, System.nanoTime() - start);
+    }
+
+    private TarReader.Stats fetch(String container, String remote, Path into, String member, String localName)
+            throws IOException {
+        TarReader.Stats[] stats = new TarReader.Stats[1];
+        boolean found = DockerBackend.await(docker.getArchive(container, remote, tar -> {
+            TarReader reader = new TarReader(tar).renaming(member, localName);
+            stats[0] = (resume ? reader.skipUnchanged() : reader).extractTo(into);
+        }));
+        if (!found) {
+            throw new IOException(remote + " disappeared from container '" + container + "' during the copy.");
+        }
+        return stats[0];
+    }
+
+    private static boolean allPresent(Path root, List<String> paths, Map<String, RemoteFile> listing) {
+        for (String path : paths) {
+            RemoteFile remote = listing.get(path);
+            Path local = root.resolve(path);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(local, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (remote.type() == 'f' && (!attributes.isRegularFile() || attributes.size() != remote.size()
+                        || attributes.lastModifiedTime().to(TimeUnit.SECONDS) != remote.modified())) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, RemoteFile> listOrNull(String container, String path) {
+        try {
+            return listRemote(container, path, "");
+        } catch (IOException e) {
+            // No exec (stopped container, no GNU find): the caller falls back to one stream
+            return null;
+        }
+    }
+
+    /**
+     * Lists everything below {@code path} in the container, keyed by {@code prefix} joined with
+     * the path relative to it. Needs the container running, with GNU find.
+     */
+    private Map<String, RemoteFile> listRemote(String container, String path, String prefix) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try (ExecProcess process = DockerBackend.await(docker.openExec(container,
+                List.of("find", path, "-mindepth", "1", "-printf", "%y\\t%s\\t%T@\\t%P\\0")))) {
+            int exitCode = process.relay(Channels.newChannel(InputStream.nullInputStream()),
+                Channels.newChannel(output), Channels.newChannel(errors));
+            if (exitCode != 0) {
+                throw new IOException("Could not list " + path + " in container '" + container + "': "
+                    + errors.toString(StandardCharsets.UTF_8).strip());
+            }
+        }
+        Map<String, RemoteFile> files = new LinkedHashMap<>();
+        for (String record : output.toString(StandardCharsets.UTF_8).split("\\x00")) {
+            String[] fields = record.split("\t", 4);
+            if (fields.length < 4) {
+                continue;
+            }
+            String seconds = fields[2].contains(".") ? fields[2].substring(0, fields[2].indexOf('.')) : fields[2];
+            String key = prefix.isEmpty() ? fields[3] : prefix + "/" + fields[3];
+            files.put(key, new RemoteFile(fields[0].charAt(0), Long.parseLong(fields[1]), Long.parseLong(seconds)));
+        }
+        return files;
+    }
+
+    /**
+     * Spreads files over {@code count} lists of roughly equal total size, largest first.
+     */
+    static List<List<TarArchive.Entry>> balance(List<TarArchive.Entry> files, int count) {
+        List<TarArchive.Entry> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(TarArchive.Entry::size).reversed());
+        record Bucket(List<TarArchive.Entry> entries, long[] bytes) {
+        }
+        PriorityQueue<Bucket> buckets = new PriorityQueue<>(Comparator.comparingLong((Bucket bucket) -> bucket.bytes()[0]));
+        for (int i = 0; i < count; i++) {
+            buckets.add(new Bucket(new ArrayList<>(), new long[1]));
+        }
+        for (TarArchive.Entry entry : sorted) {
+            Bucket lightest = buckets.poll();
+            lightest.entries().add(entry);
+            lightest.bytes()[0] += entry.size();
+            buckets.add(lightest);
+        }
+        return buckets.stream().map(Bucket::entries).filter(list -> !list.isEmpty()).toList();
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws IOException {
+        IOException failure = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                DockerBackend.await(future);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void joinAll(List<Future<Void>> futures) throws IOException {
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during the copy.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private static String memberName(String name, Path root, Path path) {
+        String relative = root.relativize(path).toString().replace('\\', '/');
+        return relative.isEmpty() ? name : name + "/" + relative;
+    }
+
+    private static String parent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String trimSlashes(String path) {
+        String trimmed = path;
+        while (trimmed.length() > 1 && trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
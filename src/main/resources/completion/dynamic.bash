@@ -0,0 +1,57 @@
+
+# Values that change at run time: containers, workspace directories and snapshots.
+# `devc __complete` answers them from local caches only, so completion never waits on Docker.
+
+# Prints the container named with --name/-n on the current command line, if any.
+function _devc_named_container() {
+  local i
+  for (( i = 1; i < COMP_CWORD; i++ )); do
+    case ${COMP_WORDS[i]} in
+      --name|-n) echo "${COMP_WORDS[i+1]}"; return ;;
+      --name=*) echo "${COMP_WORDS[i]#--name=}"; return ;;
+    esac
+  done
+}
+
+# Completes the current word from `devc __complete <kind>`.
+function _devc_dynamic_values() {
+  local IFS=$'\n'
+  COMPREPLY=( $(compgen -W "$(${COMP_WORDS[0]} __complete "$1" 2>/dev/null)" -- "${COMP_WORDS[COMP_CWORD]}") )
+}
+
+# Answers the dynamic values, and hands everything else to the generated _complete_devc.
+function _complete_devc_dynamic() {
+  local curr_word=${COMP_WORDS[COMP_CWORD]}
+  local prev_word=${COMP_WORDS[COMP_CWORD-1]}
+
+  case ${prev_word} in
+    --name|-n)
+      _devc_dynamic_values containers
+      return
+      ;;
+  esac
+
+  if [[ "${curr_word}" != -* ]]; then
+    case ${COMP_WORDS[1]} in
+      cd)
+        local IFS=$'\n'
+        COMPREPLY=( $(${COMP_WORDS[0]} __complete paths "$(_devc_named_container)" "${curr_word}" 2>/dev/null) )
+        # Directories end in a slash, so keep completing into them
+        type compopt &>/dev/null && compopt -o nospace 2>/dev/null
+        return
+        ;;
+      snapshot)
+        case ${prev_word} in
+          restore|rm)
+            _devc_dynamic_values snapshots
+            return
+            ;;
+        esac
+        ;;
+    esac
+  fi
+
+  _complete_devc "$@"
+}
+
+complete -F _complete_devc_dynamic -o default devc devc.sh devc.bash
@@ -0,0 +1,87 @@
+package uk.laurencegouws.devc.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TarReaderTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void rejectsFileWrittenThroughSymlinkFromSameArchive() throws IOException {
+        Path outside = Files.createDirectories(temp.resolve("outside"));
+        Path target = Files.createDirectories(temp.resolve("target"));
+        Path content = Files.writeString(temp.resolve("content"), "owned");
+
+        byte[] tar = tar(
+            new TarArchive.Entry("evil", null, (byte) '2', 0, 0777, 0, outside.toString()),
+            new TarArchive.Entry("evil/owned.txt", content, (byte) '0', 5, 0644, 0, ""));
+
+        IOException error = assertThrows(IOException.class, () -> new TarReader(new ByteArrayInputStream(tar)).extractTo(target));
+        assertTrue(error.getMessage().contains("through the symlink evil"), error.getMessage());
+        assertFalse(Files.exists(outside.resolve("owned.txt")));
+    }
+
+    @Test
+    void rejectsHardLinkThroughSymlink() throws IOException {
+        Path outside = Files.createDirectories(temp.resolve("outside"));
+        Files.writeString(outside.resolve("secret"), "secret");
+        Path target = Files.createDirectories(temp.resolve("target"));
+
+        byte[] tar = tar(
+            new TarArchive.Entry("evil", null, (byte) '2', 0, 0777, 0, outside.toString()),
+            new TarArchive.Entry("copy", null, (byte) '1', 0, 0644, 0, "evil/secret"));
+
+        assertThrows(IOException.class, () -> new TarReader(new ByteArrayInputStream(tar)).extractTo(target));
+        assertFalse(Files.exists(target.resolve("copy")));
+    }
+
+    @Test
+    void rejectsNameOutsideTarget() throws IOException {
+        Path target = Files.createDirectories(temp.resolve("target"));
+        Path content = Files.writeString(temp.resolve("content"), "x");
+
+        byte[] tar = tar(new TarArchive.Entry("../escaped", content, (byte) '0', 1, 0644, 0, ""));
+
+        assertThrows(IOException.class, () -> new TarReader(new ByteArrayInputStream(tar)).extractTo(target));
+        assertFalse(Files.exists(temp.resolve("escaped")));
+    }
+
+    @Test
+    void extractsSymlinkWithoutFollowingIt() throws IOException {
+        Path target = Files.createDirectories(temp.resolve("target"));
+        Path content = Files.writeString(temp.resolve("content"), "hello");
+
+        byte[] tar = tar(
+            new TarArchive.Entry("dir/", null, (byte) '5', 0, 0755, 0, ""),
+            new TarArchive.Entry("dir/file.txt", content, (byte) '0', 5, 0644, 0, ""),
+            new TarArchive.Entry("link", null, (byte) '2', 0, 0777, 0, "dir/file.txt"));
+
+        TarReader.Stats stats = new TarReader(new ByteArrayInputStream(tar)).extractTo(target);
+
+        assertEquals(1, stats.files());
+        assertEquals("hello", Files.readString(target.resolve("dir/file.txt")));
+        assertTrue(Files.isSymbolicLink(target.resolve("link")));
+        assertEquals(Path.of("dir/file.txt"), Files.readSymbolicLink(target.resolve("link")));
+    }
+
+    private static byte[] tar(TarArchive.Entry... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TarArchive(List.of(entries)).writeTo(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BaseImagesTest {
+
+    @Test
+    void substitutesGlobalArgDefaults() {
+        BaseImages.Analysis analysis = BaseImages.of(Dockerfile.parse("""
+            ARG VERSION=22.04
+            ARG VARIANT
+            FROM ubuntu:${VERSION}
+            FROM node:${VARIANT:-20-slim}
+            ARG LATE=ignored
+            FROM alpine:$VERSION
+            """));
+
+        assertEquals(List.of("ubuntu:22.04", "node:20-slim", "alpine:22.04"), names(analysis));
+        assertEquals(List.of(), analysis.unresolved());
+    }
+
+    @Test
+    void reportsReferencesWithUnresolvedVariables() {
+        BaseImages.Analysis analysis = BaseImages.of(Dockerfile.parse("""
+            FROM ubuntu
+            ARG LOCAL=1
+            FROM python:${LOCAL}
+            """));
+
+        assertEquals(List.of("ubuntu:latest"), names(analysis));
+        assertEquals(List.of("python:${LOCAL}"), analysis.unresolved());
+    }
+
+    @Test
+    void skipsEarlierStagesAndScratch() {
+        BaseImages.Analysis analysis = BaseImages.of(Dockerfile.parse("""
+            FROM golang:1.22 AS Build
+            RUN go build -o /app
+            FROM build AS test
+            FROM scratch
+            COPY --from=build /app /app
+            COPY --from=0 /etc/ssl /etc/ssl
+            COPY --from=busybox:musl /bin/sh /bin/sh
+            RUN --mount=type=cache,target=/root/.cache,from=test --mount=type=bind,from=ghcr.io/acme/tools:2,target=/t true
+            """));
+
+        assertEquals(List.of("golang:1.22", "busybox:musl", "ghcr.io/acme/tools:2"), names(analysis));
+    }
+
+    @Test
+    void keepsRegistryPortOutOfTheTag() {
+        BaseImages.Image untagged = BaseImages.parse("registry.local:5000/team/base", null, 1);
+        assertEquals("registry.local:5000/team/base", untagged.repository());
+        assertEquals("latest", untagged.reference());
+
+        BaseImages.Image tagged = BaseImages.parse("registry.local:5000/team/base:1.2", null, 1);
+        assertEquals("registry.local:5000/team/base", tagged.repository());
+        assertEquals("1.2", tagged.reference());
+        assertFalse(tagged.isPinned());
+    }
+
+    @Test
+    void treatsDigestReferencesAsPinned() {
+        String digest = "sha256:" + "a".repeat(64);
+        BaseImages.Analysis analysis = BaseImages.of(Dockerfile.parse("""
+            FROM --platform=linux/arm64 localhost:5000/base:1@%s
+            """.formatted(digest)));
+
+        BaseImages.Image image = analysis.images().get(0);
+        assertEquals("localhost:5000/base", image.repository());
+        assertEquals(digest, image.reference());
+        assertEquals("linux/arm64", image.platform());
+        assertTrue(image.isPinned());
+        assertEquals("localhost:5000/base@" + digest, image.toString());
+    }
+
+    private static List<String> names(BaseImages.Analysis analysis) {
+        return analysis.images().stream().map(BaseImages.Image::toString).toList();
+    }
+}
@@ -0,0 +1,55 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BuildContextTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void skipsPrunedDirectoriesWithoutCountingThem() throws IOException {
+        write("Dockerfile", "FROM alpine");
+        write(".dockerignore", "node_modules\n*.log");
+        write("src/main.c", "int main;");
+        write("debug.log", "12345");
+        write("node_modules/pkg/index.js", "module.exports = 1;");
+        write("workspace/big.bin", "0123456789");
+
+        BuildContext context = BuildContext.scan(temp, temp.resolve("Dockerfile"), List.of(temp.resolve("workspace")));
+
+        assertEquals(List.of("node_modules", "workspace"), context.skippedDirectories().stream().sorted().toList());
+        assertEquals(1, context.excludedFiles());
+        assertEquals(5, context.excludedBytes());
+        assertEquals(3, context.fileCount());
+    }
+
+    @Test
+    void walksExcludedDirectoriesWhenAnExceptionMayReincludeFiles() throws IOException {
+        write("Dockerfile", "FROM alpine");
+        write(".dockerignore", "vendor\n!vendor/keep.txt");
+        write("vendor/keep.txt", "k");
+        write("vendor/drop.txt", "dd");
+
+        BuildContext context = BuildContext.scan(temp, temp.resolve("Dockerfile"), List.of());
+
+        assertEquals(List.of(), context.skippedDirectories());
+        assertEquals(1, context.excludedFiles());
+        assertEquals(2, context.excludedBytes());
+        assertEquals(3, context.fileCount());
+    }
+
+    private void write(String name, String content) throws IOException {
+        Path file = temp.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+}
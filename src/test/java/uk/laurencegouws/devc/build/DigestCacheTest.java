@@ -0,0 +1,56 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DigestCacheTest {
+
+    private static final Duration TTL = Duration.ofHours(1);
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void keepsDigestsAcrossInstancesWithinTimeToLive() {
+        Path file = temp.resolve("cache/image-digests.tsv");
+        DigestCache cache = new DigestCache(file);
+        cache.put("ubuntu:22.04", "sha256:1111");
+        assertEquals("sha256:1111", cache.get("ubuntu:22.04", TTL));
+        cache.save();
+
+        DigestCache reloaded = new DigestCache(file);
+        assertEquals("sha256:1111", reloaded.get("ubuntu:22.04", TTL));
+        assertNull(reloaded.get("ubuntu:24.04", TTL));
+    }
+
+    @Test
+    void expiresEntriesOlderThanTimeToLive() throws Exception {
+        Path file = temp.resolve("image-digests.tsv");
+        long now = System.currentTimeMillis();
+        Files.write(file, List.of(
+            (now - Duration.ofMinutes(90).toMillis()) + "\tsha256:old\tnode:20",
+            (now - Duration.ofMinutes(10).toMillis()) + "\tsha256:new\tpython:3.12"));
+
+        DigestCache cache = new DigestCache(file);
+        assertNull(cache.get("node:20", TTL));
+        assertEquals("sha256:old", cache.get("node:20", Duration.ofHours(2)));
+        assertEquals("sha256:new", cache.get("python:3.12", TTL));
+        assertNull(cache.get("python:3.12", Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void ignoresUnreadableCacheFile() throws Exception {
+        Path file = temp.resolve("image-digests.tsv");
+        Files.writeString(file, "not-a-time\tsha256:x\tubuntu:latest\n");
+
+        assertNull(new DigestCache(file).get("ubuntu:latest", TTL));
+    }
+}
@@ -0,0 +1,68 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DockerIgnoreTest {
+
+    @Test
+    void doubleStarSpansDirectories() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("**/*.log", "docs/**/draft"));
+        assertTrue(ignore.isExcluded("app.log"));
+        assertTrue(ignore.isExcluded("a/b/c/app.log"));
+        assertFalse(ignore.isExcluded("app.log.txt"));
+        assertTrue(ignore.isExcluded("docs/draft"));
+        assertTrue(ignore.isExcluded("docs/x/y/draft/notes.md"));
+        assertFalse(ignore.isExcluded("src/docs/draft"));
+    }
+
+    @Test
+    void singleStarStaysInOneDirectory() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("*.tmp", "build/?"));
+        assertTrue(ignore.isExcluded("a.tmp"));
+        assertFalse(ignore.isExcluded("dir/a.tmp"));
+        assertTrue(ignore.isExcluded("build/x"));
+        assertFalse(ignore.isExcluded("build/xy"));
+    }
+
+    @Test
+    void exceptionsReincludeAndLastMatchWins() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("*.md", "!README.md", "docs", "!docs/keep.txt"));
+        assertTrue(ignore.isExcluded("CHANGES.md"));
+        assertFalse(ignore.isExcluded("README.md"));
+        assertTrue(ignore.isExcluded("docs/other.txt"));
+        assertFalse(ignore.isExcluded("docs/keep.txt"));
+
+        DockerIgnore reversed = DockerIgnore.parse(List.of("!README.md", "*.md"));
+        assertTrue(reversed.isExcluded("README.md"));
+    }
+
+    @Test
+    void trailingSlashAndLeadingSlashAreCleaned() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("node_modules/", "/target", "./out/../dist/"));
+        assertTrue(ignore.isExcluded("node_modules"));
+        assertTrue(ignore.isExcluded("node_modules/pkg/index.js"));
+        assertTrue(ignore.isExcluded("target/classes"));
+        assertTrue(ignore.isExcluded("dist/app.js"));
+        assertFalse(ignore.isExcluded("out/app.js"));
+        assertFalse(ignore.isExcluded("src/node_modules"));
+    }
+
+    @Test
+    void commentsAndBlankLinesAreSkipped() {
+        DockerIgnore ignore = DockerIgnore.parse(List.of("# *.java", "", "   ", "\\#notes"));
+        assertFalse(ignore.isExcluded("Main.java"));
+        assertTrue(ignore.isExcluded("#notes"));
+    }
+
+    @Test
+    void directoriesCanBePrunedOnlyWithoutExceptions() {
+        assertFalse(DockerIgnore.parse(List.of("node_modules", ".git")).hasExceptions());
+        assertTrue(DockerIgnore.parse(List.of("node_modules", "!node_modules/keep")).hasExceptions());
+        assertFalse(DockerIgnore.parse(List.of()).hasExceptions());
+    }
+}
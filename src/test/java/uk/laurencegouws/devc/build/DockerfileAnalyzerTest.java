@@ -0,0 +1,119 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DockerfileAnalyzerTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void aptCacheMountNeedsDockerCleanRemoved() throws IOException {
+        String mounts = "RUN --mount=type=cache,target=/var/cache/apt,sharing=locked "
+            + "--mount=type=cache,target=/var/lib/apt,sharing=locked ";
+        assertEquals(1, count(analyze("FROM ubuntu:22.04\n" + mounts + "apt-get update && apt-get install -y curl\n"),
+            "docker-clean"));
+        assertEquals(0, count(analyze("FROM ubuntu:22.04\n" + mounts
+            + "rm -f /etc/apt/apt.conf.d/docker-clean && apt-get update && apt-get install -y curl\n"), "docker-clean"));
+        assertEquals(0, count(analyze("FROM ubuntu:22.04\nRUN rm -f /etc/apt/apt.conf.d/docker-clean\n" + mounts
+            + "apt-get update && apt-get install -y curl\n"), "docker-clean"));
+
+        List<DockerfileAnalyzer.Finding> cleaned = analyze("FROM ubuntu:22.04\n" + mounts
+            + "apt-get update && apt-get install -y curl && rm -rf /var/lib/apt/lists/*\n");
+        assertEquals(1, count(cleaned, "Cleans out the apt cache mount"));
+        assertEquals(0, count(cleaned, "docker-clean"));
+    }
+
+    @Test
+    void aptInstallWithoutCacheMount() throws IOException {
+        assertEquals(1, count(analyze("FROM ubuntu:22.04\nRUN apt-get update && apt-get install -y curl\n"),
+            "apt without a cache mount"));
+        assertEquals(1, count(analyze("FROM ubuntu:22.04\nRUN apt-get update\nRUN apt-get install -y curl\n"),
+            "without installing"));
+    }
+
+    @Test
+    void broadCopyBeforeRun() throws IOException {
+        Files.writeString(temp.resolve("Makefile"), "all:\n");
+        Files.writeString(temp.resolve("main.c"), "int main;\n");
+
+        List<DockerfileAnalyzer.Finding> findings = analyze("FROM gcc:13\nCOPY . /src\nRUN make -C /src\n");
+        assertEquals(1, count(findings, "Copies 2 file(s) before 1 RUN step(s)"));
+        assertTrue(findings.getFirst().fix().startsWith("Copy only the dependency manifests"));
+
+        assertEquals(0, count(analyze("FROM gcc:13\nRUN mkdir /src && apt-get -v\nCOPY . /src\n"), "Copies"));
+        assertEquals(0, count(analyze("FROM gcc:13\nCOPY Makefile /src/\nRUN make -C /src\n"), "Copies"));
+    }
+
+    @Test
+    void rebuiltStepsFollowStagesBuiltOnTheChangedOne() throws IOException {
+        List<DockerfileAnalyzer.Finding> findings = analyze("""
+            FROM ubuntu AS base
+            RUN echo base > /base
+            FROM base AS build
+            RUN echo build > /build
+            FROM alpine:3.19 AS other
+            RUN echo other > /other
+            FROM alpine:3.19
+            COPY --from=build /build /build
+            RUN echo final > /final
+            """);
+        DockerfileAnalyzer.Finding unpinned = findings.stream()
+            .filter(finding -> finding.problem().contains("'ubuntu' has no fixed version"))
+            .findFirst().orElseThrow();
+        assertEquals(List.of(2, 4, 8, 9), unpinned.rebuilt().stream().map(Dockerfile.Instruction::line).toList());
+        assertEquals(1, count(findings, "has no fixed version"));
+    }
+
+    @Test
+    void costsLineUpWithTheFinalStage() {
+        Dockerfile dockerfile = Dockerfile.parse("FROM alpine:3.19 AS tools\nRUN echo tools\n"
+            + "FROM alpine:3.19\nCOPY app /app\nRUN echo build\n");
+        List<Dockerfile.Instruction> steps = dockerfile.instructions();
+        List<DockerClient.ImageLayer> history = List.of(
+            new DockerClient.ImageLayer(1_000, "/bin/sh -c #(nop) ADD file:abc in /", 7_000_000),
+            new DockerClient.ImageLayer(5_000, "COPY app /app # buildkit", 100),
+            new DockerClient.ImageLayer(5_030, "RUN /bin/sh -c echo build # buildkit", 2_000));
+
+        Map<Dockerfile.Instruction, DockerfileAnalyzer.StepCost> costs = DockerfileAnalyzer.costsFromHistory(dockerfile, history);
+        assertEquals(Map.of(
+            steps.get(3), new DockerfileAnalyzer.StepCost(-1, 100),
+            steps.get(4), new DockerfileAnalyzer.StepCost(30_000_000_000L, 2_000)), costs);
+
+        List<DockerClient.ImageLayer> sameTime = List.of(
+            new DockerClient.ImageLayer(5_000, "COPY app /app # buildkit", 100),
+            new DockerClient.ImageLayer(5_000, "RUN /bin/sh -c echo build # buildkit", 2_000));
+        assertEquals(new DockerfileAnalyzer.StepCost(-1, 2_000),
+            DockerfileAnalyzer.costsFromHistory(dockerfile, sameTime).get(steps.get(4)));
+    }
+
+    @Test
+    void mismatchedHistoryGivesNoCosts() {
+        Dockerfile dockerfile = Dockerfile.parse("FROM alpine:3.19\nCOPY app /app\nRUN echo build\n");
+        assertEquals(Map.of(), DockerfileAnalyzer.costsFromHistory(dockerfile, List.of(
+            new DockerClient.ImageLayer(5_000, "RUN /bin/sh -c echo build # buildkit", 2_000))));
+        assertEquals(Map.of(), DockerfileAnalyzer.costsFromHistory(dockerfile, List.of(
+            new DockerClient.ImageLayer(5_000, "RUN /bin/sh -c echo older # buildkit", 100),
+            new DockerClient.ImageLayer(5_030, "RUN /bin/sh -c echo build # buildkit", 2_000))));
+        assertEquals(Map.of(), DockerfileAnalyzer.costsFromHistory(Dockerfile.parse(""), List.of()));
+    }
+
+    private List<DockerfileAnalyzer.Finding> analyze(String dockerfile) throws IOException {
+        return DockerfileAnalyzer.analyze(Dockerfile.parse(dockerfile), temp, Map.of());
+    }
+
+    private static long count(List<DockerfileAnalyzer.Finding> findings, String problem) {
+        return findings.stream().filter(finding -> finding.problem().contains(problem)).count();
+    }
+}
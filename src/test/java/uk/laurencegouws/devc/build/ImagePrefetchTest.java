@@ -0,0 +1,128 @@
+package uk.laurencegouws.devc.build;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.laurencegouws.devc.docker.DockerBackend;
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImagePrefetchTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void pullsMissingImageAndRemembersItsDigest() {
+        FakeRegistry registry = new FakeRegistry();
+        registry.tags.put("ubuntu:22.04", "sha256:1111");
+        ImagePrefetch prefetch = prefetch(registry);
+        List<BaseImages.Image> images = List.of(BaseImages.parse("ubuntu:22.04", null, 1));
+
+        assertEquals(ImagePrefetch.Outcome.PULLED, prefetch.fetch(images, null).get(0).outcome());
+        assertEquals(ImagePrefetch.Outcome.PRESENT, prefetch.fetch(images, null).get(0).outcome());
+        assertEquals(1, registry.pulls.get());
+        // The digest came from the pull, so neither check had to ask the registry
+        assertEquals(0, registry.lookups.get());
+    }
+
+    @Test
+    void asksRegistryOncePerTimeToLive() {
+        FakeRegistry registry = new FakeRegistry();
+        registry.tags.put("registry.local:5000/base:1", "sha256:1111");
+        registry.local.put("registry.local:5000/base:1", List.of("registry.local:5000/base@sha256:1111"));
+        ImagePrefetch prefetch = prefetch(registry);
+        List<BaseImages.Image> images = List.of(BaseImages.parse("registry.local:5000/base:1", null, 1));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ImagePrefetch.Outcome.PRESENT, prefetch.fetch(images, null).get(0).outcome());
+        }
+        assertEquals(1, registry.lookups.get());
+
+        prefetch.digestTtl = Duration.ZERO;
+        prefetch.fetch(images, null);
+        assertEquals(2, registry.lookups.get());
+    }
+
+    @Test
+    void pullsAgainWhenTagHasMoved() {
+        FakeRegistry registry = new FakeRegistry();
+        registry.tags.put("node:20", "sha256:2222");
+        registry.local.put("node:20", List.of("node@sha256:1111"));
+        ImagePrefetch prefetch = prefetch(registry);
+        List<BaseImages.Image> images = List.of(BaseImages.parse("node:20", null, 1));
+
+        assertEquals(ImagePrefetch.Outcome.UPDATED, prefetch.fetch(images, null).get(0).outcome());
+        assertEquals(ImagePrefetch.Outcome.PRESENT, prefetch.fetch(images, null).get(0).outcome());
+        assertEquals(1, registry.pulls.get());
+        assertEquals(1, registry.lookups.get());
+    }
+
+    @Test
+    void neverAsksRegistryAboutPinnedImage() {
+        FakeRegistry registry = new FakeRegistry();
+        String pinned = "alpine@sha256:" + "a".repeat(64);
+        registry.local.put(pinned, List.of(pinned));
+        ImagePrefetch prefetch = prefetch(registry);
+
+        assertEquals(ImagePrefetch.Outcome.PRESENT,
+            prefetch.fetch(List.of(BaseImages.parse(pinned, null, 1)), null).get(0).outcome());
+        assertEquals(0, registry.lookups.get());
+    }
+
+    private ImagePrefetch prefetch(FakeRegistry registry) {
+        ImagePrefetch prefetch = new ImagePrefetch();
+        prefetch.docker = registry;
+        prefetch.digestTtl = Duration.ofHours(1);
+        prefetch.digestCacheFile = temp.resolve("image-digests.tsv");
+        return prefetch;
+    }
+
+    /**
+     * Stands in for both the engine's image store and the registry: {@code tags} is what each tag
+     * currently points at remotely, {@code local} the repository digests of pulled images.
+     */
+    private static final class FakeRegistry extends DockerBackend {
+
+        final Map<String, String> tags = new ConcurrentHashMap<>();
+        final Map<String, List<String>> local = new ConcurrentHashMap<>();
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger pulls = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<List<String>> imageDigests(String image) {
+            return CompletableFuture.completedFuture(local.get(image));
+        }
+
+        @Override
+        public CompletableFuture<String> registryDigest(String image) {
+            lookups.incrementAndGet();
+            String digest = tags.get(image);
+            return digest != null ? CompletableFuture.completedFuture(digest)
+                : CompletableFuture.failedFuture(new IOException("manifest unknown"));
+        }
+
+        @Override
+        public CompletableFuture<Void> pullImage(String repository, String reference, String platform,
+                                                 DockerClient.PullProgress progress) {
+            pulls.incrementAndGet();
+            String name = repository + ":" + reference;
+            String digest = tags.get(name);
+            progress.update(null, "Pulling from " + repository, 0, 0);
+            progress.update("0123456789ab", "Pull complete", 0, 0);
+            progress.update(null, "Digest: " + digest, 0, 0);
+            progress.update(null, "Status: Downloaded newer image for " + name, 0, 0);
+            local.put(name, List.of(repository + "@" + digest));
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
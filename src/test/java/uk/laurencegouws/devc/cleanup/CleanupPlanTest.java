@@ -0,0 +1,69 @@
+package uk.laurencegouws.devc.cleanup;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CleanupPlanTest {
+
+    private static final CleanupPlan.Policy EVERYTHING = new CleanupPlan.Policy(null, true, Instant.now());
+
+    @Test
+    void countsImagesAndVolumesUsedOnlyByRemovedContainersAsUnused() {
+        Map<String, Object> df = Map.of(
+            "Containers", List.of(
+                container("old", "sha256:a", "exited", "devc-sync-old"),
+                container("busy", "sha256:b", "running", "devc-sync-busy"),
+                container("idle", "sha256:b", "exited", "devc-sync-busy")),
+            "Images", List.of(
+                image("sha256:a", "devc-container:old", 1),
+                image("sha256:b", "devc-container:latest", 2)),
+            "Volumes", List.of(
+                volume("devc-sync-old", 1),
+                volume("devc-sync-busy", 2)));
+
+        CleanupPlan plan = CleanupPlan.from(df, EVERYTHING);
+
+        assertEquals(List.of("old", "idle"), names(plan, CleanupPlan.Kind.CONTAINER));
+        assertEquals(List.of("devc-container:old"), names(plan, CleanupPlan.Kind.IMAGE));
+        assertEquals(List.of("devc-sync-old"), names(plan, CleanupPlan.Kind.VOLUME));
+    }
+
+    @Test
+    void keepsImagesOfContainersThePlanLeaves() {
+        Map<String, Object> df = Map.of(
+            "Containers", List.of(container("devc-pool-1", "sha256:a", "created", "devc-pool-vol")),
+            "Images", List.of(image("sha256:a", "devc-container:latest", 1)),
+            "Volumes", List.of(volume("devc-pool-vol", 1)));
+
+        CleanupPlan plan = CleanupPlan.from(df, EVERYTHING);
+
+        assertEquals(List.of(), names(plan, CleanupPlan.Kind.CONTAINER));
+        assertEquals(List.of(), names(plan, CleanupPlan.Kind.IMAGE));
+        assertEquals(List.of(), names(plan, CleanupPlan.Kind.VOLUME));
+    }
+
+    private static List<String> names(CleanupPlan plan, CleanupPlan.Kind kind) {
+        return plan.candidates(kind).stream().map(CleanupPlan.Candidate::name).toList();
+    }
+
+    private static Map<String, Object> container(String name, String imageId, String state, String volume) {
+        return Map.of("Id", name + "-id", "Names", List.of("/" + name), "ImageID", imageId, "State", state,
+            "Created", 1L, "SizeRw", 10L, "Labels", Map.of("devc.managed", "true"),
+            "Mounts", List.of(Map.of("Type", "volume", "Name", volume)));
+    }
+
+    private static Map<String, Object> image(String id, String tag, long containers) {
+        return Map.of("Id", id, "RepoTags", List.of(tag), "Created", 1L, "Size", 100L, "SharedSize", 0L,
+            "Containers", containers, "Labels", Map.of("devc.managed", "true"));
+    }
+
+    private static Map<String, Object> volume(String name, long refCount) {
+        return Map.of("Name", name, "Labels", Map.of("devc.managed", "true"),
+            "UsageData", Map.of("RefCount", refCount, "Size", 50L));
+    }
+}
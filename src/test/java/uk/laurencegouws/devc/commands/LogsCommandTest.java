@@ -0,0 +1,53 @@
+package uk.laurencegouws.devc.commands;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LogsCommandTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+
+    @Test
+    void parsesSince() {
+        Object[][] cases = {
+            {"10s", NOW.minusSeconds(10)},
+            {"1h30m", NOW.minusSeconds(5400)},
+            {"2d", NOW.minusSeconds(2 * 86_400)},
+            {" 5m ", NOW.minusSeconds(300)},
+            {"1700000000", Instant.ofEpochSecond(1_700_000_000)},
+            {"1700000000.5", Instant.ofEpochSecond(1_700_000_000, 500_000_000)},
+            {"2026-02-28T10:15:30Z", Instant.parse("2026-02-28T10:15:30Z")},
+            {"2026-02-28T10:15:30+02:00", Instant.parse("2026-02-28T08:15:30Z")},
+            {"2026-02-28T10:15:30", LocalDateTime.parse("2026-02-28T10:15:30").atZone(ZoneId.systemDefault()).toInstant()},
+            {"2026-02-28", LocalDate.parse("2026-02-28").atStartOfDay(ZoneId.systemDefault()).toInstant()},
+        };
+        for (Object[] c : cases) {
+            assertEquals(c[1], LogsCommand.parseSince((String) c[0], NOW), (String) c[0]);
+        }
+    }
+
+    @Test
+    void rejectsUnreadableSince() {
+        for (String value : new String[] {"", "yesterday", "10x", "1h 30m", "-5m", "2026-02-30"}) {
+            assertThrows(IllegalArgumentException.class, () -> LogsCommand.parseSince(value, NOW), value);
+        }
+    }
+
+    @Test
+    void parsesTail() {
+        assertEquals(-1, LogsCommand.parseTail("all"));
+        assertEquals(-1, LogsCommand.parseTail("ALL"));
+        assertEquals(0, LogsCommand.parseTail("0"));
+        assertEquals(250, LogsCommand.parseTail(" 250 "));
+        for (String value : new String[] {"-1", "ten", "", "1.5"}) {
+            assertThrows(IllegalArgumentException.class, () -> LogsCommand.parseTail(value), value);
+        }
+    }
+}
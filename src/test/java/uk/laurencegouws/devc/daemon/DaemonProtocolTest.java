@@ -0,0 +1,116 @@
+package uk.laurencegouws.devc.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DaemonProtocolTest {
+
+    private static final int FRAMES = 8;
+    private static final int FRAME_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void keepsLargeFramesWholeForSlowReader() throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(temp.resolve("daemon.sock"));
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            try (SocketChannel client = SocketChannel.open(address); SocketChannel daemon = server.accept()) {
+                // Two writers on virtual threads, as the daemon's stdout and stderr are
+                List<Thread> writers = new ArrayList<>();
+                for (byte type : new byte[] {DaemonProtocol.STDOUT, DaemonProtocol.STDERR}) {
+                    writers.add(Thread.ofVirtual().start(() -> {
+                        try {
+                            for (int i = 0; i < FRAMES; i++) {
+                                DaemonProtocol.write(daemon, type, payload(type, i));
+                            }
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
+                }
+
+                DataInputStream in = new DataInputStream(new BufferedInputStream(slow(DaemonProtocol.inputStream(client))));
+                int[] next = new int[256];
+                for (int i = 0; i < 2 * FRAMES; i++) {
+                    DaemonProtocol.Frame frame = DaemonProtocol.read(in);
+                    assertArrayEquals(payload(frame.type(), next[frame.type()]++), frame.payload());
+                }
+                assertEquals(FRAMES, next[DaemonProtocol.STDOUT]);
+                assertEquals(FRAMES, next[DaemonProtocol.STDERR]);
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            }
+        }
+    }
+
+    @Test
+    void roundTripsEmptyAndExitFrames() throws Exception {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(temp.resolve("daemon.sock"));
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            try (SocketChannel client = SocketChannel.open(address); SocketChannel daemon = server.accept()) {
+                DaemonProtocol.write(daemon, DaemonProtocol.READ_STDIN, new byte[0]);
+                DaemonProtocol.write(daemon, DaemonProtocol.EXIT, DaemonProtocol.exitPayload(-3));
+
+                DataInputStream in = new DataInputStream(DaemonProtocol.inputStream(client));
+                DaemonProtocol.Frame read = DaemonProtocol.read(in);
+                assertEquals(DaemonProtocol.READ_STDIN, read.type());
+                assertEquals(0, read.payload().length);
+                DaemonProtocol.Frame exit = DaemonProtocol.read(in);
+                assertEquals(DaemonProtocol.EXIT, exit.type());
+                assertEquals(-3, DaemonProtocol.exitCode(exit.payload()));
+            }
+        }
+    }
+
+    private static byte[] payload(byte type, int index) {
+        byte[] payload = new byte[FRAME_SIZE + index];
+        Arrays.fill(payload, (byte) (type + index));
+        return payload;
+    }
+
+    /**
+     * Reads at most 16 KiB at a time and pauses now and then, like a pager holding output back.
+     */
+    private static InputStream slow(InputStream in) {
+        return new InputStream() {
+            private int reads;
+
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (++reads % 64 == 0) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return in.read(b, off, Math.min(len, 16 * 1024));
+            }
+        };
+    }
+}
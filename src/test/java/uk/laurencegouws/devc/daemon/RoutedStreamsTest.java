@@ -0,0 +1,62 @@
+package uk.laurencegouws.devc.daemon;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutedStreamsTest {
+
+    @Test
+    void stalledClientDoesNotBlockOthers() throws Exception {
+        RoutedStreams.install();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        OutputStream stalled = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Invocation slow = invocation(new PrintStream(stalled, true), new PrintStream(OutputStream.nullOutputStream()));
+        Thread slowCommand = Thread.ofVirtual().start(() -> slow.run(() -> System.out.println("never read")));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Invocation fast = invocation(new PrintStream(out, true), new PrintStream(err, true));
+        Thread fastCommand = Thread.ofVirtual().start(() -> fast.run(() -> {
+            System.out.printf("%d container(s)%n", 2);
+            System.out.print('x');
+            System.out.println();
+            System.err.println("warning");
+        }));
+        assertTrue(fastCommand.join(Duration.ofSeconds(5)));
+
+        assertEquals("2 container(s)" + System.lineSeparator() + "x" + System.lineSeparator(),
+            out.toString(StandardCharsets.UTF_8));
+        assertEquals("warning" + System.lineSeparator(), err.toString(StandardCharsets.UTF_8));
+        release.countDown();
+        slowCommand.join();
+    }
+
+    private static Invocation invocation(PrintStream stdout, PrintStream stderr) {
+        return new Invocation(Path.of("/"), Map.of(), false, InputStream.nullInputStream(), stdout, stderr);
+    }
+}
@@ -0,0 +1,169 @@
+package uk.laurencegouws.devc.docker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static uk.laurencegouws.devc.docker.FakeEngine.response;
+
+class DockerEngineClientTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void readsChunkedBodyAndReusesConnection() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n6\r\n world\r\n0\r\n\r\n"));
+            return true;
+        }); DockerEngineClient client = engine.client()) {
+            for (int i = 0; i < 3; i++) {
+                try (EngineResponse response = client.get("/events")) {
+                    assertEquals("hello world", response.bodyAsString());
+                }
+            }
+            assertEquals(1, engine.connections());
+        }
+    }
+
+    @Test
+    void readsFixedLengthBodyAndReusesConnection() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 15\r\n\r\n"
+                + "{\"Id\":\"abc123\"}"));
+            return true;
+        }); DockerEngineClient client = engine.client()) {
+            assertEquals(Map.of("Id", "abc123"), client.getJson("/containers/x/json"));
+            try (EngineResponse response = client.post("/containers/x/start")) {
+                assertEquals(200, response.status());
+                assertEquals("{\"Id\":\"abc123\"}", response.bodyAsString());
+            }
+            assertEquals(1, engine.connections());
+            assertEquals("0", engine.requests().get(1).headers().get("content-length"));
+        }
+    }
+
+    @Test
+    void readsBodyUntilCloseAndDoesNotReuseConnection() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 200 OK\r\n\r\nraw output until the end"));
+            return false;
+        }); DockerEngineClient client = engine.client()) {
+            for (int i = 0; i < 2; i++) {
+                try (EngineResponse response = client.get("/containers/x/logs")) {
+                    assertEquals("raw output until the end", response.bodyAsString());
+                }
+            }
+            assertEquals(2, engine.connections());
+        }
+    }
+
+    @Test
+    void sendsRequestBody() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n"));
+            return true;
+        }); DockerEngineClient client = engine.client()) {
+            try (EngineResponse response = client.post("/containers/create?name=a", Map.of("Image", "ubuntu"))) {
+                assertEquals(201, response.status());
+            }
+            FakeEngine.Request request = engine.requests().get(0);
+            assertEquals("POST", request.method());
+            assertEquals("/v1.41/containers/create?name=a", request.path());
+            assertEquals("application/json", request.headers().get("content-type"));
+            assertEquals("{\"Image\":\"ubuntu\"}", new String(request.body(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void hijacksConnectionIntoRawStream() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 101 UPGRADED\r\nConnection: Upgrade\r\nUpgrade: tcp\r\n\r\n"));
+            out.flush();
+            // Echo stdin back until the client half-closes
+            in.transferTo(out);
+            return false;
+        }); DockerEngineClient client = engine.client()) {
+            try (EngineConnection connection = client.upgrade("/exec/abc/start", Map.of("Detach", false, "Tty", true))) {
+                connection.write("ping\n");
+                connection.shutdownOutput();
+                ByteBuffer echoed = ByteBuffer.allocate(64);
+                while (connection.rawInput().read(echoed) > 0) {
+                    // Read to the end of the stream
+                }
+                assertEquals("ping\n", new String(echoed.array(), 0, echoed.position(), StandardCharsets.UTF_8));
+            }
+            assertEquals("tcp", engine.requests().get(0).headers().get("upgrade"));
+        }
+    }
+
+    @Test
+    void doesNotResendPostAfterItWasSent() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            if (request.path().contains("/containers/create")) {
+                // Took the request, then died before answering
+                return false;
+            }
+            out.write(response("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK"));
+            return true;
+        }); DockerEngineClient client = engine.client()) {
+            ping(client);
+            assertThrows(IOException.class, () -> client.post("/containers/create", Map.of("Image", "ubuntu")));
+            assertEquals(1, engine.requestsTo("/containers/create"));
+        }
+    }
+
+    @Test
+    void resendsGetOnFreshConnectionWhenPooledOneFails() throws Exception {
+        AtomicInteger inspects = new AtomicInteger();
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            if (request.path().contains("/json") && inspects.incrementAndGet() == 1) {
+                return false;
+            }
+            out.write(response(request.path().endsWith("/_ping")
+                ? "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK"
+                : "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n{}"));
+            return true;
+        }); DockerEngineClient client = engine.client()) {
+            ping(client);
+            assertEquals(Map.of(), client.getJson("/containers/x/json"));
+            assertEquals(2, engine.requestsTo("/containers/x/json"));
+            assertEquals(2, engine.connections());
+        }
+    }
+
+    @Test
+    void skipsPooledConnectionTheEngineClosed() throws Exception {
+        try (FakeEngine engine = new FakeEngine(temp, (request, in, out) -> {
+            out.write(response("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK"));
+            // Answers as keep-alive, then drops the idle connection anyway
+            return !request.path().endsWith("/_ping");
+        }); DockerEngineClient client = engine.client()) {
+            ping(client);
+            engine.awaitClosed(1);
+            try (EngineResponse response = client.post("/containers/x/start")) {
+                assertEquals("OK", response.bodyAsString());
+            }
+            assertEquals(1, engine.requestsTo("/containers/x/start"));
+            assertEquals(2, engine.connections());
+        }
+    }
+
+    /**
+     * Reads a whole response, which parks its connection in the pool.
+     */
+    private static void ping(DockerEngineClient client) throws IOException {
+        try (EngineResponse response = client.get("/_ping")) {
+            assertEquals("OK", response.bodyAsString());
+        }
+    }
+}
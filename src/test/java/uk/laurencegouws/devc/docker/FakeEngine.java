@@ -0,0 +1,154 @@
+package uk.laurencegouws.devc.docker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scripted engine on a Unix socket in a temp directory: each request is parsed and handed to a
+ * handler that writes whatever raw response bytes the test needs, so framing, keep-alive and
+ * connection drops can all be driven from the test.
+ */
+final class FakeEngine implements Closeable {
+
+    record Request(String method, String path, Map<String, String> headers, byte[] body) {
+    }
+
+    interface Handler {
+
+        /**
+         * Answers one request; returns false to close the connection afterwards.
+         */
+        boolean handle(Request request, InputStream in, OutputStream out) throws IOException;
+    }
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Handler handler;
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger closedConnections = new AtomicInteger();
+
+    FakeEngine(Path directory, Handler handler) throws IOException {
+        this.socket = directory.resolve("engine.sock");
+        this.handler = handler;
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        Thread.ofPlatform().daemon().name("fake-engine").start(this::acceptLoop);
+    }
+
+    static byte[] response(String raw) {
+        return raw.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    DockerEngineClient client() {
+        return new DockerEngineClient(socket);
+    }
+
+    List<Request> requests() {
+        return requests;
+    }
+
+    long requestsTo(String path) {
+        return requests.stream().filter(request -> request.path().startsWith(DockerEngineClient.API_VERSION + path)).count();
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    /**
+     * Waits until the server side has closed {@code count} connections.
+     */
+    void awaitClosed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (closedConnections.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel connection = server.accept();
+                connections.incrementAndGet();
+                Thread.ofPlatform().daemon().start(() -> serve(connection));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        try (connection) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(connection));
+            OutputStream out = Channels.newOutputStream(connection);
+            while (true) {
+                Request request = readRequest(in);
+                if (request == null) {
+                    return;
+                }
+                requests.add(request);
+                boolean keep = handler.handle(request, in, out);
+                out.flush();
+                if (!keep) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            closedConnections.incrementAndGet();
+        }
+    }
+
+    private static Request readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        int length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+        return new Request(parts[0], parts[1], headers, in.readNBytes(length));
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = line.toString(StandardCharsets.ISO_8859_1);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
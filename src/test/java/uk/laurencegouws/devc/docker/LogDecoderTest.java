@@ -0,0 +1,119 @@
+package uk.laurencegouws.devc.docker;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LogDecoderTest {
+
+    @Test
+    void decodesFramesSplitAtEveryReadSize() throws IOException {
+        byte[] stream = concat(
+            frame(1, "one\ntw"),
+            frame(2, "err\r\n"),
+            frame(1, "o\nthree"),
+            frame(1, "\n"),
+            frame(2, "last"));
+        for (int piece = 1; piece <= stream.length; piece++) {
+            Lines lines = new Lines();
+            new LogDecoder(lines).decodeFrames(trickle(stream, piece));
+            assertEquals(List.of("out:one", "err:err", "out:two", "out:three", "err:last"), lines.lines, "piece " + piece);
+        }
+    }
+
+    @Test
+    void keepsPartialLinesPerStream() throws IOException {
+        Lines lines = new Lines();
+        new LogDecoder(lines).decodeFrames(new ByteArrayInputStream(concat(
+            frame(1, "a-start "), frame(2, "b-start "), frame(1, "a-end\n"), frame(2, "b-end\n"))));
+        assertEquals(List.of("out:a-start a-end", "err:b-start b-end"), lines.lines);
+    }
+
+    @Test
+    void stripsCarriageReturnsOnlyAtLineEnd() throws IOException {
+        Lines lines = new Lines();
+        new LogDecoder(lines).decodeRaw(new ByteArrayInputStream(bytes("a\r\nb\rc\r\n\r\n")), false);
+        assertEquals(List.of("out:a", "out:b\rc", "out:"), lines.lines);
+    }
+
+    @Test
+    void handsOverLongLinesInPieces() throws IOException {
+        byte[] line = new byte[LogDecoder.MAX_LINE * 2 + 10];
+        Arrays.fill(line, (byte) 'x');
+        line[line.length - 1] = '\n';
+        List<Integer> lengths = new ArrayList<>();
+        new LogDecoder((buffer, offset, length, stderr) -> lengths.add(length))
+            .decodeRaw(trickle(line, 10_000), true);
+        assertEquals(List.of(LogDecoder.MAX_LINE, LogDecoder.MAX_LINE, 9), lengths);
+    }
+
+    @Test
+    void rejectsStreamEndingInsideFrame() {
+        byte[] truncated = Arrays.copyOf(frame(1, "hello\n"), 10);
+        assertThrows(EOFException.class, () -> new LogDecoder(new Lines()).decodeFrames(new ByteArrayInputStream(truncated)));
+        byte[] header = Arrays.copyOf(frame(1, "hello\n"), 5);
+        assertThrows(EOFException.class, () -> new LogDecoder(new Lines()).decodeFrames(new ByteArrayInputStream(header)));
+    }
+
+    private static final class Lines implements DockerClient.LogSink {
+
+        final List<String> lines = new ArrayList<>();
+
+        @Override
+        public void line(byte[] buffer, int offset, int length, boolean stderr) {
+            lines.add((stderr ? "err:" : "out:") + new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] frame(int type, String payload) {
+        byte[] body = bytes(payload);
+        byte[] frame = new byte[8 + body.length];
+        frame[0] = (byte) type;
+        frame[4] = (byte) (body.length >>> 24);
+        frame[5] = (byte) (body.length >>> 16);
+        frame[6] = (byte) (body.length >>> 8);
+        frame[7] = (byte) body.length;
+        System.arraycopy(body, 0, frame, 8, body.length);
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serves {@code data} at most {@code piece} bytes per read, with nothing ever available.
+     */
+    private static InputStream trickle(byte[] data, int piece) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, piece));
+            }
+
+            @Override
+            public synchronized int available() {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package uk.laurencegouws.devc.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryIndexTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void listsSiblingsThatSortBetweenChildAndItsSubtree() throws IOException {
+        DirectoryIndex index = index(List.of("lib", "lib-old", "lib/x", "foo", "foo.d", "src"));
+
+        assertEquals(List.of("foo", "foo.d", "lib", "lib-old", "src"), index.children("", "", 100));
+        assertEquals(List.of("lib", "lib-old"), index.children("", "li", 100));
+        assertEquals(List.of("x"), index.children("lib", "", 100));
+        assertEquals(List.of(), index.children("lib-old", "", 100));
+    }
+
+    @Test
+    void skipsDeepSubtreesAcrossRestartPoints() throws IOException {
+        List<String> directories = new ArrayList<>(List.of("app", "app data", "app-old", "app.d", "conf.d", "test-data", "zz"));
+        for (int i = 0; i < 200; i++) {
+            directories.add("app/module" + i);
+            directories.add("app/module" + i + "/src");
+            directories.add("app-old/v" + i);
+        }
+        DirectoryIndex index = index(directories);
+
+        assertEquals(List.of("app", "app data", "app-old", "app.d", "conf.d", "test-data", "zz"), index.children("", "", 100));
+        assertEquals(List.of("app", "app data", "app-old"), index.children("", "app", 3));
+        assertEquals(List.of("module0", "module1", "module10"), index.children("app", "module", 3));
+        assertEquals(List.of("src"), index.children("app/module7", "", 100));
+    }
+
+    @Test
+    void containsOnlyIndexedDirectories() throws IOException {
+        DirectoryIndex index = index(List.of("lib", "lib-old", "lib/x"));
+
+        assertTrue(index.contains(""));
+        assertTrue(index.contains("lib/x"));
+        assertTrue(index.contains("lib-old"));
+        assertFalse(index.contains("lib/y"));
+        assertFalse(index.contains("li"));
+    }
+
+    private DirectoryIndex index(List<String> directories) throws IOException {
+        Path file = temp.resolve("index");
+        DirectoryIndex.write(file, directories, 0);
+        return DirectoryIndex.open(file);
+    }
+}
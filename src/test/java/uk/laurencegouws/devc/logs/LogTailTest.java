@@ -0,0 +1,74 @@
+package uk.laurencegouws.devc.logs;
+
+import org.junit.jupiter.api.Test;
+import uk.laurencegouws.devc.docker.DockerClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogTailTest {
+
+    @Test
+    void keepsLastLinesInOrder() throws IOException {
+        int[][] cases = {
+            // capacity, lines added, first line kept
+            {3, 0, 0},
+            {3, 2, 0},
+            {3, 3, 0},
+            {3, 4, 1},
+            {3, 7, 4},
+            {1, 5, 4},
+        };
+        for (int[] c : cases) {
+            LogTail tail = new LogTail(c[0]);
+            for (int i = 0; i < c[1]; i++) {
+                add(tail, "line " + i, i % 2 == 1);
+            }
+            List<String> expected = new ArrayList<>();
+            for (int i = c[2]; i < c[1]; i++) {
+                expected.add((i % 2 == 1 ? "err:" : "out:") + "line " + i);
+            }
+            assertEquals(expected, drain(tail), "capacity " + c[0] + ", " + c[1] + " lines");
+        }
+    }
+
+    @Test
+    void capacityZeroKeepsNothing() throws IOException {
+        LogTail tail = new LogTail(0);
+        add(tail, "dropped", false);
+        assertEquals(List.of(), drain(tail));
+    }
+
+    @Test
+    void reusesSlotsForLongerAndShorterLines() throws IOException {
+        LogTail tail = new LogTail(2);
+        add(tail, "short", false);
+        add(tail, "x".repeat(500), false);
+        add(tail, "a", true);
+        assertEquals(List.of("out:" + "x".repeat(500), "err:a"), drain(tail));
+
+        add(tail, "after drain", false);
+        assertEquals(List.of("out:after drain"), drain(tail));
+    }
+
+    private static void add(LogTail tail, String line, boolean stderr) {
+        // Padding around the line checks that only its own bytes are copied
+        byte[] padded = ("<<" + line + ">>").getBytes(StandardCharsets.UTF_8);
+        tail.add(padded, 2, padded.length - 4, stderr);
+    }
+
+    private static List<String> drain(LogTail tail) throws IOException {
+        List<String> lines = new ArrayList<>();
+        tail.drainTo(new DockerClient.LogSink() {
+            @Override
+            public void line(byte[] buffer, int offset, int length, boolean stderr) {
+                lines.add((stderr ? "err:" : "out:") + new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+        });
+        return lines;
+    }
+}
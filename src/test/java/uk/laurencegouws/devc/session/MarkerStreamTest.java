@@ -0,0 +1,91 @@
+package uk.laurencegouws.devc.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkerStreamTest {
+
+    private static final byte[] MARKER = "__END__".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void findsMarkerSplitAcrossReads() throws IOException {
+        for (int piece = 1; piece <= 8; piece++) {
+            MarkerStream stream = new MarkerStream(trickle("hello\n__END__0\n", piece));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(stream.copyUntil(MARKER, out), "piece " + piece);
+            assertEquals("hello\n", text(out), "piece " + piece);
+            assertEquals("0", stream.readLine());
+        }
+    }
+
+    @Test
+    void relaysOutputThatOnlyStartsLikeTheMarker() throws IOException {
+        String output = "_ __E __EN_ ___END__";
+        for (int piece = 1; piece <= 4; piece++) {
+            MarkerStream stream = new MarkerStream(trickle(output, piece));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(stream.copyUntil(MARKER, out), "piece " + piece);
+            assertEquals("_ __E __EN_ _", text(out), "piece " + piece);
+        }
+    }
+
+    @Test
+    void relaysHeldBackBytesWhenStreamEndsMidMatch() throws IOException {
+        MarkerStream stream = new MarkerStream(trickle("done __EN", 3));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(stream.copyUntil(MARKER, out));
+        assertEquals("done __EN", text(out));
+        assertNull(stream.readLine());
+    }
+
+    @Test
+    void keepsBytesAfterMarkerForNextCommand() throws IOException {
+        MarkerStream stream = new MarkerStream(new ByteArrayInputStream(
+            "one__END__1\ntwo__END__0\n".getBytes(StandardCharsets.US_ASCII)));
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        assertTrue(stream.copyUntil(MARKER, first));
+        assertEquals("one", text(first));
+        assertEquals("1", stream.readLine());
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        assertTrue(stream.copyUntil(MARKER, second));
+        assertEquals("two", text(second));
+        assertEquals("0", stream.readLine());
+        assertNull(stream.readLine());
+    }
+
+    @Test
+    void passesThroughOutputLargerThanTheBuffer() throws IOException {
+        String output = "x".repeat(20_000) + "__END__" + "y";
+        MarkerStream stream = new MarkerStream(trickle(output, 5000));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(stream.copyUntil(MARKER, out));
+        assertEquals(20_000, out.size());
+    }
+
+    /**
+     * Serves {@code text} at most {@code piece} bytes per read, as a pipe might.
+     */
+    private static InputStream trickle(String text, int piece) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, piece));
+            }
+        };
+    }
+
+    private static String text(ByteArrayOutputStream out) {
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
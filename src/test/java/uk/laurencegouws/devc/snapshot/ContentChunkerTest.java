@@ -0,0 +1,101 @@
+package uk.laurencegouws.devc.snapshot;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentChunkerTest {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+
+    @Test
+    void chunksStayWithinBoundsAndReassemble() throws IOException {
+        byte[] data = random(1, SIZE);
+        List<byte[]> chunks = chunk(data);
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= ContentChunker.MAX_SIZE, "chunk " + i + " is " + length + " bytes");
+            assertTrue(length >= ContentChunker.MIN_SIZE || i == chunks.size() - 1, "chunk " + i + " is " + length + " bytes");
+        }
+        int average = SIZE / chunks.size();
+        assertTrue(average > ContentChunker.AVERAGE_SIZE / 2 && average < ContentChunker.AVERAGE_SIZE * 2,
+            "average chunk is " + average + " bytes");
+        assertArrayEquals(data, join(chunks));
+    }
+
+    @Test
+    void uniformInputIsCutAtMaxSize() throws IOException {
+        List<byte[]> chunks = chunk(new byte[ContentChunker.MAX_SIZE * 3 + 5]);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ContentChunker.MAX_SIZE, chunks.get(i).length);
+        }
+        assertEquals(5, chunks.get(3).length);
+    }
+
+    @Test
+    void localEditChangesOnlyNearbyChunks() throws IOException {
+        byte[] original = random(2, SIZE);
+        Set<String> before = hashes(chunk(original));
+
+        byte[] overwritten = original.clone();
+        System.arraycopy(random(3, 100), 0, overwritten, SIZE / 2, 100);
+        assertNearby(before, chunk(overwritten));
+
+        // An insertion shifts everything after it; the cut points must find their way back
+        byte[] inserted = new byte[SIZE + 37];
+        System.arraycopy(original, 0, inserted, 0, SIZE / 3);
+        System.arraycopy(random(4, 37), 0, inserted, SIZE / 3, 37);
+        System.arraycopy(original, SIZE / 3, inserted, SIZE / 3 + 37, SIZE - SIZE / 3);
+        assertNearby(before, chunk(inserted));
+    }
+
+    private static void assertNearby(Set<String> before, List<byte[]> after) {
+        int changed = 0;
+        for (byte[] chunk : after) {
+            if (!before.contains(ChunkStore.hash(chunk))) {
+                changed++;
+            }
+        }
+        assertTrue(changed >= 1 && changed <= 3, changed + " of " + after.size() + " chunks changed");
+    }
+
+    private static List<byte[]> chunk(byte[] data) throws IOException {
+        ContentChunker chunker = new ContentChunker(new ByteArrayInputStream(data));
+        List<byte[]> chunks = new ArrayList<>();
+        for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static Set<String> hashes(List<byte[]> chunks) {
+        Set<String> hashes = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            hashes.add(ChunkStore.hash(chunk));
+        }
+        return hashes;
+    }
+
+    private static byte[] join(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunks.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,196 @@
+package uk.laurencegouws.devc.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotStoreTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void restoresWhatWasSaved() throws IOException {
+        SnapshotStore store = new SnapshotStore(temp.resolve("snapshots"));
+        byte[] data = random(1, 1024 * 1024);
+
+        SnapshotStore.SaveResult saved = store.save("first", "dev", "/workspace", new ByteArrayInputStream(data), 4);
+
+        assertEquals(data.length, saved.snapshot().size());
+        assertArrayEquals(data, restore(store, store.find("first")));
+        SnapshotStore.SaveResult again = store.save("second", "dev", "/workspace", new ByteArrayInputStream(data), 4);
+        assertEquals(0, again.newChunks());
+    }
+
+    @Test
+    void deleteFreesOnlyChunksNoOtherSnapshotUses() throws IOException {
+        SnapshotStore store = new SnapshotStore(temp.resolve("snapshots"));
+        byte[] shared = random(1, 512 * 1024);
+        byte[] extra = random(2, 512 * 1024);
+        store.save("base", "dev", "/workspace", new ByteArrayInputStream(shared), 4);
+        store.save("more", "dev", "/workspace", new ByteArrayInputStream(concat(shared, extra)), 4);
+        long before = store.storedBytes();
+
+        long freed = store.delete("more");
+
+        assertTrue(freed > 0);
+        assertEquals(before - freed, store.storedBytes());
+        assertNull(store.find("more"));
+        assertArrayEquals(shared, restore(store, store.find("base")));
+    }
+
+    @Test
+    void rejectsNamesOutsideTheStore() throws IOException {
+        Path root = temp.resolve("store/snapshots");
+        Path victim = temp.resolve("store/victim.snapshot");
+        Files.createDirectories(root);
+        Files.writeString(victim, "not ours");
+        SnapshotStore store = new SnapshotStore(root);
+
+        assertThrows(IOException.class, () -> store.delete("../victim"));
+        assertThrows(IOException.class, () -> store.find("../victim"));
+        assertThrows(IOException.class,
+            () -> store.save("../victim", "dev", "/workspace", InputStream.nullInputStream(), 1));
+        assertTrue(Files.exists(victim));
+    }
+
+    @Test
+    void deleteWaitsForSaveInProgress() throws Exception {
+        SnapshotStore store = new SnapshotStore(temp.resolve("snapshots"));
+        store.save("old", "dev", "/workspace", new ByteArrayInputStream(random(3, 256 * 1024)), 4);
+        byte[] data = random(4, 1024 * 1024);
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        // Stops after the first half, with its chunks written but no index yet
+        InputStream paused = new SequenceInputStream(new ByteArrayInputStream(data, 0, data.length / 2), new InputStream() {
+            private final InputStream rest = new ByteArrayInputStream(data, data.length / 2, data.length - data.length / 2);
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                halfway.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return rest.read(buffer, offset, length);
+            }
+        });
+
+        CompletableFuture<SnapshotStore.SaveResult> save = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.save("new", "dev", "/workspace", paused, 4);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(halfway.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Long> delete = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.delete("old");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(delete.isDone());
+
+        resume.countDown();
+        save.get(5, TimeUnit.SECONDS);
+        delete.get(5, TimeUnit.SECONDS);
+        assertArrayEquals(data, restore(store, store.find("new")));
+    }
+
+    @Test
+    void restoreChecksEveryChunkBeforeStreaming() throws Exception {
+        SnapshotStore store = new SnapshotStore(temp);
+        store.save("full", "dev", "/workspace", new ByteArrayInputStream(random(5, 600_000)), 4);
+        Path chunk;
+        try (Stream<Path> files = Files.walk(temp.resolve("chunks"))) {
+            chunk = files.filter(Files::isRegularFile).findFirst().orElseThrow();
+        }
+
+        Files.write(chunk, new byte[] {1, 2, 3});
+        IOException truncated = assertThrows(IOException.class, () -> store.restore("full", 4));
+        assertTrue(truncated.getMessage().contains("corrupt"), truncated.getMessage());
+
+        Files.delete(chunk);
+        IOException missing = assertThrows(IOException.class, () -> store.restore("full", 4));
+        assertTrue(missing.getMessage().contains("missing"), missing.getMessage());
+
+        // A failed check releases the lock
+        assertTrue(store.delete("full") > 0);
+    }
+
+    @Test
+    void deleteWaitsForOpenRestore() throws Exception {
+        SnapshotStore store = new SnapshotStore(temp);
+        byte[] data = random(6, 400_000);
+        store.save("kept", "dev", "/workspace", new ByteArrayInputStream(data), 4);
+
+        CompletableFuture<Long> delete;
+        try (SnapshotStore.Restore restore = store.restore("kept", 4)) {
+            delete = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return store.delete("kept");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(delete.isDone());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            restore.archive().writeTo(Channels.newChannel(out));
+            assertArrayEquals(data, out.toByteArray());
+        }
+        delete.get(5, TimeUnit.SECONDS);
+        assertNull(store.find("kept"));
+    }
+
+    private static byte[] restore(SnapshotStore store, SnapshotStore.Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SnapshotStore.Restore restore = store.restore(snapshot.name(), 4)) {
+            restore.archive().writeTo(Channels.newChannel(out));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] random(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+}
@@ -0,0 +1,49 @@
+package uk.laurencegouws.devc.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatusTextTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void bringsUptimeUpToDate() {
+        long started = NOW - Duration.ofMinutes(42).toMillis();
+
+        assertEquals("Up 42 minutes", StatusText.at("Up 5 seconds", started, NOW));
+        assertEquals("Up 42 minutes (healthy)", StatusText.at("Up 5 seconds (healthy)", started, NOW));
+        assertEquals("Up 42 minutes (Paused)", StatusText.at("Up Less than a second (Paused)", started, NOW));
+    }
+
+    @Test
+    void bringsExitTimeUpToDate() {
+        long finished = NOW - Duration.ofHours(3).toMillis();
+
+        assertEquals("Exited (137) 3 hours ago", StatusText.at("Exited (137) 2 seconds ago", finished, NOW));
+        assertEquals("Restarting (1) 3 hours ago", StatusText.at("Restarting (1) About a minute ago", finished, NOW));
+    }
+
+    @Test
+    void leavesStatusWithoutDurationOrTimeAlone() {
+        assertEquals("Created", StatusText.at("Created", NOW - 1000, NOW));
+        assertEquals("Up 5 seconds", StatusText.at("Up 5 seconds", 0, NOW));
+    }
+
+    @Test
+    void wordsDurationsLikeDocker() {
+        assertEquals("Less than a second", StatusText.human(Duration.ofMillis(400)));
+        assertEquals("1 second", StatusText.human(Duration.ofSeconds(1)));
+        assertEquals("59 seconds", StatusText.human(Duration.ofSeconds(59)));
+        assertEquals("About a minute", StatusText.human(Duration.ofSeconds(90)));
+        assertEquals("About an hour", StatusText.human(Duration.ofMinutes(80)));
+        assertEquals("2 hours", StatusText.human(Duration.ofMinutes(100)));
+        assertEquals("3 days", StatusText.human(Duration.ofHours(80)));
+        assertEquals("3 weeks", StatusText.human(Duration.ofDays(22)));
+        assertEquals("4 months", StatusText.human(Duration.ofDays(125)));
+        assertEquals("2 years", StatusText.human(Duration.ofDays(800)));
+    }
+}